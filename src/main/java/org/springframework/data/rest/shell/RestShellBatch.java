@@ -0,0 +1,61 @@
+package org.springframework.data.rest.shell;
+
+import java.io.File;
+
+import org.springframework.data.rest.shell.commands.BatchCommands;
+import org.springframework.shell.Bootstrap;
+
+/**
+ * Runs a script of shell commands without starting the console, for use from build servers and cron jobs:
+ * <pre>
+ * java -cp ... org.springframework.data.rest.shell.RestShellBatch script.rsh [--parallel 8] [--fail-fast] [--quiet]
+ * </pre>
+ * The report is printed once the script is done, and the exit status is 0 if every line worked, 1 if any failed, and
+ * 2 if the script couldn't be run at all.
+ *
+ * @author agent
+ */
+public class RestShellBatch {
+
+	private static final String USAGE = "Usage: RestShellBatch <script> [--parallel <n>] [--fail-fast] [--quiet]";
+
+	public static void main(String[] args) throws Exception {
+		String file = null;
+		int parallel = 8;
+		boolean failFast = false;
+		boolean quiet = false;
+		for (int i = 0; i < args.length; i++) {
+			if ("--parallel".equals(args[i]) && i + 1 < args.length) {
+				parallel = Integer.parseInt(args[++i]);
+			} else if ("--fail-fast".equals(args[i])) {
+				failFast = true;
+			} else if ("--quiet".equals(args[i])) {
+				quiet = true;
+			} else if (null == file && !args[i].startsWith("--")) {
+				file = args[i];
+			} else {
+				System.err.println(USAGE);
+				System.exit(2);
+			}
+		}
+		if (null == file) {
+			System.err.println(USAGE);
+			System.exit(2);
+		}
+
+		// Creates the shell's commands without starting the console
+		Bootstrap bootstrap = new Bootstrap(new String[0]);
+		BatchCommands batch = bootstrap.getApplicationContext().getBean(BatchCommands.class);
+		int status;
+		try {
+			BatchCommands.Report report = batch.run(new File(file), parallel, failFast, quiet);
+			System.out.print(report);
+			status = (report.getFailed() > 0 ? 1 : 0);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			status = 2;
+		}
+		System.exit(status);
+	}
+
+}
@@ -3,7 +3,9 @@ package org.springframework.data.rest.shell;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.annotation.Order;
 import org.springframework.data.rest.shell.commands.ConfigurationCommands;
+import org.springframework.data.rest.shell.commands.ContextCommands;
 import org.springframework.data.rest.shell.commands.DotRcReader;
+import org.springframework.data.rest.shell.commands.StartupCommands;
 import org.springframework.shell.plugin.PromptProvider;
 import org.springframework.stereotype.Component;
 
@@ -21,16 +23,26 @@ public class RestShellPromptProvider implements PromptProvider {
 	@Autowired
 	private ConfigurationCommands configCmds;
 	@Autowired
+	private ContextCommands       contextCmds;
+	@Autowired
 	private DotRcReader           dotRcReader;
+	@Autowired
+	private StartupCommands       startupCmds;
 	private boolean readDotRc = false;
 
 	@Override public String getPrompt() {
 		if(!readDotRc) {
+			readDotRc = true;
+			startupCmds.mark("Starting the console");
 			try {
 				dotRcReader.readDotRc();
 			} catch(Exception e) {
 				throw new IllegalStateException(e);
 			}
+			startupCmds.mark("Reading ~/.rest-shell");
+			startupCmds.prompted();
+			// The user beans are only needed once something asks for them, so they're loaded while the user types
+			contextCmds.warmUp();
 		}
 		return configCmds.getBaseUri().toString() + ":" + "> ";
 	}
@@ -0,0 +1,411 @@
+package org.springframework.data.rest.shell.commands;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationContextAware;
+import org.springframework.http.HttpStatus;
+import org.springframework.shell.core.CommandMarker;
+import org.springframework.shell.core.JLineShellComponent;
+import org.springframework.shell.core.annotation.CliCommand;
+import org.springframework.shell.core.annotation.CliOption;
+import org.springframework.shell.event.ParseResult;
+import org.springframework.shell.support.util.OsUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ReflectionUtils;
+
+import static org.springframework.data.rest.shell.commands.Tables.pad;
+import static org.springframework.data.rest.shell.commands.Tables.padLeft;
+
+/**
+ * Runs scripts of shell commands without anyone at the console. The whole script is read and checked before any of it
+ * runs (see {@link BatchScript}), its lines are run one after another, and the requests in a {@code parallel {} block
+ * are sent in the background with {@code --async}, a bounded number at a time. Every line runs on the shell's own
+ * thread, as typed commands do, so only the requests themselves are sent at the same time. Once the script is done, a
+ * report shows how each line went.
+ *
+ * @author agent
+ */
+@Component
+public class BatchCommands implements CommandMarker, ApplicationContextAware {
+
+  private static final Logger LOG = LoggerFactory.getLogger(BatchCommands.class);
+
+  @Autowired
+  private JLineShellComponent shell;
+  @Autowired
+  private ContextCommands     contextCmds;
+  @Autowired
+  private JobCommands         jobCmds;
+  private ApplicationContext  appCtx;
+  private Map<String, Method> commands;
+
+  private static String message(Throwable t) {
+    while(t instanceof UndeclaredThrowableException && null != t.getCause()) {
+      t = t.getCause();
+    }
+    return (null != t.getMessage() ? t.getMessage() : t.toString());
+  }
+
+  @Override public void setApplicationContext(ApplicationContext appCtx) throws BeansException {
+    this.appCtx = appCtx;
+  }
+
+  @CliCommand(value = "batch run", help = "Run a script of commands, sending the requests in its 'parallel {' blocks at the same time.")
+  public String run(
+      @CliOption(key = {"", "file"},
+                 mandatory = true,
+                 help = "The script to run.") String file,
+      @CliOption(key = "parallel",
+                 mandatory = false,
+                 help = "The most requests of a 'parallel {' block to send at a time, unless the block says otherwise.",
+                 unspecifiedDefaultValue = "8") Integer parallel,
+      @CliOption(key = "fail-fast",
+                 mandatory = false,
+                 help = "Stop at the first line that fails.",
+                 unspecifiedDefaultValue = "false",
+                 specifiedDefaultValue = "true") boolean failFast,
+      @CliOption(key = "quiet",
+                 mandatory = false,
+                 help = "Only show the report, not the output of each line.",
+                 unspecifiedDefaultValue = "false",
+                 specifiedDefaultValue = "true") boolean quiet) throws IOException {
+    return run(new File(contextCmds.evalAsString(file)), parallel, failFast, quiet).toString();
+  }
+
+  /**
+   * Run a script.
+   *
+   * @param file
+   * @param parallel
+   *     The most requests of a parallel block to send at a time, unless the block says otherwise.
+   * @param failFast
+   *     Whether to stop at the first line that fails.
+   * @param quiet
+   *     Whether to leave out the output of each line.
+   *
+   * @return How each line went.
+   *
+   * @throws IOException
+   * @throws IllegalArgumentException
+   *     If the script has mistakes in it, in which case none of it is run.
+   */
+  public Report run(File file, int parallel, boolean failFast, boolean quiet) throws IOException {
+    if(parallel < 1) {
+      throw new IllegalArgumentException("--parallel must be at least 1");
+    }
+    if(!file.isFile()) {
+      throw new IllegalArgumentException("No script " + file.getPath());
+    }
+    BatchScript script = BatchScript.read(file, getCommands());
+
+    Report report = new Report(file);
+    boolean stop = false;
+    for(BatchScript.Group group : script.getGroups()) {
+      List<Result> results = new ArrayList<Result>();
+      for(BatchScript.Line line : group.lines) {
+        results.add(new Result(line));
+      }
+      report.results.addAll(results);
+      if(stop) {
+        continue;
+      }
+      if(group.parallel) {
+        stop = runParallel(results, (group.size > 0 ? group.size : parallel), failFast, quiet);
+      } else {
+        stop = !runLine(results.get(0), quiet) && failFast;
+      }
+    }
+    report.millis = System.currentTimeMillis() - report.start;
+    return report;
+  }
+
+  /**
+   * Run a line on its own.
+   *
+   * @return Whether it worked.
+   */
+  private boolean runLine(Result result, boolean quiet) {
+    ResponseHistory.Entry before = contextCmds.responses.getLatest();
+    long start = System.currentTimeMillis();
+    try {
+      print(result, invoke(result.line.text), quiet);
+      result.ran(before, contextCmds.responses.getLatest());
+    } catch(RuntimeException e) {
+      result.fail(message(e));
+    } finally {
+      result.millis = System.currentTimeMillis() - start;
+    }
+    return !result.failed;
+  }
+
+  /**
+   * Send the requests of a parallel block as background jobs, no more than {@code size} at a time, and wait for them in
+   * the order they were sent.
+   *
+   * @return Whether to stop running the script.
+   */
+  private boolean runParallel(List<Result> results, int size, boolean failFast, boolean quiet) {
+    LinkedList<Result> running = new LinkedList<Result>();
+    boolean stop = false;
+    for(Result result : results) {
+      while(running.size() >= size) {
+        if(!finish(running.removeFirst(), quiet) && failFast) {
+          stop = true;
+        }
+      }
+      if(stop) {
+        break;
+      }
+
+      int lastJob = jobCmds.getLastId();
+      ResponseHistory.Entry before = contextCmds.responses.getLatest();
+      long start = System.currentTimeMillis();
+      try {
+        Object output = invoke(result.line.inBackground());
+        result.job = jobCmds.getLastId();
+        if(result.job == lastJob) {
+          // Answered without sending a request, as from the cache
+          result.job = 0;
+          result.millis = System.currentTimeMillis() - start;
+          print(result, output, quiet);
+          result.ran(before, contextCmds.responses.getLatest());
+        } else {
+          running.add(result);
+        }
+      } catch(RuntimeException e) {
+        result.millis = System.currentTimeMillis() - start;
+        result.fail(message(e));
+      }
+      if(result.failed && failFast) {
+        stop = true;
+        break;
+      }
+    }
+    while(!running.isEmpty()) {
+      if(!finish(running.removeFirst(), quiet) && failFast) {
+        stop = true;
+      }
+    }
+    return stop;
+  }
+
+  /**
+   * Wait for the job of a line in a parallel block and apply its result to the shell.
+   *
+   * @return Whether it worked.
+   */
+  private boolean finish(Result result, boolean quiet) {
+    ResponseHistory.Entry before = contextCmds.responses.getLatest();
+    try {
+      print(result, jobCmds.waitFor(result.job, null, null), quiet);
+      result.ran(before, contextCmds.responses.getLatest());
+    } catch(RuntimeException e) {
+      result.fail(message(e));
+    } finally {
+      result.millis = jobCmds.getElapsed(result.job);
+      jobCmds.forget(result.job);
+    }
+    return !result.failed;
+  }
+
+  /**
+   * Parse and run a command the way the shell would, but without going through the shell, which runs one command at a
+   * time and is already running {@code batch run}.
+   */
+  private Object invoke(String text) {
+    ParseResult parsed = shell.getSimpleParser().parse(text);
+    if(null == parsed) {
+      throw new IllegalArgumentException("Couldn't parse '" + text + "'");
+    }
+    return ReflectionUtils.invokeMethod(parsed.getMethod(), parsed.getInstance(), parsed.getArguments());
+  }
+
+  private void print(Result result, Object output, boolean quiet) {
+    if(quiet) {
+      return;
+    }
+    System.out.println(result.line.number + "> " + result.line.text);
+    if(null != output && !"".equals(output)) {
+      System.out.println(output);
+    }
+  }
+
+  /**
+   * Find every command of the shell by name, the first time a script is run.
+   */
+  private synchronized Map<String, Method> getCommands() {
+    if(null == commands) {
+      commands = new HashMap<String, Method>();
+      for(CommandMarker marker : appCtx.getBeansOfType(CommandMarker.class).values()) {
+        for(Method method : marker.getClass().getMethods()) {
+          CliCommand cmd = method.getAnnotation(CliCommand.class);
+          if(null != cmd) {
+            for(String name : cmd.value()) {
+              commands.put(name, method);
+            }
+          }
+        }
+      }
+      if(LOG.isDebugEnabled()) {
+        LOG.debug("Found " + commands.size() + " commands for scripts");
+      }
+    }
+    return commands;
+  }
+
+  /**
+   * How each line of a script went.
+   */
+  public static class Report {
+
+    private final File         file;
+    private final long         start   = System.currentTimeMillis();
+    private final List<Result> results = new ArrayList<Result>();
+    private       long         millis;
+
+    private Report(File file) {
+      this.file = file;
+    }
+
+    /**
+     * @return The number of lines that failed.
+     */
+    public int getFailed() {
+      int failed = 0;
+      for(Result r : results) {
+        if(r.failed) {
+          failed++;
+        }
+      }
+      return failed;
+    }
+
+    @Override public String toString() {
+      int passed = 0;
+      int skipped = 0;
+      int maxStatusLen = "status".length();
+      for(Result r : results) {
+        maxStatusLen = Math.max(maxStatusLen, r.getStatus().length());
+        if(r.skipped()) {
+          skipped++;
+        } else if(!r.failed) {
+          passed++;
+        }
+      }
+      maxStatusLen += 4;
+
+      StringBuilder sb = new StringBuilder();
+      sb.append(pad("line", 6))
+        .append(pad("status", maxStatusLen))
+        .append(padLeft("ms", 8))
+        .append("    command")
+        .append(OsUtils.LINE_SEPARATOR);
+      char[] line = new char[6 + maxStatusLen + 8 + 40];
+      Arrays.fill(line, '=');
+      sb.append(new String(line)).append(OsUtils.LINE_SEPARATOR);
+      for(Result r : results) {
+        sb.append(pad(String.valueOf(r.line.number), 6))
+          .append(pad(r.getStatus(), maxStatusLen))
+          .append(padLeft(r.skipped() ? "" : String.valueOf(r.millis), 8))
+          .append("    ")
+          .append(r.line.text)
+          .append(OsUtils.LINE_SEPARATOR);
+      }
+
+      sb.append(OsUtils.LINE_SEPARATOR)
+        .append(file.getName())
+        .append(": ")
+        .append(results.size())
+        .append(results.size() == 1 ? " line, " : " lines, ")
+        .append(passed)
+        .append(" passed, ")
+        .append(getFailed())
+        .append(" failed");
+      if(skipped > 0) {
+        sb.append(", ").append(skipped).append(" skipped");
+      }
+      sb.append(String.format(" in %.2fs", millis / 1000.0)).append(OsUtils.LINE_SEPARATOR);
+
+      boolean first = true;
+      for(Result r : results) {
+        if(r.failed) {
+          if(first) {
+            sb.append(OsUtils.LINE_SEPARATOR).append("Failures:").append(OsUtils.LINE_SEPARATOR);
+            first = false;
+          }
+          sb.append("  line ")
+            .append(r.line.number)
+            .append(": ")
+            .append(r.line.text)
+            .append(OsUtils.LINE_SEPARATOR)
+            .append("    ")
+            .append(r.failure)
+            .append(OsUtils.LINE_SEPARATOR);
+        }
+      }
+      return sb.toString();
+    }
+
+  }
+
+  private static class Result {
+
+    private final BatchScript.Line line;
+    private       String           status;
+    private       long             millis;
+    private       boolean          failed;
+    private       String           failure;
+    private       int              job;
+
+    private Result(BatchScript.Line line) {
+      this.line = line;
+    }
+
+    /**
+     * Note how a line that ran went, from the response it got, if any.
+     */
+    private void ran(ResponseHistory.Entry before, ResponseHistory.Entry after) {
+      if(null == after || after == before || null == after.getStatusCode()) {
+        status = "ok";
+        return;
+      }
+      HttpStatus code = after.getStatusCode();
+      status = code.value() + " " + code.getReasonPhrase();
+      if(code.value() >= 400) {
+        fail(status);
+      }
+    }
+
+    private void fail(String reason) {
+      failed = true;
+      failure = reason;
+      if(null == status) {
+        status = "FAILED";
+      }
+    }
+
+    private boolean skipped() {
+      return null == status;
+    }
+
+    private String getStatus() {
+      return (skipped() ? "skipped" : status);
+    }
+
+  }
+
+}
@@ -0,0 +1,266 @@
+package org.springframework.data.rest.shell.commands;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.shell.core.annotation.CliOption;
+import org.springframework.shell.support.util.OsUtils;
+
+/**
+ * A script of shell commands, read and checked as a whole before any of it runs. Every line is matched to the command
+ * it calls and its options are checked against that command's, so a mistake anywhere in the script is found before the
+ * first request is sent. Lines between {@code parallel {} and {@code }} make up a block whose requests are sent at the
+ * same time, and which may only hold commands that can run in the background with {@code --async}. Blank lines and
+ * lines starting with {@code #} or {@code //} are skipped.
+ * <p/>
+ * The options themselves are converted just before each line runs, since the rels and expressions they refer to
+ * depend on the lines before it.
+ *
+ * @author agent
+ */
+class BatchScript {
+
+  private static final String ASYNC_OPTION = "async";
+
+  private final File        file;
+  private final List<Group> groups;
+  private final int         lines;
+
+  private BatchScript(File file, List<Group> groups, int lines) {
+    this.file = file;
+    this.groups = groups;
+    this.lines = lines;
+  }
+
+  /**
+   * Read a script, checking every line of it.
+   *
+   * @param file
+   * @param commands
+   *     The commands of the shell by name.
+   *
+   * @return
+   *
+   * @throws IOException
+   * @throws IllegalArgumentException
+   *     If any line of the script is wrong, listing every such line.
+   */
+  static BatchScript read(File file, Map<String, Method> commands) throws IOException {
+    List<Group> groups = new ArrayList<Group>();
+    List<String> problems = new ArrayList<String>();
+    Group block = null;
+    int count = 0;
+
+    BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    try {
+      String text;
+      int number = 0;
+      while(null != (text = in.readLine())) {
+        number++;
+        text = text.trim();
+        if(text.length() == 0 || text.startsWith("#") || text.startsWith("//")) {
+          continue;
+        }
+
+        if(text.startsWith("parallel") && text.endsWith("{")) {
+          String size = text.substring("parallel".length(), text.length() - 1).trim();
+          if(null != block) {
+            problems.add(problem(number, "a parallel block can't be inside another one"));
+          } else if(size.length() > 0 && !size.matches("[0-9]+")) {
+            problems.add(problem(number, "'" + size + "' is not a number of requests to send at a time"));
+          } else {
+            block = new Group(number, true, (size.length() > 0 ? Math.max(1, Integer.parseInt(size)) : 0));
+          }
+          continue;
+        }
+        if(text.equals("}")) {
+          if(null == block) {
+            problems.add(problem(number, "'}' without a 'parallel {' before it"));
+          } else {
+            groups.add(block);
+            block = null;
+          }
+          continue;
+        }
+
+        Line line = line(number, text, commands, problems);
+        if(null == line) {
+          continue;
+        }
+        count++;
+        if(null != block) {
+          if(!line.async) {
+            problems.add(problem(number, "'" + line.command + "' can't be sent in the background, so it can't be in a parallel block"));
+          }
+          block.lines.add(line);
+        } else {
+          Group group = new Group(number, false, 0);
+          group.lines.add(line);
+          groups.add(group);
+        }
+      }
+    } finally {
+      in.close();
+    }
+    if(null != block) {
+      problems.add(problem(block.number, "'parallel {' without a '}' after it"));
+    }
+
+    if(!problems.isEmpty()) {
+      StringBuilder sb = new StringBuilder(file.getPath()).append(" has ")
+                                                          .append(problems.size())
+                                                          .append(problems.size() == 1 ? " problem:" : " problems:");
+      for(String problem : problems) {
+        sb.append(OsUtils.LINE_SEPARATOR).append("  ").append(problem);
+      }
+      throw new IllegalArgumentException(sb.toString());
+    }
+    return new BatchScript(file, groups, count);
+  }
+
+  private static String problem(int number, String problem) {
+    return "line " + number + ": " + problem;
+  }
+
+  /**
+   * Match a line to the command with the longest name it starts with, and check its options.
+   */
+  private static Line line(int number, String text, Map<String, Method> commands, List<String> problems) {
+    String command = null;
+    for(String name : commands.keySet()) {
+      if((text.equals(name) || text.startsWith(name + " "))
+          && (null == command || name.length() > command.length())) {
+        command = name;
+      }
+    }
+    if(null == command) {
+      String first = text.split("\\s+")[0];
+      problems.add(problem(number, "there's no command '" + first + "'"));
+      return null;
+    }
+
+    Set<String> keys = new HashSet<String>();
+    for(Annotation[] annotations : commands.get(command).getParameterAnnotations()) {
+      for(Annotation annotation : annotations) {
+        if(annotation instanceof CliOption) {
+          Collections.addAll(keys, ((CliOption)annotation).key());
+        }
+      }
+    }
+    for(String option : options(text.substring(command.length()))) {
+      if(!keys.contains(option)) {
+        problems.add(problem(number, option.length() > 0
+                                     ? "'" + command + "' has no option --" + option
+                                     : "'" + command + "' needs the name of the option before a value"));
+      }
+    }
+    return new Line(number, text, command, keys.contains(ASYNC_OPTION));
+  }
+
+  /**
+   * Find the names of the options given on a line, leaving out anything in quotes. A value given before any option
+   * name counts as the option named {@code ""}.
+   */
+  private static List<String> options(String args) {
+    List<String> options = new ArrayList<String>();
+    String first = args.trim();
+    if(first.length() > 0 && !first.startsWith("--")) {
+      options.add("");
+    }
+    boolean quoted = false;
+    int i = 0;
+    while(i < args.length()) {
+      char c = args.charAt(i);
+      if(c == '"') {
+        quoted = !quoted;
+      } else if(!quoted && c == '-' && args.startsWith("--", i) && (i == 0 || Character.isWhitespace(args.charAt(i - 1)))) {
+        int end = i + 2;
+        while(end < args.length() && !Character.isWhitespace(args.charAt(end))) {
+          end++;
+        }
+        options.add(args.substring(i + 2, end));
+        i = end;
+        continue;
+      }
+      i++;
+    }
+    return options;
+  }
+
+  File getFile() {
+    return file;
+  }
+
+  /**
+   * @return The lines and parallel blocks of the script, in order.
+   */
+  List<Group> getGroups() {
+    return groups;
+  }
+
+  /**
+   * @return The number of commands in the script.
+   */
+  int getLineCount() {
+    return lines;
+  }
+
+  /**
+   * A line on its own, or a parallel block.
+   */
+  static class Group {
+
+    final int        number;
+    final boolean    parallel;
+    final int        size;
+    final List<Line> lines = new ArrayList<Line>();
+
+    private Group(int number, boolean parallel, int size) {
+      this.number = number;
+      this.parallel = parallel;
+      this.size = size;
+    }
+
+  }
+
+  /**
+   * A command in the script.
+   */
+  static class Line {
+
+    final int     number;
+    final String  text;
+    final String  command;
+    /**
+     * Whether the command takes {@code --async}.
+     */
+    final boolean async;
+
+    private Line(int number, String text, String command, boolean async) {
+      this.number = number;
+      this.text = text;
+      this.command = command;
+      this.async = async;
+    }
+
+    /**
+     * @return The line with {@code --async} added, unless it's already there.
+     */
+    String inBackground() {
+      return (options(text.substring(command.length())).contains(ASYNC_OPTION) ? text : text + " --" + ASYNC_OPTION);
+    }
+
+  }
+
+}
@@ -0,0 +1,301 @@
+package org.springframework.data.rest.shell.commands;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.shell.core.CommandMarker;
+import org.springframework.shell.core.annotation.CliAvailabilityIndicator;
+import org.springframework.shell.core.annotation.CliCommand;
+import org.springframework.shell.core.annotation.CliOption;
+import org.springframework.shell.support.util.OsUtils;
+import org.springframework.stereotype.Component;
+
+import static org.springframework.data.rest.shell.commands.Tables.pad;
+import static org.springframework.data.rest.shell.commands.Tables.padLeft;
+
+/**
+ * Commands for measuring how quickly the server answers requests, using the headers, credentials and discovered rels of
+ * the current session.
+ *
+ * @author agent
+ */
+@Component
+public class BenchCommands implements CommandMarker {
+
+  private static final Logger   LOG               = LoggerFactory.getLogger(BenchCommands.class);
+  private static final long     PROGRESS_INTERVAL = 500;
+  private static final double[] PERCENTILES       = {50, 90, 99, 99.9};
+  @Autowired
+  private ConfigurationCommands configCmds;
+  @Autowired
+  private ConnectionCommands    connectionCmds;
+  @Autowired
+  private ContextCommands       contextCmds;
+  @Autowired
+  private HttpCommands          httpCmds;
+
+  private static String millis(long micros) {
+    return String.format("%.3f", micros / 1000.0);
+  }
+
+  @CliAvailabilityIndicator({"bench get"})
+  public boolean isBenchAvailable() {
+    return true;
+  }
+
+  @CliCommand(value = "bench get", help = "Measure the latency and throughput of GET requests to a resource.")
+  public String get(
+      @CliOption(key = {"", "rel"},
+                 mandatory = false,
+                 help = "The path to the resource to GET.",
+                 unspecifiedDefaultValue = "") PathOrRel path,
+      @CliOption(key = "requests",
+                 mandatory = false,
+                 help = "The number of requests to measure.",
+                 unspecifiedDefaultValue = "1000") int requests,
+      @CliOption(key = "concurrency",
+                 mandatory = false,
+                 help = "The number of requests to send at the same time.",
+                 unspecifiedDefaultValue = "1") int concurrency,
+      @CliOption(key = "warmup",
+                 mandatory = false,
+                 help = "The number of requests to send, and not measure, before the measured ones.",
+                 unspecifiedDefaultValue = "0") int warmup,
+      @CliOption(key = "params",
+                 mandatory = false,
+                 help = "Query parameters to add to the URL as a simplified JSON fragment '{paramName:\"paramValue\"}'.") Map params,
+      @CliOption(key = "histogram",
+                 mandatory = false,
+                 help = "The path to write the latency histogram to, to compare later runs against with --baseline.") String histogramPath,
+      @CliOption(key = "baseline",
+                 mandatory = false,
+                 help = "The path of a histogram written by an earlier run with --histogram, to compare this run against.") String baselinePath) {
+    if(requests < 1) {
+      throw new IllegalArgumentException("--requests must be at least 1");
+    }
+    concurrency = Math.max(1, concurrency);
+
+    LatencyHistogram baseline = null;
+    if(null != baselinePath) {
+      try {
+        baseline = LatencyHistogram.read(new File(contextCmds.evalAsString(baselinePath)));
+      } catch(IOException e) {
+        LOG.error(e.getMessage(), e);
+        throw new IllegalArgumentException(e);
+      }
+    }
+
+    URI uri = httpCmds.createUri(path, params);
+    HttpHeaders headers = new HttpHeaders();
+    headers.setAll(configCmds.getHeaders().toSingleValueMap());
+
+    if(warmup > 0) {
+      run(uri, headers, warmup, concurrency, null, null, "warmup");
+    }
+    LatencyHistogram latencies = new LatencyHistogram();
+    ConcurrentMap<String, AtomicLong> outcomes = new ConcurrentHashMap<String, AtomicLong>();
+    long elapsed = run(uri, headers, requests, concurrency, latencies, outcomes, "requests");
+
+    StringBuilder sb = new StringBuilder(OsUtils.LINE_SEPARATOR);
+    sb.append("GET ").append(uri).append(OsUtils.LINE_SEPARATOR)
+      .append(requests).append(" requests, ").append(concurrency).append(" at a time");
+    if(warmup > 0) {
+      sb.append(", after ").append(warmup).append(" warmup requests");
+    }
+    sb.append(String.format(", in %.3fs", elapsed / 1000.0)).append(OsUtils.LINE_SEPARATOR)
+      .append(String.format("Throughput: %.1f requests/sec", (elapsed > 0 ? requests * 1000.0 / elapsed : 0)))
+      .append(OsUtils.LINE_SEPARATOR)
+      .append(OsUtils.LINE_SEPARATOR);
+
+    sb.append(pad("Latency (ms)", 14)).append(padLeft("min", 10));
+    for(double p : PERCENTILES) {
+      sb.append(padLeft("p" + (p == Math.rint(p) ? String.valueOf((int)p) : String.valueOf(p)), 10));
+    }
+    sb.append(padLeft("max", 10)).append(padLeft("mean", 10)).append(OsUtils.LINE_SEPARATOR);
+    appendLatencies(sb, (null != baseline ? "this run" : ""), latencies);
+    if(null != baseline) {
+      appendLatencies(sb, "baseline", baseline);
+      sb.append(pad("change", 14)).append(padLeft(change(latencies.getMin(), baseline.getMin()), 10));
+      for(double p : PERCENTILES) {
+        sb.append(padLeft(change(latencies.getValueAtPercentile(p), baseline.getValueAtPercentile(p)), 10));
+      }
+      sb.append(padLeft(change(latencies.getMax(), baseline.getMax()), 10))
+        .append(padLeft(change((long)latencies.getMean(), (long)baseline.getMean()), 10))
+        .append(OsUtils.LINE_SEPARATOR);
+    }
+
+    sb.append(OsUtils.LINE_SEPARATOR).append("Responses:").append(OsUtils.LINE_SEPARATOR);
+    for(Map.Entry<String, AtomicLong> outcome : new TreeMap<String, AtomicLong>(outcomes).entrySet()) {
+      sb.append("  ")
+        .append(pad(outcome.getKey(), 30))
+        .append(padLeft(String.valueOf(outcome.getValue().get()), 10))
+        .append(OsUtils.LINE_SEPARATOR);
+    }
+
+    if(null != histogramPath) {
+      File file = new File(contextCmds.evalAsString(histogramPath));
+      try {
+        latencies.write(file);
+      } catch(IOException e) {
+        LOG.error(e.getMessage(), e);
+        throw new IllegalArgumentException(e);
+      }
+      sb.append(OsUtils.LINE_SEPARATOR).append(">> ").append(file.getPath()).append(OsUtils.LINE_SEPARATOR);
+    }
+
+    return sb.toString();
+  }
+
+  private static void appendLatencies(StringBuilder sb, String label, LatencyHistogram latencies) {
+    sb.append(pad(label, 14)).append(padLeft(millis(latencies.getMin()), 10));
+    for(double p : PERCENTILES) {
+      sb.append(padLeft(millis(latencies.getValueAtPercentile(p)), 10));
+    }
+    sb.append(padLeft(millis(latencies.getMax()), 10))
+      .append(padLeft(millis((long)latencies.getMean()), 10))
+      .append(OsUtils.LINE_SEPARATOR);
+  }
+
+  private static String change(long value, long baseline) {
+    if(baseline == 0) {
+      return "-";
+    }
+    return String.format("%+.1f%%", (value - baseline) * 100.0 / baseline);
+  }
+
+  /**
+   * Send {@code requests} GETs through {@code concurrency} workers, each one sending its next request as soon as the
+   * previous one's response has been read in full. Requests go around the response cache and aren't retried, so that
+   * every one of them is measured against the server.
+   *
+   * @return How long it took in milliseconds.
+   */
+  private long run(final URI uri,
+                   final HttpHeaders headers,
+                   int requests,
+                   int concurrency,
+                   final LatencyHistogram latencies,
+                   final ConcurrentMap<String, AtomicLong> outcomes,
+                   String unit) {
+    final ClientHttpRequestFactory requestFactory = connectionCmds.getUncachedRequestFactory();
+    final AtomicInteger remaining = new AtomicInteger(requests);
+    final AtomicInteger completed = new AtomicInteger(0);
+    ExecutorService workers = Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger(0);
+
+      @Override public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "rest-shell-bench-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+
+    long start = System.currentTimeMillis();
+    for(int i = 0; i < concurrency; i++) {
+      workers.execute(new Runnable() {
+        @Override public void run() {
+          byte[] buffer = new byte[8192];
+          while(remaining.getAndDecrement() > 0 && !Thread.currentThread().isInterrupted()) {
+            long requestStart = System.nanoTime();
+            String outcome = send(requestFactory, uri, headers, buffer);
+            long micros = (System.nanoTime() - requestStart) / 1000;
+            if(null != latencies) {
+              latencies.record(micros);
+              AtomicLong count = outcomes.get(outcome);
+              if(null == count) {
+                AtomicLong newCount = new AtomicLong();
+                count = outcomes.putIfAbsent(outcome, newCount);
+                if(null == count) {
+                  count = newCount;
+                }
+              }
+              count.incrementAndGet();
+            }
+            completed.incrementAndGet();
+          }
+        }
+      });
+    }
+    workers.shutdown();
+
+    try {
+      while(!workers.awaitTermination(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS)) {
+        long elapsed = System.currentTimeMillis() - start;
+        System.out.print(String.format("\r%d/%d %s, %.1f %s/sec",
+                                       completed.get(),
+                                       requests,
+                                       unit,
+                                       (elapsed > 0 ? completed.get() * 1000.0 / elapsed : 0),
+                                       unit));
+        System.out.flush();
+      }
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted after " + completed.get() + " " + unit, e);
+    } finally {
+      workers.shutdownNow();
+    }
+    return System.currentTimeMillis() - start;
+  }
+
+  /**
+   * Send a single GET and read its response.
+   *
+   * @return The response's status, or the kind of error that kept it from being read.
+   */
+  private static String send(ClientHttpRequestFactory requestFactory, URI uri, HttpHeaders headers, byte[] buffer) {
+    try {
+      ClientHttpRequest request = requestFactory.createRequest(uri, HttpMethod.GET);
+      request.getHeaders().putAll(headers);
+      ClientHttpResponse response = request.execute();
+      try {
+        InputStream body = response.getBody();
+        if(null != body) {
+          while(body.read(buffer) >= 0) {
+            // Read the whole body so that it's included in the latency
+          }
+        }
+        int status = response.getRawStatusCode();
+        try {
+          return status + " " + HttpStatus.valueOf(status).getReasonPhrase();
+        } catch(IllegalArgumentException ignored) {
+          return String.valueOf(status);
+        }
+      } finally {
+        response.close();
+      }
+    } catch(IOException e) {
+      if(LOG.isDebugEnabled()) {
+        LOG.debug("Error sending GET to " + uri + ": " + e.getMessage(), e);
+      }
+      return e.getClass().getSimpleName();
+    } catch(RuntimeException e) {
+      if(LOG.isDebugEnabled()) {
+        LOG.debug("Error sending GET to " + uri + ": " + e.getMessage(), e);
+      }
+      return e.getClass().getSimpleName();
+    }
+  }
+
+}
@@ -0,0 +1,102 @@
+package org.springframework.data.rest.shell.commands;
+
+import java.io.File;
+
+import org.springframework.data.rest.shell.http.ResponseCache;
+import org.springframework.shell.core.CommandMarker;
+import org.springframework.shell.core.annotation.CliCommand;
+import org.springframework.shell.core.annotation.CliOption;
+import org.springframework.shell.support.util.OsUtils;
+import org.springframework.stereotype.Component;
+
+/**
+ * Commands for managing the client-side cache of GET responses.
+ *
+ * @author agent
+ */
+@Component
+public class CacheCommands implements CommandMarker {
+
+  private final ResponseCache cache = new ResponseCache();
+
+  /**
+   * Get the cache shared by every command that talks to the server.
+   *
+   * @return
+   */
+  public ResponseCache getCache() {
+    return cache;
+  }
+
+  @CliCommand(value = "cache on", help = "Cache GET responses and revalidate them with ETag and Last-Modified.")
+  public String on(
+      @CliOption(key = "maxEntries",
+                 mandatory = false,
+                 help = "The maximum number of responses to keep in memory.") Integer maxEntries,
+      @CliOption(key = "maxSize",
+                 mandatory = false,
+                 help = "The maximum number of bytes of responses to keep in memory.") Long maxSize,
+      @CliOption(key = "spill",
+                 mandatory = false,
+                 help = "A directory to write responses that no longer fit in memory to.") String spill,
+      @CliOption(key = "maxDiskSize",
+                 mandatory = false,
+                 help = "The maximum number of bytes of responses to write to the spill directory.") Long maxDiskSize) {
+    if(null != maxEntries) {
+      cache.setMaxEntries(maxEntries);
+    }
+    if(null != maxSize) {
+      cache.setMaxSize(maxSize);
+    }
+    if(null != maxDiskSize) {
+      cache.setMaxDiskSize(maxDiskSize);
+    }
+    if(null != spill) {
+      cache.setSpillDir(new File(spill));
+    }
+    cache.setEnabled(true);
+
+    return "maxEntries=" + cache.getMaxEntries()
+        + ", maxSize=" + cache.getMaxSize()
+        + ", spill=" + (null != cache.getSpillDir() ? cache.getSpillDir().getPath() : "none")
+        + ", maxDiskSize=" + cache.getMaxDiskSize();
+  }
+
+  @CliCommand(value = "cache off", help = "Stop caching responses and throw away everything cached.")
+  public void off() {
+    cache.setEnabled(false);
+  }
+
+  @CliCommand(value = "cache clear", help = "Throw away every cached response.")
+  public void clear() {
+    cache.clear();
+  }
+
+  @CliCommand(value = "cache stats", help = "Show how many requests were answered from the cache.")
+  public String stats(
+      @CliOption(key = "reset",
+                 mandatory = false,
+                 help = "Reset the counters after showing them.",
+                 unspecifiedDefaultValue = "false",
+                 specifiedDefaultValue = "true") boolean reset) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("Cache:          ").append(cache.isEnabled() ? "on" : "off").append(OsUtils.LINE_SEPARATOR)
+      .append("Hits:           ").append(cache.getHitCount()).append(OsUtils.LINE_SEPARATOR)
+      .append("Revalidated:    ").append(cache.getRevalidatedCount()).append(OsUtils.LINE_SEPARATOR)
+      .append("Misses:         ").append(cache.getMissCount()).append(OsUtils.LINE_SEPARATOR)
+      .append("Evictions:      ").append(cache.getEvictionCount()).append(OsUtils.LINE_SEPARATOR)
+      .append("Bytes saved:    ").append(cache.getBytesServed()).append(OsUtils.LINE_SEPARATOR)
+      .append("In memory:      ").append(cache.getEntryCount())
+      .append(" (").append(cache.getSize()).append(" bytes)").append(OsUtils.LINE_SEPARATOR);
+    if(null != cache.getSpillDir()) {
+      sb.append("On disk:        ").append(cache.getSpilledCount())
+        .append(" (").append(cache.getDiskSize()).append(" bytes)").append(OsUtils.LINE_SEPARATOR);
+    }
+
+    if(reset) {
+      cache.resetStats();
+    }
+    return sb.toString();
+  }
+
+}
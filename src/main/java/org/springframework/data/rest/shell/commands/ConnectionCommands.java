@@ -0,0 +1,303 @@
+package org.springframework.data.rest.shell.commands;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Map;
+import javax.net.ssl.SSLContext;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.scheme.SchemeLayeredSocketFactory;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.params.HttpParams;
+import org.apache.http.pool.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.context.ApplicationListener;
+import org.springframework.data.rest.shell.context.SslChangedEvent;
+import org.springframework.data.rest.shell.http.CachingClientHttpRequestFactory;
+import org.springframework.data.rest.shell.http.MeteredClientHttpRequestFactory;
+import org.springframework.data.rest.shell.http.PooledClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.shell.core.CommandMarker;
+import org.springframework.shell.core.annotation.CliAvailabilityIndicator;
+import org.springframework.shell.core.annotation.CliCommand;
+import org.springframework.shell.core.annotation.CliOption;
+import org.springframework.shell.support.util.OsUtils;
+import org.springframework.stereotype.Component;
+
+import static org.springframework.data.rest.shell.commands.Tables.pad;
+
+/**
+ * Commands for managing the HTTP connections shared by every command that talks to the server.
+ *
+ * @author agent
+ */
+@Component
+public class ConnectionCommands implements CommandMarker,
+                                           ApplicationEventPublisherAware,
+                                           ApplicationListener<SslChangedEvent>,
+                                           InitializingBean,
+                                           DisposableBean {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ConnectionCommands.class);
+  @Autowired
+  private SslCommands   sslCmds;
+  @Autowired
+  private CacheCommands cacheCmds;
+  @Autowired(required = false)
+  private ClientHttpRequestFactory        requestFactory;
+  private PooledClientHttpRequestFactory  pooledFactory;
+  private MeteredClientHttpRequestFactory meteredFactory;
+  private CachingClientHttpRequestFactory cachingFactory;
+  private ApplicationEventPublisher       ctx;
+
+  @Override public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+    this.ctx = applicationEventPublisher;
+  }
+
+  @Override public void afterPropertiesSet() throws Exception {
+    if(null == requestFactory) {
+      pooledFactory = new PooledClientHttpRequestFactory(new SslAwareSocketFactory());
+      requestFactory = pooledFactory;
+    } else if(LOG.isInfoEnabled()) {
+      LOG.info("Using user-supplied request factory " + requestFactory);
+    }
+    // Metered underneath the cache, so that only requests that go to the server are counted
+    meteredFactory = new MeteredClientHttpRequestFactory(requestFactory, ctx);
+    cachingFactory = new CachingClientHttpRequestFactory(meteredFactory, cacheCmds.getCache());
+  }
+
+  /**
+   * Close the idle connections made with the old SSL settings, which would otherwise keep being reused. Connections in
+   * use at the time go back to the pool once their responses are read, so {@code connections close} may be needed after
+   * changing the settings while requests are running in the background.
+   */
+  @Override public void onApplicationEvent(SslChangedEvent event) {
+    if(null != pooledFactory) {
+      pooledFactory.closeIdleConnections();
+    }
+  }
+
+  @Override public void destroy() throws Exception {
+    if(null != pooledFactory) {
+      pooledFactory.destroy();
+    }
+  }
+
+  /**
+   * Get the request factory every {@link org.springframework.web.client.RestTemplate} in the shell should share. GET
+   * requests made through it go through the response cache when {@code cache on} is in effect.
+   *
+   * @return
+   */
+  public ClientHttpRequestFactory getRequestFactory() {
+    return cachingFactory;
+  }
+
+  /**
+   * Get the request factory underneath the response cache, for requests that must always go to the server.
+   *
+   * @return
+   */
+  public ClientHttpRequestFactory getUncachedRequestFactory() {
+    return meteredFactory;
+  }
+
+  /**
+   * Set the read timeout on the shared request factory.
+   *
+   * @param timeout
+   *     Timeout in milliseconds.
+   */
+  public void setReadTimeout(int timeout) {
+    if(requestFactory instanceof PooledClientHttpRequestFactory) {
+      ((PooledClientHttpRequestFactory)requestFactory).setReadTimeout(timeout);
+    } else if(requestFactory instanceof SimpleClientHttpRequestFactory) {
+      ((SimpleClientHttpRequestFactory)requestFactory).setReadTimeout(timeout);
+    } else if(requestFactory instanceof HttpComponentsClientHttpRequestFactory) {
+      ((HttpComponentsClientHttpRequestFactory)requestFactory).setReadTimeout(timeout);
+    } else {
+      throw new IllegalStateException("Don't know how to set the read timeout on " + requestFactory);
+    }
+  }
+
+  @CliAvailabilityIndicator({"connections stats", "connections config", "connections close"})
+  public boolean available() {
+    return null != pooledFactory;
+  }
+
+  /**
+   * Get the connection pool, which is only there when no request factory was supplied.
+   */
+  private PooledClientHttpRequestFactory pool() {
+    if(null == pooledFactory) {
+      throw new IllegalStateException("There's no connection pool to manage, since the user-supplied request factory "
+                                      + requestFactory + " is used instead.");
+    }
+    return pooledFactory;
+  }
+
+  @CliCommand(value = "connections stats", help = "Show the leased, idle and created counts of the connection pool.")
+  public String stats() {
+    PooledClientHttpRequestFactory pool = pool();
+    Map<String, PoolStats> hostStats = pool.getHostStats();
+
+    int maxHostLen = "host".length();
+    for(String host : hostStats.keySet()) {
+      if(maxHostLen < host.length()) {
+        maxHostLen = host.length();
+      }
+    }
+    maxHostLen += 4;
+
+    StringBuilder sb = new StringBuilder();
+    sb.append(pad("host", maxHostLen))
+      .append(pad("leased", 10))
+      .append(pad("idle", 10))
+      .append(pad("pending", 10))
+      .append("max")
+      .append(OsUtils.LINE_SEPARATOR);
+
+    char[] line = new char[maxHostLen + 33];
+    Arrays.fill(line, '=');
+    sb.append(new String(line))
+      .append(OsUtils.LINE_SEPARATOR);
+
+    for(Map.Entry<String, PoolStats> entry : hostStats.entrySet()) {
+      appendStats(sb, pad(entry.getKey(), maxHostLen), entry.getValue());
+    }
+    appendStats(sb, pad("total", maxHostLen), pool.getTotalStats());
+
+    sb.append(OsUtils.LINE_SEPARATOR)
+      .append("Connections created: ")
+      .append(pool.getCreatedCount())
+      .append(OsUtils.LINE_SEPARATOR);
+
+    return sb.toString();
+  }
+
+  @CliCommand(value = "connections config", help = "Configure the connection pool.")
+  public String config(
+      @CliOption(key = "maxPerHost",
+                 mandatory = false,
+                 help = "The maximum number of connections to keep open to a single host.") Integer maxPerHost,
+      @CliOption(key = "maxTotal",
+                 mandatory = false,
+                 help = "The maximum number of connections to keep open across all hosts.") Integer maxTotal,
+      @CliOption(key = "idleTimeout",
+                 mandatory = false,
+                 help = "The time (in milliseconds) an unused connection is kept open.") Long idleTimeout,
+      @CliOption(key = "connectTimeout",
+                 mandatory = false,
+                 help = "The time (in milliseconds) to wait for a connection to be established.") Integer connectTimeout,
+      @CliOption(key = "compression",
+                 mandatory = false,
+                 help = "Whether to ask the server for gzip or deflate compressed responses.") Boolean compression,
+      @CliOption(key = "compressAbove",
+                 mandatory = false,
+                 help = "The size (in bytes) from which request bodies are sent gzip compressed. -1 never compresses them.") Long compressAbove) {
+    PooledClientHttpRequestFactory pool = pool();
+    if(null != maxPerHost) {
+      pool.setMaxPerHost(maxPerHost);
+    }
+    if(null != maxTotal) {
+      pool.setMaxTotal(maxTotal);
+    }
+    if(null != idleTimeout) {
+      pool.setIdleTimeout(idleTimeout);
+    }
+    if(null != connectTimeout) {
+      pool.setConnectTimeout(connectTimeout);
+    }
+    if(null != compression) {
+      pool.setAcceptCompressed(compression);
+    }
+    if(null != compressAbove) {
+      pool.setCompressAbove(compressAbove);
+    }
+
+    return "maxPerHost=" + pool.getMaxPerHost()
+        + ", maxTotal=" + pool.getMaxTotal()
+        + ", idleTimeout=" + pool.getIdleTimeout()
+        + ", connectTimeout=" + pool.getConnectTimeout()
+        + ", readTimeout=" + pool.getReadTimeout()
+        + ", compression=" + pool.isAcceptCompressed()
+        + ", compressAbove=" + pool.getCompressAbove();
+  }
+
+  @CliCommand(value = "connections close", help = "Close all idle connections in the connection pool.")
+  public void close() {
+    pool().closeIdleConnections();
+  }
+
+  private void appendStats(StringBuilder sb, String label, PoolStats stats) {
+    sb.append(label)
+      .append(pad(String.valueOf(stats.getLeased()), 10))
+      .append(pad(String.valueOf(stats.getAvailable()), 10))
+      .append(pad(String.valueOf(stats.getPending()), 10))
+      .append(stats.getMax())
+      .append(OsUtils.LINE_SEPARATOR);
+  }
+
+  /**
+   * Picks the socket factory for each new HTTPS connection based on the current {@link SslCommands} settings, so that
+   * {@code ssl validate} takes effect without rebuilding the pool.
+   */
+  private class SslAwareSocketFactory implements SchemeLayeredSocketFactory {
+
+    private SSLSocketFactory defaultFactory;
+    private SSLContext       lastContext;
+    private SSLSocketFactory lastFactory;
+
+    private synchronized SSLSocketFactory delegate() {
+      if(sslCmds.getValidate()) {
+        if(null == defaultFactory) {
+          defaultFactory = SSLSocketFactory.getSocketFactory();
+        }
+        return defaultFactory;
+      }
+      SSLContext ctx = sslCmds.getCustomContext();
+      if(ctx != lastContext) {
+        lastFactory = new SSLSocketFactory(ctx, SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+        lastContext = ctx;
+      }
+      return lastFactory;
+    }
+
+    @Override public Socket createLayeredSocket(Socket socket,
+                                                String target,
+                                                int port,
+                                                HttpParams params) throws IOException, UnknownHostException {
+      return delegate().createLayeredSocket(socket, target, port, params);
+    }
+
+    @Override public Socket createSocket(HttpParams params) throws IOException {
+      return delegate().createSocket(params);
+    }
+
+    @Override public Socket connectSocket(Socket sock,
+                                          InetSocketAddress remoteAddress,
+                                          InetSocketAddress localAddress,
+                                          HttpParams params) throws IOException,
+                                                                    UnknownHostException,
+                                                                    ConnectTimeoutException {
+      return delegate().connectSocket(sock, remoteAddress, localAddress, params);
+    }
+
+    @Override public boolean isSecure(Socket sock) throws IllegalArgumentException {
+      return delegate().isSecure(sock);
+    }
+
+  }
+
+}
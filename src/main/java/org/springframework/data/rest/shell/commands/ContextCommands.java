@@ -1,16 +1,21 @@
 package org.springframework.data.rest.shell.commands;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.map.SerializationConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.expression.BeanFactoryResolver;
 import org.springframework.context.expression.EnvironmentAccessor;
@@ -18,9 +23,13 @@ import org.springframework.context.expression.MapAccessor;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.core.env.Environment;
 import org.springframework.core.env.StandardEnvironment;
+import org.springframework.expression.AccessException;
 import org.springframework.expression.BeanResolver;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
 import org.springframework.expression.ParserContext;
 import org.springframework.expression.PropertyAccessor;
+import org.springframework.expression.TypedValue;
 import org.springframework.expression.common.TemplateParserContext;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.ReflectivePropertyAccessor;
@@ -29,9 +38,19 @@ import org.springframework.shell.core.CommandMarker;
 import org.springframework.shell.core.annotation.CliAvailabilityIndicator;
 import org.springframework.shell.core.annotation.CliCommand;
 import org.springframework.shell.core.annotation.CliOption;
+import org.springframework.shell.support.util.OsUtils;
 import org.springframework.stereotype.Component;
 
 /**
+ * Commands that manage the variables SpEL expressions are evaluated against. Parsed expressions are kept in a bounded,
+ * least recently used cache keyed by their template text, since the same few templates are evaluated over and over for
+ * paths, headers and data. The last responses are kept in a {@link ResponseHistory}, and {@literal responseBody} is
+ * read from the latest of them only when an expression asks for it.
+ * <p/>
+ * The context of user beans from {@literal META-INF/rest-shell/**}{@literal /*.xml} takes a scan of the whole classpath
+ * to find, so it isn't created until a variable or an {@literal @bean} reference needs it, or the shell has nothing
+ * better to do.
+ *
  * @author Jon Brisbin
  */
 @Component
@@ -43,16 +62,42 @@ public class ContextCommands implements CommandMarker, InitializingBean {
   private static final PropertyAccessor BEAN_ACCESOR = new ReflectivePropertyAccessor();
   private static final PropertyAccessor ENV_ACCESSOR = new EnvironmentAccessor();
   private static final Environment      ENV          = new StandardEnvironment();
+  /**
+   * The most parsed expressions to keep.
+   */
+  private static final int    MAX_EXPRESSIONS = 256;
+  private static final String RESPONSE        = "response";
+  private static final String RESPONSE_BODY   = "responseBody";
+  private static final String USER_BEANS      = "classpath*:META-INF/rest-shell/**/*.xml";
 
   final Map<String, Object> variables = new HashMap<String, Object>();
+  final ResponseHistory     responses = new ResponseHistory();
   StandardEvaluationContext evalCtx;
 
   private final SpelExpressionParser parser              = new SpelExpressionParser();
   private final ParserContext        parserContext       = new TemplateParserContext();
   private final ObjectMapper         mapper              = new ObjectMapper();
-  private       BeanResolver         beanFactoryResolver = null;
+  private final BeanResolver         beanFactoryResolver = new LazyBeanResolver();
 
-  private ApplicationContext userAppCtx;
+  private final Map<String, Expression> expressions = new LinkedHashMap<String, Expression>(16, 0.75f, true) {
+    @Override protected boolean removeEldestEntry(Map.Entry<String, Expression> eldest) {
+      if(size() > MAX_EXPRESSIONS) {
+        evictions.incrementAndGet();
+        return true;
+      }
+      return false;
+    }
+  };
+  private final AtomicLong hits       = new AtomicLong();
+  private final AtomicLong misses     = new AtomicLong();
+  private final AtomicLong evictions  = new AtomicLong();
+  private final AtomicLong parseNanos = new AtomicLong();
+
+  @Autowired
+  private StartupCommands startupCmds;
+
+  private volatile ApplicationContext userAppCtx;
+  private          boolean            warming;
 
   {
     mapper.configure(SerializationConfig.Feature.INDENT_OUTPUT, true);
@@ -60,12 +105,57 @@ public class ContextCommands implements CommandMarker, InitializingBean {
   }
 
   @Override public void afterPropertiesSet() throws Exception {
-    userAppCtx = new ClassPathXmlApplicationContext("classpath*:META-INF/rest-shell/**/*.xml");
-    beanFactoryResolver = new BeanFactoryResolver(userAppCtx);
     clear();
   }
 
-  @CliAvailabilityIndicator({"var clear", "var set", "var get", "var list"})
+  /**
+   * Get the context of user beans, creating it if nobody has asked for it yet.
+   *
+   * @return
+   */
+  public ApplicationContext getUserContext() {
+    ApplicationContext ctx = userAppCtx;
+    if(null != ctx) {
+      return ctx;
+    }
+    synchronized(this) {
+      if(null == userAppCtx) {
+        long start = System.currentTimeMillis();
+        userAppCtx = new ClassPathXmlApplicationContext(USER_BEANS);
+        startupCmds.record("Loading user beans (" + Thread.currentThread().getName() + ")",
+                           System.currentTimeMillis() - start);
+      }
+      return userAppCtx;
+    }
+  }
+
+  /**
+   * Start creating the context of user beans in the background, so that it's most likely ready by the time it's
+   * needed.
+   */
+  public void warmUp() {
+    synchronized(this) {
+      if(warming || null != userAppCtx) {
+        return;
+      }
+      warming = true;
+    }
+    Thread t = new Thread(new Runnable() {
+      @Override public void run() {
+        try {
+          getUserContext();
+        } catch(RuntimeException e) {
+          // Whoever needs the beans will find out what's wrong when they try again
+          LOG.error(e.getMessage(), e);
+        }
+      }
+    }, "rest-shell-context-1");
+    t.setDaemon(true);
+    t.setPriority(Thread.MIN_PRIORITY);
+    t.start();
+  }
+
+  @CliAvailabilityIndicator({"var clear", "var set", "var get", "var list", "var stats", "var bench", "response history"})
   public boolean available() {
     return true;
   }
@@ -76,6 +166,11 @@ public class ContextCommands implements CommandMarker, InitializingBean {
       evalCtx.removePropertyAccessor(((Links)variables.get("links")).getPropertyAccessor());
     }
     variables.clear();
+    responses.clear();
+    synchronized(expressions) {
+      // Parsed expressions hold on to the accessors they last used, which may belong to the variables just cleared
+      expressions.clear();
+    }
     setup();
     if(LOG.isDebugEnabled()) {
       LOG.debug("Cleared context variables...");
@@ -113,8 +208,8 @@ public class ContextCommands implements CommandMarker, InitializingBean {
       } catch(IOException e) {
         throw new IllegalArgumentException(e);
       }
-    } else if(userAppCtx.containsBean(value)) {
-      variables.put(name, userAppCtx.getBean(value));
+    } else if(getUserContext().containsBean(value)) {
+      variables.put(name, getUserContext().getBean(value));
     } else {
       variables.put(name, value);
     }
@@ -138,8 +233,10 @@ public class ContextCommands implements CommandMarker, InitializingBean {
     if(null != name) {
       if(variables.containsKey(name)) {
         return variables.get(name);
-      } else if(userAppCtx.containsBean(name)) {
-        return userAppCtx.getBean(name);
+      } else if(RESPONSE_BODY.equals(name)) {
+        return responses.getBody();
+      } else if(getUserContext().containsBean(name)) {
+        return getUserContext().getBean(name);
       }
     }
 
@@ -152,21 +249,153 @@ public class ContextCommands implements CommandMarker, InitializingBean {
 
   @CliCommand(value = "var list", help = "List variables currently set in this shell's context")
   public String list() {
+    // Generated straight into the text, with the latest body copied from where it's kept, so that a large response is
+    // never turned into objects just to be listed
+    StringWriter out = new StringWriter();
     try {
-      variables.remove("env");
-      return mapper.writeValueAsString(variables);
+      JsonGenerator gen = mapper.getJsonFactory().createJsonGenerator(out);
+      gen.useDefaultPrettyPrinter();
+      gen.writeStartObject();
+      for(Map.Entry<String, Object> entry : variables.entrySet()) {
+        if("env".equals(entry.getKey())) {
+          continue;
+        }
+        gen.writeFieldName(entry.getKey());
+        if(entry.getValue() == responses) {
+          gen.writeStartArray();
+          List<ResponseHistory.Entry> all = responses.getEntries();
+          for(int i = all.size() - 1; i >= 0; i--) {
+            gen.writeString(all.get(i).toString());
+          }
+          gen.writeEndArray();
+        } else {
+          mapper.writeValue(gen, entry.getValue());
+        }
+      }
+      if(!variables.containsKey(RESPONSE_BODY)) {
+        gen.writeFieldName(RESPONSE_BODY);
+        responses.writeLatestBody(gen);
+      }
+      gen.writeEndObject();
+      gen.close();
     } catch(IOException e) {
       throw new IllegalStateException(e);
-    } finally {
-      variables.put("env", ENV);
     }
+    return out.toString();
+  }
+
+  @CliCommand(value = "response history", help = "Show the responses kept for 'response[-1]', 'response[-2]', ...")
+  public String history(
+      @CliOption(
+          key = "size",
+          mandatory = false,
+          help = "The number of responses to keep.") Integer size,
+      @CliOption(
+          key = "memory",
+          mandatory = false,
+          help = "The most memory (in KB) response bodies may take up before the oldest are moved to disk.") Long memory,
+      @CliOption(
+          key = "clear",
+          mandatory = false,
+          help = "Forget every response kept.",
+          unspecifiedDefaultValue = "false",
+          specifiedDefaultValue = "true") boolean clear) {
+    if(null != size) {
+      responses.setCapacity(size);
+    }
+    if(null != memory) {
+      responses.setMaxMemory(memory * 1024);
+    }
+    if(clear) {
+      responses.clear();
+    }
+
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("Keeping %d responses, %dKB of bodies in memory (%dKB used)",
+                            responses.getCapacity(),
+                            responses.getMaxMemory() / 1024,
+                            responses.getMemory() / 1024))
+      .append(OsUtils.LINE_SEPARATOR);
+    List<ResponseHistory.Entry> all = responses.getEntries();
+    for(int i = all.size() - 1; i >= 0; i--) {
+      sb.append(String.format("%4d  ", i - all.size())).append(all.get(i)).append(OsUtils.LINE_SEPARATOR);
+    }
+    return sb.toString();
+  }
+
+  @CliCommand(value = "var stats", help = "Show how often expressions were found already parsed")
+  public String stats(
+      @CliOption(
+          key = "reset",
+          mandatory = false,
+          help = "Reset the counts after showing them.",
+          unspecifiedDefaultValue = "false",
+          specifiedDefaultValue = "true") boolean reset) {
+    int size;
+    synchronized(expressions) {
+      size = expressions.size();
+    }
+    long h = hits.get();
+    long m = misses.get();
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("Parsed expressions: %d/%d", size, MAX_EXPRESSIONS)).append(OsUtils.LINE_SEPARATOR)
+      .append(String.format("Hits:               %d (%.1f%%)", h, (h + m > 0 ? 100.0 * h / (h + m) : 0)))
+      .append(OsUtils.LINE_SEPARATOR)
+      .append(String.format("Misses:             %d", m)).append(OsUtils.LINE_SEPARATOR)
+      .append(String.format("Evictions:          %d", evictions.get())).append(OsUtils.LINE_SEPARATOR)
+      .append(String.format("Time parsing:       %.2fms", parseNanos.get() / 1000000.0)).append(OsUtils.LINE_SEPARATOR);
+    if(reset) {
+      hits.set(0);
+      misses.set(0);
+      evictions.set(0);
+      parseNanos.set(0);
+    }
+    return sb.toString();
+  }
+
+  @CliCommand(value = "var bench", help = "Measure how long an expression takes to evaluate, with and without parsing it every time")
+  public String bench(
+      @CliOption(
+          key = {"", "value"},
+          mandatory = true,
+          help = "The expression to evaluate") String value,
+      @CliOption(
+          key = "iterations",
+          mandatory = false,
+          help = "The number of times to evaluate the expression each way.",
+          unspecifiedDefaultValue = "100000") int iterations) {
+    if(!value.contains("#{")) {
+      throw new IllegalArgumentException("'" + value + "' is not an expression.");
+    }
+    iterations = Math.max(1, iterations);
+
+    // Let the JIT settle on both paths before measuring either
+    for(int i = 0; i < Math.min(iterations, 10000); i++) {
+      parser.parseExpression(value, parserContext).getValue(evalCtx);
+      eval(value);
+    }
+
+    long start = System.nanoTime();
+    for(int i = 0; i < iterations; i++) {
+      parser.parseExpression(value, parserContext).getValue(evalCtx);
+    }
+    double uncached = (System.nanoTime() - start) / 1000.0 / iterations;
+
+    start = System.nanoTime();
+    for(int i = 0; i < iterations; i++) {
+      eval(value);
+    }
+    double cached = (System.nanoTime() - start) / 1000.0 / iterations;
+
+    return String.format("Parsed every time: %.3fus/op%s", uncached, OsUtils.LINE_SEPARATOR)
+        + String.format("Parsed once:       %.3fus/op (%.1fx)", cached, (cached > 0 ? uncached / cached : 0));
   }
 
   public Object eval(String expr) {
     if(null == expr || !expr.contains("#{")) {
       return expr;
     }
-    return parser.parseExpression(expr, parserContext).getValue(evalCtx);
+    return parse(expr).getValue(evalCtx);
   }
 
   public String evalAsString(String expr) {
@@ -177,15 +406,90 @@ public class ContextCommands implements CommandMarker, InitializingBean {
     return null;
   }
 
+  /**
+   * Get the parsed form of an expression, parsing it only if it isn't already cached. Expressions that fail to parse
+   * aren't cached, so they fail the same way every time.
+   */
+  private Expression parse(String expr) {
+    Expression expression;
+    synchronized(expressions) {
+      expression = expressions.get(expr);
+    }
+    if(null != expression) {
+      hits.incrementAndGet();
+      return expression;
+    }
+
+    misses.incrementAndGet();
+    long start = System.nanoTime();
+    expression = parser.parseExpression(expr, parserContext);
+    parseNanos.addAndGet(System.nanoTime() - start);
+    synchronized(expressions) {
+      expressions.put(expr, expression);
+    }
+    return expression;
+  }
+
   private void setup() {
     evalCtx = new StandardEvaluationContext(variables);
     List<PropertyAccessor> accessors = new ArrayList<PropertyAccessor>();
+    accessors.add(JsonIndex.ACCESSOR);
     accessors.add(MAP_ACCESOR);
     accessors.add(BEAN_ACCESOR);
     accessors.add(ENV_ACCESSOR);
+    accessors.add(new ResponseBodyAccessor());
     evalCtx.setPropertyAccessors(accessors);
     evalCtx.setBeanResolver(beanFactoryResolver);
     variables.put("env", ENV);
+    variables.put(RESPONSE, responses);
+  }
+
+  /**
+   * Resolves {@literal @bean} references against the context of user beans, creating it the first time one is made.
+   */
+  private class LazyBeanResolver implements BeanResolver {
+
+    private BeanResolver resolver;
+
+    @Override public Object resolve(EvaluationContext context, String beanName) throws AccessException {
+      synchronized(this) {
+        if(null == resolver) {
+          resolver = new BeanFactoryResolver(getUserContext());
+        }
+      }
+      return resolver.resolve(context, beanName);
+    }
+
+  }
+
+  /**
+   * Reads {@literal responseBody} from the latest response, unless a variable of that name has been set.
+   */
+  private class ResponseBodyAccessor implements PropertyAccessor {
+
+    @Override public Class[] getSpecificTargetClasses() {
+      return null;
+    }
+
+    @Override public boolean canRead(EvaluationContext context, Object target, String name) throws AccessException {
+      return (target == variables && RESPONSE_BODY.equals(name) && !variables.containsKey(name));
+    }
+
+    @Override public TypedValue read(EvaluationContext context, Object target, String name) throws AccessException {
+      if(variables.containsKey(name)) {
+        return new TypedValue(variables.get(name));
+      }
+      return new TypedValue(responses.getBody());
+    }
+
+    @Override public boolean canWrite(EvaluationContext context, Object target, String name) throws AccessException {
+      return false;
+    }
+
+    @Override public void write(EvaluationContext context, Object target, String name, Object newValue)
+        throws AccessException {
+    }
+
   }
 
 }
@@ -0,0 +1,436 @@
+package org.springframework.data.rest.shell.commands;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.hateoas.Link;
+
+/**
+ * The rels discovered so far, kept apart for every server (scheme, host and port) they were discovered on and saved
+ * to a file per server, so that they can be used again as soon as the shell starts. A server's file is only read the
+ * first time its rels are asked for. Every URI that was listed is remembered with the links it returned, its validators
+ * and when it was fetched, so that it can be revalidated once it's older than the time to live. Only the last {@link
+ * #MAX_SOURCES} URIs listed on a server are kept, so that listing page after page doesn't keep adding to them.
+ * <p/>
+ * Navigation rels such as {@literal next} and {@literal parent} (see {@link DiscoveryCommands#NOT_CRAWLED}) only make
+ * sense next to the resource that returned them, so only those of the URI listed last are kept, and they're never
+ * saved.
+ *
+ * @author agent
+ */
+class DiscoveryCache {
+
+  /**
+   * How long discovered rels are used before they're revalidated, one day.
+   */
+  static final long DEFAULT_TTL = 24L * 60 * 60 * 1000;
+  /**
+   * The most listed URIs kept for a server.
+   */
+  static final int  MAX_SOURCES = 100;
+
+  private static final Logger LOG           = LoggerFactory.getLogger(DiscoveryCache.class);
+  private static final String ORIGIN        = "origin";
+  private static final String SOURCE        = "source.";
+  private static final String ETAG          = ".etag";
+  private static final String LAST_MODIFIED = ".lastModified";
+  private static final String FETCHED       = ".fetched";
+  private static final String REL           = ".rel.";
+
+  private final File                          dir;
+  private final ConcurrentMap<String, Server> servers = new ConcurrentHashMap<String, Server>();
+  private volatile long ttl = DEFAULT_TTL;
+
+  /**
+   * @param dir
+   *     The directory to save the rels to, or {@literal null} to keep them in memory only.
+   */
+  DiscoveryCache(File dir) {
+    this.dir = dir;
+  }
+
+  static String originOf(URI uri) {
+    return uri.getScheme() + "://" + uri.getRawAuthority();
+  }
+
+  long getTtl() {
+    return ttl;
+  }
+
+  void setTtl(long ttl) {
+    this.ttl = ttl;
+  }
+
+  /**
+   * Get the rels discovered on the same server as a URI.
+   *
+   * @param uri
+   *
+   * @return The rels and their hrefs, which must not be modified.
+   */
+  Map<String, String> getResources(URI uri) {
+    return server(originOf(uri)).resources;
+  }
+
+  /**
+   * Get the listed URIs of a server that are older than the time to live and aren't already being revalidated, and
+   * mark them as being revalidated.
+   *
+   * @param uri
+   *
+   * @return
+   */
+  List<Source> claimStale(URI uri) {
+    Server server = server(originOf(uri));
+    List<Source> stale = new ArrayList<Source>();
+    long now = System.currentTimeMillis();
+    synchronized(server) {
+      for(Source source : server.sources.values()) {
+        if(!source.revalidating && now - source.fetched > ttl) {
+          source.revalidating = true;
+          stale.add(source);
+        }
+      }
+    }
+    return stale;
+  }
+
+  /**
+   * Remember the links a URI returned, replacing the ones it returned before.
+   *
+   * @param uri
+   *     The URI that was listed.
+   * @param links
+   * @param etag
+   *     The {@literal ETag} header of the response, if any.
+   * @param lastModified
+   *     The {@literal Last-Modified} header of the response, if any.
+   */
+  void put(URI uri, List<Link> links, String etag, String lastModified) {
+    Server server = server(originOf(uri));
+    Map<String, String> navigation = new LinkedHashMap<String, String>();
+    for(Link link : links) {
+      if(DiscoveryCommands.isNavigation(link.getRel())) {
+        navigation.put(link.getRel(), link.getHref());
+      }
+    }
+    synchronized(server) {
+      server.navigation = navigation;
+      store(server, new Source(uri), links, etag, lastModified);
+    }
+    save(server);
+  }
+
+  /**
+   * Record that a URI was revalidated and returned new links. Unlike {@link #put(URI, List, String, String)}, this
+   * leaves the navigation rels of the URI listed last alone.
+   *
+   * @param source
+   * @param links
+   * @param etag
+   * @param lastModified
+   */
+  void changed(Source source, List<Link> links, String etag, String lastModified) {
+    Server server = server(originOf(source.uri));
+    synchronized(server) {
+      store(server, new Source(source.uri), links, etag, lastModified);
+    }
+    save(server);
+  }
+
+  /**
+   * Replace a server's entry for a listed URI, making it the newest one, or drop it if it only returned navigation
+   * rels, such as another page of a collection does. Must hold the server's lock.
+   */
+  private static void store(Server server, Source source, List<Link> links, String etag, String lastModified) {
+    source.etag = etag;
+    source.lastModified = lastModified;
+    source.fetched = System.currentTimeMillis();
+    for(Link link : links) {
+      if(!DiscoveryCommands.isNavigation(link.getRel())) {
+        source.links.put(link.getRel(), link.getHref());
+      }
+    }
+    server.sources.remove(source.uri.toString());
+    if(!source.links.isEmpty()) {
+      server.sources.put(source.uri.toString(), source);
+    }
+    server.trim();
+    server.update();
+  }
+
+  /**
+   * Record that a URI was revalidated and hasn't changed.
+   *
+   * @param source
+   */
+  void unchanged(Source source) {
+    Server server = server(originOf(source.uri));
+    synchronized(server) {
+      source.fetched = System.currentTimeMillis();
+      source.revalidating = false;
+    }
+    save(server);
+  }
+
+  /**
+   * Record that a URI couldn't be revalidated, so that it's tried again later.
+   *
+   * @param source
+   */
+  void failed(Source source) {
+    Server server = server(originOf(source.uri));
+    synchronized(server) {
+      source.revalidating = false;
+    }
+  }
+
+  /**
+   * Get every server whose rels have been used or discovered in this session.
+   *
+   * @return The servers by origin, with the number of rels discovered on each and when they were last fetched.
+   */
+  Map<String, long[]> getStats() {
+    Map<String, long[]> stats = new TreeMap<String, long[]>();
+    for(Map.Entry<String, Server> entry : servers.entrySet()) {
+      Server server = entry.getValue();
+      synchronized(server) {
+        long fetched = 0;
+        for(Source source : server.sources.values()) {
+          fetched = Math.max(fetched, source.fetched);
+        }
+        stats.put(entry.getKey(), new long[]{server.resources.size(), server.sources.size(), fetched});
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * Forget the rels of every server, including the saved ones.
+   */
+  void clear() {
+    servers.clear();
+    File[] files = (null != dir ? dir.listFiles() : null);
+    if(null != files) {
+      for(File file : files) {
+        if(file.getName().endsWith(".properties")) {
+          file.delete();
+        }
+      }
+    }
+  }
+
+  private Server server(String origin) {
+    Server server = servers.get(origin);
+    if(null == server) {
+      Server newServer = load(origin);
+      server = servers.putIfAbsent(origin, newServer);
+      if(null == server) {
+        server = newServer;
+      }
+    }
+    return server;
+  }
+
+  private File fileOf(String origin) {
+    return new File(dir, origin.replaceAll("[^A-Za-z0-9.-]+", "_") + ".properties");
+  }
+
+  private Server load(String origin) {
+    Server server = new Server(origin);
+    File file = (null != dir ? fileOf(origin) : null);
+    if(null == file || !file.exists()) {
+      return server;
+    }
+    Properties props = new Properties();
+    try {
+      InputStream in = new FileInputStream(file);
+      try {
+        props.load(in);
+      } finally {
+        in.close();
+      }
+    } catch(IOException e) {
+      LOG.error("Error reading " + file + ": " + e.getMessage(), e);
+      return server;
+    }
+    if(!origin.equals(props.getProperty(ORIGIN))) {
+      return server;
+    }
+
+    Map<Integer, Source> sources = new TreeMap<Integer, Source>();
+    for(String name : props.stringPropertyNames()) {
+      if(!name.startsWith(SOURCE)) {
+        continue;
+      }
+      int end = name.indexOf('.', SOURCE.length());
+      try {
+        int index = Integer.parseInt(name.substring(SOURCE.length(), (end > 0 ? end : name.length())));
+        if(end < 0) {
+          Source source = new Source(URI.create(props.getProperty(name)));
+          String prefix = SOURCE + index;
+          source.etag = props.getProperty(prefix + ETAG);
+          source.lastModified = props.getProperty(prefix + LAST_MODIFIED);
+          source.fetched = Long.parseLong(props.getProperty(prefix + FETCHED, "0"));
+          Map<String, String> links = new TreeMap<String, String>();
+          for(String relName : props.stringPropertyNames()) {
+            if(relName.startsWith(prefix + REL)) {
+              String rel = relName.substring((prefix + REL).length());
+              if(!DiscoveryCommands.isNavigation(rel)) {
+                links.put(rel, props.getProperty(relName));
+              }
+            }
+          }
+          source.links.putAll(links);
+          sources.put(index, source);
+        }
+      } catch(IllegalArgumentException e) {
+        LOG.error("Ignoring invalid entry " + name + " in " + file, e);
+      }
+    }
+    for(Source source : sources.values()) {
+      server.sources.put(source.uri.toString(), source);
+    }
+    server.trim();
+    server.update();
+    return server;
+  }
+
+  private void save(Server server) {
+    if(null == dir) {
+      return;
+    }
+    Properties props = new Properties();
+    synchronized(server) {
+      int index = 0;
+      for(Source source : server.sources.values()) {
+        String prefix = SOURCE + index++;
+        props.setProperty(prefix, source.uri.toString());
+        if(null != source.etag) {
+          props.setProperty(prefix + ETAG, source.etag);
+        }
+        if(null != source.lastModified) {
+          props.setProperty(prefix + LAST_MODIFIED, source.lastModified);
+        }
+        props.setProperty(prefix + FETCHED, String.valueOf(source.fetched));
+        for(Map.Entry<String, String> link : source.links.entrySet()) {
+          props.setProperty(prefix + REL + link.getKey(), link.getValue());
+        }
+      }
+    }
+    File file = fileOf(server.origin);
+    if(props.isEmpty()) {
+      // Nothing left worth keeping
+      file.delete();
+      return;
+    }
+    props.setProperty(ORIGIN, server.origin);
+
+    try {
+      if(!dir.isDirectory() && !dir.mkdirs()) {
+        throw new IOException("Cannot create " + dir);
+      }
+      File tmp = File.createTempFile(".rest-shell-", ".tmp", dir);
+      OutputStream out = new FileOutputStream(tmp);
+      try {
+        props.store(out, "rels discovered by rest-shell on " + server.origin);
+      } finally {
+        out.close();
+      }
+      if(file.exists() && !file.delete()) {
+        tmp.delete();
+        throw new IOException("Cannot replace " + file);
+      }
+      if(!tmp.renameTo(file)) {
+        tmp.delete();
+        throw new IOException("Cannot write " + file);
+      }
+    } catch(IOException e) {
+      LOG.error("Error saving discovered rels to " + file + ": " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * The rels discovered on a server, from every URI listed on it. Later listings win when they return the same rel.
+   */
+  private static class Server {
+
+    private final String                 origin;
+    private final Map<String, Source>    sources    = new LinkedHashMap<String, Source>();
+    private       Map<String, String>    navigation = Collections.emptyMap();
+    private volatile Map<String, String> resources  = Collections.emptyMap();
+
+    private Server(String origin) {
+      this.origin = origin;
+    }
+
+    /**
+     * Forget the URIs listed longest ago, beyond {@link #MAX_SOURCES}.
+     */
+    private void trim() {
+      Iterator<String> uris = sources.keySet().iterator();
+      for(int extra = sources.size() - MAX_SOURCES; extra > 0; extra--) {
+        uris.next();
+        uris.remove();
+      }
+    }
+
+    private void update() {
+      Map<String, String> merged = new LinkedHashMap<String, String>();
+      for(Source source : sources.values()) {
+        merged.putAll(source.links);
+      }
+      merged.putAll(navigation);
+      resources = Collections.unmodifiableMap(merged);
+    }
+
+  }
+
+  /**
+   * A URI that was listed, and the links it returned.
+   */
+  static class Source {
+
+    private final URI                 uri;
+    private final Map<String, String> links = new LinkedHashMap<String, String>();
+    private       String              etag;
+    private       String              lastModified;
+    private       long                fetched;
+    private       boolean             revalidating;
+
+    private Source(URI uri) {
+      this.uri = uri;
+    }
+
+    URI getUri() {
+      return uri;
+    }
+
+    String getEtag() {
+      return etag;
+    }
+
+    String getLastModified() {
+      return lastModified;
+    }
+
+  }
+
+}
@@ -1,32 +1,49 @@
 package org.springframework.data.rest.shell.commands;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLSession;
-
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.hateoas.Link;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.client.ClientHttpRequest;
 import org.springframework.http.client.ClientHttpResponse;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.shell.core.CommandMarker;
 import org.springframework.shell.core.annotation.CliAvailabilityIndicator;
 import org.springframework.shell.core.annotation.CliCommand;
@@ -35,54 +52,135 @@ import org.springframework.shell.support.util.OsUtils;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.ResponseExtractor;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import static org.springframework.data.rest.shell.commands.Tables.pad;
+
 /**
- * Commands that discover resources and create local helpers for defined links.
+ * Commands that discover resources and create local helpers for defined links. Discovered rels are kept apart for
+ * every server and saved under {@literal ~/.rest-shell/discovery}, so they resolve straight away in the next session.
+ * Once they're older than the time to live, they're still used but revalidated in the background.
  *
  * @author Jon Brisbin
  */
 @Component
-public class DiscoveryCommands implements CommandMarker, ApplicationEventPublisherAware {
+public class DiscoveryCommands implements CommandMarker, ApplicationEventPublisherAware, InitializingBean, DisposableBean {
 
   private static final MediaType COMPACT_JSON = MediaType.valueOf("application/x-spring-data-compact+json");
   private static final Logger    LOG          = LoggerFactory.getLogger(DiscoveryCommands.class);
+  /**
+   * Rels that lead back to the same resource, to another page of it or up from it, rather than somewhere new.
+   */
+  static final Set<String> NOT_CRAWLED = new HashSet<String>(Arrays.asList(
+      "self", "next", "prev", "previous", "first", "last", "parent"
+  ));
+  /**
+   * The optional query expressions of a URI template, such as {@literal {?page,size}} and {@literal {&sort}}.
+   */
+  private static final Pattern TEMPLATE_QUERY = Pattern.compile("\\{[?&][^}]*\\}");
   @Autowired
   private ConfigurationCommands configCmds;
   @Autowired
   private ContextCommands       contextCmds;
   @Autowired
-  private SslCommands           sslCmds;
-  private SslAwareClientHttpRequestFactory requestFactory = new SslAwareClientHttpRequestFactory();
+  private ConnectionCommands    connectionCmds;
   @Autowired(required = false)
-  private RestTemplate                     client         = new RestTemplate(requestFactory);
+  private RestTemplate          client;
   @Autowired(required = false)
-  private ObjectMapper                     mapper         = new ObjectMapper();
-  private Map<String, String>              resources      = new HashMap<String, String>();
+  private ObjectMapper          mapper      = new ObjectMapper();
+  private final DiscoveryCache  cache       = new DiscoveryCache(cacheDir());
+  private final ExecutorService revalidator = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    @Override public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "rest-shell-discovery");
+      t.setDaemon(true);
+      return t;
+    }
+  });
+  private final ConcurrentMap<String, ConcurrentNavigableMap<String, String>> graphs
+      = new ConcurrentHashMap<String, ConcurrentNavigableMap<String, String>>();
   private ApplicationEventPublisher ctx;
 
-  private static String pad(String s, int len) {
-    char[] pad = new char[len - s.length()];
-    Arrays.fill(pad, ' ');
-    return s + new String(pad);
+  private static File cacheDir() {
+    String homeDir = System.getenv("HOME");
+    if(null == homeDir) {
+      homeDir = System.getProperty("user.home");
+    }
+    return new File(homeDir + File.separator + ".rest-shell" + File.separator + "discovery");
   }
 
   @Override public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
     this.ctx = applicationEventPublisher;
   }
 
+  @Override public void afterPropertiesSet() throws Exception {
+    if(null == client) {
+      client = new RestTemplate(connectionCmds.getRequestFactory());
+    }
+  }
+
+  @Override public void destroy() throws Exception {
+    revalidator.shutdownNow();
+  }
+
   /**
-   * Get the discovered resources.
+   * Get the resources discovered on the server of the current baseUri. Resources discovered in an earlier session are
+   * loaded the first time they're asked for.
    *
    * @return
    */
   public Map<String, String> getResources() {
-    return resources;
+    URI baseUri = configCmds.getBaseUri();
+    for(DiscoveryCache.Source source : cache.claimStale(baseUri)) {
+      revalidate(source);
+    }
+    return cache.getResources(baseUri);
   }
 
-  @CliAvailabilityIndicator({"discover", "list", "follow"})
+  /**
+   * Send a conditional GET for a URI listed earlier on the revalidation thread, and replace its links if the server
+   * returns new ones.
+   */
+  private void revalidate(final DiscoveryCache.Source source) {
+    revalidator.execute(new Runnable() {
+      @Override public void run() {
+        try {
+          ClientHttpRequest request = connectionCmds.getUncachedRequestFactory()
+                                                    .createRequest(source.getUri(), HttpMethod.GET);
+          ExtractLinksHelper elh = new ExtractLinksHelper();
+          elh.doWithRequest(request);
+          if(null != source.getEtag()) {
+            request.getHeaders().set("If-None-Match", source.getEtag());
+          }
+          if(null != source.getLastModified()) {
+            request.getHeaders().set("If-Modified-Since", source.getLastModified());
+          }
+          ClientHttpResponse response = request.execute();
+          try {
+            if(response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+              cache.unchanged(source);
+            } else if(response.getStatusCode().series() == HttpStatus.Series.SUCCESSFUL) {
+              List<Link> links = elh.extractData(response);
+              cache.changed(source, links, elh.etag, elh.lastModified);
+            } else {
+              cache.failed(source);
+            }
+          } finally {
+            response.close();
+          }
+        } catch(Exception e) {
+          if(LOG.isDebugEnabled()) {
+            LOG.debug("Error revalidating " + source.getUri() + ": " + e.getMessage(), e);
+          }
+          cache.failed(source);
+        }
+      }
+    });
+  }
+
+  @CliAvailabilityIndicator({"discover", "list", "follow", "discovery cache", "graph find"})
   public boolean available() {
     return true;
   }
@@ -102,7 +200,19 @@ public class DiscoveryCommands implements CommandMarker, ApplicationEventPublish
       @CliOption(key = {"", "rel"},
                  mandatory = false,
                  help = "The URI at which to discover resources.",
-                 unspecifiedDefaultValue = "/") PathOrRel path) throws IOException, URISyntaxException {
+                 unspecifiedDefaultValue = "/") PathOrRel path,
+      @CliOption(key = "depth",
+                 mandatory = false,
+                 help = "How many levels of links to follow. Anything above 1 crawls the API and builds a graph of rel paths for 'graph find'.",
+                 unspecifiedDefaultValue = "1") int depth,
+      @CliOption(key = "parallel",
+                 mandatory = false,
+                 help = "The number of resources to fetch at the same time while crawling.",
+                 unspecifiedDefaultValue = "4") int parallel,
+      @CliOption(key = "max-requests",
+                 mandatory = false,
+                 help = "The most requests to send while crawling.",
+                 unspecifiedDefaultValue = "1000") int maxRequests) throws IOException, URISyntaxException {
 
     URI requestUri;
     if("/".equals(path)) {
@@ -115,11 +225,207 @@ public class DiscoveryCommands implements CommandMarker, ApplicationEventPublish
 
     configCmds.setBaseUri(requestUri.toString());
 
-    return list(new PathOrRel(requestUri.toString()), null);
+    List<Link> links = listLinks(requestUri);
+    String listing = (links.isEmpty() ? "No resources found..." : table(links));
+    if(depth <= 1) {
+      return listing;
+    }
+    return listing + crawl(requestUri, links, depth, Math.max(1, parallel), Math.max(0, maxRequests));
+  }
+
+  /**
+   * Crawl the API breadth-first from the links just listed at {@code root}, fetching each level's resources through a
+   * pool of {@code parallel} workers. Every URI is only fetched once, and no more than {@code maxRequests} are sent.
+   * Each link found is added to the graph under the path of rels that leads to it, such as {@literal
+   * people.address.city}.
+   */
+  private String crawl(URI root, List<Link> rootLinks, int depth, int parallel, int maxRequests) {
+    ConcurrentNavigableMap<String, String> graph = new ConcurrentSkipListMap<String, String>();
+    Set<String> visited = new HashSet<String>();
+    visited.add(root.toString());
+
+    List<Node> level = new ArrayList<Node>();
+    for(Link link : rootLinks) {
+      if(!isCrawlable(link.getRel())) {
+        continue;
+      }
+      graph.put(link.getRel(), link.getHref());
+      String href = expand(link.getHref());
+      if(null != href && visited.add(href)) {
+        level.add(new Node(link.getRel(), link.getRel(), href));
+      }
+    }
+
+    ExecutorService workers = Executors.newFixedThreadPool(parallel, new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger(0);
+
+      @Override public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "rest-shell-crawl-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+
+    int requests = 0;
+    int failures = 0;
+    int leftOut = 0;
+    int reached = 1;
+    long start = System.currentTimeMillis();
+    try {
+      for(int d = 2; d <= depth && !level.isEmpty() && requests < maxRequests; d++) {
+        List<Node> batch = level.subList(0, Math.min(level.size(), maxRequests - requests));
+        List<Future<List<Link>>> results = new ArrayList<Future<List<Link>>>(batch.size());
+        for(final Node node : batch) {
+          results.add(workers.submit(new Callable<List<Link>>() {
+            @Override public List<Link> call() {
+              ExtractLinksHelper elh = new ExtractLinksHelper();
+              return client.execute(URI.create(node.href), HttpMethod.GET, elh, elh);
+            }
+          }));
+        }
+        requests += batch.size();
+        leftOut += level.size() - batch.size();
+        reached = d;
+
+        List<Node> next = new ArrayList<Node>();
+        for(int i = 0; i < batch.size(); i++) {
+          Node node = batch.get(i);
+          List<Link> links;
+          try {
+            links = results.get(i).get();
+          } catch(ExecutionException e) {
+            Throwable cause = (null != e.getCause() ? e.getCause() : e);
+            if(LOG.isDebugEnabled()) {
+              LOG.debug("Error crawling " + node.href + ": " + cause.getMessage(), cause);
+            }
+            failures++;
+            continue;
+          }
+          for(Link link : links) {
+            if(!isCrawlable(link.getRel())) {
+              continue;
+            }
+            String relPath = node.child(link.getRel());
+            if(!graph.containsKey(relPath)) {
+              graph.put(relPath, link.getHref());
+            }
+            String href = expand(link.getHref());
+            if(null != href && visited.add(href)) {
+              next.add(new Node(relPath, link.getRel(), href));
+            }
+          }
+        }
+        level = next;
+
+        System.out.print(String.format("\rdepth %d, %d requests, %d rel paths", d, requests, graph.size()));
+        System.out.flush();
+      }
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted after " + requests + " requests", e);
+    } finally {
+      workers.shutdownNow();
+    }
+    graphs.put(DiscoveryCache.originOf(root), graph);
+
+    StringBuilder sb = new StringBuilder(OsUtils.LINE_SEPARATOR);
+    sb.append(String.format("Crawled %d resources to depth %d in %.1fs: %d rel paths found",
+                            requests,
+                            reached,
+                            (System.currentTimeMillis() - start) / 1000.0,
+                            graph.size()));
+    if(failures > 0) {
+      sb.append(", ").append(failures).append(" requests failed");
+    }
+    sb.append(".").append(OsUtils.LINE_SEPARATOR);
+    leftOut += level.size();
+    if(leftOut > 0) {
+      sb.append(leftOut)
+        .append(" resources were left out: ")
+        .append(requests >= maxRequests ? "use --max-requests to send more requests." : "use --depth to go deeper.")
+        .append(OsUtils.LINE_SEPARATOR);
+    }
+    sb.append("Use 'graph find' to search them.").append(OsUtils.LINE_SEPARATOR);
+    return sb.toString();
+  }
+
+  /**
+   * Expand an href that may be a URI template the way RFC 6570 does when none of its variables are given: optional query
+   * expressions such as {@literal {?page,size}} are dropped. Hrefs with other expressions, such as {@literal
+   * /people/{id}}, can't be fetched without values for them.
+   *
+   * @return The URI to fetch, or {@literal null} if the href can't be expanded.
+   */
+  private static String expand(String href) {
+    if(href.indexOf('{') < 0) {
+      return href;
+    }
+    String expanded = TEMPLATE_QUERY.matcher(href).replaceAll("");
+    return (expanded.indexOf('{') < 0 && expanded.indexOf('}') < 0 ? expanded : null);
+  }
+
+  /**
+   * Whether a link leads somewhere new, rather than back to the same resource or to another page of it.
+   */
+  private static boolean isCrawlable(String rel) {
+    return null != rel && rel.length() > 0 && !isNavigation(rel);
+  }
+
+  /**
+   * Whether a rel, or the last part of a rel such as {@literal people.next}, is one of {@link #NOT_CRAWLED}.
+   */
+  static boolean isNavigation(String rel) {
+    return NOT_CRAWLED.contains(rel.substring(rel.lastIndexOf('.') + 1));
+  }
+
+  /**
+   * Get the graph of rel paths built by the last crawl of the current baseUri's server.
+   *
+   * @return The hrefs by rel path, in the order of their paths.
+   */
+  public Map<String, String> getGraph() {
+    Map<String, String> graph = graphs.get(DiscoveryCache.originOf(configCmds.getBaseUri()));
+    return (null != graph ? Collections.unmodifiableMap(graph) : Collections.<String, String>emptyMap());
+  }
+
+  @CliCommand(value = "graph find", help = "Find the rel paths found by 'discover --depth' that match a pattern.")
+  public String graphFind(
+      @CliOption(key = {"", "pattern"},
+                 mandatory = true,
+                 help = "The pattern to match. '*' matches any part of a rel path, otherwise paths containing the pattern match.") String pattern) {
+    Map<String, String> graph = getGraph();
+    if(graph.isEmpty()) {
+      return "No rel paths yet. Use 'discover --depth 3' to crawl the API.";
+    }
+
+    Pattern regex;
+    if(pattern.contains("*")) {
+      StringBuilder sb = new StringBuilder();
+      for(String part : pattern.split("\\*", -1)) {
+        if(sb.length() > 0) {
+          sb.append(".*");
+        }
+        sb.append(Pattern.quote(part));
+      }
+      regex = Pattern.compile(sb.toString(), Pattern.CASE_INSENSITIVE);
+    } else {
+      regex = Pattern.compile(".*" + Pattern.quote(pattern) + ".*", Pattern.CASE_INSENSITIVE);
+    }
+
+    List<Link> matches = new ArrayList<Link>();
+    for(Map.Entry<String, String> entry : graph.entrySet()) {
+      if(regex.matcher(entry.getKey()).matches()) {
+        matches.add(new Link(entry.getValue(), entry.getKey()));
+      }
+    }
+    if(matches.isEmpty()) {
+      return "No rel paths match '" + pattern + "'.";
+    }
+    return table(matches);
   }
 
   @CliCommand(value = "list", help = "Discover the resources available at a given URI.")
-  public String list(
+  public Object list(
       @CliOption(key = {"", "rel"},
                  mandatory = false,
                  help = "The URI at which to discover resources.",
@@ -133,8 +439,8 @@ public class DiscoveryCommands implements CommandMarker, ApplicationEventPublish
       requestUri = configCmds.getBaseUri();
     } else if(path.getPath().startsWith("http")) {
       requestUri = URI.create(path.getPath());
-    } else if(resources.containsKey(path)) {
-      requestUri = UriComponentsBuilder.fromUriString(resources.get(path))
+    } else if(getResources().containsKey(path.getPath())) {
+      requestUri = UriComponentsBuilder.fromUriString(getResources().get(path.getPath()))
                                        .build()
                                        .toUri();
     } else if("/".equals(configCmds.getBaseUri().getPath())) {
@@ -157,15 +463,181 @@ public class DiscoveryCommands implements CommandMarker, ApplicationEventPublish
       requestUri = urib.build().toUri();
     }
 
+    LinkListing listing = new LinkListing(requestUri);
+    if(listing.links.size() == 0) {
+      return "No resources found...";
+    } else if(listing.isRead()) {
+      return table(listing.links);
+    }
+
+    // The shell prints each row of an Iterable result as soon as the listing reads it
+    return listing;
+  }
+
+  /**
+   * Get the links of a resource, and save them for the rels they name.
+   */
+  private List<Link> listLinks(URI requestUri) {
     ExtractLinksHelper elh = new ExtractLinksHelper();
     List<Link> links = client.execute(requestUri, HttpMethod.GET, elh, elh);
 
-    if(links.size() == 0) {
-      return "No resources found...";
+    cache.put(requestUri, links, elh.etag, elh.lastModified);
+    return links;
+  }
+
+  /**
+   * The table of a {@literal list}, read as it's rendered. The first {@link #SAMPLE} links are read straight away to
+   * size the columns by. If there are more than that, the table so far comes first and every further row comes as
+   * soon as its link is read, rather than once the whole response has been. The links are saved once they've all been
+   * read.
+   */
+  private class LinkListing implements Iterable<String> {
+
+    private static final int SAMPLE = 100;
+
+    private final URI                requestUri;
+    private final ExtractLinksHelper elh      = new ExtractLinksHelper();
+    private final List<Link>         links    = new ArrayList<Link>();
+    private ClientHttpResponse response;
+    private LinkReader         reader;
+    private int                maxRelLen;
+    private int                maxHrefLen;
+
+    private LinkListing(URI requestUri) {
+      this.requestUri = requestUri;
+      try {
+        ClientHttpRequest request = client.getRequestFactory().createRequest(requestUri, HttpMethod.GET);
+        elh.doWithRequest(request);
+        response = request.execute();
+        if(client.getErrorHandler().hasError(response)) {
+          try {
+            client.getErrorHandler().handleError(response);
+          } finally {
+            response.close();
+          }
+        }
+        elh.etag = response.getHeaders().getETag();
+        elh.lastModified = response.getHeaders().getFirst("Last-Modified");
+        reader = new LinkReader(response);
+      } catch(IOException e) {
+        if(null != response) {
+          response.close();
+        }
+        throw new ResourceAccessException("I/O error on GET request for \"" + requestUri + "\": " + e.getMessage(), e);
+      }
+
+      while(links.size() < SAMPLE) {
+        if(null == read()) {
+          break;
+        }
+      }
+      for(Link l : links) {
+        maxRelLen = Math.max(maxRelLen, l.getRel().length());
+        maxHrefLen = Math.max(maxHrefLen, l.getHref().length());
+      }
+      maxRelLen += 4;
     }
 
-    StringBuilder sb = new StringBuilder();
+    private boolean isRead() {
+      return null == reader;
+    }
+
+    /**
+     * Read the next link, and save them all once there are no more.
+     *
+     * @return {@literal null} once every link has been read.
+     */
+    private Link read() {
+      if(isRead()) {
+        return null;
+      }
+      Link link;
+      try {
+        link = reader.next();
+      } catch(IOException e) {
+        finish();
+        throw new ResourceAccessException("I/O error reading the links of \"" + requestUri + "\": " + e.getMessage(), e);
+      } catch(RuntimeException e) {
+        finish();
+        throw e;
+      }
+      if(null == link) {
+        finish();
+        cache.put(requestUri, links, elh.etag, elh.lastModified);
+        if(LOG.isDebugEnabled()) {
+          LOG.debug("Returning links: " + links);
+        }
+      } else {
+        links.add(link);
+      }
+      return link;
+    }
+
+    private void finish() {
+      try {
+        reader.close();
+      } catch(IOException ignored) {
+      } finally {
+        reader = null;
+        response.close();
+      }
+    }
+
+    @Override public Iterator<String> iterator() {
+      return new Iterator<String>() {
+        private boolean header = true;
+        private Link    next;
+
+        @Override public boolean hasNext() {
+          if(header) {
+            return true;
+          }
+          if(null == next) {
+            next = read();
+          }
+          return null != next;
+        }
 
+        @Override public String next() {
+          if(!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          String rows;
+          if(header) {
+            header = false;
+            StringBuilder sb = new StringBuilder(header(maxRelLen, maxHrefLen));
+            for(Link l : links.subList(0, Math.min(links.size(), SAMPLE))) {
+              sb.append(row(l, maxRelLen, maxHrefLen));
+            }
+            rows = sb.toString();
+          } else {
+            rows = row(next, maxRelLen, maxHrefLen);
+            next = null;
+          }
+          // The shell ends each one with a line separator of its own
+          return rows.substring(0, rows.length() - OsUtils.LINE_SEPARATOR.length());
+        }
+
+        @Override public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+
+    /**
+     * Read whatever's left and render the whole table, for callers that want the result in one piece, such as {@link
+     * BatchCommands}.
+     */
+    @Override public String toString() {
+      while(!isRead()) {
+        read();
+      }
+      return table(links);
+    }
+
+  }
+
+  private static String table(List<Link> links) {
     int maxRelLen = 0;
     int maxHrefLen = 0;
 
@@ -180,6 +652,18 @@ public class DiscoveryCommands implements CommandMarker, ApplicationEventPublish
     }
     maxRelLen += 4;
 
+    StringBuilder sb = new StringBuilder(header(maxRelLen, maxHrefLen));
+
+    // Now build a table
+    for(Link l : links) {
+      sb.append(row(l, maxRelLen, maxHrefLen));
+    }
+
+    return sb.toString();
+  }
+
+  private static String header(int maxRelLen, int maxHrefLen) {
+    StringBuilder sb = new StringBuilder();
     sb.append(pad("rel", maxRelLen))
       .append(pad("href", maxHrefLen))
       .append(OsUtils.LINE_SEPARATOR);
@@ -188,18 +672,13 @@ public class DiscoveryCommands implements CommandMarker, ApplicationEventPublish
     Arrays.fill(line, '=');
     sb.append(new String(line))
       .append(OsUtils.LINE_SEPARATOR);
-
-    // Now build a table
-    for(Link l : links) {
-      resources.put(l.getRel(), l.getHref());
-      sb.append(pad(l.getRel(), maxRelLen))
-        .append(pad(l.getHref(), maxHrefLen))
-        .append(OsUtils.LINE_SEPARATOR);
-    }
-
     return sb.toString();
   }
 
+  private static String row(Link l, int maxRelLen, int maxHrefLen) {
+    return pad(l.getRel(), maxRelLen) + pad(l.getHref(), maxHrefLen) + OsUtils.LINE_SEPARATOR;
+  }
+
   /**
    * Follow a URI by setting the baseUri to this path, then discovering what resources are available there.
    *
@@ -220,8 +699,95 @@ public class DiscoveryCommands implements CommandMarker, ApplicationEventPublish
     configCmds.setBaseUri(path.getPath());
   }
 
+  @CliCommand(value = "discovery cache", help = "Show the servers whose discovered rels are saved, or forget them.")
+  public String discoveryCache(
+      @CliOption(key = "ttl",
+                 mandatory = false,
+                 help = "The time (in seconds) discovered rels are used before they're revalidated.") Long ttl,
+      @CliOption(key = "clear",
+                 mandatory = false,
+                 help = "Forget the discovered rels of every server, including the saved ones.",
+                 unspecifiedDefaultValue = "false",
+                 specifiedDefaultValue = "true") boolean clear) {
+    if(null != ttl) {
+      cache.setTtl(ttl * 1000);
+    }
+    if(clear) {
+      cache.clear();
+      return "Discovered rels cleared.";
+    }
+
+    // Make sure the current server is listed even before anything else has asked for its rels
+    getResources();
+    Map<String, long[]> stats = cache.getStats();
+
+    int maxOriginLen = "server".length();
+    for(String origin : stats.keySet()) {
+      maxOriginLen = Math.max(maxOriginLen, origin.length());
+    }
+    maxOriginLen += 4;
+
+    StringBuilder sb = new StringBuilder();
+    sb.append("Time to live: ").append(cache.getTtl() / 1000).append("s").append(OsUtils.LINE_SEPARATOR)
+      .append(OsUtils.LINE_SEPARATOR)
+      .append(pad("server", maxOriginLen))
+      .append(pad("rels", 8))
+      .append(pad("uris", 8))
+      .append("age")
+      .append(OsUtils.LINE_SEPARATOR);
+    char[] line = new char[maxOriginLen + 16 + 10];
+    Arrays.fill(line, '=');
+    sb.append(new String(line)).append(OsUtils.LINE_SEPARATOR);
+
+    long now = System.currentTimeMillis();
+    for(Map.Entry<String, long[]> entry : stats.entrySet()) {
+      long[] stat = entry.getValue();
+      sb.append(pad(entry.getKey(), maxOriginLen))
+        .append(pad(String.valueOf(stat[0]), 8))
+        .append(pad(String.valueOf(stat[1]), 8))
+        .append(stat[2] > 0 ? String.format("%ds", (now - stat[2]) / 1000) : "-")
+        .append(OsUtils.LINE_SEPARATOR);
+    }
+    return sb.toString();
+  }
+
+  /**
+   * A resource reached while crawling, and the path of rels that led to it.
+   */
+  private static class Node {
+
+    private final String path;
+    private final String rel;
+    private final String href;
+
+    private Node(String path, String rel, String href) {
+      this.path = path;
+      this.rel = rel;
+      this.href = href;
+    }
+
+    /**
+     * Get the path of a link found on this resource. Spring Data REST prefixes the rels of a resource's links with (the
+     * end of) the rel of the resource itself, which is left out so that {@literal people} and {@literal people.search}
+     * make {@literal people.search} rather than {@literal people.people.search}.
+     */
+    private String child(String childRel) {
+      for(int i = 0; i >= 0; i = rel.indexOf('.', i + 1)) {
+        String suffix = (i == 0 ? rel : rel.substring(i + 1));
+        if(childRel.startsWith(suffix + ".")) {
+          return path + childRel.substring(suffix.length());
+        }
+      }
+      return path + "." + childRel;
+    }
+
+  }
+
   private class ExtractLinksHelper implements RequestCallback, ResponseExtractor<List<Link>> {
 
+    private String etag;
+    private String lastModified;
+
     @Override public void doWithRequest(ClientHttpRequest request) throws IOException {
       request.getHeaders().setAll(configCmds.getHeaders().toSingleValueMap());
       if(CollectionUtils.isEmpty(request.getHeaders().getAccept())) {
@@ -234,28 +800,17 @@ public class DiscoveryCommands implements CommandMarker, ApplicationEventPublish
 
     @Override public List<Link> extractData(ClientHttpResponse response) throws IOException {
       List<Link> links = new ArrayList<Link>();
-
-      MediaType ct = response.getHeaders().getContentType();
-      if(null != ct && ct.getSubtype().endsWith("json")) {
-        Map m = mapper.readValue(response.getBody(), Map.class);
-
-        Object o = m.get("links");
-        if(o instanceof List) {
-          for(Object lnk : (List)o) {
-            if(lnk instanceof Map) {
-              Map lnkmap = (Map)lnk;
-              String href = String.format("%s", lnkmap.get("href"));
-              String rel = String.format("%s", lnkmap.get("rel"));
-              links.add(new Link(href, rel));
-            }
-          }
-        }
-      } else if(null != ct && ct.getSubtype().endsWith("uri-list")) {
-        BufferedReader rdr = new BufferedReader(new InputStreamReader(response.getBody()));
-        String line;
-        while(null != (line = rdr.readLine())) {
-          links.add(new Link(URI.create(line).toString(), ""));
+      etag = response.getHeaders().getETag();
+      lastModified = response.getHeaders().getFirst("Last-Modified");
+
+      LinkReader reader = new LinkReader(response);
+      try {
+        Link link;
+        while(null != (link = reader.next())) {
+          links.add(link);
         }
+      } finally {
+        reader.close();
       }
 
       if(LOG.isDebugEnabled()) {
@@ -267,22 +822,157 @@ public class DiscoveryCommands implements CommandMarker, ApplicationEventPublish
 
   }
 
-  private class SslAwareClientHttpRequestFactory extends SimpleClientHttpRequestFactory {
-    @Override protected void prepareConnection(HttpURLConnection connection, String httpMethod) throws IOException {
-      if(connection instanceof HttpsURLConnection) {
-        HttpsURLConnection httpsConnection = (HttpsURLConnection)connection;
-        if(!sslCmds.getValidate()) {
-          httpsConnection.setHostnameVerifier(new HostnameVerifier() {
-            @Override public boolean verify(String s, SSLSession sslSession) {
-              return true;
+  /**
+   * Reads the links of a response one at a time, so each can be used as soon as it's read. Only the links of a JSON
+   * response are wanted, whether in {@literal links} or HAL's {@literal _links}, so everything before them is skipped
+   * over without being built, and nothing after them is parsed at all. Closing the reader leaves whatever's left of the
+   * body to the response to drain.
+   */
+  private class LinkReader {
+
+    private final JsonParser     parser;
+    private final BufferedReader lines;
+    private boolean done;
+    private boolean hal;
+    /**
+     * The rel of the HAL array being read, if any.
+     */
+    private String  halRel;
+
+    private LinkReader(ClientHttpResponse response) throws IOException {
+      MediaType ct = response.getHeaders().getContentType();
+      if(null != ct && ct.getSubtype().endsWith("json")) {
+        parser = mapper.getJsonFactory().createJsonParser(response.getBody());
+        lines = null;
+        done = !findLinks();
+      } else if(null != ct && ct.getSubtype().endsWith("uri-list")) {
+        parser = null;
+        lines = new BufferedReader(new InputStreamReader(response.getBody()));
+      } else {
+        parser = null;
+        lines = null;
+        done = true;
+      }
+    }
+
+    /**
+     * Move the parser past the start of the {@literal links} array or {@literal _links} object.
+     *
+     * @return {@literal false} if the response has neither.
+     */
+    private boolean findLinks() throws IOException {
+      if(parser.nextToken() != JsonToken.START_OBJECT) {
+        return false;
+      }
+      while(parser.nextToken() == JsonToken.FIELD_NAME) {
+        String name = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        if("links".equals(name) && value == JsonToken.START_ARRAY) {
+          return true;
+        } else if("_links".equals(name) && value == JsonToken.START_OBJECT) {
+          hal = true;
+          return true;
+        }
+        parser.skipChildren();
+      }
+      return false;
+    }
+
+    /**
+     * Read the next link, skipping anything that isn't one.
+     *
+     * @return {@literal null} once every link has been read.
+     */
+    private Link next() throws IOException {
+      if(null != lines) {
+        return nextUri();
+      }
+      while(!done) {
+        JsonToken token = parser.nextToken();
+        if(null == token) {
+          done = true;
+        } else if(hal && null == halRel) {
+          // Between the rels of _links, each of which is a link or an array of them
+          if(token != JsonToken.FIELD_NAME) {
+            done = true;
+            continue;
+          }
+          String rel = parser.getCurrentName();
+          token = parser.nextToken();
+          if(token == JsonToken.START_ARRAY) {
+            halRel = rel;
+          } else if(token == JsonToken.START_OBJECT) {
+            Link link = readLink(rel);
+            if(null != link) {
+              return link;
             }
-          });
-          httpsConnection.setSSLSocketFactory(sslCmds.getCustomContext().getSocketFactory());
+          } else {
+            parser.skipChildren();
+          }
+        } else if(token == JsonToken.END_ARRAY) {
+          if(hal) {
+            halRel = null;
+          } else {
+            done = true;
+          }
+        } else if(token == JsonToken.START_OBJECT) {
+          Link link = readLink(halRel);
+          if(null != link) {
+            return link;
+          }
+        } else {
+          parser.skipChildren();
         }
       }
-      super.prepareConnection(connection, httpMethod);
+      return null;
     }
+
+    /**
+     * Read the next URI of a {@literal text/uri-list}, skipping blank and comment lines.
+     */
+    private Link nextUri() throws IOException {
+      String line;
+      while(null != (line = lines.readLine())) {
+        if(line.length() == 0 || line.startsWith("#")) {
+          continue;
+        }
+        // A uri-list has no rels, so each URI goes by the last segment of its path
+        URI uri = URI.create(line.trim());
+        String path = (null != uri.getPath() ? uri.getPath().replaceAll("/+$", "") : "");
+        String rel = path.substring(path.lastIndexOf('/') + 1);
+        return new Link(uri.toString(), (rel.length() > 0 ? rel : uri.toString()));
+      }
+      return null;
+    }
+
+    /**
+     * Read a link object the parser is at the start of. HAL links have no {@literal rel} of their own, so theirs is
+     * passed in instead.
+     *
+     * @return {@literal null} if the object has no {@literal href}.
+     */
+    private Link readLink(String rel) throws IOException {
+      String href = null;
+      while(parser.nextToken() == JsonToken.FIELD_NAME) {
+        String name = parser.getCurrentName();
+        JsonToken value = parser.nextToken();
+        if("href".equals(name) && value == JsonToken.VALUE_STRING) {
+          href = parser.getText();
+        } else if("rel".equals(name) && null == rel && value.isScalarValue()) {
+          rel = parser.getText();
+        } else {
+          parser.skipChildren();
+        }
+      }
+      return (null != href ? new Link(href, String.valueOf(rel)) : null);
+    }
+
+    private void close() throws IOException {
+      if(null != parser) {
+        parser.close();
+      }
+    }
+
   }
 
 }
-
@@ -31,7 +31,10 @@ public class DotRcReader {
 				return;
 			}
 			for(File f : files) {
-				sourceFile(f);
+				// Subdirectories hold the shell's own state, such as discovered rels
+				if(f.isFile()) {
+					sourceFile(f);
+				}
 			}
 			readDotRc = true;
 		}
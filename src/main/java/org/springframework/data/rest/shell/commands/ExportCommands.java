@@ -0,0 +1,447 @@
+package org.springframework.data.rest.shell.commands;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.rest.shell.http.RetryPolicy;
+import org.springframework.hateoas.Link;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.shell.core.CommandMarker;
+import org.springframework.shell.core.annotation.CliAvailabilityIndicator;
+import org.springframework.shell.core.annotation.CliCommand;
+import org.springframework.shell.core.annotation.CliOption;
+import org.springframework.shell.support.util.OsUtils;
+import org.springframework.stereotype.Component;
+
+/**
+ * Commands for dumping every entity of a paged collection to a file. Each page is read with the streaming parser and
+ * its entities are written out one at a time as they're parsed, so only a single entity is ever in memory no matter how
+ * large the pages or the collection are.
+ *
+ * @author agent
+ */
+@Component
+public class ExportCommands implements CommandMarker {
+
+  private static final Logger LOG               = LoggerFactory.getLogger(ExportCommands.class);
+  private static final long   PROGRESS_INTERVAL = 500;
+  private static final int    BUFFER_SIZE       = 64 * 1024;
+  private static final String VALUE_COLUMN      = "value";
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  @Autowired
+  private ConfigurationCommands configCmds;
+  @Autowired
+  private ConnectionCommands    connectionCmds;
+  @Autowired
+  private ContextCommands       contextCmds;
+  @Autowired
+  private HttpCommands          httpCmds;
+  @Autowired
+  private RetryCommands         retryCmds;
+
+  private static String csv(String value) {
+    if(value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+      return value;
+    }
+    return "\"" + value.replace("\"", "\"\"") + "\"";
+  }
+
+  @CliAvailabilityIndicator({"export"})
+  public boolean isExportAvailable() {
+    return true;
+  }
+
+  @CliCommand(value = "export", help = "Write every entity of a paged collection to a file, one to a line.")
+  public String export(
+      @CliOption(key = {"", "rel"},
+                 mandatory = false,
+                 help = "The path to the collection to export.",
+                 unspecifiedDefaultValue = "") PathOrRel path,
+      @CliOption(key = "params",
+                 mandatory = false,
+                 help = "Query parameters to add to the URL as a simplified JSON fragment '{paramName:\"paramValue\"}'.") Map params,
+      @CliOption(key = "file",
+                 mandatory = true,
+                 help = "The path to write the entities to.") String filePath,
+      @CliOption(key = "format",
+                 mandatory = false,
+                 help = "How to write the entities: 'ndjson' for one JSON object to a line, or 'csv'.",
+                 unspecifiedDefaultValue = "ndjson") String format,
+      @CliOption(key = "fields",
+                 mandatory = false,
+                 help = "Comma-separated list of the CSV columns. Nested fields are given as 'address.city'.") String fields,
+      @CliOption(key = "sample",
+                 mandatory = false,
+                 help = "The number of entities to look at to find the CSV columns when no --fields are given.",
+                 unspecifiedDefaultValue = "100") int sample,
+      @CliOption(key = "filter",
+                 mandatory = false,
+                 help = "Write only the parts of each entity matching a path like 'address.city', one to a row.") String filter) {
+    boolean csv;
+    if("csv".equalsIgnoreCase(format)) {
+      csv = true;
+    } else if("ndjson".equalsIgnoreCase(format)) {
+      csv = false;
+    } else {
+      throw new IllegalArgumentException("Unknown format '" + format + "'. Use one of: ndjson, csv.");
+    }
+
+    List<String> columns = null;
+    if(null != fields) {
+      columns = new ArrayList<String>();
+      for(String field : contextCmds.evalAsString(fields).split(",")) {
+        if(field.trim().length() > 0) {
+          columns.add(field.trim());
+        }
+      }
+    }
+
+    URI uri = httpCmds.createUri(path, params);
+    HttpHeaders headers = new HttpHeaders();
+    headers.setAll(configCmds.getHeaders().toSingleValueMap());
+
+    File target = new File(contextCmds.evalAsString(filePath));
+    Export export;
+    try {
+      File tmp = File.createTempFile(".rest-shell-", ".tmp", target.getAbsoluteFile().getParentFile());
+      Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8"), BUFFER_SIZE);
+      try {
+        export = (csv ? new CsvExport(out, columns, Math.max(1, sample)) : new NdjsonExport(out));
+        if(null != filter) {
+          export.filter = JsonFilter.compile(contextCmds.evalAsString(filter));
+        }
+        try {
+          while(null != uri) {
+            URI next = exportPage(uri, headers, export);
+            uri = (null != next && !next.equals(uri) ? next : null);
+          }
+          export.finish();
+        } finally {
+          out.close();
+        }
+        if(target.exists() && !target.delete()) {
+          throw new IOException("Cannot replace " + target);
+        }
+        if(!tmp.renameTo(target)) {
+          throw new IOException("Cannot move " + tmp + " to " + target);
+        }
+      } finally {
+        if(tmp.exists()) {
+          tmp.delete();
+        }
+      }
+    } catch(IOException e) {
+      LOG.error(e.getMessage(), e);
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+
+    long elapsed = System.currentTimeMillis() - export.start;
+    StringBuilder sb = new StringBuilder(OsUtils.LINE_SEPARATOR);
+    sb.append(export.progress(elapsed)).append(" from ")
+      .append(export.pages).append(export.pages == 1 ? " page" : " pages")
+      .append(String.format(" in %.1fs", elapsed / 1000.0))
+      .append(OsUtils.LINE_SEPARATOR);
+    if(export instanceof CsvExport) {
+      sb.append("Columns: ");
+      boolean first = true;
+      for(String column : ((CsvExport)export).columns) {
+        if(!first) {
+          sb.append(", ");
+        }
+        sb.append(column);
+        first = false;
+      }
+      sb.append(OsUtils.LINE_SEPARATOR);
+    }
+    sb.append(">> ").append(target.getPath()).append(OsUtils.LINE_SEPARATOR);
+    return sb.toString();
+  }
+
+  /**
+   * Export the entities of one page.
+   *
+   * @return The URI of the next page, if there is one.
+   */
+  private URI exportPage(URI uri, HttpHeaders headers, Export export) throws IOException {
+    ClientHttpResponse response = send(uri, headers);
+    List<Link> links = new ArrayList<Link>();
+    try {
+      HttpStatus status = response.getStatusCode();
+      if(status.series() != HttpStatus.Series.SUCCESSFUL) {
+        throw new IllegalStateException("GET " + uri + " returned " + status.value() + " " + status.name()
+                                            + " after " + export.rows + " rows");
+      }
+      InputStream body = response.getBody();
+      if(null != body) {
+        readPage(body, export, links);
+      }
+    } finally {
+      response.close();
+    }
+    export.pages++;
+    return HttpCommands.nextPageUri(links);
+  }
+
+  /**
+   * Pick the entities out of a page, in either its {@literal content} array or a HAL {@literal _embedded} object, and
+   * its links. Everything else is skipped without being built.
+   */
+  private void readPage(InputStream body, Export export, List<Link> links) throws IOException {
+    JsonParser parser = mapper.getJsonFactory().createJsonParser(body);
+    try {
+      JsonToken token = parser.nextToken();
+      if(token == JsonToken.START_ARRAY) {
+        readEntities(parser, export);
+        return;
+      }
+      if(token != JsonToken.START_OBJECT) {
+        throw new IllegalStateException("The response is not a collection of entities.");
+      }
+      while(parser.nextToken() == JsonToken.FIELD_NAME) {
+        String name = parser.getCurrentName();
+        token = parser.nextToken();
+        if("content".equals(name) && token == JsonToken.START_ARRAY) {
+          readEntities(parser, export);
+        } else if("_embedded".equals(name) && token == JsonToken.START_OBJECT) {
+          while(parser.nextToken() == JsonToken.FIELD_NAME) {
+            if(parser.nextToken() == JsonToken.START_ARRAY) {
+              readEntities(parser, export);
+            } else {
+              parser.skipChildren();
+            }
+          }
+        } else if("links".equals(name) || "_links".equals(name)) {
+          Object value = mapper.readValue(parser, Object.class);
+          links.addAll(HttpCommands.linksOf(Collections.singletonMap(name, value)));
+        } else {
+          parser.skipChildren();
+        }
+      }
+    } finally {
+      parser.close();
+    }
+  }
+
+  private void readEntities(JsonParser parser, final Export export) throws IOException {
+    JsonFilter.Handler handler = new JsonFilter.Handler() {
+      @Override public void match(int path, JsonParser parser) throws IOException {
+        export.write(mapper.readTree(parser));
+        export.rows++;
+      }
+    };
+    while(parser.nextToken() != JsonToken.END_ARRAY) {
+      if(null != export.filter) {
+        // Only the parts of the entity that were asked for are built
+        export.filter.select(parser, handler);
+      } else {
+        export.write(mapper.readTree(parser));
+        export.rows++;
+      }
+      long now = System.currentTimeMillis();
+      if(now - export.lastProgress >= PROGRESS_INTERVAL) {
+        System.out.print("\r" + export.progress(now - export.start));
+        System.out.flush();
+        export.lastProgress = now;
+      }
+    }
+  }
+
+  /**
+   * Send a GET around the response cache, so that pages don't end up in it, retrying it as the shell's retry policy
+   * says.
+   */
+  private ClientHttpResponse send(final URI uri, final HttpHeaders headers) throws IOException {
+    final ClientHttpRequestFactory requestFactory = connectionCmds.getUncachedRequestFactory();
+    return retryCmds.getPolicy().execute(HttpMethod.GET, uri, new RetryPolicy.Attempt<ClientHttpResponse>() {
+      @Override public ClientHttpResponse send() throws IOException {
+        ClientHttpRequest request = requestFactory.createRequest(uri, HttpMethod.GET);
+        request.getHeaders().putAll(headers);
+        return request.execute();
+      }
+
+      @Override public HttpStatus getStatus(ClientHttpResponse response) throws IOException {
+        return response.getStatusCode();
+      }
+
+      @Override public HttpHeaders getHeaders(ClientHttpResponse response) {
+        return response.getHeaders();
+      }
+
+      @Override public void discard(ClientHttpResponse response) {
+        response.close();
+      }
+    });
+  }
+
+  /**
+   * Where the entities of an export are written to.
+   */
+  private abstract static class Export {
+
+    protected final Writer     out;
+    private final   long       start = System.currentTimeMillis();
+    private         long       lastProgress = start;
+    private         long       rows;
+    private         int        pages;
+    private         JsonFilter filter;
+
+    private Export(Writer out) {
+      this.out = out;
+    }
+
+    abstract void write(JsonNode entity) throws IOException;
+
+    void finish() throws IOException {
+    }
+
+    private String progress(long elapsed) {
+      return String.format("%d rows, %.1f rows/sec", rows, (elapsed > 0 ? rows * 1000.0 / elapsed : 0));
+    }
+
+  }
+
+  /**
+   * Writes each entity as compact JSON on a line of its own.
+   */
+  private class NdjsonExport extends Export {
+
+    private NdjsonExport(Writer out) {
+      super(out);
+    }
+
+    @Override void write(JsonNode entity) throws IOException {
+      JsonGenerator gen = mapper.getJsonFactory().createJsonGenerator(out);
+      gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+      mapper.writeTree(gen, entity);
+      gen.close();
+      out.write('\n');
+    }
+
+  }
+
+  /**
+   * Writes each entity as a CSV row. Unless the columns were given, the first {@code sample} entities are held back to
+   * find them: every field of those entities other than their links becomes a column, in the order they were first
+   * seen. Fields that are objects or arrays are written as JSON.
+   */
+  private static class CsvExport extends Export {
+
+    private final int            sample;
+    private       List<String>   columns;
+    private       List<JsonNode> held;
+
+    private CsvExport(Writer out, List<String> columns, int sample) throws IOException {
+      super(out);
+      this.sample = sample;
+      if(null != columns) {
+        this.columns = columns;
+        writeHeader();
+      } else {
+        this.held = new ArrayList<JsonNode>();
+      }
+    }
+
+    private static String text(JsonNode entity, String column) {
+      JsonNode value = entity;
+      if(!entity.isObject()) {
+        return (VALUE_COLUMN.equals(column) ? entity.asText() : "");
+      }
+      for(String name : column.split("\\.")) {
+        value = (null != value ? value.get(name) : null);
+      }
+      if(null == value || value.isNull()) {
+        return "";
+      }
+      return (value.isValueNode() ? value.asText() : value.toString());
+    }
+
+    @Override void write(JsonNode entity) throws IOException {
+      if(null == columns) {
+        held.add(entity);
+        if(held.size() >= sample) {
+          release();
+        }
+        return;
+      }
+      boolean first = true;
+      for(String column : columns) {
+        if(!first) {
+          out.write(',');
+        }
+        out.write(csv(text(entity, column)));
+        first = false;
+      }
+      out.write("\r\n");
+    }
+
+    @Override void finish() throws IOException {
+      if(null == columns) {
+        release();
+      }
+    }
+
+    private void release() throws IOException {
+      Set<String> names = new LinkedHashSet<String>();
+      for(JsonNode entity : held) {
+        if(!entity.isObject()) {
+          names.add(VALUE_COLUMN);
+          continue;
+        }
+        for(Iterator<String> iter = entity.getFieldNames(); iter.hasNext(); ) {
+          String name = iter.next();
+          if(!"links".equals(name) && !"_links".equals(name)) {
+            names.add(name);
+          }
+        }
+      }
+      columns = new ArrayList<String>(names);
+      writeHeader();
+      List<JsonNode> entities = held;
+      held = null;
+      for(JsonNode entity : entities) {
+        write(entity);
+      }
+    }
+
+    private void writeHeader() throws IOException {
+      boolean first = true;
+      for(String column : columns) {
+        if(!first) {
+          out.write(',');
+        }
+        out.write(csv(column));
+        first = false;
+      }
+      out.write("\r\n");
+    }
+
+  }
+
+}
@@ -1,5 +1,8 @@
 package org.springframework.data.rest.shell.commands;
 
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.JsonParseException;
 import org.codehaus.jackson.JsonParser;
 import org.codehaus.jackson.map.ObjectMapper;
@@ -10,36 +13,58 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
-import org.springframework.data.rest.shell.context.ResponseEvent;
 import org.springframework.data.rest.shell.formatter.FormatProvider;
 import org.springframework.data.rest.shell.formatter.Formatter;
+import org.springframework.data.rest.shell.http.DecodingClientHttpResponse;
+import org.springframework.data.rest.shell.http.MeteredClientHttpRequestFactory;
+import org.springframework.data.rest.shell.http.RequestTiming;
+import org.springframework.data.rest.shell.http.RetryPolicy;
+import org.springframework.data.rest.shell.http.StreamingClientHttpRequest;
+import org.springframework.data.rest.shell.http.TimedClientHttpResponse;
+import org.springframework.data.rest.shell.resources.Page;
 import org.springframework.hateoas.Link;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.ClientHttpRequest;
 import org.springframework.http.client.ClientHttpResponse;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.shell.core.CommandMarker;
 import org.springframework.shell.core.annotation.CliAvailabilityIndicator;
 import org.springframework.shell.core.annotation.CliCommand;
 import org.springframework.shell.core.annotation.CliOption;
 import org.springframework.shell.support.util.OsUtils;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.client.*;
+import org.springframework.web.util.UriComponents;
 import org.springframework.web.util.UriComponentsBuilder;
 
-import javax.net.ssl.HostnameVerifier;
-import javax.net.ssl.HttpsURLConnection;
-import javax.net.ssl.SSLSession;
 import java.io.*;
-import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -50,8 +75,15 @@ import java.util.concurrent.atomic.AtomicInteger;
 @Component
 public class HttpCommands implements CommandMarker, ApplicationEventPublisherAware, InitializingBean {
 
-	private static final Logger LOG             = LoggerFactory.getLogger(HttpCommands.class);
-	private static final String LOCATION_HEADER = "Location";
+	private static final Logger      LOG                = LoggerFactory.getLogger(HttpCommands.class);
+	private static final String      LOCATION_HEADER    = "Location";
+	private static final String      TIMING_HEADER      = "X-Shell-Timing";
+	private static final long        PROGRESS_INTERVAL  = 500;
+	private static final JsonFactory STRICT_JSON        = new JsonFactory();
+	private static final Charset     DEFAULT_CHARSET    = Charset.forName("ISO-8859-1");
+	private static final Charset     UTF8               = Charset.forName("UTF-8");
+	private static final String[]    ENVELOPE_FIELDS    = {"links", "_links", "page"};
+	private static final JsonFilter  ENVELOPE_FILTER    = JsonFilter.compile("links, _links, page");
 	@Autowired
 	private ConfigurationCommands configCmds;
 	@Autowired
@@ -59,15 +91,19 @@ public class HttpCommands implements CommandMarker, ApplicationEventPublisherAwa
 	@Autowired
 	private ContextCommands       contextCmds;
 	@Autowired
-	private SslCommands           sslCmds;
-	private SslAwareClientHttpRequestFactory requestFactory = new SslAwareClientHttpRequestFactory();
+	private ConnectionCommands    connectionCmds;
+	@Autowired
+	private RetryCommands         retryCmds;
+	@Autowired
+	private JobCommands           jobCmds;
 	@Autowired(required = false)
-	private RestTemplate                     restTemplate   = new RestTemplate(requestFactory);
+	private RestTemplate          restTemplate;
 	@Autowired(required = false)
-	private ObjectMapper                     mapper         = new ObjectMapper();
+	private ObjectMapper          mapper = new ObjectMapper();
 	private ApplicationEventPublisher ctx;
-	private Object                    lastResult;
 	private URI                       requestUri;
+	private final AtomicInteger       outputSequence = new AtomicInteger(0);
+	private volatile boolean          showTiming;
 	@Autowired
 	private FormatProvider            formatProvider;
 
@@ -89,6 +125,12 @@ public class HttpCommands implements CommandMarker, ApplicationEventPublisherAwa
 		mapper.configure(JsonParser.Feature.ALLOW_UNQUOTED_FIELD_NAMES, true);
 		mapper.configure(SerializationConfig.Feature.INDENT_OUTPUT, true);
 
+		if (null == restTemplate) {
+			restTemplate = new RestTemplate(connectionCmds.getRequestFactory());
+		} else if (restTemplate.getInterceptors().isEmpty()) {
+			// Count the requests of a user-supplied template too. Its factory can't be reached underneath any interceptors.
+			restTemplate.setRequestFactory(new MeteredClientHttpRequestFactory(restTemplate.getRequestFactory(), ctx));
+		}
 		restTemplate.setErrorHandler(new DefaultResponseErrorHandler() {
 			@Override
 			public void handleError(ClientHttpResponse response) throws IOException {
@@ -96,7 +138,7 @@ public class HttpCommands implements CommandMarker, ApplicationEventPublisherAwa
 		});
 	}
 
-	@CliAvailabilityIndicator({"timeout", "get", "post", "put", "delete"})
+	@CliAvailabilityIndicator({"timeout", "timing", "get", "post", "put", "delete"})
 	public boolean isHttpCommandAvailable() {
 		return true;
 	}
@@ -106,7 +148,16 @@ public class HttpCommands implements CommandMarker, ApplicationEventPublisherAwa
 																 mandatory = true,
 																 help = "The timeout (in milliseconds) to wait for a response.",
 																 unspecifiedDefaultValue = "30000") int timeout) {
-		requestFactory.setReadTimeout(timeout);
+		connectionCmds.setReadTimeout(timeout);
+	}
+
+	@CliCommand(value = "timing", help = "Show how long each phase of a request took at the end of its response.")
+	public void timing(@CliOption(key = "",
+																mandatory = false,
+																help = "Whether to show the timing.",
+																unspecifiedDefaultValue = "true",
+																specifiedDefaultValue = "true") boolean show) {
+		showTiming = show;
 	}
 
 	/**
@@ -131,9 +182,36 @@ public class HttpCommands implements CommandMarker, ApplicationEventPublisherAwa
 								 help = "Query parameters to add to the URL as a simplified JSON fragment '{paramName:\"paramValue\"}'.") Map params,
 			@CliOption(key = "output",
 								 mandatory = false,
-								 help = "The path to dump the output to.") String outputPath) {
+								 help = "The path to dump the output to.") String outputPath,
+			@CliOption(key = "output-mode",
+								 mandatory = false,
+								 help = "How to write --output: 'overwrite' the file, 'append' to it or write a numbered file 'per-request'. Defaults to 'append' for --from directories and 'overwrite' otherwise.",
+								 unspecifiedDefaultValue = "") String outputMode,
+			@CliOption(key = "async",
+								 mandatory = false,
+								 help = "Send the request in the background. Use 'jobs wait' or 'jobs result' to get the response.",
+								 unspecifiedDefaultValue = "false",
+								 specifiedDefaultValue = "true") boolean async,
+			@CliOption(key = "all-pages",
+								 mandatory = false,
+								 help = "Follow the 'next' links of a paged collection to its last page, showing every page as it arrives.",
+								 unspecifiedDefaultValue = "false",
+								 specifiedDefaultValue = "true") boolean allPages,
+			@CliOption(key = "parallel",
+								 mandatory = false,
+								 help = "The number of pages to fetch at the same time with --all-pages.",
+								 unspecifiedDefaultValue = "1") Integer parallel,
+			@CliOption(key = "unordered",
+								 mandatory = false,
+								 help = "Show --parallel pages in the order they arrive rather than in page order.",
+								 unspecifiedDefaultValue = "false",
+								 specifiedDefaultValue = "true") boolean unordered,
+			@CliOption(key = "filter",
+								 mandatory = false,
+								 help = "Show only the parts of a JSON body matching a path like 'content[*].name', picked out while it's read.") String filter) {
 
 		outputPath = contextCmds.evalAsString(outputPath);
+		JsonFilter jsonFilter = (null != filter ? JsonFilter.compile(contextCmds.evalAsString(filter)) : null);
 
 		UriComponentsBuilder ucb = createUriComponentsBuilder(path.getPath());
 		if (null != params) {
@@ -144,7 +222,16 @@ public class HttpCommands implements CommandMarker, ApplicationEventPublisherAwa
 		}
 		requestUri = ucb.build().toUri();
 
-		return execute(HttpMethod.GET, null, follow, outputPath);
+		if (allPages) {
+			return getAllPages(requestUri,
+												 outputPath,
+												 OutputSink.mode(outputMode, OutputSink.Mode.OVERWRITE),
+												 Math.max(1, parallel),
+												 !unordered,
+												 jsonFilter,
+												 async);
+		}
+		return execute(HttpMethod.GET, null, follow, outputPath, OutputSink.mode(outputMode, OutputSink.Mode.OVERWRITE), jsonFilter, async);
 	}
 
 	/**
@@ -166,6 +253,30 @@ public class HttpCommands implements CommandMarker, ApplicationEventPublisherAwa
 			@CliOption(key = "from",
 								 mandatory = false,
 								 help = "The directory from which to read JSON files to POST to the server.") String fromDir,
+			@CliOption(key = "from-stream",
+								 mandatory = false,
+								 help = "A file holding a JSON array or newline-delimited JSON, each element of which is POSTed to the server as its own resource.") String fromStream,
+			@CliOption(key = "resume",
+								 mandatory = false,
+								 help = "Continue a --from-stream import from its checkpoint.",
+								 unspecifiedDefaultValue = "false",
+								 specifiedDefaultValue = "true") boolean resume,
+			@CliOption(key = "concurrency",
+								 mandatory = false,
+								 help = "The number of files from a --from directory, or elements from a --from-stream file, to upload at the same time.",
+								 unspecifiedDefaultValue = "1") Integer concurrency,
+			@CliOption(key = "batch-size",
+								 mandatory = false,
+								 help = "The maximum number of files or --from-stream elements to read and queue for upload at once.",
+								 unspecifiedDefaultValue = "100") Integer batchSize,
+			@CliOption(key = "raw",
+								 mandatory = false,
+								 help = "Stream --from files to the server as-is instead of parsing them first. By default JSON files are streamed when the request is JSON and the file is valid JSON.",
+								 unspecifiedDefaultValue = "auto",
+								 specifiedDefaultValue = "true") String raw,
+			@CliOption(key = "validate",
+								 mandatory = false,
+								 help = "Check that streamed --from files are valid JSON before sending them.") Boolean validate,
 			@CliOption(key = "follow",
 								 mandatory = false,
 								 help = "If a Location header is returned, immediately follow it.",
@@ -175,7 +286,16 @@ public class HttpCommands implements CommandMarker, ApplicationEventPublisherAwa
 								 help = "Query parameters to add to the URL as a simplified JSON fragment '{paramName:\"paramValue\"}'.") Map params,
 			@CliOption(key = "output",
 								 mandatory = false,
-								 help = "The path to dump the output to.") String outputTo) throws IOException {
+								 help = "The path to dump the output to.") String outputTo,
+			@CliOption(key = "output-mode",
+								 mandatory = false,
+								 help = "How to write --output: 'overwrite' the file, 'append' to it or write a numbered file 'per-request'. Defaults to 'append' for --from directories and 'overwrite' otherwise.",
+								 unspecifiedDefaultValue = "") String outputMode,
+			@CliOption(key = "async",
+								 mandatory = false,
+								 help = "Send the request in the background. Use 'jobs wait' or 'jobs result' to get the response.",
+								 unspecifiedDefaultValue = "false",
+								 specifiedDefaultValue = "true") boolean async) throws IOException {
 
 		fromDir = contextCmds.evalAsString(fromDir);
 		final String outputPath = contextCmds.evalAsString(outputTo);
@@ -204,16 +324,25 @@ public class HttpCommands implements CommandMarker, ApplicationEventPublisherAwa
 			}
 		}
 
+		if (null != fromStream) {
+			fromStream = contextCmds.evalAsString(fromStream);
+			try {
+				return uploadStream(HttpMethod.POST, fromStream, follow, outputPath, outputMode, concurrency, batchSize, resume, async);
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
 		if (null != fromDir) {
 			fromDir = contextCmds.evalAsString(fromDir);
 			try {
-				return readFileOrFiles(HttpMethod.POST, fromDir, follow, outputPath);
+				return readFileOrFiles(HttpMethod.POST, fromDir, follow, outputPath, outputMode, concurrency, batchSize, raw, validate, async);
 			} catch (IOException e) {
 				throw new IllegalStateException(e);
 			}
 		}
 
-		return execute(HttpMethod.POST, obj, follow, outputPath);
+		return execute(HttpMethod.POST, obj, follow, outputPath, OutputSink.mode(outputMode, OutputSink.Mode.OVERWRITE), null, async);
 	}
 
 	/**
@@ -235,6 +364,22 @@ public class HttpCommands implements CommandMarker, ApplicationEventPublisherAwa
 			@CliOption(key = "from",
 								 mandatory = false,
 								 help = "The directory from which to read JSON files to POST to the server.") String fromDir,
+			@CliOption(key = "concurrency",
+								 mandatory = false,
+								 help = "The number of files from a --from directory to upload at the same time.",
+								 unspecifiedDefaultValue = "1") Integer concurrency,
+			@CliOption(key = "batch-size",
+								 mandatory = false,
+								 help = "The maximum number of files from a --from directory to read and queue for upload at once.",
+								 unspecifiedDefaultValue = "100") Integer batchSize,
+			@CliOption(key = "raw",
+								 mandatory = false,
+								 help = "Stream --from files to the server as-is instead of parsing them first. By default JSON files are streamed when the request is JSON and the file is valid JSON.",
+								 unspecifiedDefaultValue = "auto",
+								 specifiedDefaultValue = "true") String raw,
+			@CliOption(key = "validate",
+								 mandatory = false,
+								 help = "Check that streamed --from files are valid JSON before sending them.") Boolean validate,
 			@CliOption(key = "follow",
 								 mandatory = false,
 								 help = "If a Location header is returned, immediately follow it.",
@@ -244,7 +389,16 @@ public class HttpCommands implements CommandMarker, ApplicationEventPublisherAwa
 								 help = "Query parameters to add to the URL as a simplified JSON fragment '{paramName:\"paramValue\"}'.") Map params,
 			@CliOption(key = "output",
 								 mandatory = false,
-								 help = "The path to dump the output to.") String outputPath) throws IOException {
+								 help = "The path to dump the output to.") String outputPath,
+			@CliOption(key = "output-mode",
+								 mandatory = false,
+								 help = "How to write --output: 'overwrite' the file, 'append' to it or write a numbered file 'per-request'. Defaults to 'append' for --from directories and 'overwrite' otherwise.",
+								 unspecifiedDefaultValue = "") String outputMode,
+			@CliOption(key = "async",
+								 mandatory = false,
+								 help = "Send the request in the background. Use 'jobs wait' or 'jobs result' to get the response.",
+								 unspecifiedDefaultValue = "false",
+								 specifiedDefaultValue = "true") boolean async) throws IOException {
 
 		fromDir = contextCmds.evalAsString(fromDir);
 		outputPath = contextCmds.evalAsString(outputPath);
@@ -276,13 +430,13 @@ public class HttpCommands implements CommandMarker, ApplicationEventPublisherAwa
 			} else {
 				obj = data;
 			}
-			return execute(HttpMethod.PUT, obj, follow, outputPath);
+			return execute(HttpMethod.PUT, obj, follow, outputPath, OutputSink.mode(outputMode, OutputSink.Mode.OVERWRITE), null, async);
 		}
 
 		if (null != fromDir) {
 			fromDir = contextCmds.evalAsString(fromDir);
 			try {
-				return readFileOrFiles(HttpMethod.PUT, fromDir, "false", outputPath);
+				return readFileOrFiles(HttpMethod.PUT, fromDir, "false", outputPath, outputMode, concurrency, batchSize, raw, validate, async);
 			} catch (IOException e) {
 				throw new IllegalStateException(e);
 			}
@@ -312,7 +466,16 @@ public class HttpCommands implements CommandMarker, ApplicationEventPublisherAwa
 								 help = "Query parameters to add to the URL as a simplified JSON fragment '{paramName:\"paramValue\"}'.") Map params,
 			@CliOption(key = "output",
 								 mandatory = false,
-								 help = "The path to dump the output to.") String outputPath) {
+								 help = "The path to dump the output to.") String outputPath,
+			@CliOption(key = "output-mode",
+								 mandatory = false,
+								 help = "How to write --output: 'overwrite' the file, 'append' to it or write a numbered file 'per-request'. Defaults to 'append' for --from directories and 'overwrite' otherwise.",
+								 unspecifiedDefaultValue = "") String outputMode,
+			@CliOption(key = "async",
+								 mandatory = false,
+								 help = "Send the request in the background. Use 'jobs wait' or 'jobs result' to get the response.",
+								 unspecifiedDefaultValue = "false",
+								 specifiedDefaultValue = "true") boolean async) {
 
 		outputPath = contextCmds.evalAsString(outputPath);
 
@@ -325,53 +488,179 @@ public class HttpCommands implements CommandMarker, ApplicationEventPublisherAwa
 		}
 		requestUri = ucb.build().toUri();
 
-		return execute(HttpMethod.DELETE, null, follow, outputPath);
+		return execute(HttpMethod.DELETE, null, follow, outputPath, OutputSink.mode(outputMode, OutputSink.Mode.OVERWRITE), null, async);
 	}
 
 	public String execute(final HttpMethod method,
 												final Object data,
 												final String follow,
 												final String outputPath) {
-		final StringBuilder buffer = new StringBuilder();
-		MediaType contentType = configCmds.getHeaders().getContentType();
-		if (contentType == null) {
-			contentType = MediaType.APPLICATION_JSON;
+		return execute(method, data, follow, outputPath, OutputSink.Mode.OVERWRITE, null, false);
+	}
+
+	private String execute(HttpMethod method,
+												 Object data,
+												 String follow,
+												 String outputPath,
+												 OutputSink.Mode outputMode,
+												 JsonFilter filter,
+												 boolean async) {
+		OutputSink sink = (null != outputPath ? new OutputSink(outputPath, outputMode, outputSequence.incrementAndGet()) : null);
+		if (async) {
+			return submit(requestUri, method, data, sink, filter, follow);
 		}
+		return complete(exchange(requestUri, method, data, sink, filter), follow);
+	}
+
+	/**
+	 * Send the request on a background job. The response is only applied to the shell once the job's result is asked
+	 * for, which is also when {@code follow} takes effect.
+	 */
+	private String submit(final URI requestUri,
+												final HttpMethod method,
+												final Object data,
+												final OutputSink sink,
+												final JsonFilter filter,
+												final String follow) {
+		JobCommands.Job<RequestHelper> job = jobCmds.submit(
+				method + " " + requestUri,
+				new JobCommands.Task<RequestHelper>() {
+					@Override
+					public RequestHelper run(JobCommands.Job<RequestHelper> job) {
+						RequestHelper helper = exchange(requestUri, method, data, sink, filter);
+						if (job.isCancelled()) {
+							// Nobody will ever complete it
+							discard(sink);
+						}
+						return helper;
+					}
+				},
+				new JobCommands.Completion<RequestHelper>() {
+					@Override
+					public String complete(RequestHelper helper) {
+						return HttpCommands.this.complete(helper, follow);
+					}
+
+					@Override
+					public Object getValue(RequestHelper helper) {
+						return helper.result;
+					}
+
+					@Override
+					public void abandon(RequestHelper helper) {
+						if (null != helper.sink) {
+							commit(helper.sink);
+						}
+					}
+				});
+		return "Job " + job.getId() + " started: " + job.getDescription();
+	}
+
+	/**
+	 * Run an upload of many files or elements on a background job, whose result is the upload's summary.
+	 */
+	private String submitUpload(String description, JobCommands.Task<String> task) {
+		JobCommands.Job<String> job = jobCmds.submit(
+				description,
+				task,
+				new JobCommands.Completion<String>() {
+					@Override
+					public String complete(String summary) {
+						return summary;
+					}
+
+					@Override
+					public Object getValue(String summary) {
+						return summary;
+					}
+
+					@Override
+					public void abandon(String summary) {
+					}
+				});
+		return "Job " + job.getId() + " started: " + job.getDescription();
+	}
 
-		ResponseErrorHandler origErrHandler = restTemplate.getErrorHandler();
-		RequestHelper helper = (null == data ? new RequestHelper() : new RequestHelper(data, contentType));
-		ResponseEntity<String> response;
+	/**
+	 * Send the request and read the response without touching any of the shell's shared state, so that it can be
+	 * called from more than one thread at a time.
+	 */
+	private RequestHelper exchange(URI requestUri, HttpMethod method, Object data, OutputSink sink) {
+		return exchange(requestUri, method, data, sink, null);
+	}
+
+	/**
+	 * Send the request, keeping only the parts of a JSON response body that match the {@code filter}, if there is one.
+	 */
+	private RequestHelper exchange(URI requestUri, HttpMethod method, Object data, OutputSink sink, JsonFilter filter) {
+		RequestHelper helper = (null == data
+				? new RequestHelper(requestUri, method)
+				: new RequestHelper(requestUri, method, data, requestContentType()));
+		helper.sink = sink;
+		helper.filter = filter;
+		if (LOG.isInfoEnabled()) {
+			LOG.info("Sending " + method + " to " + requestUri + " using " + data);
+		}
+		final RequestHelper request = helper;
 		try {
-			restTemplate.setErrorHandler(new ResponseErrorHandler() {
+			helper.response = retryCmds.getPolicy().execute(method, requestUri, new RetryPolicy.Attempt<ResponseEntity<String>>() {
 				@Override
-				public boolean hasError(ClientHttpResponse response) throws IOException {
-					HttpStatus status = response.getStatusCode();
-					return (status == HttpStatus.BAD_GATEWAY || status == HttpStatus.GATEWAY_TIMEOUT);
+				public ResponseEntity<String> send() {
+					return restTemplate.execute(request.requestUri, request.method, request, request);
 				}
 
 				@Override
-				public void handleError(ClientHttpResponse response) throws IOException {
-					if (LOG.isWarnEnabled()) {
-						LOG.warn("Client encountered an error " + response.getRawStatusCode() + ". Retrying...");
-					}
-					System.out.println(execute(method, data, follow, outputPath));
+				public HttpStatus getStatus(ResponseEntity<String> response) {
+					return response.getStatusCode();
+				}
+
+				@Override
+				public HttpHeaders getHeaders(ResponseEntity<String> response) {
+					return response.getHeaders();
+				}
+
+				@Override
+				public void discard(ResponseEntity<String> response) {
 				}
 			});
+		} catch (IOException e) {
+			// The RestTemplate wraps these, so this never happens
+			discard(sink);
+			throw new ResourceAccessException(e.getMessage(), e);
+		} catch (RuntimeException e) {
+			discard(sink);
+			throw e;
+		}
+		return helper;
+	}
 
-			if (LOG.isInfoEnabled()) {
-				LOG.info("Sending " + method + " to " + requestUri + " using " + data);
-			}
-			response = restTemplate.execute(requestUri, method, helper, helper);
+	private static void discard(OutputSink sink) {
+		if (null != sink) {
+			sink.discard();
+		}
+	}
 
-		} catch (ResourceAccessException e) {
-			if (LOG.isWarnEnabled()) {
-				LOG.warn("Client encountered an error. Retrying. (" + e.getMessage() + ")", e);
-			}
-			// Calling this method recursively results in hang, so just retry once.
-			response = restTemplate.execute(requestUri, method, helper, helper);
-		} finally {
-			restTemplate.setErrorHandler(origErrHandler);
+	private static void commit(OutputSink sink) {
+		try {
+			sink.commit();
+		} catch (IOException e) {
+			LOG.error(e.getMessage(), e);
+			throw new IllegalArgumentException(e);
 		}
+	}
+
+	/**
+	 * Apply the result of an {@link #exchange(URI, HttpMethod, Object, OutputSink)} to the shell: set the context variables,
+	 * follow the Location header and render the transcript. Must only be called from the shell's thread. The {@link
+	 * org.springframework.data.rest.shell.context.ResponseEvent} was already published by the request factory.
+	 */
+	private String complete(RequestHelper helper, String follow) {
+		final StringBuilder buffer = new StringBuilder();
+		URI requestUri = helper.requestUri;
+		HttpMethod method = helper.method;
+		ResponseEntity<String> response = helper.response;
+
+		helper.publishVariables();
 
 		if ("true".equals(follow) && response.getHeaders().containsKey(LOCATION_HEADER)) {
 			try {
@@ -381,46 +670,342 @@ public class HttpCommands implements CommandMarker, ApplicationEventPublisherAwa
 			}
 		}
 
+		contextCmds.variables.put("timing", helper.timing);
+
+		if (null != helper.sink) {
+			commit(helper.sink);
+			return "\n>> " + helper.sink.getTarget().getPath() + "\n" + outputEncoding(helper) + outputTiming(helper);
+		}
+
+		long renderStart = System.nanoTime();
 		outputRequest(method.name(), requestUri, buffer);
-		contextCmds.variables.put("response", response);
-		ctx.publishEvent(new ResponseEvent(requestUri, method, response));
-		outputResponse(response, buffer);
+		outputResponse(helper, buffer);
+		buffer.append(outputEncoding(helper));
+		helper.timing.addRender(System.nanoTime() - renderStart);
+		buffer.append(outputTiming(helper));
+		switch (response.getStatusCode()) {
+			case BAD_REQUEST:
+			case INTERNAL_SERVER_ERROR: {
+				System.err.println(buffer.toString());
+				return null;
+			}
+			default:
+				return buffer.toString();
+		}
+	}
 
-		if (null != outputPath) {
-			FileWriter writer = null;
-			try {
-				writer = new FileWriter(new File(outputPath));
-				writer.write(buffer.toString());
-				writer.flush();
-			} catch (IOException e) {
-				LOG.error(e.getMessage(), e);
-				throw new IllegalArgumentException(e);
-			} finally {
-				if (null != writer) {
-					try {
-						writer.close();
-					} catch (IOException e) {
+	private String getAllPages(final URI firstUri,
+														 final String outputPath,
+														 final OutputSink.Mode outputMode,
+														 final int parallel,
+														 final boolean ordered,
+														 final JsonFilter filter,
+														 boolean async) {
+		if (async) {
+			return submitUpload("GET all pages of " + firstUri, new JobCommands.Task<String>() {
+				@Override
+				public String run(JobCommands.Job<String> job) {
+					return fetchPages(firstUri, outputPath, outputMode, parallel, ordered, filter, job);
+				}
+			});
+		}
+		return fetchPages(firstUri, outputPath, outputMode, parallel, ordered, filter, null);
+	}
+
+	/**
+	 * Walk a paged collection by its {@code next} links. Each page is requested as soon as the one before it has been
+	 * read, so the next page is already on its way while the current one is rendered, but there's never more than one
+	 * page in flight and one being rendered. Pages are shown on the console as they arrive, or appended to the output
+	 * file one after the other. When running as a background {@code job}, pages only go to the output file and the
+	 * shell's variables are left alone.
+	 * <p>
+	 * With more than one {@code parallel} worker, the URIs of all the remaining pages are worked out from the first
+	 * page's {@link Page} block and its {@code next} link, and fetched through a pool of that many workers instead. If
+	 * the last of those pages still has a {@code next} link, the walk carries on following links from there.
+	 */
+	private String fetchPages(URI firstUri,
+														String outputPath,
+														OutputSink.Mode outputMode,
+														int parallel,
+														boolean ordered,
+														JsonFilter filter,
+														JobCommands.Job<String> job) {
+		ExecutorService fetcher = Executors.newFixedThreadPool(parallel, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger(0);
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "rest-shell-page-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		// Every page after the first one is added to the output file
+		OutputSink.Mode nextMode = (outputMode == OutputSink.Mode.PER_REQUEST ? outputMode : OutputSink.Mode.APPEND);
+
+		// Only a walk that starts at the first page can tell how many pages come after it
+		boolean fromStart = !UriComponentsBuilder.fromUri(firstUri).build(true).getQueryParams().containsKey("page");
+		PageWalk walk = new PageWalk(job, fromStart);
+		URI uri = firstUri;
+		List<URI> remaining = null;
+		long start = System.currentTimeMillis();
+		Future<RequestHelper> pending = fetchPage(fetcher, uri, outputPath, outputMode, filter);
+		try {
+			while (null != pending) {
+				RequestHelper helper;
+				try {
+					helper = pending.get();
+				} catch (ExecutionException e) {
+					Throwable cause = (null != e.getCause() ? e.getCause() : e);
+					LOG.error(cause.getMessage(), cause);
+					throw new IllegalStateException("Error fetching page " + (walk.pages + 1) + " from " + uri + ": " + cause.getMessage(), cause);
+				}
+				pending = null;
+
+				// Ask for the next page before rendering this one
+				URI next = (helper.response.getStatusCode().series() == HttpStatus.Series.SUCCESSFUL ? nextPageUri(helper.links) : null);
+				if (null != next && walk.pages == 0 && parallel > 1 && fromStart) {
+					remaining = remainingPageUris(next, pageOf(helper.resource()));
+					if (null != remaining) {
+						next = null;
 					}
 				}
+				if (null != next && !next.equals(uri) && !walk.isCancelled()) {
+					uri = next;
+					pending = fetchPage(fetcher, uri, outputPath, nextMode, filter);
+				}
+
+				walk.add(helper);
+
+				if (null == pending && null != remaining) {
+					next = fanOut(fetcher, remaining, parallel, ordered, outputPath, nextMode, filter, walk);
+					if (null != next && !remaining.contains(next) && !walk.isCancelled()) {
+						// The server has more pages than it said it had
+						uri = next;
+						pending = fetchPage(fetcher, uri, outputPath, nextMode, filter);
+					}
+					remaining = null;
+				}
 			}
-			return "\n>> " + outputPath + "\n";
-		} else {
-			switch (response.getStatusCode()) {
-				case BAD_REQUEST:
-				case INTERNAL_SERVER_ERROR: {
-					System.err.println(buffer.toString());
-					return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted after " + walk.pages + " pages", e);
+		} finally {
+			fetcher.shutdownNow();
+			if (null != pending) {
+				// Stopped early, so wait for the page on its way and throw it away
+				try {
+					discard(pending.get().sink);
+				} catch (Exception ignored) {
 				}
-				default:
-					return buffer.toString();
 			}
 		}
+
+		return walk.summary(outputPath, System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * Fetch the given pages through the pool, keeping at most twice as many pages in flight or waiting to be rendered
+	 * as there are workers. Pages are rendered in the order of their URIs or, if not {@code ordered}, as soon as each
+	 * one arrives.
+	 *
+	 * @return The {@code next} link of the last page, if it has one.
+	 */
+	private URI fanOut(ExecutorService fetcher,
+											List<URI> uris,
+											int parallel,
+											boolean ordered,
+											String outputPath,
+											OutputSink.Mode outputMode,
+											final JsonFilter filter,
+											PageWalk walk) throws InterruptedException {
+		int windowSize = 2 * parallel;
+		URI last = uris.get(uris.size() - 1);
+		URI after = null;
+		Iterator<URI> iter = uris.iterator();
+		CompletionService<RequestHelper> completed = new ExecutorCompletionService<RequestHelper>(fetcher);
+		Deque<Future<RequestHelper>> window = new ArrayDeque<Future<RequestHelper>>(windowSize);
+		Map<Future<RequestHelper>, URI> pageUris = new HashMap<Future<RequestHelper>, URI>();
+		try {
+			while (iter.hasNext() || !window.isEmpty()) {
+				while (iter.hasNext() && window.size() < windowSize && !walk.isCancelled()) {
+					URI uri = iter.next();
+					final OutputSink sink = (null != outputPath ? new OutputSink(outputPath, outputMode, outputSequence.incrementAndGet()) : null);
+					final URI pageUri = uri;
+					Future<RequestHelper> future = completed.submit(new Callable<RequestHelper>() {
+						@Override
+						public RequestHelper call() {
+							return exchange(pageUri, HttpMethod.GET, null, sink, filter);
+						}
+					});
+					window.add(future);
+					pageUris.put(future, uri);
+				}
+				if (window.isEmpty()) {
+					break;
+				}
+
+				Future<RequestHelper> future = (ordered ? window.peek() : completed.take());
+				window.remove(future);
+				URI uri = pageUris.remove(future);
+				try {
+					RequestHelper helper = future.get();
+					if (uri.equals(last) && helper.response.getStatusCode().series() == HttpStatus.Series.SUCCESSFUL) {
+						after = nextPageUri(helper.links);
+					}
+					walk.add(helper);
+				} catch (ExecutionException e) {
+					Throwable cause = (null != e.getCause() ? e.getCause() : e);
+					LOG.error(cause.getMessage(), cause);
+					walk.failures.add(uri + ": " + firstLine(cause.getMessage()));
+				}
+			}
+		} finally {
+			for (Future<RequestHelper> future : window) {
+				// Stopped early, so wait for the pages on their way and throw them away
+				try {
+					discard(future.get().sink);
+				} catch (Exception ignored) {
+				}
+			}
+		}
+		return after;
+	}
+
+	/**
+	 * Work out the URIs of the pages after the first one, by counting up the {@literal page} parameter of its {@code
+	 * next} link until the number of pages the server reported. Since {@code page} is the first page, its number is
+	 * where the server starts counting, 0 for Spring Data REST 2 or 1 for Spring Data REST 1.x, and there are {@code
+	 * totalPages - 1} pages after it either way.
+	 *
+	 * @return The URIs, or {@literal null} if they can't be worked out.
+	 */
+	private static List<URI> remainingPageUris(URI next, Page page) {
+		if (null == page || page.getTotalPages() <= 1) {
+			return null;
+		}
+		if (page.getNumber() != 0 && page.getNumber() != 1) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("The first page is numbered " + page.getNumber() + ", following next links instead");
+			}
+			return null;
+		}
+		UriComponents components = UriComponentsBuilder.fromUri(next).build(true);
+		String nextPage = components.getQueryParams().getFirst("page");
+		int first;
+		try {
+			first = Integer.parseInt(nextPage);
+		} catch (NumberFormatException e) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Can't tell the page number of " + next + ", following next links instead");
+			}
+			return null;
+		}
+		int count = page.getTotalPages() - 1;
+		List<URI> uris = new ArrayList<URI>(count);
+		for (int i = 0; i < count; i++) {
+			UriComponentsBuilder ucb = UriComponentsBuilder.fromUri(next).replaceQueryParam("page", first + i);
+			if (!components.getQueryParams().containsKey("size") && !components.getQueryParams().containsKey("limit")) {
+				ucb.replaceQueryParam("size", page.getSize());
+			}
+			uris.add(ucb.build(true).toUri());
+		}
+		return uris;
+	}
+
+	private Future<RequestHelper> fetchPage(ExecutorService fetcher,
+																					final URI uri,
+																					String outputPath,
+																					OutputSink.Mode outputMode,
+																					final JsonFilter filter) {
+		final OutputSink sink = (null != outputPath ? new OutputSink(outputPath, outputMode, outputSequence.incrementAndGet()) : null);
+		return fetcher.submit(new Callable<RequestHelper>() {
+			@Override
+			public RequestHelper call() {
+				return exchange(uri, HttpMethod.GET, null, sink, filter);
+			}
+		});
+	}
+
+	/**
+	 * Find the link to the next page, whose rel is either {@literal next} or, as Spring Data REST names it, ends with
+	 * {@literal .next}.
+	 */
+	static URI nextPageUri(List<Link> links) {
+		for (Link link : links) {
+			String rel = link.getRel();
+			if (null != rel && null != link.getHref() && ("next".equals(rel) || rel.endsWith(".next"))) {
+				try {
+					return new URI(link.getHref());
+				} catch (URISyntaxException e) {
+					throw new IllegalStateException("Invalid next page link " + link.getHref(), e);
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Get the links of a resource, from either its {@literal links} array or a HAL {@literal _links} object.
+	 */
+	@SuppressWarnings({"unchecked"})
+	static List<Link> linksOf(Object resource) {
+		List<Link> links = new ArrayList<Link>();
+		if (!(resource instanceof Map)) {
+			return links;
+		}
+		Object list = ((Map) resource).get("links");
+		if (list instanceof List) {
+			for (Object o : (List) list) {
+				if (o instanceof Map && ((Map) o).get("href") instanceof String) {
+					links.add(new Link((String) ((Map) o).get("href"), String.valueOf(((Map) o).get("rel"))));
+				}
+			}
+		}
+		Object hal = ((Map) resource).get("_links");
+		if (hal instanceof Map) {
+			for (Map.Entry<String, Object> entry : ((Map<String, Object>) hal).entrySet()) {
+				List<Object> values = (entry.getValue() instanceof List
+															 ? (List<Object>) entry.getValue()
+															 : Collections.singletonList(entry.getValue()));
+				for (Object o : values) {
+					if (o instanceof Map && ((Map) o).get("href") instanceof String) {
+						links.add(new Link((String) ((Map) o).get("href"), entry.getKey()));
+					}
+				}
+			}
+		}
+		return links;
+	}
+
+	/**
+	 * Get the {@literal page} block of a paged collection.
+	 */
+	private Page pageOf(Object resource) {
+		Object page = (resource instanceof Map ? ((Map) resource).get("page") : null);
+		if (!(page instanceof Map)) {
+			return null;
+		}
+		try {
+			return mapper.convertValue(page, Page.class);
+		} catch (IllegalArgumentException e) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Not a page: " + page);
+			}
+			return null;
+		}
 	}
 
 	private String readFileOrFiles(final HttpMethod method,
 																 final String fromPath,
 																 final String follow,
-																 final String outputPath) throws IOException {
+																 final String outputPath,
+																 final String outputMode,
+																 final int concurrency,
+																 final int batchSize,
+																 final String raw,
+																 final Boolean validate,
+																 final boolean async) throws IOException {
 		String output;
 		File fromFile = new File(fromPath);
 		if (!fromFile.exists()) {
@@ -428,35 +1013,31 @@ public class HttpCommands implements CommandMarker, ApplicationEventPublisherAwa
 		}
 
 		if (fromFile.isDirectory()) {
-			final AtomicInteger numItems = new AtomicInteger(0);
-
 			FilenameFilter jsonFilter = new FilenameFilter() {
 				@Override
 				public boolean accept(File file, String s) {
 					return s.endsWith(".json");
 				}
 			};
-			for (File file : fromFile.listFiles(jsonFilter)) {
-				Object body = readFile(file);
-				String response = execute(method,
-																	body,
-																	follow,
-																	outputPath);
-				if (LOG.isDebugEnabled()) {
-					LOG.debug(response);
-				}
-				if (null != response) {
-					numItems.incrementAndGet();
-				}
-			}
-
-			output = "\n" + numItems.get() + " files successfully uploaded to the server using " + method + "\n";
+			output = uploadFiles(method,
+													 fromFile.listFiles(jsonFilter),
+													 follow,
+													 outputPath,
+													 OutputSink.mode(outputMode, OutputSink.Mode.APPEND),
+													 Math.max(1, concurrency),
+													 Math.max(1, batchSize),
+													 raw,
+													 validate,
+													 async);
 		} else {
-			Object body = readFile(fromFile);
+			Object body = readFile(fromFile, raw, validate);
 			String response = execute(method,
 																body,
 																follow,
-																outputPath);
+																outputPath,
+																OutputSink.mode(outputMode, OutputSink.Mode.OVERWRITE),
+																null,
+																async);
 			if (LOG.isDebugEnabled()) {
 				LOG.debug(response);
 			}
@@ -467,33 +1048,469 @@ public class HttpCommands implements CommandMarker, ApplicationEventPublisherAwa
 		return output;
 	}
 
-	private Object readFile(File file) throws IOException {
-		StringBuilder builder = new StringBuilder();
-		FileReader reader = new FileReader(file);
-		char[] buffer = new char[8 * 1024];
-		int read;
-		while (-1 < (read = reader.read(buffer))) {
-			String s = new String(buffer, 0, read);
-			builder.append(s);
+	/**
+	 * Upload every file through a pool of {@code concurrency} workers, keeping at most {@code batchSize} files read
+	 * and queued at once.
+	 */
+	private String uploadFiles(final HttpMethod method,
+														 final File[] files,
+														 final String follow,
+														 final String outputPath,
+														 final OutputSink.Mode outputMode,
+														 final int concurrency,
+														 final int batchSize,
+														 final String raw,
+														 final Boolean validate,
+														 final boolean async) {
+		List<Upload> uploads = new ArrayList<Upload>(files.length);
+		for (int i = 0; i < files.length; i++) {
+			final File file = files[i];
+			uploads.add(new Upload(file.getPath(), i + 1) {
+				@Override
+				Object readBody() throws IOException {
+					return readFile(file, raw, validate);
+				}
+			});
+		}
+		final URI uploadUri = requestUri;
+		final Iterator<Upload> iter = uploads.iterator();
+		if (async) {
+			return submitUpload(method + " " + files.length + " files to " + uploadUri, new JobCommands.Task<String>() {
+				@Override
+				public String run(JobCommands.Job<String> job) {
+					return upload(uploadUri, method, iter, files.length, "files", follow, outputPath, outputMode, concurrency, batchSize, null, job);
+				}
+			});
+		}
+		return upload(uploadUri, method, iter, files.length, "files", follow, outputPath, outputMode, concurrency, batchSize, null, null);
+	}
+
+	/**
+	 * Send every element of a single JSON array, or of a file of newline-delimited JSON, as its own request. Elements are
+	 * read one at a time with the streaming parser, so no more than {@code batchSize} of them are ever in memory. How far
+	 * the import has got is saved to a checkpoint next to the file, which {@code resume} picks up again.
+	 */
+	private String uploadStream(final HttpMethod method,
+															final String fromPath,
+															final String follow,
+															final String outputPath,
+															final String outputMode,
+															final int concurrency,
+															final int batchSize,
+															final boolean resume,
+															final boolean async) throws IOException {
+		final File file = new File(fromPath);
+		if (!file.isFile()) {
+			throw new IllegalArgumentException("File " + fromPath + " not found.");
 		}
 
-		String bodyAsString = builder.toString();
-		Object body = "";
-		if (bodyAsString.length() > 0) {
-			try {
-				if (bodyAsString.charAt(0) == '{') {
-					body = mapper.readValue(bodyAsString, Map.class);
-				} else if (bodyAsString.charAt(0) == '[') {
-					body = mapper.readValue(bodyAsString, List.class);
+		ImportCheckpoint checkpoint = new ImportCheckpoint(file);
+		if (checkpoint.exists()) {
+			if (!resume) {
+				throw new IllegalStateException("Found checkpoint " + checkpoint.getFile() + " from an earlier import. "
+						+ "Use --resume to continue it, or delete it to start over.");
+			}
+			checkpoint.load();
+			if (LOG.isInfoEnabled()) {
+				LOG.info("Resuming import of " + file + " after element " + checkpoint.getIndex() + " at byte " + checkpoint.getOffset());
+			}
+		}
+
+		final JsonStreamReader reader = new JsonStreamReader(file,
+																												 mapper.getJsonFactory(),
+																												 checkpoint.getOffset(),
+																												 checkpoint.getIndex());
+		final ImportCheckpoint progress = checkpoint;
+		final Iterator<Upload> uploads = new Iterator<Upload>() {
+			private Upload next;
+
+			@Override
+			public boolean hasNext() {
+				if (null == next) {
+					final byte[] body;
+					try {
+						body = reader.next();
+					} catch (IOException e) {
+						throw new IllegalStateException(e.getMessage(), e);
+					}
+					if (null == body) {
+						return false;
+					}
+					final long index = reader.getIndex();
+					final long offset = reader.getOffset();
+					next = new Upload(file.getName() + "#" + index, index) {
+						@Override
+						Object readBody() {
+							return body;
+						}
+
+						@Override
+						void completed() {
+							progress.update(offset, index);
+						}
+					};
+				}
+				return true;
+			}
+
+			@Override
+			public Upload next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Upload upload = next;
+				next = null;
+				return upload;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+
+		final URI uploadUri = requestUri;
+		if (async) {
+			return submitUpload(method + " " + file + " to " + uploadUri, new JobCommands.Task<String>() {
+				@Override
+				public String run(JobCommands.Job<String> job) throws IOException {
+					try {
+						return upload(uploadUri,
+													method,
+													uploads,
+													-1,
+													"entities",
+													follow,
+													outputPath,
+													OutputSink.mode(outputMode, OutputSink.Mode.APPEND),
+													Math.max(1, concurrency),
+													Math.max(1, batchSize),
+													progress,
+													job);
+					} finally {
+						reader.close();
+					}
+				}
+			});
+		}
+		try {
+			return upload(uploadUri,
+										method,
+										uploads,
+										-1,
+										"entities",
+										follow,
+										outputPath,
+										OutputSink.mode(outputMode, OutputSink.Mode.APPEND),
+										Math.max(1, concurrency),
+										Math.max(1, batchSize),
+										checkpoint,
+										null);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Send every upload through a pool of {@code concurrency} workers, keeping at most {@code batchSize} bodies read and
+	 * queued at once. Responses are applied to the shell in the order the uploads were submitted, no matter in which
+	 * order they complete, so {@code follow} and {@code output} behave exactly as they would for a sequential upload.
+	 * If a {@code checkpoint} is given, it's moved forward as the server responds, but never past the first upload that
+	 * failed, and it's only removed once every upload has succeeded. When running
+	 * as a background {@code job}, responses only go to their output files: progress is reported to the job instead of
+	 * the console, and the shell's variables and base URI are left alone.
+	 */
+	private String upload(final URI uploadUri,
+												final HttpMethod method,
+												Iterator<Upload> uploads,
+												long total,
+												String unit,
+												String follow,
+												String outputPath,
+												OutputSink.Mode outputMode,
+												int concurrency,
+												int batchSize,
+												ImportCheckpoint checkpoint,
+												JobCommands.Job<String> job) {
+		final AtomicInteger inFlight = new AtomicInteger(0);
+		ExecutorService workers = Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger(0);
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "rest-shell-upload-" + count.incrementAndGet());
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		Deque<Upload> window = new ArrayDeque<Upload>(batchSize);
+		List<String> failures = new ArrayList<String>();
+		String readError = null;
+		boolean exhausted = false;
+		boolean finished = false;
+		long completed = 0;
+		long start = System.currentTimeMillis();
+		long lastProgress = start;
+		try {
+			while (!exhausted || !window.isEmpty()) {
+				while (!exhausted && window.size() < batchSize) {
+					final Upload upload;
+					try {
+						if (!uploads.hasNext()) {
+							exhausted = true;
+							finished = true;
+							break;
+						}
+						upload = uploads.next();
+					} catch (RuntimeException e) {
+						// Can't read any further, so stop here and let what's already queued finish
+						LOG.error(e.getMessage(), e);
+						readError = firstLine(e.getMessage());
+						exhausted = true;
+						break;
+					}
+					final OutputSink sink = (null != outputPath ? new OutputSink(outputPath, outputMode, (int) upload.sequence) : null);
+					upload.result = workers.submit(new Callable<RequestHelper>() {
+						@Override
+						public RequestHelper call() throws Exception {
+							inFlight.incrementAndGet();
+							try {
+								return exchange(uploadUri, method, upload.readBody(), sink);
+							} finally {
+								inFlight.decrementAndGet();
+							}
+						}
+					});
+					window.add(upload);
+				}
+				if (window.isEmpty()) {
+					break;
+				}
+
+				Upload head = window.peek();
+				try {
+					RequestHelper helper = head.result.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+					window.poll();
+					completed++;
+					if (null == job) {
+						String response = complete(helper, follow);
+						if (LOG.isDebugEnabled()) {
+							LOG.debug(response);
+						}
+					} else if (null != helper.sink) {
+						commit(helper.sink);
+					}
+					HttpStatus status = helper.response.getStatusCode();
+					if (status.series() == HttpStatus.Series.CLIENT_ERROR || status.series() == HttpStatus.Series.SERVER_ERROR) {
+						failures.add(head.name + ": " + status.value() + " " + status.name());
+					} else if (failures.isEmpty()) {
+						head.completed();
+					}
+				} catch (TimeoutException ignored) {
+					// Still waiting on the oldest upload, fall through and report progress
+				} catch (ExecutionException e) {
+					// The server never answered, so the checkpoint stays before this upload
+					window.poll();
+					completed++;
+					Throwable cause = (null != e.getCause() ? e.getCause() : e);
+					LOG.error(cause.getMessage(), cause);
+					failures.add(head.name + ": " + firstLine(cause.getMessage()));
+				}
+
+				long now = System.currentTimeMillis();
+				if (total != 1 && now - lastProgress >= PROGRESS_INTERVAL) {
+					String line = progress(completed, total, unit, inFlight.get(), failures.size(), now - start);
+					if (null == job) {
+						System.out.print("\r" + line);
+						System.out.flush();
+					} else {
+						job.setProgress(line);
+					}
+					if (null != checkpoint) {
+						saveCheckpoint(checkpoint);
+					}
+					lastProgress = now;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			finished = false;
+			throw new IllegalStateException("Upload interrupted after " + completed + " " + unit, e);
+		} finally {
+			workers.shutdownNow();
+			if (!failures.isEmpty()) {
+				// Keep the checkpoint so the failed uploads can be sent again
+				finished = false;
+			}
+			if (null != checkpoint) {
+				if (finished) {
+					checkpoint.delete();
 				} else {
-					body = bodyAsString;
+					saveCheckpoint(checkpoint);
 				}
-			} catch (JsonParseException e) {
-				LOG.error(e.getMessage(), e);
-				throw new IllegalStateException(e.getMessage(), e);
 			}
 		}
-		return body;
+
+		long elapsed = System.currentTimeMillis() - start;
+		if (null != job) {
+			job.setProgress(progress(completed, total, unit, 0, failures.size(), elapsed));
+		}
+		StringBuilder sb = new StringBuilder(OsUtils.LINE_SEPARATOR);
+		sb.append(completed - failures.size())
+			.append(" ")
+			.append(unit)
+			.append(" successfully uploaded to the server using ")
+			.append(method)
+			.append(" (")
+			.append(progress(completed, total, unit, 0, failures.size(), elapsed))
+			.append(")")
+			.append(OsUtils.LINE_SEPARATOR);
+		if (!failures.isEmpty()) {
+			sb.append(failures.size())
+				.append(" ")
+				.append(unit)
+				.append(" failed:")
+				.append(OsUtils.LINE_SEPARATOR);
+			for (String failure : failures) {
+				sb.append("  ")
+					.append(failure)
+					.append(OsUtils.LINE_SEPARATOR);
+			}
+		}
+		if (null != readError) {
+			sb.append("Could not read past ")
+				.append(completed)
+				.append(" ")
+				.append(unit)
+				.append(": ")
+				.append(readError)
+				.append(OsUtils.LINE_SEPARATOR);
+		}
+		if (null != checkpoint && !finished) {
+			if (failures.isEmpty()) {
+				sb.append("Stopped after element ")
+					.append(checkpoint.getIndex())
+					.append(". Checkpoint saved to ")
+					.append(checkpoint.getFile())
+					.append(", use --resume to continue.")
+					.append(OsUtils.LINE_SEPARATOR);
+			} else {
+				sb.append("Checkpoint saved to ")
+					.append(checkpoint.getFile())
+					.append(" after element ")
+					.append(checkpoint.getIndex())
+					.append(", the last one before the first failure. Use --resume to send the rest again.")
+					.append(OsUtils.LINE_SEPARATOR);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void saveCheckpoint(ImportCheckpoint checkpoint) {
+		try {
+			checkpoint.save();
+		} catch (IOException e) {
+			LOG.error("Error saving checkpoint " + checkpoint.getFile() + ": " + e.getMessage(), e);
+		}
+	}
+
+	private static String firstLine(String msg) {
+		msg = String.valueOf(msg);
+		int eol = msg.indexOf('\n');
+		return (eol > 0 ? msg.substring(0, eol) : msg);
+	}
+
+	private static String progress(long completed, long total, String unit, int inFlight, int failed, long elapsed) {
+		double rate = (elapsed > 0 ? completed * 1000.0 / elapsed : 0);
+		return String.format("%s %s, %.1f %s/sec, %d in flight, %d failed",
+												 (total >= 0 ? completed + "/" + total : String.valueOf(completed)),
+												 unit,
+												 rate,
+												 unit,
+												 inFlight,
+												 failed);
+	}
+
+	/**
+	 * Work out what to send for the given file. Files are returned as-is to be streamed from disk unless they hold JSON
+	 * that needs to be parsed first: because {@code raw} is {@literal false}, because the request isn't JSON, or because
+	 * the file isn't strict JSON (e.g. uses unquoted field names) and must be normalized.
+	 */
+	private Object readFile(File file, String raw, Boolean validate) throws IOException {
+		if (file.length() == 0) {
+			return "";
+		}
+
+		int first;
+		InputStream in = new FileInputStream(file);
+		try {
+			first = in.read();
+		} finally {
+			in.close();
+		}
+		boolean json = (first == '{' || first == '[');
+
+		if ("true".equals(raw)) {
+			if (json && Boolean.TRUE.equals(validate) && !isValidJson(file)) {
+				throw new IllegalStateException("File " + file + " does not contain valid JSON");
+			}
+			return file;
+		}
+		if (!json) {
+			// Not JSON, so it would be sent exactly as it is on disk anyway
+			return file;
+		}
+		if ("auto".equals(raw)
+				&& requestContentType().getSubtype().endsWith("json")
+				&& (Boolean.FALSE.equals(validate) || isValidJson(file))) {
+			return file;
+		}
+
+		try {
+			return mapper.readValue(file, (first == '{' ? Map.class : List.class));
+		} catch (JsonParseException e) {
+			LOG.error(e.getMessage(), e);
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Check the file is well-formed JSON by running it through the streaming parser without building anything.
+	 */
+	private boolean isValidJson(File file) throws IOException {
+		JsonParser parser = STRICT_JSON.createJsonParser(file);
+		try {
+			while (null != parser.nextToken()) {
+			}
+			return true;
+		} catch (JsonParseException e) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("File " + file + " is not valid JSON: " + e.getMessage());
+			}
+			return false;
+		} finally {
+			parser.close();
+		}
+	}
+
+	private MediaType requestContentType() {
+		MediaType contentType = configCmds.getHeaders().getContentType();
+		return (null != contentType ? contentType : MediaType.APPLICATION_JSON);
+	}
+
+	/**
+	 * Work out the URI for a path or rel and query parameters in the same way the HTTP commands do.
+	 */
+	URI createUri(PathOrRel path, Map params) {
+		UriComponentsBuilder ucb = createUriComponentsBuilder(path.getPath());
+		if (null != params) {
+			for (Object key : params.keySet()) {
+				Object o = params.get(key);
+				ucb.queryParam(key.toString(), encode(o.toString()));
+			}
+		}
+		return ucb.build().toUri();
 	}
 
 	private UriComponentsBuilder createUriComponentsBuilder(String path) {
@@ -526,13 +1543,46 @@ public class HttpCommands implements CommandMarker, ApplicationEventPublisherAwa
 		buffer.append(OsUtils.LINE_SEPARATOR);
 	}
 
-	private void outputResponse(ResponseEntity<String> response, StringBuilder buffer) {
+	private void outputResponse(RequestHelper helper, StringBuilder buffer) {
+		ResponseEntity<String> response = helper.response;
+		outputResponseHeaders(response.getStatusCode(), response.getHeaders(), buffer);
+		if (null == response.getBody()) {
+			return;
+		}
+		MediaType contentType = response.getHeaders().getContentType();
+		if (helper.rendered || null == contentType) {
+			// JSON bodies were already pretty-printed when they were read
+			buffer.append(response.getBody());
+		} else {
+			final Formatter formatter = formatProvider.getFormatter(contentType.getSubtype());
+			buffer.append(formatter.format(response.getBody()));
+		}
+	}
+
+	private static String outputEncoding(RequestHelper helper) {
+		if (null == helper.contentEncoding || helper.wireLength < 0) {
+			return "";
+		}
+		return String.format("%n(%s: %,d bytes on the wire, %,d bytes decoded)%n",
+												 helper.contentEncoding,
+												 helper.wireLength,
+												 helper.decodedLength);
+	}
+
+	private String outputTiming(RequestHelper helper) {
+		if (!showTiming) {
+			return "";
+		}
+		return String.format("%n< %s: %s%n", TIMING_HEADER, helper.timing);
+	}
+
+	private void outputResponseHeaders(HttpStatus status, HttpHeaders headers, StringBuilder buffer) {
 		buffer.append("< ")
-					.append(response.getStatusCode().value())
+					.append(status.value())
 					.append(" ")
-					.append(response.getStatusCode().name())
+					.append(status.name())
 					.append(OsUtils.LINE_SEPARATOR);
-		for (Map.Entry<String, List<String>> entry : response.getHeaders().entrySet()) {
+		for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
 			buffer.append("< ")
 						.append(entry.getKey())
 						.append(": ");
@@ -548,30 +1598,164 @@ public class HttpCommands implements CommandMarker, ApplicationEventPublisherAwa
 			buffer.append(OsUtils.LINE_SEPARATOR);
 		}
 		buffer.append("< ").append(OsUtils.LINE_SEPARATOR);
-		if (null != response.getBody()) {
-			final Formatter formatter = formatProvider.getFormatter(response.getHeaders().getContentType().getSubtype());
-			buffer.append(formatter.format(response.getBody()));
+	}
+
+	/**
+	 * One request of a bulk upload. The body is read by the worker that sends it.
+	 */
+	private abstract static class Upload {
+		private final String                name;
+		private final long                  sequence;
+		private       Future<RequestHelper> result;
+
+		private Upload(String name, long sequence) {
+			this.name = name;
+			this.sequence = sequence;
+		}
+
+		abstract Object readBody() throws IOException;
+
+		/**
+		 * Called from the shell's thread once the server has accepted this upload and every one submitted before it, in
+		 * the order the uploads were submitted.
+		 */
+		void completed() {
+		}
+	}
+
+	/**
+	 * The pages of a collection seen so far by {@code get --all-pages}, which renders each one as it's added.
+	 */
+	private class PageWalk {
+		private final JobCommands.Job<String> job;
+		private final boolean                 fromStart;
+		private final List<String>            failures = new ArrayList<String>();
+		private       int                     pages;
+		private       long                    elements;
+		private       boolean                 counted  = true;
+		private       Page                    page;
+
+		private PageWalk(JobCommands.Job<String> job, boolean fromStart) {
+			this.job = job;
+			this.fromStart = fromStart;
+		}
+
+		private boolean isCancelled() {
+			return null != job && job.isCancelled();
+		}
+
+		/**
+		 * Count and render a page. Must only be called from the thread that runs the walk.
+		 */
+		private void add(RequestHelper helper) {
+			pages++;
+			HttpStatus status = helper.response.getStatusCode();
+			if (status.series() != HttpStatus.Series.SUCCESSFUL) {
+				failures.add(helper.requestUri + ": " + status.value() + " " + status.name());
+			}
+			if (helper.result instanceof Map) {
+				Object content = ((Map) helper.result).get("content");
+				if (content instanceof List) {
+					elements += ((List) content).size();
+				}
+			} else {
+				counted = false;
+			}
+			if (null == page) {
+				page = pageOf(helper.resource());
+			}
+
+			if (null == job) {
+				String output = complete(helper, "false");
+				if (null == helper.sink && null != output) {
+					System.out.println(output);
+				}
+			} else {
+				if (null != helper.sink) {
+					commit(helper.sink);
+				}
+				job.setProgress(pages + (null != page ? "/" + page.getTotalPages() : "") + " pages");
+			}
+		}
+
+		private String summary(String outputPath, long elapsed) {
+			StringBuilder sb = new StringBuilder(OsUtils.LINE_SEPARATOR);
+			sb.append(pages)
+				.append(pages == 1 ? " page" : " pages");
+			if (counted) {
+				sb.append(", ")
+					.append(elements)
+					.append(" elements");
+			}
+			if (null != page) {
+				sb.append(" (the server reports ")
+					.append(page.getTotalElements())
+					.append(" in ")
+					.append(page.getTotalPages())
+					.append(" pages)");
+			}
+			sb.append(String.format(" retrieved in %.1fs", elapsed / 1000.0));
+			if (null != outputPath) {
+				sb.append(" >> ")
+					.append(new File(outputPath).getPath());
+			}
+			sb.append(OsUtils.LINE_SEPARATOR);
+			if (fromStart && null != page && pages != page.getTotalPages() && !isCancelled()) {
+				sb.append("Warning: retrieved ")
+					.append(pages)
+					.append(pages == 1 ? " page" : " pages")
+					.append(", but the server reports ")
+					.append(page.getTotalPages())
+					.append(OsUtils.LINE_SEPARATOR);
+			}
+			if (!failures.isEmpty()) {
+				sb.append(failures.size())
+					.append(failures.size() == 1 ? " page" : " pages")
+					.append(" failed:")
+					.append(OsUtils.LINE_SEPARATOR);
+				for (String failure : failures) {
+					sb.append("  ")
+						.append(failure)
+						.append(OsUtils.LINE_SEPARATOR);
+				}
+			}
+			return sb.toString();
 		}
 	}
 
 	private class RequestHelper implements RequestCallback,
 																				 ResponseExtractor<ResponseEntity<String>> {
 
+		private final URI        requestUri;
+		private final HttpMethod method;
 		private Object    body;
 		private MediaType contentType;
 		private HttpMessageConverterExtractor<String> extractor =
 				new HttpMessageConverterExtractor<String>(String.class,
 																									restTemplate.getMessageConverters());
-		private ObjectMapper                          mapper    = new ObjectMapper();
-
-		{
-			mapper.configure(SerializationConfig.Feature.INDENT_OUTPUT, true);
-		}
+		private ResponseEntity<String> response;
+		private HttpHeaders            responseHeaders;
+		private Object                 result;
+		private boolean                rendered;
+		private boolean                complete;
+		private byte[]                 bodyBytes;
+		private String                 contentEncoding;
+		private long                   wireLength;
+		private long                   decodedLength;
+		private RequestTiming          timing;
+		private long                   renderNanos;
+		private OutputSink             sink;
+		private JsonFilter             filter;
+		private Map<String, Object>    envelope;
+		private List<Link>             links = new ArrayList<Link>();
 
-		private RequestHelper() {
+		private RequestHelper(URI requestUri, HttpMethod method) {
+			this.requestUri = requestUri;
+			this.method = method;
 		}
 
-		private RequestHelper(Object body, MediaType contentType) {
+		private RequestHelper(URI requestUri, HttpMethod method, Object body, MediaType contentType) {
+			this(requestUri, method);
 			this.body = body;
 			this.contentType = contentType;
 		}
@@ -587,6 +1771,17 @@ public class HttpCommands implements CommandMarker, ApplicationEventPublisherAwa
 					request.getBody().write(((String) body).getBytes());
 				} else if (body instanceof byte[]) {
 					request.getBody().write((byte[]) body);
+				} else if (body instanceof File) {
+					if (request instanceof StreamingClientHttpRequest) {
+						((StreamingClientHttpRequest) request).setBody((File) body);
+					} else {
+						InputStream in = new FileInputStream((File) body);
+						try {
+							StreamUtils.copy(in, request.getBody());
+						} finally {
+							in.close();
+						}
+					}
 				} else {
 					try {
 						mapper.writeValue(request.getBody(), body);
@@ -599,77 +1794,251 @@ public class HttpCommands implements CommandMarker, ApplicationEventPublisherAwa
 			//contextCmds.variables.put("request", request);
 		}
 
-		@SuppressWarnings({"unchecked"})
 		@Override
 		public ResponseEntity<String> extractData(ClientHttpResponse response) throws IOException {
-			String body = extractor.extractData(response);
-			contextCmds.variables.put("requestUrl", requestUri.toString());
-			contextCmds.variables.put("responseHeaders", response.getHeaders());
-			contextCmds.variables.put("responseBody", null);
+			timing = (response instanceof TimedClientHttpResponse ? ((TimedClientHttpResponse) response).getTiming() : null);
+			if (null == timing) {
+				// Served from the cache without going to the server
+				timing = new RequestTiming();
+			}
+			long start = System.nanoTime();
+			long downloaded = timing.getDownloadNanos();
+			renderNanos = 0;
+
+			ResponseEntity<String> entity = (null != sink ? extractToSink(response) : extractBody(response));
+
+			// Reading and parsing the body happen together, so tell them apart by the time spent waiting for data
+			long elapsed = System.nanoTime() - start;
+			timing.addParse(elapsed - (timing.getDownloadNanos() - downloaded) - renderNanos);
+			timing.addRender(renderNanos);
+
+			contentEncoding = null;
+			if (response instanceof DecodingClientHttpResponse) {
+				DecodingClientHttpResponse decoding = (DecodingClientHttpResponse) response;
+				contentEncoding = decoding.getContentEncoding();
+				wireLength = decoding.getWireLength();
+				decodedLength = decoding.getDecodedLength();
+			}
+
+			return entity;
+		}
+
+		private ResponseEntity<String> extractBody(ClientHttpResponse response) throws IOException {
+			responseHeaders = response.getHeaders();
+			result = null;
+			rendered = false;
+			complete = true;
+			links.clear();
+
+			bodyBytes = null;
 
 			MediaType ct = response.getHeaders().getContentType();
-			if (null != body && null != ct && ct.getSubtype().endsWith("json")) {
-				// Pretty-print the JSON
-				try {
-					if (body.startsWith("{")) {
-						lastResult = mapper.readValue(body.getBytes(), Map.class);
-					} else if (body.startsWith("[")) {
-						lastResult = mapper.readValue(body.getBytes(), List.class);
-					} else {
-						lastResult = new String(body.getBytes());
+			if (null == ct || !ct.getSubtype().endsWith("json")) {
+				String text = extractor.extractData(response);
+				bodyBytes = (null != text ? text.getBytes(UTF8) : null);
+				return new ResponseEntity<String>(text, response.getHeaders(), response.getStatusCode());
+			}
+
+			// Copy the body token by token straight off the wire into the transcript, without building the objects it
+			// stands for. responseBody is an index over the transcript, which only decodes what an expression reads of it.
+			PushbackInputStream in = new PushbackInputStream(response.getBody());
+			int first = in.read();
+			if (first < 0) {
+				return new ResponseEntity<String>(response.getHeaders(), response.getStatusCode());
+			}
+			in.unread(first);
+
+			String body;
+			try {
+				long downloaded = timing.getDownloadNanos();
+				long renderStart = System.nanoTime();
+				// Indenting makes the body about half as large again, while a filter keeps only a little of it
+				long length = (null == filter ? response.getHeaders().getContentLength() : -1);
+				ByteArrayOutputStream out = new ByteArrayOutputStream(length > 0 && length < Integer.MAX_VALUE / 2
+																																? (int) (length * 3 / 2)
+																																: 8192);
+				if (null != filter) {
+					filterBody(in, out);
+				} else {
+					JsonParser parser = mapper.getJsonFactory().createJsonParser(in);
+					JsonGenerator gen = mapper.getJsonFactory().createJsonGenerator(out, JsonEncoding.UTF8);
+					gen.useDefaultPrettyPrinter();
+					try {
+						parser.nextToken();
+						gen.copyCurrentStructure(parser);
+					} finally {
+						gen.close();
+						parser.close();
 					}
-				} catch (JsonParseException e) {
-					LOG.error(e.getMessage(), e);
-					throw new IllegalStateException(e.getMessage(), e);
 				}
+				bodyBytes = out.toByteArray();
+				body = new String(bodyBytes, UTF8);
+				renderNanos = System.nanoTime() - renderStart - (timing.getDownloadNanos() - downloaded);
+			} catch (JsonParseException e) {
+				LOG.error(e.getMessage(), e);
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+			result = JsonIndex.parse(bodyBytes);
+			if (null == filter) {
+				links = linksOf(result);
+			}
+			rendered = true;
 
-				contextCmds.variables.put("responseBody", lastResult);
+			return new ResponseEntity<String>(body, response.getHeaders(), response.getStatusCode());
+		}
 
-				if (lastResult instanceof Map && ((Map) lastResult).containsKey("links")) {
-					Links linksobj;
-					if (contextCmds.variables.containsKey("links")) {
-						linksobj = (Links) contextCmds.variables.get("links");
-					} else {
-						linksobj = new Links();
-						contextCmds.evalCtx.addPropertyAccessor(linksobj.getPropertyAccessor());
-					}
-					linksobj.getLinks().clear();
-					for (Map<String, String> linkmap : (List<Map<String, String>>) ((Map) lastResult).get("links")) {
-						linksobj.addLink(new Link(linkmap.get("href"), linkmap.get("rel")));
+		/**
+		 * Pretty-print the parts of a JSON body that match the {@link #filter} as an array, skipping everything else
+		 * while it's parsed. The links and page block of the top-level resource are picked out on the way through, so
+		 * that paging still works.
+		 */
+		private void filterBody(InputStream in, OutputStream out) throws IOException {
+			final JsonGenerator gen = mapper.getJsonFactory().createJsonGenerator(out, JsonEncoding.UTF8);
+			gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+			gen.useDefaultPrettyPrinter();
+			JsonParser parser = mapper.getJsonFactory().createJsonParser(in);
+			final int size = filter.size();
+			envelope = new HashMap<String, Object>();
+			try {
+				gen.writeStartArray();
+				if (null != parser.nextToken()) {
+					filter.plus(ENVELOPE_FILTER).select(parser, new JsonFilter.Handler() {
+						@Override
+						public void match(int path, JsonParser parser) throws IOException {
+							if (path < size) {
+								gen.copyCurrentStructure(parser);
+							} else {
+								envelope.put(ENVELOPE_FIELDS[path - size], mapper.readValue(parser, Object.class));
+							}
+						}
+					});
+				}
+				gen.writeEndArray();
+			} finally {
+				gen.close();
+				parser.close();
+			}
+			links = linksOf(envelope);
+		}
+
+		/**
+		 * The resource that was asked for, or, if the body was filtered, just its links and page block.
+		 */
+		private Object resource() {
+			return (null != filter ? envelope : result);
+		}
+
+		/**
+		 * Write the transcript straight to the {@link OutputSink} while the body is read, keeping only a bounded preview
+		 * of the body in memory. The preview is parsed into {@code responseBody} only when it holds the whole body.
+		 */
+		private ResponseEntity<String> extractToSink(ClientHttpResponse response) throws IOException {
+			responseHeaders = response.getHeaders();
+			result = null;
+			complete = false;
+			bodyBytes = null;
+			links.clear();
+
+			StringBuilder head = new StringBuilder();
+			outputRequest(method.name(), requestUri, head);
+			outputResponseHeaders(response.getStatusCode(), response.getHeaders(), head);
+			OutputStream transcript = sink.open();
+			transcript.write(head.toString().getBytes());
+
+			OutputSink.PreviewInputStream body = new OutputSink.PreviewInputStream(response.getBody(),
+																																							 OutputSink.PREVIEW_LIMIT);
+			MediaType ct = response.getHeaders().getContentType();
+			boolean json = (null != ct && ct.getSubtype().endsWith("json"));
+			try {
+				if (json && null != filter) {
+					// What's left after filtering is small enough to hold on to on its way to the file
+					ByteArrayOutputStream matches = new ByteArrayOutputStream(8192);
+					filterBody(body, matches);
+					matches.writeTo(transcript);
+					complete = (matches.size() <= OutputSink.PREVIEW_LIMIT);
+					if (!complete) {
+						return new ResponseEntity<String>("... (" + matches.size() + " bytes written to " + sink.getTarget() + ")",
+																							response.getHeaders(),
+																							response.getStatusCode());
 					}
-					contextCmds.variables.put("links", linksobj);
+					bodyBytes = matches.toByteArray();
+					result = JsonIndex.parse(bodyBytes);
+					return new ResponseEntity<String>(new String(bodyBytes, UTF8), response.getHeaders(), response.getStatusCode());
+				} else if (json) {
+					links = sink.copyJson(body, mapper.getJsonFactory());
+				} else {
+					sink.copyBody(body);
 				}
+			} catch (JsonParseException e) {
+				// Not an IOException, so that the RestTemplate doesn't mistake it for a network error that's worth retrying
+				LOG.error(e.getMessage(), e);
+				throw new IllegalStateException(e.getMessage(), e);
+			}
+
+			if (body.getCount() == 0) {
+				return new ResponseEntity<String>(response.getHeaders(), response.getStatusCode());
+			}
 
-				StringWriter sw = new StringWriter();
+			Charset charset = (null != ct && null != ct.getCharSet() ? ct.getCharSet() : DEFAULT_CHARSET);
+			String preview = new String(body.getPreview(), charset);
+			complete = !body.isTruncated();
+			if (body.isTruncated()) {
+				if (LOG.isDebugEnabled()) {
+					LOG.debug("Response body of " + body.getCount() + " bytes is too large to keep as responseBody");
+				}
+				preview += OsUtils.LINE_SEPARATOR + "... (" + body.getCount() + " bytes written to " + sink.getTarget() + ")";
+			} else if (json) {
+				bodyBytes = body.getPreview();
 				try {
-					mapper.writeValue(sw, lastResult);
-				} catch (JsonParseException e) {
-					LOG.error(e.getMessage(), e);
-					throw new IllegalStateException(e.getMessage(), e);
+					result = JsonIndex.parse(bodyBytes);
+				} catch (IllegalArgumentException notIndexable) {
+					// Only Jackson can make sense of JSON that isn't quite JSON, such as unquoted field names
+					try {
+						result = mapper.readValue(bodyBytes, Object.class);
+					} catch (IOException e) {
+						// Not even Jackson can read it, which a retry won't change
+						LOG.error(e.getMessage(), e);
+						throw new IllegalStateException(e.getMessage(), e);
+					}
 				}
-				body = sw.toString();
+			} else {
+				bodyBytes = preview.getBytes(UTF8);
 			}
 
-			return new ResponseEntity<String>(body, response.getHeaders(), response.getStatusCode());
+			return new ResponseEntity<String>(preview, response.getHeaders(), response.getStatusCode());
 		}
-	}
 
-	private class SslAwareClientHttpRequestFactory extends SimpleClientHttpRequestFactory {
-		@Override
-		protected void prepareConnection(HttpURLConnection connection, String httpMethod) throws IOException {
-			if (connection instanceof HttpsURLConnection) {
-				HttpsURLConnection httpsConnection = (HttpsURLConnection) connection;
-				if (!sslCmds.getValidate()) {
-					httpsConnection.setHostnameVerifier(new HostnameVerifier() {
-						@Override
-						public boolean verify(String s, SSLSession sslSession) {
-							return true;
-						}
-					});
-					httpsConnection.setSSLSocketFactory(sslCmds.getCustomContext().getSocketFactory());
+		/**
+		 * Expose the response in the shell's variable context and add it to the response history. Only the rendered body is
+		 * kept, so the objects it was decoded to can be collected as soon as the response has been shown. Must only be
+		 * called from the shell's thread.
+		 */
+		@SuppressWarnings({"unchecked"})
+		private void publishVariables() {
+			contextCmds.variables.put("requestUrl", requestUri.toString());
+			contextCmds.variables.put("responseHeaders", responseHeaders);
+			contextCmds.responses.add(method.name(),
+																requestUri.toString(),
+																response.getStatusCode(),
+																response.getHeaders(),
+																(complete ? bodyBytes : null),
+																null != result,
+																result);
+
+			if (result instanceof Map && ((Map) result).containsKey("links")) {
+				Links linksobj;
+				if (contextCmds.variables.containsKey("links")) {
+					linksobj = (Links) contextCmds.variables.get("links");
+				} else {
+					linksobj = new Links();
+					contextCmds.evalCtx.addPropertyAccessor(linksobj.getPropertyAccessor());
+				}
+				linksobj.getLinks().clear();
+				for (Map<String, String> linkmap : (List<Map<String, String>>) ((Map) result).get("links")) {
+					linksobj.addLink(new Link(linkmap.get("href"), linkmap.get("rel")));
 				}
+				contextCmds.variables.put("links", linksobj);
 			}
-			super.prepareConnection(connection, httpMethod);
 		}
 	}
 }
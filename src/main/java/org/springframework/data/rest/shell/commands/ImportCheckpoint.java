@@ -0,0 +1,126 @@
+package org.springframework.data.rest.shell.commands;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+/**
+ * Records how far a {@code --from-stream} import has got, so an interrupted import can be picked up again with
+ * {@code --resume}. The checkpoint is kept next to the source file as {@code <file>.checkpoint} and remembers the size
+ * and modification time of the source, so it's never applied to a file that has changed since.
+ *
+ * @author agent
+ */
+class ImportCheckpoint {
+
+  private static final String OFFSET   = "offset";
+  private static final String INDEX    = "index";
+  private static final String LENGTH   = "length";
+  private static final String MODIFIED = "modified";
+
+  private final File source;
+  private final File file;
+  private       long offset;
+  private       long index;
+
+  ImportCheckpoint(File source) {
+    this.source = source;
+    this.file = new File(source.getPath() + ".checkpoint");
+  }
+
+  /**
+   * Get the file the checkpoint is saved to.
+   *
+   * @return
+   */
+  File getFile() {
+    return file;
+  }
+
+  boolean exists() {
+    return file.exists();
+  }
+
+  /**
+   * Get the byte offset just past the last element the server has responded to.
+   *
+   * @return
+   */
+  long getOffset() {
+    return offset;
+  }
+
+  /**
+   * Get the number of elements the server has responded to.
+   *
+   * @return
+   */
+  long getIndex() {
+    return index;
+  }
+
+  void update(long offset, long index) {
+    this.offset = offset;
+    this.index = index;
+  }
+
+  /**
+   * Read a saved checkpoint.
+   *
+   * @throws IOException
+   * @throws IllegalStateException
+   *     If the source file has changed since the checkpoint was saved.
+   */
+  void load() throws IOException {
+    Properties props = new Properties();
+    InputStream in = new FileInputStream(file);
+    try {
+      props.load(in);
+    } finally {
+      in.close();
+    }
+
+    if(source.length() != Long.parseLong(props.getProperty(LENGTH, "-1"))
+        || source.lastModified() != Long.parseLong(props.getProperty(MODIFIED, "-1"))) {
+      throw new IllegalStateException("File " + source + " has changed since " + file + " was saved. Delete the checkpoint to start over.");
+    }
+    offset = Long.parseLong(props.getProperty(OFFSET, "0"));
+    index = Long.parseLong(props.getProperty(INDEX, "0"));
+  }
+
+  /**
+   * Write the checkpoint, replacing the previous one only once the new one is complete.
+   *
+   * @throws IOException
+   */
+  void save() throws IOException {
+    Properties props = new Properties();
+    props.setProperty(OFFSET, String.valueOf(offset));
+    props.setProperty(INDEX, String.valueOf(index));
+    props.setProperty(LENGTH, String.valueOf(source.length()));
+    props.setProperty(MODIFIED, String.valueOf(source.lastModified()));
+
+    File tmp = new File(file.getPath() + ".tmp");
+    OutputStream out = new FileOutputStream(tmp);
+    try {
+      props.store(out, "rest-shell import of " + source.getName());
+    } finally {
+      out.close();
+    }
+    if(file.exists() && !file.delete()) {
+      throw new IOException("Cannot replace " + file);
+    }
+    if(!tmp.renameTo(file)) {
+      throw new IOException("Cannot write " + file);
+    }
+  }
+
+  void delete() {
+    file.delete();
+  }
+
+}
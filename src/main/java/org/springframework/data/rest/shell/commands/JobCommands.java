@@ -0,0 +1,431 @@
+package org.springframework.data.rest.shell.commands;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.shell.core.CommandMarker;
+import org.springframework.shell.core.annotation.CliAvailabilityIndicator;
+import org.springframework.shell.core.annotation.CliCommand;
+import org.springframework.shell.core.annotation.CliOption;
+import org.springframework.shell.support.util.OsUtils;
+import org.springframework.stereotype.Component;
+
+import static org.springframework.data.rest.shell.commands.Tables.pad;
+
+/**
+ * Commands for managing requests started with {@code --async}. The request itself runs on a background thread, but
+ * its result is only applied to the shell (context variables, {@code --follow}, the transcript) on the shell's own
+ * thread, once it's asked for with {@code jobs wait} or {@code jobs result}.
+ *
+ * @author agent
+ */
+@Component
+public class JobCommands implements CommandMarker, DisposableBean {
+
+  private static final Logger LOG = LoggerFactory.getLogger(JobCommands.class);
+
+  private final AtomicInteger        ids  = new AtomicInteger(0);
+  private final Map<Integer, Job<?>> jobs = new LinkedHashMap<Integer, Job<?>>();
+  private final ExecutorService      executor;
+  @Autowired
+  private ContextCommands contextCmds;
+
+  {
+    executor = Executors.newCachedThreadPool(new ThreadFactory() {
+      private final AtomicInteger count = new AtomicInteger(0);
+
+      @Override public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "rest-shell-job-" + count.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  @Override public void destroy() throws Exception {
+    executor.shutdownNow();
+  }
+
+  /**
+   * Start a job in the background.
+   *
+   * @param description
+   *     What the job does, e.g. the request method and URI.
+   * @param task
+   *     The part of the job that runs in the background. Must not touch the shell's shared state.
+   * @param completion
+   *     The part of the job that applies its result to the shell, which runs on the shell's thread.
+   *
+   * @return The new job.
+   */
+  <T> Job<T> submit(String description, final Task<T> task, Completion<T> completion) {
+    final Job<T> job = new Job<T>(ids.incrementAndGet(), description, completion);
+    job.future = executor.submit(new Callable<T>() {
+      @Override public T call() throws Exception {
+        try {
+          return task.run(job);
+        } finally {
+          job.finished = System.currentTimeMillis();
+        }
+      }
+    });
+    synchronized(jobs) {
+      jobs.put(job.id, job);
+    }
+    return job;
+  }
+
+  /**
+   * @return The id of the last job started, or 0 if none has been.
+   */
+  int getLastId() {
+    return ids.get();
+  }
+
+  /**
+   * @param id
+   *
+   * @return How long a job has been running, or ran for if it's finished, in milliseconds.
+   */
+  long getElapsed(Integer id) {
+    return get(id).getElapsed();
+  }
+
+  /**
+   * Forget a job, whether or not it's finished.
+   *
+   * @param id
+   */
+  void forget(Integer id) {
+    synchronized(jobs) {
+      jobs.remove(id);
+    }
+  }
+
+  @CliAvailabilityIndicator({"jobs list", "jobs wait", "jobs cancel", "jobs result", "jobs clear"})
+  public boolean isJobsAvailable() {
+    return true;
+  }
+
+  @CliCommand(value = "jobs list", help = "List the background jobs.")
+  public String list() {
+    List<Job<?>> all;
+    synchronized(jobs) {
+      all = new ArrayList<Job<?>>(jobs.values());
+    }
+    if(all.isEmpty()) {
+      return "No jobs.";
+    }
+
+    int maxDescLen = "description".length();
+    for(Job<?> job : all) {
+      if(maxDescLen < job.description.length()) {
+        maxDescLen = job.description.length();
+      }
+    }
+    maxDescLen += 4;
+
+    StringBuilder sb = new StringBuilder();
+    sb.append(pad("id", 6))
+      .append(pad("state", 12))
+      .append(pad("time", 10))
+      .append(pad("description", maxDescLen))
+      .append("progress")
+      .append(OsUtils.LINE_SEPARATOR);
+
+    char[] line = new char[28 + maxDescLen + 8];
+    Arrays.fill(line, '=');
+    sb.append(new String(line))
+      .append(OsUtils.LINE_SEPARATOR);
+
+    for(Job<?> job : all) {
+      sb.append(pad(String.valueOf(job.id), 6))
+        .append(pad(job.getState(), 12))
+        .append(pad(String.format("%.1fs", job.getElapsed() / 1000.0), 10))
+        .append(pad(job.description, maxDescLen))
+        .append(null != job.progress ? job.progress : "")
+        .append(OsUtils.LINE_SEPARATOR);
+    }
+    return sb.toString();
+  }
+
+  @CliCommand(value = "jobs wait", help = "Wait for a background job to finish and show its result.")
+  public String waitFor(
+      @CliOption(key = {"", "id"},
+                 mandatory = true,
+                 help = "The id of the job.") Integer id,
+      @CliOption(key = "timeout",
+                 mandatory = false,
+                 help = "The longest time (in milliseconds) to wait.") Long timeout,
+      @CliOption(key = "var",
+                 mandatory = false,
+                 help = "The name of a context variable to put the job's response body in.") String var) {
+    Job<?> job = get(id);
+    try {
+      if(null != timeout) {
+        job.future.get(timeout, TimeUnit.MILLISECONDS);
+      } else {
+        job.future.get();
+      }
+    } catch(TimeoutException e) {
+      return "Job " + id + " is still running.";
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for job " + id, e);
+    } catch(ExecutionException ignored) {
+      // Reported by result()
+    } catch(CancellationException ignored) {
+      // Reported by result()
+    }
+    return result(id, var);
+  }
+
+  @CliCommand(value = "jobs result", help = "Show the result of a finished background job.")
+  public String result(
+      @CliOption(key = {"", "id"},
+                 mandatory = true,
+                 help = "The id of the job.") Integer id,
+      @CliOption(key = "var",
+                 mandatory = false,
+                 help = "The name of a context variable to put the job's response body in.") String var) {
+    Job<?> job = get(id);
+    if(!job.future.isDone()) {
+      return "Job " + id + " is still running. Use 'jobs wait " + id + "' to wait for it.";
+    }
+    String output = job.complete();
+    if(null != var) {
+      contextCmds.variables.put(var, job.value);
+    }
+    return output;
+  }
+
+  @CliCommand(value = "jobs cancel", help = "Cancel a background job.")
+  public String cancel(
+      @CliOption(key = {"", "id"},
+                 mandatory = true,
+                 help = "The id of the job.") Integer id) {
+    Job<?> job = get(id);
+    if(job.future.cancel(true)) {
+      if(job.finished == 0) {
+        // It may never have started, and then nothing else will say when it ended
+        job.finished = System.currentTimeMillis();
+      }
+      return "Job " + id + " cancelled.";
+    }
+    return "Job " + id + " has already finished.";
+  }
+
+  /**
+   * Forget every finished job. The output files of jobs whose results were never asked for are still written.
+   */
+  @CliCommand(value = "jobs clear", help = "Forget every finished background job.")
+  public void clear() {
+    List<Job<?>> done = new ArrayList<Job<?>>();
+    synchronized(jobs) {
+      for(Iterator<Job<?>> iter = jobs.values().iterator(); iter.hasNext(); ) {
+        Job<?> job = iter.next();
+        if(job.future.isDone()) {
+          done.add(job);
+          iter.remove();
+        }
+      }
+    }
+    for(Job<?> job : done) {
+      job.abandon();
+    }
+  }
+
+  private Job<?> get(Integer id) {
+    Job<?> job;
+    synchronized(jobs) {
+      job = jobs.get(id);
+    }
+    if(null == job) {
+      throw new IllegalArgumentException("No job with id " + id);
+    }
+    return job;
+  }
+
+  /**
+   * The part of a job that runs in the background.
+   */
+  interface Task<T> {
+    /**
+     * @param job
+     *     The job this task is running for, to report progress to.
+     *
+     * @return
+     *
+     * @throws Exception
+     */
+    T run(Job<T> job) throws Exception;
+  }
+
+  /**
+   * Applies the result of a job to the shell.
+   */
+  interface Completion<T> {
+    /**
+     * @param result
+     *     What the background part of the job returned.
+     *
+     * @return The output to show for the job.
+     */
+    String complete(T result);
+
+    /**
+     * @param result
+     *     What the background part of the job returned.
+     *
+     * @return The value {@code jobs result --var} puts in a context variable.
+     */
+    Object getValue(T result);
+
+    /**
+     * Finish off a job whose result will never be applied to the shell, because it was cleared first, e.g. by writing
+     * its output file.
+     *
+     * @param result
+     *     What the background part of the job returned.
+     */
+    void abandon(T result);
+  }
+
+  /**
+   * A request, or group of requests, running in the background.
+   */
+  static class Job<T> {
+
+    private final int           id;
+    private final String        description;
+    private final Completion<T> completion;
+    private final long          started  = System.currentTimeMillis();
+    private volatile Future<T> future;
+    private volatile String    progress;
+    private volatile long      finished;
+    private          boolean   completed;
+    private          String    output;
+    private          Object    value;
+
+    private Job(int id, String description, Completion<T> completion) {
+      this.id = id;
+      this.description = description;
+      this.completion = completion;
+    }
+
+    int getId() {
+      return id;
+    }
+
+    /**
+     * Report how far the job has got, for {@code jobs list}.
+     *
+     * @param progress
+     */
+    void setProgress(String progress) {
+      this.progress = progress;
+    }
+
+    /**
+     * Whether the job has been cancelled, which long-running jobs should check between steps.
+     *
+     * @return
+     */
+    boolean isCancelled() {
+      return null != future && future.isCancelled();
+    }
+
+    String getDescription() {
+      return description;
+    }
+
+    private String getState() {
+      if(!future.isDone()) {
+        return "running";
+      }
+      if(future.isCancelled()) {
+        return "cancelled";
+      }
+      try {
+        future.get();
+      } catch(Exception e) {
+        return "failed";
+      }
+      return (completed ? "done" : "finished");
+    }
+
+    /**
+     * Get how long the job ran for, or has been running.
+     */
+    private long getElapsed() {
+      long end = finished;
+      return (end > 0 ? end : System.currentTimeMillis()) - started;
+    }
+
+    /**
+     * Apply the job's result to the shell the first time it's asked for, and return the same output every time after.
+     */
+    private synchronized String complete() {
+      if(!completed) {
+        T result;
+        try {
+          result = future.get();
+        } catch(CancellationException e) {
+          throw new IllegalStateException("Job " + id + " was cancelled.");
+        } catch(InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException(e.getMessage(), e);
+        } catch(ExecutionException e) {
+          Throwable cause = (null != e.getCause() ? e.getCause() : e);
+          throw new IllegalStateException("Job " + id + " failed: " + cause.getMessage(), cause);
+        }
+        output = completion.complete(result);
+        value = completion.getValue(result);
+        completed = true;
+      }
+      return output;
+    }
+
+    /**
+     * Let the completion finish off a job that succeeded but whose result was never asked for.
+     */
+    private synchronized void abandon() {
+      if(completed || future.isCancelled()) {
+        return;
+      }
+      completed = true;
+      T result;
+      try {
+        result = future.get();
+      } catch(Exception e) {
+        // Failed jobs clean up after themselves
+        return;
+      }
+      try {
+        completion.abandon(result);
+      } catch(RuntimeException e) {
+        LOG.error("Error finishing off job " + id + ": " + e.getMessage(), e);
+      }
+    }
+
+  }
+
+}
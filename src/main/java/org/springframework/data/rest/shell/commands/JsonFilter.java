@@ -0,0 +1,344 @@
+package org.springframework.data.rest.shell.commands;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * Picks values out of a JSON document by path while it's being parsed. A path is a JSONPath-like list of steps:
+ * <ul>
+ * <li>{@code .name} or {@code ['name']} for a field of an object, quoted if the name holds a {@code .}, {@code ,} or
+ * {@code ]},</li>
+ * <li>{@code [2]} for an element of an array,</li>
+ * <li>{@code .*}, {@code [*]} or {@code []} for every field or element,</li>
+ * <li>{@code ..name} for a field at any depth below,</li>
+ * </ul>
+ * optionally starting with {@code $}, and with the leading dot left out if the path starts with a field, as in {@code
+ * content[*].name}. A lone {@code .} or {@code $} is the whole document. Several paths can be given separated by
+ * commas, and values matching any of them are picked out in the order they appear in the document.
+ * <p/>
+ * Every path is followed at once as the parser moves through the document. Only the values that match are handed
+ * over, and everything that no path can lead into is skipped by the parser without being built.
+ *
+ * @author agent
+ */
+class JsonFilter {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final String       expression;
+  private final List<Step[]> paths;
+
+  private JsonFilter(String expression, List<Step[]> paths) {
+    this.expression = expression;
+    this.paths = paths;
+  }
+
+  /**
+   * Compile a filter expression.
+   *
+   * @param expression
+   *
+   * @return The filter.
+   *
+   * @throws IllegalArgumentException
+   *     If the expression isn't a list of paths.
+   */
+  static JsonFilter compile(String expression) {
+    List<Step[]> paths = new ArrayList<Step[]>();
+    int from = 0;
+    char quote = 0;
+    for(int i = 0; i <= expression.length(); i++) {
+      char c = (i < expression.length() ? expression.charAt(i) : ',');
+      if(quote != 0) {
+        quote = (c == quote ? 0 : quote);
+      } else if(c == '\'' || c == '"') {
+        quote = c;
+      } else if(c == ',') {
+        paths.add(path(expression, expression.substring(from, i).trim()));
+        from = i + 1;
+      }
+    }
+    if(quote != 0) {
+      throw invalid(expression, "a " + quote + " without a closing one");
+    }
+    return new JsonFilter(expression, paths);
+  }
+
+  private static Step[] path(String expression, String path) {
+    List<Step> steps = new ArrayList<Step>();
+    int len = path.length();
+    int i = (path.startsWith("$") ? 1 : 0);
+    if(len == 0 || path.equals(".")) {
+      if(len == 0) {
+        throw invalid(expression, "an empty path");
+      }
+      return new Step[0];
+    }
+    while(i < len) {
+      char c = path.charAt(i);
+      boolean descendant = false;
+      if(c == '.') {
+        descendant = path.startsWith("..", i);
+        i += (descendant ? 2 : 1);
+        if(i == len) {
+          throw invalid(expression, "a path ending in '.'");
+        }
+        c = path.charAt(i);
+      } else if(c != '[' && i > 0) {
+        throw invalid(expression, "'" + c + "' where a '.' or '[' should be");
+      }
+
+      if(c == '[') {
+        int open = i + 1;
+        while(open < len && Character.isWhitespace(path.charAt(open))) {
+          open++;
+        }
+        char first = (open < len ? path.charAt(open) : 0);
+        // A quoted name may hold a ']' of its own
+        int end = (first == '\'' || first == '"' ? closing(path, open) : path.indexOf(']', i));
+        if(end <= i) {
+          throw invalid(expression, "a '[' without a ']'");
+        }
+        String inside = path.substring(i + 1, end).trim();
+        if(inside.length() == 0 || inside.equals("*")) {
+          steps.add(new Step(null, -1, descendant));
+        } else if(inside.charAt(0) == '\'' || inside.charAt(0) == '"') {
+          steps.add(new Step(inside.substring(1, inside.length() - 1), -1, descendant));
+        } else {
+          int index;
+          try {
+            index = Integer.parseInt(inside);
+          } catch(NumberFormatException e) {
+            throw invalid(expression, "'[" + inside + "]'");
+          }
+          if(index < 0) {
+            // Counting from the end would mean holding on to the whole array
+            throw invalid(expression, "a negative index");
+          }
+          steps.add(new Step(null, index, descendant));
+        }
+        i = end + 1;
+      } else {
+        int end = i;
+        while(end < len && path.charAt(end) != '.' && path.charAt(end) != '[') {
+          end++;
+        }
+        String name = path.substring(i, end);
+        if(name.length() == 0 || name.indexOf(']') >= 0) {
+          throw invalid(expression, "'" + name + "' where a field name should be");
+        }
+        steps.add(new Step("*".equals(name) ? null : name, -1, descendant));
+        i = end;
+      }
+    }
+    return steps.toArray(new Step[steps.size()]);
+  }
+
+  /**
+   * Find the {@code ]} after the quoted name that starts at {@code open}.
+   *
+   * @return Its position, or -1 if the name isn't closed or something other than whitespace follows it.
+   */
+  private static int closing(String path, int open) {
+    int close = path.indexOf(path.charAt(open), open + 1);
+    if(close < 0) {
+      return -1;
+    }
+    int end = close + 1;
+    while(end < path.length() && Character.isWhitespace(path.charAt(end))) {
+      end++;
+    }
+    return (end < path.length() && path.charAt(end) == ']' ? end : -1);
+  }
+
+  private static IllegalArgumentException invalid(String expression, String problem) {
+    return new IllegalArgumentException("Invalid filter '" + expression + "': found " + problem);
+  }
+
+  private static int state(int path, int step) {
+    return (path << 16) | step;
+  }
+
+  private static JsonParser open(JsonNode value) throws IOException {
+    JsonParser parser = value.traverse();
+    parser.nextToken();
+    return parser;
+  }
+
+  /**
+   * Combine this filter with another, whose paths are numbered after this one's.
+   *
+   * @param other
+   *
+   * @return A filter with the paths of both.
+   */
+  JsonFilter plus(JsonFilter other) {
+    List<Step[]> both = new ArrayList<Step[]>(paths);
+    both.addAll(other.paths);
+    return new JsonFilter(expression + ", " + other.expression, both);
+  }
+
+  /**
+   * @return The number of paths in this filter.
+   */
+  int size() {
+    return paths.size();
+  }
+
+  /**
+   * Read the value the parser is on, handing every part of it that matches one of the paths to the {@code handler}.
+   * The parser must be on the first token of the value, and is left on its last token.
+   *
+   * @param parser
+   * @param handler
+   *
+   * @throws IOException
+   */
+  void select(JsonParser parser, Handler handler) throws IOException {
+    int[] states = new int[paths.size()];
+    for(int i = 0; i < states.length; i++) {
+      states[i] = state(i, 0);
+    }
+    select(parser, states, states.length, handler);
+  }
+
+  private void select(JsonParser parser, int[] states, int count, Handler handler) throws IOException {
+    if(count == 0) {
+      parser.skipChildren();
+      return;
+    }
+
+    int matched = 0;
+    for(int i = 0; i < count; i++) {
+      if(isComplete(states[i])) {
+        matched++;
+      }
+    }
+    if(matched == 1 && count == 1) {
+      handler.match(states[0] >>> 16, parser);
+      return;
+    }
+    if(matched > 0) {
+      // More than one path wants this value, so build it once and let each of them read it
+      JsonNode value = MAPPER.readTree(parser);
+      int[] rest = new int[count];
+      int left = 0;
+      for(int i = 0; i < count; i++) {
+        if(isComplete(states[i])) {
+          handler.match(states[i] >>> 16, open(value));
+        } else {
+          rest[left++] = states[i];
+        }
+      }
+      if(left > 0) {
+        select(open(value), rest, left, handler);
+      }
+      return;
+    }
+
+    JsonToken token = parser.getCurrentToken();
+    if(token == JsonToken.START_OBJECT) {
+      int[] next = new int[count * 2];
+      while(parser.nextToken() == JsonToken.FIELD_NAME) {
+        String name = parser.getCurrentName();
+        parser.nextToken();
+        select(parser, next, advance(states, count, name, -1, next), handler);
+      }
+    } else if(token == JsonToken.START_ARRAY) {
+      int[] next = new int[count * 2];
+      int index = 0;
+      while(parser.nextToken() != JsonToken.END_ARRAY) {
+        select(parser, next, advance(states, count, null, index++, next), handler);
+      }
+    }
+  }
+
+  private boolean isComplete(int state) {
+    return (state & 0xFFFF) == paths.get(state >>> 16).length;
+  }
+
+  /**
+   * Work out which paths lead into the field {@code name} or the element at {@code index}.
+   *
+   * @return The number of states put in {@code next}.
+   */
+  private int advance(int[] states, int count, String name, int index, int[] next) {
+    int found = 0;
+    for(int i = 0; i < count; i++) {
+      int path = states[i] >>> 16;
+      int step = states[i] & 0xFFFF;
+      Step s = paths.get(path)[step];
+      if(s.matches(name, index)) {
+        found = add(next, found, state(path, step + 1));
+      }
+      if(s.descendant) {
+        found = add(next, found, states[i]);
+      }
+    }
+    return found;
+  }
+
+  private static int add(int[] states, int count, int state) {
+    for(int i = 0; i < count; i++) {
+      if(states[i] == state) {
+        return count;
+      }
+    }
+    states[count] = state;
+    return count + 1;
+  }
+
+  @Override public String toString() {
+    return expression;
+  }
+
+  /**
+   * Receives the values picked out by a {@link JsonFilter}.
+   */
+  interface Handler {
+
+    /**
+     * Read a value that matched. The parser is on the first token of the value, and must be left on its last token.
+     *
+     * @param path
+     *     The number of the path that matched, counting from 0.
+     * @param parser
+     *
+     * @throws IOException
+     */
+    void match(int path, JsonParser parser) throws IOException;
+
+  }
+
+  private static class Step {
+
+    private final String  name;
+    private final int     index;
+    private final boolean descendant;
+
+    private Step(String name, int index, boolean descendant) {
+      this.name = name;
+      this.index = index;
+      this.descendant = descendant;
+    }
+
+    private boolean matches(String field, int element) {
+      if(null != name) {
+        return name.equals(field);
+      }
+      return (index < 0 || index == element);
+    }
+
+    @Override public String toString() {
+      return (descendant ? ".." : ".") + (null != name ? name : index >= 0 ? "[" + index + "]" : "*");
+    }
+
+  }
+
+}
@@ -0,0 +1,591 @@
+package org.springframework.data.rest.shell.commands;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.springframework.expression.AccessException;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.PropertyAccessor;
+import org.springframework.expression.TypedValue;
+
+/**
+ * A read-only view of a JSON document that decodes values only when they're read. A single scan over the bytes records
+ * where every value starts, and where it ends or, for objects and arrays, which value comes after them, much like the
+ * tape of simdjson. Objects and arrays are then {@link Map}s and {@link java.util.List}s over that index, whose values
+ * are decoded from the bytes each time they're asked for, so reading {@code page.totalElements} of a large collection
+ * decodes two values and skips over everything else.
+ * <p/>
+ * The bytes are expected to be UTF-8, which every JSON document this shell renders is.
+ *
+ * @author agent
+ */
+public class JsonIndex {
+
+  /**
+   * Reads the fields of a JSON object without going through {@link Map#containsKey(Object)} and {@link
+   * Map#get(Object)}, which would look the field up twice.
+   */
+  static final PropertyAccessor ACCESSOR = new Accessor();
+
+  private static final Charset     UTF8    = Charset.forName("UTF-8");
+  private static final JsonFactory FACTORY = new JsonFactory();
+  private static final byte[]      TRUE    = "true".getBytes(UTF8);
+  private static final byte[]      FALSE   = "false".getBytes(UTF8);
+  private static final byte[]      NULL    = "null".getBytes(UTF8);
+
+  /*
+   * What the scan expects next: any value, a value or the end of an empty array, a key, a key or the end of an empty
+   * object, the colon after a key, or, after a value, a comma or the end of whatever holds it.
+   */
+  private static final int VALUE       = 0;
+  private static final int FIRST_VALUE = 1;
+  private static final int KEY         = 2;
+  private static final int FIRST_KEY   = 3;
+  private static final int COLON       = 4;
+  private static final int NEXT        = 5;
+
+  private final ByteBuffer json;
+  /**
+   * Where each value starts in the bytes.
+   */
+  private int[] start;
+  /**
+   * Where each string, number or literal ends in the bytes, or the index of the value after each object or array.
+   */
+  private int[] extent;
+  private int   size;
+
+  private JsonIndex(ByteBuffer json) {
+    this.json = json;
+    // Rendered JSON has a value every ten bytes or so, so this is rarely grown
+    int capacity = Math.max(64, json.limit() / 8);
+    this.start = new int[capacity];
+    this.extent = new int[capacity];
+  }
+
+  /**
+   * Index a JSON document.
+   *
+   * @param json
+   *
+   * @return A {@link Map} for an object, a {@link java.util.List} for an array, or the value itself.
+   *
+   * @throws IllegalArgumentException
+   *     If the bytes aren't a well-formed JSON document.
+   */
+  static Object parse(byte[] json) {
+    return parse(ByteBuffer.wrap(json));
+  }
+
+  /**
+   * Index a JSON document held in a buffer, from its start to its limit. The buffer is read, never modified, and must
+   * not change while the view is in use.
+   *
+   * @param json
+   *
+   * @return A {@link Map} for an object, a {@link java.util.List} for an array, or the value itself.
+   *
+   * @throws IllegalArgumentException
+   *     If the bytes aren't a well-formed JSON document.
+   */
+  static Object parse(ByteBuffer json) {
+    JsonIndex index = new JsonIndex(json);
+    index.scan();
+    return (index.size > 0 ? index.value(0) : null);
+  }
+
+  private static boolean isDelimiter(byte b) {
+    return b == ',' || b == ':' || b == '}' || b == ']' || b == ' ' || b == '\t' || b == '\r' || b == '\n';
+  }
+
+  private static boolean isDigit(byte b) {
+    return b >= '0' && b <= '9';
+  }
+
+  private static boolean isHex(byte b) {
+    return isDigit(b) || (b >= 'a' && b <= 'f') || (b >= 'A' && b <= 'F');
+  }
+
+  private void scan() {
+    int[] stack = new int[16];
+    int depth = 0;
+    int expect = VALUE;
+    int limit = json.limit();
+    int i = 0;
+    while(i < limit) {
+      byte b = json.get(i);
+      switch(b) {
+        case ' ':
+        case '\t':
+        case '\r':
+        case '\n':
+          i++;
+          break;
+        case ':':
+          if(expect != COLON) {
+            throw malformed(i);
+          }
+          expect = VALUE;
+          i++;
+          break;
+        case ',':
+          if(expect != NEXT || depth == 0) {
+            throw malformed(i);
+          }
+          expect = (json.get(start[stack[depth - 1]]) == '{' ? KEY : VALUE);
+          i++;
+          break;
+        case '{':
+        case '[':
+          if(expect != VALUE && expect != FIRST_VALUE) {
+            throw malformed(i);
+          }
+          if(depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+          }
+          stack[depth++] = add(i);
+          expect = (b == '{' ? FIRST_KEY : FIRST_VALUE);
+          i++;
+          break;
+        case '}':
+        case ']':
+          if(depth == 0 || json.get(start[stack[depth - 1]]) != (b == '}' ? '{' : '[')
+             || (expect != NEXT && expect != (b == '}' ? FIRST_KEY : FIRST_VALUE))) {
+            throw malformed(i);
+          }
+          extent[stack[--depth]] = size;
+          expect = NEXT;
+          i++;
+          break;
+        case '"':
+          if(expect == COLON || expect == NEXT) {
+            throw malformed(i);
+          }
+          int j = i + 1;
+          while(j < limit) {
+            byte c = json.get(j);
+            if(c == '\\') {
+              j = escape(j);
+            } else if(c == '"') {
+              break;
+            } else {
+              j++;
+            }
+          }
+          if(j >= limit) {
+            throw malformed(i);
+          }
+          int string = add(i);
+          extent[string] = j + 1;
+          expect = (expect == KEY || expect == FIRST_KEY ? COLON : NEXT);
+          i = j + 1;
+          break;
+        default:
+          if(expect != VALUE && expect != FIRST_VALUE) {
+            throw malformed(i);
+          }
+          int k = i;
+          while(k < limit && !isDelimiter(json.get(k))) {
+            k++;
+          }
+          if(!isLiteral(i, k)) {
+            throw new IllegalArgumentException("Invalid JSON value '" + new String(bytes(i, k), UTF8) + "' at offset "
+                                               + i + " of JSON");
+          }
+          int literal = add(i);
+          extent[literal] = k;
+          expect = NEXT;
+          i = k;
+      }
+    }
+    if(depth > 0 || (size > 0 && expect != NEXT)) {
+      throw new IllegalArgumentException("JSON ends before all of its objects and arrays do");
+    }
+  }
+
+  /**
+   * Check the escape sequence at {@code pos} in a string.
+   *
+   * @return Where the string goes on after it.
+   */
+  private int escape(int pos) {
+    int limit = json.limit();
+    if(pos + 1 >= limit) {
+      throw malformed(pos);
+    }
+    switch(json.get(pos + 1)) {
+      case '"':
+      case '\\':
+      case '/':
+      case 'b':
+      case 'f':
+      case 'n':
+      case 'r':
+      case 't':
+        return pos + 2;
+      case 'u':
+        for(int i = pos + 2; i < pos + 6; i++) {
+          if(i >= limit || !isHex(json.get(i))) {
+            throw malformed(pos);
+          }
+        }
+        return pos + 6;
+      default:
+        throw malformed(pos);
+    }
+  }
+
+  /**
+   * Whether the bytes from {@code from} to {@code to} are {@code true}, {@code false}, {@code null} or a number, which
+   * is checked here so that reading it later can't fail.
+   */
+  private boolean isLiteral(int from, int to) {
+    switch(json.get(from)) {
+      case 't':
+        return matches(from, to, TRUE);
+      case 'f':
+        return matches(from, to, FALSE);
+      case 'n':
+        return matches(from, to, NULL);
+    }
+    // -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)?
+    int i = from;
+    if(i < to && json.get(i) == '-') {
+      i++;
+    }
+    if(i < to && json.get(i) == '0') {
+      i++;
+    } else if(i < to && isDigit(json.get(i))) {
+      while(i < to && isDigit(json.get(i))) {
+        i++;
+      }
+    } else {
+      return false;
+    }
+    if(i < to && json.get(i) == '.') {
+      int digits = ++i;
+      while(i < to && isDigit(json.get(i))) {
+        i++;
+      }
+      if(i == digits) {
+        return false;
+      }
+    }
+    if(i < to && (json.get(i) == 'e' || json.get(i) == 'E')) {
+      i++;
+      if(i < to && (json.get(i) == '+' || json.get(i) == '-')) {
+        i++;
+      }
+      int digits = i;
+      while(i < to && isDigit(json.get(i))) {
+        i++;
+      }
+      if(i == digits) {
+        return false;
+      }
+    }
+    return (i == to);
+  }
+
+  private boolean matches(int from, int to, byte[] literal) {
+    if(to - from != literal.length) {
+      return false;
+    }
+    for(int i = 0; i < literal.length; i++) {
+      if(json.get(from + i) != literal[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private IllegalArgumentException malformed(int pos) {
+    return new IllegalArgumentException("Unexpected '" + (char)json.get(pos) + "' at offset " + pos + " of JSON");
+  }
+
+  private int add(int pos) {
+    if(size == start.length) {
+      start = Arrays.copyOf(start, size * 2);
+      extent = Arrays.copyOf(extent, size * 2);
+    }
+    start[size] = pos;
+    return size++;
+  }
+
+  /**
+   * Get the index of the value after the one at {@code n}, skipping over everything in it if it's an object or array.
+   */
+  private int skip(int n) {
+    byte b = json.get(start[n]);
+    return (b == '{' || b == '[' ? extent[n] : n + 1);
+  }
+
+  private Object value(int n) {
+    switch(json.get(start[n])) {
+      case '{':
+        return new ObjectView(n);
+      case '[':
+        return new ArrayView(n);
+      case '"':
+        return string(n);
+      case 't':
+        return Boolean.TRUE;
+      case 'f':
+        return Boolean.FALSE;
+      case 'n':
+        return null;
+      default:
+        return number(n);
+    }
+  }
+
+  private String string(int n) {
+    int from = start[n] + 1;
+    int to = extent[n] - 1;
+    for(int i = from; i < to; i++) {
+      if(json.get(i) == '\\') {
+        // Leave escapes to Jackson
+        return (String)decode(n);
+      }
+    }
+    if(json.hasArray()) {
+      return new String(json.array(), json.arrayOffset() + from, to - from, UTF8);
+    }
+    return new String(bytes(from, to), UTF8);
+  }
+
+  private Object number(int n) {
+    int from = start[n];
+    int to = extent[n];
+    if(to - from < 10) {
+      // Most numbers are small integers, which don't need a parser
+      int value = 0;
+      int i = (json.get(from) == '-' ? from + 1 : from);
+      boolean digits = (i < to);
+      for(; i < to && digits; i++) {
+        byte b = json.get(i);
+        digits = (b >= '0' && b <= '9');
+        value = value * 10 + (b - '0');
+      }
+      if(digits) {
+        return (json.get(from) == '-' ? -value : value);
+      }
+    }
+    return decode(n);
+  }
+
+  private Object decode(int n) {
+    byte[] bytes = bytes(start[n], extent[n]);
+    try {
+      JsonParser parser = FACTORY.createJsonParser(bytes);
+      try {
+        JsonToken token = parser.nextToken();
+        return (token == JsonToken.VALUE_STRING ? parser.getText() : parser.getNumberValue());
+      } finally {
+        parser.close();
+      }
+    } catch(IOException e) {
+      throw new IllegalArgumentException("Invalid JSON value " + new String(bytes, UTF8), e);
+    }
+  }
+
+  private byte[] bytes(int from, int to) {
+    byte[] bytes = new byte[to - from];
+    ByteBuffer slice = json.duplicate();
+    slice.position(from);
+    slice.get(bytes);
+    return bytes;
+  }
+
+  /**
+   * Whether the key at {@code n} is {@code name}, encoded as UTF-8, comparing the bytes unless the key is escaped.
+   */
+  private boolean keyEquals(int n, byte[] name, String nameString) {
+    int from = start[n] + 1;
+    int to = extent[n] - 1;
+    if(to - from < name.length) {
+      return false;
+    }
+    for(int i = 0; i < name.length; i++) {
+      byte b = json.get(from + i);
+      if(b == '\\') {
+        return string(n).equals(nameString);
+      }
+      if(b != name[i]) {
+        return false;
+      }
+    }
+    return (to - from == name.length);
+  }
+
+  /**
+   * A JSON object. Its fields are found by walking its keys in the index, skipping over their values.
+   */
+  public class ObjectView extends AbstractMap<String, Object> {
+
+    private final int n;
+    private final int end;
+
+    private ObjectView(int n) {
+      this.n = n;
+      this.end = skip(n);
+    }
+
+    /**
+     * Find the value of a field.
+     *
+     * @return Its position in the index, or -1 if there's no such field.
+     */
+    private int find(String name) {
+      byte[] bytes = name.getBytes(UTF8);
+      for(int key = n + 1; key < end; key = skip(key + 1)) {
+        if(keyEquals(key, bytes, name)) {
+          return key + 1;
+        }
+      }
+      return -1;
+    }
+
+    private Object valueAt(int value) {
+      return value(value);
+    }
+
+    @Override public Object get(Object key) {
+      if(!(key instanceof String)) {
+        return null;
+      }
+      int value = find((String)key);
+      return (value >= 0 ? value(value) : null);
+    }
+
+    @Override public boolean containsKey(Object key) {
+      return key instanceof String && find((String)key) >= 0;
+    }
+
+    @Override public int size() {
+      int count = 0;
+      for(int key = n + 1; key < end; key = skip(key + 1)) {
+        count++;
+      }
+      return count;
+    }
+
+    @Override public Set<Map.Entry<String, Object>> entrySet() {
+      return new AbstractSet<Map.Entry<String, Object>>() {
+        @Override public Iterator<Map.Entry<String, Object>> iterator() {
+          return new Iterator<Map.Entry<String, Object>>() {
+            private int key = n + 1;
+
+            @Override public boolean hasNext() {
+              return key < end;
+            }
+
+            @Override public Map.Entry<String, Object> next() {
+              if(!hasNext()) {
+                throw new NoSuchElementException();
+              }
+              Map.Entry<String, Object> entry = new SimpleImmutableEntry<String, Object>(string(key), value(key + 1));
+              key = skip(key + 1);
+              return entry;
+            }
+
+            @Override public void remove() {
+              throw new UnsupportedOperationException();
+            }
+          };
+        }
+
+        @Override public int size() {
+          return ObjectView.this.size();
+        }
+      };
+    }
+
+  }
+
+  /**
+   * A JSON array. The positions of its elements are found the first time one is asked for.
+   */
+  public class ArrayView extends AbstractList<Object> implements RandomAccess {
+
+    private final int   n;
+    private final int   end;
+    private       int[] elements;
+
+    private ArrayView(int n) {
+      this.n = n;
+      this.end = skip(n);
+    }
+
+    private int[] elements() {
+      if(null == elements) {
+        int count = 0;
+        int[] found = new int[8];
+        for(int element = n + 1; element < end; element = skip(element)) {
+          if(count == found.length) {
+            found = Arrays.copyOf(found, count * 2);
+          }
+          found[count++] = element;
+        }
+        elements = Arrays.copyOf(found, count);
+      }
+      return elements;
+    }
+
+    @Override public Object get(int index) {
+      int[] elements = elements();
+      if(index < 0 || index >= elements.length) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + elements.length);
+      }
+      return value(elements[index]);
+    }
+
+    @Override public int size() {
+      return elements().length;
+    }
+
+  }
+
+  private static class Accessor implements PropertyAccessor {
+
+    @Override public Class[] getSpecificTargetClasses() {
+      return new Class[]{ObjectView.class};
+    }
+
+    @Override public boolean canRead(EvaluationContext context, Object target, String name) throws AccessException {
+      return (target instanceof ObjectView && ((ObjectView)target).find(name) >= 0);
+    }
+
+    @Override public TypedValue read(EvaluationContext context, Object target, String name) throws AccessException {
+      // Expressions remember which accessor worked last time, so this can be asked for any target
+      int value = (target instanceof ObjectView ? ((ObjectView)target).find(name) : -1);
+      if(value < 0) {
+        throw new AccessException("No field '" + name + "' in " + target);
+      }
+      return new TypedValue(((ObjectView)target).valueAt(value));
+    }
+
+    @Override public boolean canWrite(EvaluationContext context, Object target, String name) throws AccessException {
+      return false;
+    }
+
+    @Override public void write(EvaluationContext context, Object target, String name, Object newValue)
+        throws AccessException {
+    }
+
+  }
+
+}
@@ -0,0 +1,169 @@
+package org.springframework.data.rest.shell.commands;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+/**
+ * Reads the elements of a single large JSON array, or a file of newline-delimited JSON values, one at a time with the
+ * streaming parser. Only the element being read is ever held in memory. The reader can be started at the byte offset
+ * of a previous run to pick up where it left off.
+ *
+ * @author agent
+ */
+class JsonStreamReader implements Closeable {
+
+  private final JsonFactory jsonFactory;
+  private final JsonParser  parser;
+  private final boolean     array;
+  private final long        base;
+  private       long        index;
+  private       long        offset;
+  private       boolean     done;
+
+  /**
+   * @param file
+   *     The file to read.
+   * @param jsonFactory
+   *     The factory to create parsers and generators with.
+   * @param offset
+   *     The byte offset to start reading at, which must be 0 or an offset returned by {@link #getOffset()}.
+   * @param index
+   *     The number of elements before {@code offset}.
+   *
+   * @throws IOException
+   */
+  JsonStreamReader(File file, JsonFactory jsonFactory, long offset, long index) throws IOException {
+    this.jsonFactory = jsonFactory;
+    this.index = index;
+    this.offset = offset;
+    this.array = (firstNonWhitespace(file) == '[');
+
+    FileInputStream fin = new FileInputStream(file);
+    InputStream in = new BufferedInputStream(fin, 64 * 1024);
+    long start = 0;
+    if(offset > 0) {
+      fin.getChannel().position(offset);
+      start = offset;
+      if(array) {
+        // We're somewhere inside the array, right after an element. Skip the separator and put back the '[' so the
+        // rest of the file still parses as an array.
+        int skipped = skipSeparator(in);
+        start = offset + skipped - 1;
+        in = new SequenceInputStream(new ByteArrayInputStream(new byte[]{'['}), in);
+      }
+    }
+    this.base = start;
+    this.parser = jsonFactory.createJsonParser(in);
+
+    if(array && offset == 0 && parser.nextToken() != JsonToken.START_ARRAY) {
+      throw new IllegalStateException("Expected a JSON array in " + file);
+    }
+    if(array && offset > 0) {
+      parser.nextToken();
+    }
+  }
+
+  private static int firstNonWhitespace(File file) throws IOException {
+    InputStream in = new BufferedInputStream(new FileInputStream(file));
+    try {
+      int b;
+      while((b = in.read()) >= 0 && Character.isWhitespace(b)) {
+      }
+      return b;
+    } finally {
+      in.close();
+    }
+  }
+
+  private static int skipSeparator(InputStream in) throws IOException {
+    int skipped = 0;
+    boolean comma = false;
+    while(true) {
+      in.mark(1);
+      int b = in.read();
+      if(b < 0) {
+        return skipped;
+      }
+      if(Character.isWhitespace(b) || (b == ',' && !comma)) {
+        comma |= (b == ',');
+        skipped++;
+      } else {
+        in.reset();
+        return skipped;
+      }
+    }
+  }
+
+  /**
+   * Whether the file holds a single JSON array rather than a sequence of values.
+   *
+   * @return
+   */
+  boolean isArray() {
+    return array;
+  }
+
+  /**
+   * Read the next element.
+   *
+   * @return The element as JSON, or {@literal null} if there are no more elements.
+   *
+   * @throws IOException
+   */
+  byte[] next() throws IOException {
+    if(done) {
+      return null;
+    }
+    JsonToken token = parser.nextToken();
+    if(null == token || (array && token == JsonToken.END_ARRAY)) {
+      done = true;
+      return null;
+    }
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+    JsonGenerator gen = jsonFactory.createJsonGenerator(bytes, JsonEncoding.UTF8);
+    gen.copyCurrentStructure(parser);
+    gen.close();
+
+    index++;
+    // The byte-based parser reports the position of the last byte it consumed as its "char" offset
+    offset = base + parser.getCurrentLocation().getCharOffset() + 1;
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Get the number of elements read so far, including those skipped by starting at an offset.
+   *
+   * @return
+   */
+  long getIndex() {
+    return index;
+  }
+
+  /**
+   * Get the byte offset just past the last element read.
+   *
+   * @return
+   */
+  long getOffset() {
+    return offset;
+  }
+
+  @Override public void close() throws IOException {
+    parser.close();
+  }
+
+}
@@ -0,0 +1,248 @@
+package org.springframework.data.rest.shell.commands;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies in microseconds, with a fixed relative precision across its whole range in the manner of an
+ * HDR histogram: each doubling is split into the same number of equal sub-buckets, and values below twice that number
+ * are counted exactly. The default of 1024 sub-buckets keeps any recorded value within 0.1%, which is what {@code
+ * bench} needs, at the cost of about 180KB per histogram; fewer sub-buckets trade precision for a much smaller one.
+ * Values are recorded without locking, so any number of threads can record into the same histogram.
+ *
+ * @author agent
+ */
+class LatencyHistogram {
+
+  /**
+   * The longest latency that can be recorded, one hour. Longer ones are counted as this.
+   */
+  static final long MAX_VALUE = 60L * 60 * 1000 * 1000;
+
+  private static final int    DEFAULT_SUB_BUCKET_BITS = 10;
+  private static final String HEADER                  = "# rest-shell latency histogram v1: microseconds count";
+
+  private final int             subBucketBits;
+  private final int             subBucketCount;
+  private final AtomicLongArray counts;
+  private final AtomicLong      total = new AtomicLong();
+  private final AtomicLong      sum   = new AtomicLong();
+  private final AtomicLong      min   = new AtomicLong(Long.MAX_VALUE);
+  private final AtomicLong      max   = new AtomicLong();
+
+  /**
+   * Create a histogram that keeps recorded values within 0.1%.
+   */
+  LatencyHistogram() {
+    this(DEFAULT_SUB_BUCKET_BITS);
+  }
+
+  /**
+   * Create a histogram that splits each doubling into {@literal 2^subBucketBits} sub-buckets, which keeps recorded
+   * values within {@literal 1 / 2^subBucketBits}.
+   *
+   * @param subBucketBits
+   *     From 1 to 20.
+   */
+  LatencyHistogram(int subBucketBits) {
+    if(subBucketBits < 1 || subBucketBits > 20) {
+      throw new IllegalArgumentException("Sub-bucket bits must be between 1 and 20, not " + subBucketBits);
+    }
+    this.subBucketBits = subBucketBits;
+    this.subBucketCount = 1 << subBucketBits;
+    this.counts = new AtomicLongArray(indexOf(MAX_VALUE) + 1);
+  }
+
+  private int indexOf(long value) {
+    if(value < 2 * subBucketCount) {
+      return (int)value;
+    }
+    int bucket = (63 - Long.numberOfLeadingZeros(value)) - subBucketBits;
+    return (bucket << subBucketBits) + (int)(value >>> bucket);
+  }
+
+  private long valueOf(int index) {
+    if(index < 2 * subBucketCount) {
+      return index;
+    }
+    int bucket = (index >>> subBucketBits) - 1;
+    long subBucket = (index & (subBucketCount - 1)) + subBucketCount;
+    // Report the middle of the sub-bucket
+    return (subBucket << bucket) + (1L << bucket) / 2;
+  }
+
+  /**
+   * Read a histogram written by {@link #write(File)}.
+   *
+   * @param file
+   *
+   * @return
+   *
+   * @throws IOException
+   */
+  static LatencyHistogram read(File file) throws IOException {
+    LatencyHistogram histogram = new LatencyHistogram();
+    BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    try {
+      String line = in.readLine();
+      if(!HEADER.equals(line)) {
+        throw new IllegalArgumentException(file + " is not a latency histogram written by 'bench'.");
+      }
+      while(null != (line = in.readLine())) {
+        line = line.trim();
+        if(line.length() == 0 || line.startsWith("#")) {
+          continue;
+        }
+        String[] parts = line.split("\\s+");
+        try {
+          histogram.record(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+        } catch(RuntimeException e) {
+          throw new IllegalArgumentException("Invalid line '" + line + "' in " + file);
+        }
+      }
+    } finally {
+      in.close();
+    }
+    return histogram;
+  }
+
+  /**
+   * Record a single latency.
+   *
+   * @param micros
+   */
+  void record(long micros) {
+    record(micros, 1);
+  }
+
+  private void record(long micros, long count) {
+    long value = Math.min(Math.max(0, micros), MAX_VALUE);
+    counts.addAndGet(indexOf(value), count);
+    total.addAndGet(count);
+    sum.addAndGet(value * count);
+    long current;
+    while(value < (current = min.get()) && !min.compareAndSet(current, value)) {
+      // Lost a race with another thread, try again
+    }
+    while(value > (current = max.get()) && !max.compareAndSet(current, value)) {
+      // Lost a race with another thread, try again
+    }
+  }
+
+  /**
+   * Add everything recorded in another histogram to this one. If the two have different precisions, the other's
+   * buckets are recorded at the value they report.
+   *
+   * @param other
+   */
+  void add(LatencyHistogram other) {
+    long n = other.getCount();
+    if(n == 0) {
+      return;
+    }
+    for(int i = 0; i < other.counts.length(); i++) {
+      long count = other.counts.get(i);
+      if(count > 0) {
+        counts.addAndGet(other.subBucketBits == subBucketBits ? i : indexOf(Math.min(other.valueOf(i), MAX_VALUE)), count);
+      }
+    }
+    total.addAndGet(n);
+    sum.addAndGet(other.sum.get());
+    long value = other.getMin();
+    long current;
+    while(value < (current = min.get()) && !min.compareAndSet(current, value)) {
+      // Lost a race with another thread, try again
+    }
+    value = other.getMax();
+    while(value > (current = max.get()) && !max.compareAndSet(current, value)) {
+      // Lost a race with another thread, try again
+    }
+  }
+
+  /**
+   * Get the sum of all recorded latencies.
+   *
+   * @return
+   */
+  long getSum() {
+    return sum.get();
+  }
+
+  long getCount() {
+    return total.get();
+  }
+
+  long getMin() {
+    return (total.get() > 0 ? min.get() : 0);
+  }
+
+  long getMax() {
+    return max.get();
+  }
+
+  double getMean() {
+    long n = total.get();
+    return (n > 0 ? (double)sum.get() / n : 0);
+  }
+
+  /**
+   * Get the latency that the given percentage of recorded latencies are at or below.
+   *
+   * @param percentile
+   *     From 0 to 100.
+   *
+   * @return
+   */
+  long getValueAtPercentile(double percentile) {
+    long n = total.get();
+    if(n == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long)Math.ceil(Math.min(100, percentile) / 100 * n));
+    long seen = 0;
+    for(int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if(seen >= rank) {
+        return Math.min(Math.max(valueOf(i), getMin()), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /**
+   * Write every non-empty bucket to a file, one {@literal value count} pair to a line, so that it can be compared with a
+   * later run.
+   *
+   * @param file
+   *
+   * @throws IOException
+   */
+  void write(File file) throws IOException {
+    PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    try {
+      out.println(HEADER);
+      for(int i = 0; i < counts.length(); i++) {
+        long count = counts.get(i);
+        if(count > 0) {
+          out.print(valueOf(i));
+          out.print(' ');
+          out.println(count);
+        }
+      }
+    } finally {
+      out.close();
+    }
+    if(out.checkError()) {
+      throw new IOException("Error writing " + file);
+    }
+  }
+
+}
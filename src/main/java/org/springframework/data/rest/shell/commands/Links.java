@@ -47,12 +47,15 @@ public class Links {
     }
 
     @Override public TypedValue read(EvaluationContext context, Object target, String name) throws AccessException {
-      for(Link link : links) {
-        if(link.getRel().equals(name)) {
-          return new TypedValue(link);
+      // Cached expressions remember this accessor, so it may be asked to read a Links other than its own
+      if(target instanceof Links) {
+        for(Link link : ((Links)target).getLinks()) {
+          if(link.getRel().equals(name)) {
+            return new TypedValue(link);
+          }
         }
       }
-      return null;
+      throw new AccessException("No link with rel '" + name + "'");
     }
 
     @Override public boolean canWrite(EvaluationContext context, Object target, String name) throws AccessException {
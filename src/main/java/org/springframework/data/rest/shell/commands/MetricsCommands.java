@@ -0,0 +1,310 @@
+package org.springframework.data.rest.shell.commands;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.data.rest.shell.context.ResponseEvent;
+import org.springframework.data.rest.shell.http.RequestTiming;
+import org.springframework.shell.core.CommandMarker;
+import org.springframework.shell.core.annotation.CliAvailabilityIndicator;
+import org.springframework.shell.core.annotation.CliCommand;
+import org.springframework.shell.core.annotation.CliOption;
+import org.springframework.shell.support.util.OsUtils;
+import org.springframework.stereotype.Component;
+
+import static org.springframework.data.rest.shell.commands.Tables.pad;
+import static org.springframework.data.rest.shell.commands.Tables.padLeft;
+
+/**
+ * Commands that show how many requests this session has sent and how long they took, broken down by method, discovered
+ * rel, host and status class. Every {@link ResponseEvent} is recorded into a series for its combination of those four,
+ * using only atomic counters so recording never blocks a request. The events are published by the request factory
+ * every command shares, so requests sent by {@code export}, {@code bench}, {@code discover} and background jobs are
+ * counted as well as those sent by {@code get} and the other HTTP commands. Responses served from the response cache
+ * without going to the server are not counted.
+ * <p/>
+ * Each series keeps its latencies to within about 3%, and once there are 500 series, requests for a
+ * new combination are counted under the rel and host {@literal (other)}, so a long session that touches many URIs
+ * doesn't keep growing.
+ *
+ * @author agent
+ */
+@Component
+public class MetricsCommands implements CommandMarker, ApplicationListener<ResponseEvent> {
+
+  private static final Logger   LOG             = LoggerFactory.getLogger(MetricsCommands.class);
+  private static final String   NO_REL          = "-";
+  private static final String   OTHER           = "(other)";
+  private static final double[] PERCENTILES     = {50, 90, 99};
+  private static final double[] QUANTILES       = {0.5, 0.9, 0.99, 0.999};
+  private static final String[] DIMENSIONS      = {"method", "rel", "host", "status"};
+  /**
+   * Keeps each series' latencies to within about 3% in under 8KB.
+   */
+  private static final int      SUB_BUCKET_BITS = 5;
+  /**
+   * The number of series kept before new combinations are counted together.
+   */
+  private static final int      MAX_SERIES      = 500;
+
+  private final ConcurrentMap<Key, Series> series = new ConcurrentHashMap<Key, Series>();
+  @Autowired
+  private DiscoveryCommands discoveryCmds;
+  @Autowired
+  private ContextCommands   contextCmds;
+
+  private static String escape(String label) {
+    return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  private static String seconds(long micros) {
+    return String.valueOf(micros / 1000000.0);
+  }
+
+  @Override public void onApplicationEvent(ResponseEvent event) {
+    URI uri = event.getRequestUri();
+    int status = event.getResponse().getStatusCode().value();
+    Key key = new Key(event.getMethod().name(),
+                      relOf(uri),
+                      uri.getHost() + (uri.getPort() > 0 ? ":" + uri.getPort() : ""),
+                      (status / 100) + "xx");
+
+    Series s = series.get(key);
+    if(null == s && series.size() >= MAX_SERIES) {
+      key = new Key(key.values[0], OTHER, OTHER, key.values[3]);
+      s = series.get(key);
+    }
+    if(null == s) {
+      Series newSeries = new Series();
+      s = series.putIfAbsent(key, newSeries);
+      if(null == s) {
+        s = newSeries;
+      }
+    }
+    RequestTiming timing = event.getTiming();
+    s.record(null != timing ? (long)(timing.getTotal() * 1000) : -1, status >= 400);
+  }
+
+  /**
+   * Find the discovered rel a URI belongs to: the rel whose URI it is, or else the one whose URI is the longest prefix
+   * of it, so that {@literal /people/1} counts towards {@literal people}.
+   */
+  private String relOf(URI uri) {
+    String path = uri.getScheme() + "://" + uri.getRawAuthority() + (null != uri.getRawPath() ? uri.getRawPath() : "");
+    String rel = NO_REL;
+    int matched = 0;
+    for(Map.Entry<String, String> resource : discoveryCmds.getResources().entrySet()) {
+      String href = resource.getValue();
+      int query = href.indexOf('?');
+      if(query >= 0) {
+        href = href.substring(0, query);
+      }
+      if(href.endsWith("/")) {
+        href = href.substring(0, href.length() - 1);
+      }
+      if(href.length() > matched
+          && path.startsWith(href)
+          && (path.length() == href.length() || path.charAt(href.length()) == '/')) {
+        rel = resource.getKey();
+        matched = href.length();
+      }
+    }
+    return rel;
+  }
+
+  @CliAvailabilityIndicator({"metrics show", "metrics export"})
+  public boolean isMetricsAvailable() {
+    return true;
+  }
+
+  @CliCommand(value = "metrics show", help = "Show the number of requests, errors and latencies of this session.")
+  public String show(
+      @CliOption(key = "reset",
+                 mandatory = false,
+                 help = "Reset the metrics after showing them.",
+                 unspecifiedDefaultValue = "false",
+                 specifiedDefaultValue = "true") boolean reset) {
+    if(series.isEmpty()) {
+      return "No requests yet.";
+    }
+
+    StringBuilder sb = new StringBuilder();
+    for(int dimension = 0; dimension < DIMENSIONS.length; dimension++) {
+      Map<String, Series> totals = new TreeMap<String, Series>();
+      for(Map.Entry<Key, Series> entry : series.entrySet()) {
+        String value = entry.getKey().values[dimension];
+        Series total = totals.get(value);
+        if(null == total) {
+          total = new Series();
+          totals.put(value, total);
+        }
+        total.add(entry.getValue());
+      }
+
+      int maxLen = DIMENSIONS[dimension].length();
+      for(String value : totals.keySet()) {
+        maxLen = Math.max(maxLen, value.length());
+      }
+      maxLen += 4;
+
+      if(sb.length() > 0) {
+        sb.append(OsUtils.LINE_SEPARATOR);
+      }
+      sb.append(pad(DIMENSIONS[dimension], maxLen))
+        .append(padLeft("requests", 10))
+        .append(padLeft("errors", 10));
+      for(double p : PERCENTILES) {
+        sb.append(padLeft("p" + (int)p + " ms", 12));
+      }
+      sb.append(padLeft("max ms", 12)).append(OsUtils.LINE_SEPARATOR);
+
+      char[] line = new char[maxLen + 20 + 12 * (PERCENTILES.length + 1)];
+      Arrays.fill(line, '=');
+      sb.append(new String(line)).append(OsUtils.LINE_SEPARATOR);
+
+      for(Map.Entry<String, Series> total : totals.entrySet()) {
+        Series s = total.getValue();
+        sb.append(pad(total.getKey(), maxLen))
+          .append(padLeft(String.valueOf(s.requests.get()), 10))
+          .append(padLeft(String.valueOf(s.errors.get()), 10));
+        for(double p : PERCENTILES) {
+          sb.append(padLeft(String.format("%.2f", s.latency.getValueAtPercentile(p) / 1000.0), 12));
+        }
+        sb.append(padLeft(String.format("%.2f", s.latency.getMax() / 1000.0), 12))
+          .append(OsUtils.LINE_SEPARATOR);
+      }
+    }
+
+    if(reset) {
+      series.clear();
+    }
+    return sb.toString();
+  }
+
+  @CliCommand(value = "metrics export", help = "Write the metrics of this session in the Prometheus text format.")
+  public String export(
+      @CliOption(key = "file",
+                 mandatory = true,
+                 help = "The path to write the metrics to.") String path) {
+    File file = new File(contextCmds.evalAsString(path));
+    List<Map.Entry<Key, Series>> entries = new ArrayList<Map.Entry<Key, Series>>(new TreeMap<Key, Series>(series).entrySet());
+    try {
+      PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+      try {
+        out.print("# HELP rest_shell_requests_total Requests sent by rest-shell.\n");
+        out.print("# TYPE rest_shell_requests_total counter\n");
+        for(Map.Entry<Key, Series> entry : entries) {
+          out.print("rest_shell_requests_total" + entry.getKey().labels(null) + " " + entry.getValue().requests.get() + "\n");
+        }
+        out.print("# HELP rest_shell_request_duration_seconds Time from sending a request to reading its response.\n");
+        out.print("# TYPE rest_shell_request_duration_seconds summary\n");
+        for(Map.Entry<Key, Series> entry : entries) {
+          LatencyHistogram latency = entry.getValue().latency;
+          for(double q : QUANTILES) {
+            out.print("rest_shell_request_duration_seconds" + entry.getKey().labels(String.valueOf(q)) + " "
+                          + seconds(latency.getValueAtPercentile(q * 100)) + "\n");
+          }
+          out.print("rest_shell_request_duration_seconds_sum" + entry.getKey().labels(null) + " "
+                        + seconds(latency.getSum()) + "\n");
+          out.print("rest_shell_request_duration_seconds_count" + entry.getKey().labels(null) + " "
+                        + latency.getCount() + "\n");
+        }
+      } finally {
+        out.close();
+      }
+      if(out.checkError()) {
+        throw new IOException("Error writing " + file);
+      }
+    } catch(IOException e) {
+      LOG.error(e.getMessage(), e);
+      throw new IllegalArgumentException(e);
+    }
+    return ">> " + file.getPath();
+  }
+
+  /**
+   * The method, rel, host and status class a series is recorded for.
+   */
+  private static class Key implements Comparable<Key> {
+
+    private final String[] values;
+
+    private Key(String... values) {
+      this.values = values;
+    }
+
+    private String labels(String quantile) {
+      StringBuilder sb = new StringBuilder("{");
+      for(int i = 0; i < DIMENSIONS.length; i++) {
+        if(i > 0) {
+          sb.append(',');
+        }
+        sb.append(DIMENSIONS[i]).append("=\"").append(escape(values[i])).append('"');
+      }
+      if(null != quantile) {
+        sb.append(",quantile=\"").append(quantile).append('"');
+      }
+      return sb.append('}').toString();
+    }
+
+    @Override public int compareTo(Key other) {
+      for(int i = 0; i < values.length; i++) {
+        int c = values[i].compareTo(other.values[i]);
+        if(c != 0) {
+          return c;
+        }
+      }
+      return 0;
+    }
+
+    @Override public boolean equals(Object o) {
+      return o instanceof Key && Arrays.equals(values, ((Key)o).values);
+    }
+
+    @Override public int hashCode() {
+      return Arrays.hashCode(values);
+    }
+
+  }
+
+  private static class Series {
+
+    private final AtomicLong       requests = new AtomicLong();
+    private final AtomicLong       errors   = new AtomicLong();
+    private final LatencyHistogram latency  = new LatencyHistogram(SUB_BUCKET_BITS);
+
+    private void record(long micros, boolean error) {
+      requests.incrementAndGet();
+      if(error) {
+        errors.incrementAndGet();
+      }
+      if(micros >= 0) {
+        latency.record(micros);
+      }
+    }
+
+    private void add(Series other) {
+      requests.addAndGet(other.requests.get());
+      errors.addAndGet(other.errors.get());
+      latency.add(other.latency);
+    }
+
+  }
+
+}
@@ -0,0 +1,344 @@
+package org.springframework.data.rest.shell.commands;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.springframework.hateoas.Link;
+import org.springframework.shell.support.util.OsUtils;
+
+/**
+ * Writes the transcript of a request to the {@code --output} file while the response is still being read, so the
+ * body never has to be held in memory. The transcript goes to a temporary file next to the target first and is only
+ * moved into place by {@link #commit()}, which lets concurrent requests write their output in parallel and still
+ * have it land in the order the requests were issued.
+ *
+ * @author agent
+ */
+class OutputSink {
+
+  /**
+   * How much of the response body is kept in memory for the {@code response} variable.
+   */
+  static final int PREVIEW_LIMIT = 64 * 1024;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  enum Mode {
+    /**
+     * Replace the output file with each transcript.
+     */
+    OVERWRITE,
+    /**
+     * Add each transcript to the end of the output file.
+     */
+    APPEND,
+    /**
+     * Write each transcript to its own numbered file next to the output file.
+     */
+    PER_REQUEST
+  }
+
+  private final File         target;
+  private final Mode         mode;
+  private       File         tmp;
+  private       FileChannel  channel;
+  private       OutputStream out;
+
+  /**
+   * @param path
+   *     The path given to {@code --output}.
+   * @param mode
+   *     How the transcript is combined with what's already in the output file.
+   * @param sequence
+   *     Number used to name the file in {@link Mode#PER_REQUEST} mode.
+   */
+  OutputSink(String path, Mode mode, int sequence) {
+    this.mode = mode;
+    this.target = (mode == Mode.PER_REQUEST ? numbered(new File(path), sequence) : new File(path));
+  }
+
+  /**
+   * Parse the value of an {@code --output-mode} option.
+   *
+   * @param mode
+   *     The option value, which may be empty.
+   * @param defaultMode
+   *     The mode to use when none was given.
+   *
+   * @return
+   */
+  static Mode mode(String mode, Mode defaultMode) {
+    if(null == mode || mode.length() == 0) {
+      return defaultMode;
+    }
+    try {
+      return Mode.valueOf(mode.trim().toUpperCase().replace('-', '_'));
+    } catch(IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unknown output mode '" + mode + "'. Use one of: overwrite, append, per-request.");
+    }
+  }
+
+  private static File numbered(File file, int sequence) {
+    String name = file.getName();
+    int dot = name.lastIndexOf('.');
+    String numberedName = (dot > 0
+                           ? name.substring(0, dot) + "-" + sequence + name.substring(dot)
+                           : name + "-" + sequence);
+    return new File(file.getAbsoluteFile().getParentFile(), numberedName);
+  }
+
+  /**
+   * Get the file this transcript will end up in.
+   *
+   * @return
+   */
+  File getTarget() {
+    return target;
+  }
+
+  /**
+   * Start a new transcript, throwing away anything written by an earlier attempt at the same request.
+   *
+   * @return The stream to write the transcript header to.
+   *
+   * @throws IOException
+   */
+  OutputStream open() throws IOException {
+    discard();
+    tmp = File.createTempFile(".rest-shell-", ".tmp", target.getAbsoluteFile().getParentFile());
+    channel = new FileOutputStream(tmp).getChannel();
+    out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+    return out;
+  }
+
+  /**
+   * Copy a response body to the transcript as-is, moving it through a direct buffer straight into the file's channel.
+   *
+   * @param body
+   *
+   * @throws IOException
+   */
+  void copyBody(InputStream body) throws IOException {
+    out.flush();
+    ReadableByteChannel src = Channels.newChannel(body);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    while(src.read(buffer) >= 0) {
+      buffer.flip();
+      while(buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+  }
+
+  /**
+   * Copy a JSON response body to the transcript, pretty-printing it one token at a time. The links of the top-level
+   * resource, in either the {@literal links} array or a HAL {@literal _links} object, are picked out on the way
+   * through, so that they're known even when the body is too large to keep.
+   *
+   * @param body
+   * @param jsonFactory
+   *
+   * @return The links of the top-level resource.
+   *
+   * @throws IOException
+   */
+  List<Link> copyJson(InputStream body, JsonFactory jsonFactory) throws IOException {
+    JsonParser parser = jsonFactory.createJsonParser(body);
+    JsonGenerator gen = jsonFactory.createJsonGenerator(out, JsonEncoding.UTF8);
+    gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    gen.useDefaultPrettyPrinter();
+    List<Link> links = new ArrayList<Link>();
+    int depth = 0;
+    String section = null;
+    String halRel = null;
+    String rel = null;
+    String href = null;
+    try {
+      JsonToken token;
+      while(null != (token = parser.nextToken())) {
+        gen.copyCurrentEvent(parser);
+        switch(token) {
+          case START_OBJECT:
+          case START_ARRAY:
+            depth++;
+            break;
+          case END_OBJECT:
+          case END_ARRAY:
+            if(null != section && depth >= 3 && null != href) {
+              links.add(new Link(href, ("links".equals(section) ? rel : halRel)));
+              rel = null;
+              href = null;
+            }
+            if(--depth == 1) {
+              section = null;
+            }
+            break;
+          case FIELD_NAME:
+            if(depth == 1) {
+              String name = parser.getCurrentName();
+              section = ("links".equals(name) || "_links".equals(name) ? name : null);
+            } else if(depth == 2 && "_links".equals(section)) {
+              halRel = parser.getCurrentName();
+            }
+            break;
+          case VALUE_STRING:
+            if(null != section && depth >= 3) {
+              if("href".equals(parser.getCurrentName())) {
+                href = parser.getText();
+              } else if("rel".equals(parser.getCurrentName())) {
+                rel = parser.getText();
+              }
+            }
+            break;
+          default:
+        }
+      }
+    } finally {
+      gen.close();
+      parser.close();
+    }
+    return links;
+  }
+
+  /**
+   * Move the finished transcript into place according to the {@link Mode}.
+   *
+   * @throws IOException
+   */
+  void commit() throws IOException {
+    // End on a new line so appended transcripts don't run into each other
+    out.write(OsUtils.LINE_SEPARATOR.getBytes());
+    out.close();
+    try {
+      if(mode == Mode.APPEND) {
+        append(tmp, target);
+      } else {
+        if(target.exists() && !target.delete()) {
+          throw new IOException("Cannot replace " + target);
+        }
+        if(!tmp.renameTo(target)) {
+          append(tmp, target);
+        }
+      }
+    } finally {
+      if(tmp.exists()) {
+        tmp.delete();
+      }
+      tmp = null;
+    }
+  }
+
+  /**
+   * Throw away the transcript without touching the output file.
+   */
+  void discard() {
+    if(null == tmp) {
+      return;
+    }
+    try {
+      out.close();
+    } catch(IOException ignored) {
+    }
+    tmp.delete();
+    tmp = null;
+  }
+
+  private static void append(File from, File to) throws IOException {
+    FileChannel src = new FileInputStream(from).getChannel();
+    try {
+      FileChannel dest = new FileOutputStream(to, true).getChannel();
+      try {
+        long size = src.size();
+        long position = 0;
+        while(position < size) {
+          position += src.transferTo(position, size - position, dest);
+        }
+      } finally {
+        dest.close();
+      }
+    } finally {
+      src.close();
+    }
+  }
+
+  /**
+   * Passes a response body through while keeping its first few bytes for the preview.
+   */
+  static class PreviewInputStream extends FilterInputStream {
+
+    private final ByteArrayOutputStream preview;
+    private final int                   limit;
+    private       long                  count;
+
+    PreviewInputStream(InputStream in, int limit) {
+      super(in);
+      this.limit = limit;
+      this.preview = new ByteArrayOutputStream(Math.min(limit, 8 * 1024));
+    }
+
+    @Override public int read() throws IOException {
+      int b = super.read();
+      if(b >= 0) {
+        if(count < limit) {
+          preview.write(b);
+        }
+        count++;
+      }
+      return b;
+    }
+
+    @Override public int read(byte[] b, int off, int len) throws IOException {
+      int read = super.read(b, off, len);
+      if(read > 0) {
+        if(count < limit) {
+          preview.write(b, off, (int)Math.min(read, limit - count));
+        }
+        count += read;
+      }
+      return read;
+    }
+
+    /**
+     * Get the number of bytes read so far.
+     *
+     * @return
+     */
+    long getCount() {
+      return count;
+    }
+
+    /**
+     * Whether more was read than fits in the preview.
+     *
+     * @return
+     */
+    boolean isTruncated() {
+      return count > limit;
+    }
+
+    byte[] getPreview() {
+      return preview.toByteArray();
+    }
+
+  }
+
+}
@@ -31,6 +31,8 @@ public class PathOrRelConverter implements Converter<PathOrRel> {
     String relOrPath = contextCmds.evalAsString(value);
     if(discoveryCmds.getResources().containsKey(relOrPath)) {
       return new PathOrRel(discoveryCmds.getResources().get(relOrPath));
+    } else if(discoveryCmds.getGraph().containsKey(relOrPath)) {
+      return new PathOrRel(discoveryCmds.getGraph().get(relOrPath));
     } else {
       return new PathOrRel(relOrPath);
     }
@@ -47,6 +49,11 @@ public class PathOrRelConverter implements Converter<PathOrRel> {
         completions.add(new Completion(entry.getKey()));
       }
     }
+    for(String relPath : discoveryCmds.getGraph().keySet()) {
+      if(relPath.startsWith(existingData) && !discoveryCmds.getResources().containsKey(relPath)) {
+        completions.add(new Completion(relPath));
+      }
+    }
     return true;
   }
 
@@ -0,0 +1,506 @@
+package org.springframework.data.rest.shell.commands;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.shell.support.util.OsUtils;
+
+/**
+ * The last responses of this session, newest last, as the {@literal response} variable. {@code response[-1]} is the
+ * latest response, {@code response[-2]} the one before it and so on, while {@code response[0]} is the oldest one still
+ * kept. The properties of the latest response can also be read off the history itself, so {@code response.statusCode}
+ * still works.
+ * <p/>
+ * Bodies are kept as the JSON (or text) they were rendered as, not as the objects they decode to, and JSON bodies are
+ * read through a {@link JsonIndex} that only decodes the values an expression reads. Once the bodies held in memory
+ * add up to more than the memory limit, the oldest ones are written to temporary files and memory-mapped from there
+ * instead.
+ *
+ * @author agent
+ */
+public class ResponseHistory extends AbstractMap<Object, ResponseHistory.Entry> {
+
+  /**
+   * How many responses are kept by default.
+   */
+  static final int  DEFAULT_CAPACITY = 20;
+  /**
+   * How many bytes of bodies are kept in memory by default, 8MB.
+   */
+  static final long DEFAULT_MEMORY   = 8L * 1024 * 1024;
+
+  private static final Logger  LOG  = LoggerFactory.getLogger(ResponseHistory.class);
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final ObjectMapper                  mapper   = new ObjectMapper()
+      .configure(JsonParser.Feature.ALLOW_UNQUOTED_FIELD_NAMES, true);
+  private final ArrayDeque<Entry>             entries  = new ArrayDeque<Entry>();
+  private final Set<Map.Entry<Object, Entry>> entrySet = new EntrySet();
+  private int  capacity  = DEFAULT_CAPACITY;
+  private long maxMemory = DEFAULT_MEMORY;
+  private long memory;
+
+  /**
+   * Add a response to the end of the history, dropping the oldest one if the history is full.
+   *
+   * @param method
+   * @param requestUrl
+   * @param status
+   * @param headers
+   * @param body
+   *     The body as it was rendered, in UTF-8, or {@literal null} if it wasn't kept.
+   * @param json
+   *     Whether the body is JSON, and should be decoded as such.
+   * @param decoded
+   *     The body as it's already been decoded, if it has been.
+   *
+   * @return The new entry.
+   */
+  synchronized Entry add(String method, String requestUrl, HttpStatus status, HttpHeaders headers, byte[] body,
+                         boolean json, Object decoded) {
+    Entry entry = new Entry(method, requestUrl, status, headers, body, json);
+    if(null != decoded) {
+      entry.decoded = new SoftReference<Object>(decoded);
+    }
+    entries.addLast(entry);
+    memory += entry.getLength();
+    while(entries.size() > capacity) {
+      drop(entries.removeFirst());
+    }
+    spill();
+    return entry;
+  }
+
+  synchronized int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Set how many responses are kept, dropping the oldest ones if there are more than that already.
+   *
+   * @param capacity
+   */
+  synchronized void setCapacity(int capacity) {
+    this.capacity = Math.max(1, capacity);
+    while(entries.size() > this.capacity) {
+      drop(entries.removeFirst());
+    }
+  }
+
+  synchronized long getMaxMemory() {
+    return maxMemory;
+  }
+
+  /**
+   * Set how many bytes of bodies are kept in memory, spilling the oldest ones to disk if there are more than that
+   * already.
+   *
+   * @param maxMemory
+   */
+  synchronized void setMaxMemory(long maxMemory) {
+    this.maxMemory = Math.max(0, maxMemory);
+    spill();
+  }
+
+  synchronized long getMemory() {
+    return memory;
+  }
+
+  /**
+   * Get the latest response.
+   *
+   * @return The latest response, or {@literal null} if there hasn't been one yet.
+   */
+  public synchronized Entry getLatest() {
+    return entries.peekLast();
+  }
+
+  /**
+   * Get the responses from the oldest to the latest.
+   *
+   * @return
+   */
+  public synchronized List<Entry> getEntries() {
+    return new ArrayList<Entry>(entries);
+  }
+
+  public HttpStatus getStatusCode() {
+    Entry latest = getLatest();
+    return (null != latest ? latest.getStatusCode() : null);
+  }
+
+  public HttpHeaders getHeaders() {
+    Entry latest = getLatest();
+    return (null != latest ? latest.getHeaders() : null);
+  }
+
+  public Object getBody() {
+    Entry latest = getLatest();
+    return (null != latest ? latest.getBody() : null);
+  }
+
+  /**
+   * Get a response by its index: -1 is the latest, -2 the one before that, and 0 the oldest one kept.
+   *
+   * @param key
+   *
+   * @return The response, or {@literal null} if there's none at that index.
+   */
+  @Override public synchronized Entry get(Object key) {
+    if(!(key instanceof Number)) {
+      return null;
+    }
+    int index = ((Number)key).intValue();
+    if(index < 0) {
+      index += entries.size();
+    }
+    if(index < 0 || index >= entries.size()) {
+      return null;
+    }
+    Iterator<Entry> iter = entries.iterator();
+    for(int i = 0; i < index; i++) {
+      iter.next();
+    }
+    return iter.next();
+  }
+
+  @Override public boolean containsKey(Object key) {
+    return null != get(key);
+  }
+
+  @Override public synchronized int size() {
+    return entries.size();
+  }
+
+  @Override public synchronized void clear() {
+    for(Entry entry : entries) {
+      entry.drop();
+    }
+    entries.clear();
+    memory = 0;
+  }
+
+  @Override public Set<Map.Entry<Object, Entry>> entrySet() {
+    return entrySet;
+  }
+
+  @Override public boolean equals(Object o) {
+    return this == o;
+  }
+
+  @Override public int hashCode() {
+    return System.identityHashCode(this);
+  }
+
+  @Override public String toString() {
+    StringBuilder sb = new StringBuilder();
+    List<Entry> all = getEntries();
+    for(int i = all.size() - 1; i >= 0; i--) {
+      if(sb.length() > 0) {
+        sb.append(OsUtils.LINE_SEPARATOR);
+      }
+      sb.append(i - all.size()).append(": ").append(all.get(i));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Write the body of the latest response to a generator without decoding it into objects first.
+   *
+   * @param gen
+   *
+   * @throws IOException
+   */
+  void writeLatestBody(JsonGenerator gen) throws IOException {
+    Entry latest = getLatest();
+    if(null == latest) {
+      gen.writeNull();
+    } else {
+      latest.writeBody(gen);
+    }
+  }
+
+  private void drop(Entry entry) {
+    if(entry.isInMemory()) {
+      memory -= entry.getLength();
+    }
+    entry.drop();
+  }
+
+  /**
+   * Move the oldest bodies held in memory to disk until the rest fit in the memory limit.
+   */
+  private void spill() {
+    Iterator<Entry> iter = entries.iterator();
+    while(memory > maxMemory && iter.hasNext()) {
+      Entry entry = iter.next();
+      if(entry.isInMemory()) {
+        try {
+          entry.spill();
+          memory -= entry.getLength();
+        } catch(IOException e) {
+          LOG.error("Error writing response body of " + entry.getRequestUrl() + " to disk: " + e.getMessage(), e);
+          return;
+        }
+      }
+    }
+  }
+
+  private class EntrySet extends AbstractSet<Map.Entry<Object, Entry>> {
+
+    @Override public Iterator<Map.Entry<Object, Entry>> iterator() {
+      final List<Entry> all = getEntries();
+      return new Iterator<Map.Entry<Object, Entry>>() {
+        private int index = all.size() - 1;
+
+        @Override public boolean hasNext() {
+          return index >= 0;
+        }
+
+        @Override public Map.Entry<Object, Entry> next() {
+          Entry entry = all.get(index);
+          Map.Entry<Object, Entry> next = new SimpleImmutableEntry<Object, Entry>(index - all.size(), entry);
+          index--;
+          return next;
+        }
+
+        @Override public void remove() {
+          throw new UnsupportedOperationException();
+        }
+      };
+    }
+
+    @Override public int size() {
+      return ResponseHistory.this.size();
+    }
+
+  }
+
+  /**
+   * A response in the history. Its body is held as bytes, either in memory or in a memory-mapped temporary file, and is
+   * indexed the first time it's read. The index is only softly referenced, so it's built again if memory ran short in
+   * between.
+   */
+  public class Entry {
+
+    private final String      method;
+    private final String      requestUrl;
+    private final HttpStatus  status;
+    private final HttpHeaders headers;
+    private final boolean     json;
+    private final int         length;
+    private byte[]                bytes;
+    private File                  file;
+    private MappedByteBuffer      mapped;
+    private SoftReference<Object> decoded;
+
+    private Entry(String method, String requestUrl, HttpStatus status, HttpHeaders headers, byte[] bytes, boolean json) {
+      this.method = method;
+      this.requestUrl = requestUrl;
+      this.status = status;
+      this.headers = headers;
+      this.bytes = bytes;
+      this.json = json;
+      this.length = (null != bytes ? bytes.length : 0);
+    }
+
+    public String getMethod() {
+      return method;
+    }
+
+    public String getRequestUrl() {
+      return requestUrl;
+    }
+
+    public HttpStatus getStatusCode() {
+      return status;
+    }
+
+    public HttpHeaders getHeaders() {
+      return headers;
+    }
+
+    /**
+     * Get the body, as a {@link JsonIndex} view if it's JSON.
+     *
+     * @return The body, or {@literal null} if there was none or it wasn't kept.
+     */
+    public synchronized Object getBody() {
+      Object body = (null != decoded ? decoded.get() : null);
+      if(null != body) {
+        return body;
+      }
+      ByteBuffer buffer = buffer();
+      if(null == buffer) {
+        return null;
+      }
+      if(!json) {
+        body = UTF8.decode(buffer).toString();
+      } else {
+        try {
+          body = JsonIndex.parse(buffer);
+        } catch(IllegalArgumentException notIndexable) {
+          // Not quite JSON, such as a body with unquoted field names, which only Jackson can make sense of
+          try {
+            body = mapper.readValue(open(), Object.class);
+          } catch(IOException e) {
+            throw new IllegalStateException("Error decoding the response body of " + requestUrl + ": " + e.getMessage(),
+                                            e);
+          }
+        }
+      }
+      decoded = new SoftReference<Object>(body);
+      return body;
+    }
+
+    /**
+     * Get the size of the body as it's stored.
+     *
+     * @return The size in bytes.
+     */
+    public int getLength() {
+      return length;
+    }
+
+    /**
+     * Whether the body has been moved to disk.
+     *
+     * @return
+     */
+    public synchronized boolean isSpilled() {
+      return null != mapped;
+    }
+
+    @Override public String toString() {
+      return method + " " + requestUrl + " " + status.value() + " " + status.name()
+          + " (" + length + " bytes" + (isSpilled() ? " on disk" : "") + ")";
+    }
+
+    private synchronized boolean isInMemory() {
+      return null != bytes;
+    }
+
+    private synchronized ByteBuffer buffer() {
+      if(null != bytes) {
+        return ByteBuffer.wrap(bytes);
+      }
+      if(null != mapped) {
+        return mapped.duplicate();
+      }
+      return null;
+    }
+
+    private InputStream open() {
+      ByteBuffer buffer = buffer();
+      return (null != buffer ? new ByteBufferInputStream(buffer) : null);
+    }
+
+    private void writeBody(JsonGenerator gen) throws IOException {
+      InputStream in = open();
+      if(null == in) {
+        gen.writeNull();
+      } else if(json) {
+        // Copy the tokens across instead of building the objects they stand for
+        JsonParser parser = mapper.getJsonFactory().createJsonParser(in);
+        try {
+          parser.nextToken();
+          gen.copyCurrentStructure(parser);
+        } finally {
+          parser.close();
+        }
+      } else {
+        gen.writeString((String)getBody());
+      }
+    }
+
+    private synchronized void spill() throws IOException {
+      File tmp = File.createTempFile("rest-shell-response-", (json ? ".json" : ".txt"));
+      tmp.deleteOnExit();
+      try {
+        OutputStream out = new FileOutputStream(tmp);
+        try {
+          out.write(bytes);
+        } finally {
+          out.close();
+        }
+        RandomAccessFile raf = new RandomAccessFile(tmp, "r");
+        try {
+          // The mapping stays valid once the file is closed
+          mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+        } finally {
+          raf.close();
+        }
+      } catch(IOException e) {
+        tmp.delete();
+        throw e;
+      }
+      file = tmp;
+      bytes = null;
+      // An index over the bytes in memory would keep them there
+      decoded = null;
+    }
+
+    private synchronized void drop() {
+      bytes = null;
+      mapped = null;
+      decoded = null;
+      if(null != file) {
+        file.delete();
+        file = null;
+      }
+    }
+
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+
+    private final ByteBuffer buffer;
+
+    private ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override public int read() {
+      return (buffer.hasRemaining() ? buffer.get() & 0xff : -1);
+    }
+
+    @Override public int read(byte[] b, int off, int len) {
+      if(!buffer.hasRemaining()) {
+        return -1;
+      }
+      int n = Math.min(len, buffer.remaining());
+      buffer.get(b, off, n);
+      return n;
+    }
+
+    @Override public int available() {
+      return buffer.remaining();
+    }
+
+  }
+
+}
@@ -0,0 +1,131 @@
+package org.springframework.data.rest.shell.commands;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.springframework.data.rest.shell.http.RetryPolicy;
+import org.springframework.http.HttpStatus;
+import org.springframework.shell.core.CommandMarker;
+import org.springframework.shell.core.annotation.CliCommand;
+import org.springframework.shell.core.annotation.CliOption;
+import org.springframework.shell.support.util.OsUtils;
+import org.springframework.stereotype.Component;
+
+/**
+ * Commands for configuring how failed requests are retried.
+ *
+ * @author agent
+ */
+@Component
+public class RetryCommands implements CommandMarker {
+
+  private final RetryPolicy policy = new RetryPolicy();
+
+  /**
+   * Get the retry policy every request sent by the shell goes through.
+   *
+   * @return
+   */
+  public RetryPolicy getPolicy() {
+    return policy;
+  }
+
+  @CliCommand(value = "retry config", help = "Configure how failed requests are retried.")
+  public String config(
+      @CliOption(key = "maxAttempts",
+                 mandatory = false,
+                 help = "The number of times to send a request before giving up, including the first. 1 turns retries off.") Integer maxAttempts,
+      @CliOption(key = "baseDelay",
+                 mandatory = false,
+                 help = "The time (in milliseconds) to wait before the first retry. Doubles with every retry.") Long baseDelay,
+      @CliOption(key = "maxDelay",
+                 mandatory = false,
+                 help = "The longest time (in milliseconds) to wait between two attempts.") Long maxDelay,
+      @CliOption(key = "jitter",
+                 mandatory = false,
+                 help = "How much of each delay to randomize, from 0 (none) to 1 (all of it).") Double jitter,
+      @CliOption(key = "budget",
+                 mandatory = false,
+                 help = "The percentage of requests that may be retries.") Integer budget,
+      @CliOption(key = "retryAfter",
+                 mandatory = false,
+                 help = "Whether to wait as long as the server's Retry-After header asks.") Boolean retryAfter,
+      @CliOption(key = "nonIdempotent",
+                 mandatory = false,
+                 help = "Whether to retry POST and PATCH requests too.") Boolean nonIdempotent,
+      @CliOption(key = "statuses",
+                 mandatory = false,
+                 help = "Comma-separated list of the response statuses to retry.") String statuses) {
+    if(null != maxAttempts) {
+      policy.setMaxAttempts(maxAttempts);
+    }
+    if(null != baseDelay) {
+      policy.setBaseDelay(baseDelay);
+    }
+    if(null != maxDelay) {
+      policy.setMaxDelay(maxDelay);
+    }
+    if(null != jitter) {
+      policy.setJitter(jitter);
+    }
+    if(null != budget) {
+      policy.setBudgetPercent(budget);
+    }
+    if(null != retryAfter) {
+      policy.setRetryAfter(retryAfter);
+    }
+    if(null != nonIdempotent) {
+      policy.setRetryNonIdempotent(nonIdempotent);
+    }
+    if(null != statuses) {
+      policy.setStatuses(parseStatuses(statuses));
+    }
+
+    return policy.toString();
+  }
+
+  @CliCommand(value = "retry stats", help = "Show how many requests have been retried.")
+  public String stats(
+      @CliOption(key = "reset",
+                 mandatory = false,
+                 help = "Reset the counters after showing them.",
+                 unspecifiedDefaultValue = "false",
+                 specifiedDefaultValue = "true") boolean reset) {
+    long requests = policy.getRequestCount();
+    long retries = policy.getRetryCount();
+
+    StringBuilder sb = new StringBuilder();
+    sb.append("Requests:       ").append(requests).append(OsUtils.LINE_SEPARATOR)
+      .append("Retries:        ").append(retries);
+    if(requests > 0) {
+      sb.append(String.format(" (%.1f%%)", retries * 100.0 / requests));
+    }
+    sb.append(OsUtils.LINE_SEPARATOR)
+      .append("Budget denied:  ").append(policy.getBudgetDeniedCount()).append(OsUtils.LINE_SEPARATOR)
+      .append("Gave up:        ").append(policy.getExhaustedCount()).append(OsUtils.LINE_SEPARATOR)
+      .append("Budget left:    ").append(String.format("%.1f", policy.getBalance())).append(" retries")
+      .append(OsUtils.LINE_SEPARATOR);
+
+    if(reset) {
+      policy.resetStats();
+    }
+    return sb.toString();
+  }
+
+  private static Set<HttpStatus> parseStatuses(String statuses) {
+    Set<HttpStatus> set = EnumSet.noneOf(HttpStatus.class);
+    for(String s : statuses.split(",")) {
+      s = s.trim();
+      if(s.length() == 0) {
+        continue;
+      }
+      try {
+        set.add(HttpStatus.valueOf(Integer.parseInt(s)));
+      } catch(IllegalArgumentException e) {
+        throw new IllegalArgumentException("Unknown HTTP status '" + s + "'");
+      }
+    }
+    return set;
+  }
+
+}
@@ -16,6 +16,9 @@ import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509TrustManager;
 
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.data.rest.shell.context.SslChangedEvent;
 import org.springframework.shell.core.CommandMarker;
 import org.springframework.shell.core.annotation.CliCommand;
 import org.springframework.shell.core.annotation.CliOption;
@@ -27,7 +30,7 @@ import org.springframework.stereotype.Component;
  * @author Jon Brisbin
  */
 @Component
-public class SslCommands implements CommandMarker {
+public class SslCommands implements CommandMarker, ApplicationEventPublisherAware {
 
   private final SSLContext defaultContext;
   private       SSLContext customContext;
@@ -38,6 +41,7 @@ public class SslCommands implements CommandMarker {
   private String         truststorePassword;
   private File           keystore;
   private String         keystorePassword;
+  private ApplicationEventPublisher ctx;
 
   {
     try {
@@ -47,6 +51,10 @@ public class SslCommands implements CommandMarker {
     }
   }
 
+  @Override public void setApplicationEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
+    this.ctx = applicationEventPublisher;
+  }
+
   public SSLContext getCustomContext() {
     return (null == customContext ? defaultContext : customContext);
   }
@@ -104,6 +112,7 @@ public class SslCommands implements CommandMarker {
   @CliCommand(value = "ssl reset", help = "Reset the SSL configuration back to the system default")
   public void reset() {
     SSLContext.setDefault(defaultContext);
+    ctx.publishEvent(new SslChangedEvent(this));
   }
 
   @CliCommand(value = "ssl truststore", help = "Manage the truststore TrustManagers")
@@ -167,6 +176,7 @@ public class SslCommands implements CommandMarker {
                                          KeyManagementException {
     customContext = SSLContext.getInstance("TLS");
     customContext.init(getKeyManagers(), getTrustManagers(), null);
+    ctx.publishEvent(new SslChangedEvent(this));
   }
 
 }
@@ -0,0 +1,157 @@
+package org.springframework.data.rest.shell.commands;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.shell.core.CommandMarker;
+import org.springframework.shell.core.annotation.CliCommand;
+import org.springframework.shell.support.util.OsUtils;
+import org.springframework.stereotype.Component;
+
+import static org.springframework.data.rest.shell.commands.Tables.pad;
+import static org.springframework.data.rest.shell.commands.Tables.padLeft;
+
+/**
+ * Keeps track of how long each phase of starting the shell took, from the start of the JVM to the first prompt, and of
+ * the work put off until after it, such as creating the context of user beans. As a {@link BeanFactoryPostProcessor},
+ * it's created as soon as the shell's bean definitions have been found, before any of the other commands.
+ *
+ * @author agent
+ */
+@Component
+public class StartupCommands implements CommandMarker,
+                                        BeanFactoryPostProcessor,
+                                        ApplicationListener<ContextRefreshedEvent> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(StartupCommands.class);
+
+  private final long        jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+  private final List<Phase> phases   = new ArrayList<Phase>();
+  private       long        last     = jvmStart;
+  private       boolean     refreshed;
+  private       boolean     prompted;
+
+  @Override public void postProcessBeanFactory(ConfigurableListableBeanFactory beanFactory) throws BeansException {
+    mark("JVM, Spring Shell and finding commands");
+  }
+
+  @Override public void onApplicationEvent(ContextRefreshedEvent event) {
+    synchronized(phases) {
+      if(refreshed) {
+        return;
+      }
+      refreshed = true;
+    }
+    mark("Creating commands");
+  }
+
+  /**
+   * Note that the first prompt is about to be shown, which ends the startup.
+   */
+  public void prompted() {
+    synchronized(phases) {
+      prompted = true;
+    }
+  }
+
+  /**
+   * End a phase of the startup, which is taken to have begun when the one before it ended.
+   *
+   * @param phase
+   */
+  public void mark(String phase) {
+    long now = System.currentTimeMillis();
+    long millis;
+    synchronized(phases) {
+      millis = now - last;
+      phases.add(new Phase(phase, millis, true));
+      last = now;
+    }
+    if(LOG.isDebugEnabled()) {
+      LOG.debug(phase + " took " + millis + "ms");
+    }
+  }
+
+  /**
+   * Record work done apart from the startup, such as something created the first time it's used.
+   *
+   * @param phase
+   * @param millis
+   */
+  public void record(String phase, long millis) {
+    synchronized(phases) {
+      phases.add(new Phase(phase, millis, false));
+    }
+    if(LOG.isDebugEnabled()) {
+      LOG.debug(phase + " took " + millis + "ms");
+    }
+  }
+
+  @CliCommand(value = "startup", help = "Show how long each phase of starting the shell took.")
+  public String startup() {
+    List<Phase> all;
+    long ready;
+    boolean input;
+    synchronized(phases) {
+      all = new ArrayList<Phase>(phases);
+      ready = last - jvmStart;
+      input = prompted;
+    }
+
+    int maxLen = "Phase".length();
+    for(Phase p : all) {
+      maxLen = Math.max(maxLen, p.name.length());
+    }
+    maxLen += 4;
+
+    StringBuilder sb = new StringBuilder();
+    sb.append(pad("Phase", maxLen)).append(padLeft("ms", 8)).append(OsUtils.LINE_SEPARATOR);
+    char[] line = new char[maxLen + 8];
+    Arrays.fill(line, '=');
+    sb.append(new String(line)).append(OsUtils.LINE_SEPARATOR);
+    for(Phase p : all) {
+      if(p.startup) {
+        sb.append(pad(p.name, maxLen)).append(padLeft(String.valueOf(p.millis), 8)).append(OsUtils.LINE_SEPARATOR);
+      }
+    }
+    sb.append(pad(input ? "Ready for input" : "Ready for commands", maxLen))
+      .append(padLeft(String.valueOf(ready), 8))
+      .append(OsUtils.LINE_SEPARATOR);
+
+    boolean first = true;
+    for(Phase p : all) {
+      if(!p.startup) {
+        if(first) {
+          sb.append(OsUtils.LINE_SEPARATOR).append("Done later:").append(OsUtils.LINE_SEPARATOR);
+          first = false;
+        }
+        sb.append(pad(p.name, maxLen)).append(padLeft(String.valueOf(p.millis), 8)).append(OsUtils.LINE_SEPARATOR);
+      }
+    }
+    return sb.toString();
+  }
+
+  private static class Phase {
+
+    private final String  name;
+    private final long    millis;
+    private final boolean startup;
+
+    private Phase(String name, long millis, boolean startup) {
+      this.name = name;
+      this.millis = millis;
+      this.startup = startup;
+    }
+
+  }
+
+}
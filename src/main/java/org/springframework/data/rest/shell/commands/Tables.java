@@ -0,0 +1,52 @@
+package org.springframework.data.rest.shell.commands;
+
+import java.util.Arrays;
+
+/**
+ * Padding for the columns of the tables the commands print.
+ *
+ * @author agent
+ */
+final class Tables {
+
+  private Tables() {
+  }
+
+  /**
+   * Pad a value with spaces on the right to fill a column, leaving at least one space after it if it's too long.
+   *
+   * @param s
+   * @param len
+   *     The width of the column.
+   *
+   * @return
+   */
+  static String pad(String s, int len) {
+    if(s.length() >= len) {
+      return s + " ";
+    }
+    char[] pad = new char[len - s.length()];
+    Arrays.fill(pad, ' ');
+    return s + new String(pad);
+  }
+
+  /**
+   * Pad a value with spaces on the left to right-align it in a column, leaving at least one space before it if it's too
+   * long.
+   *
+   * @param s
+   * @param len
+   *     The width of the column.
+   *
+   * @return
+   */
+  static String padLeft(String s, int len) {
+    if(s.length() >= len) {
+      return " " + s;
+    }
+    char[] pad = new char[len - s.length()];
+    Arrays.fill(pad, ' ');
+    return new String(pad) + s;
+  }
+
+}
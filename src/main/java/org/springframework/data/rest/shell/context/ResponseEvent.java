@@ -3,6 +3,7 @@ package org.springframework.data.rest.shell.context;
 import java.net.URI;
 
 import org.springframework.context.ApplicationEvent;
+import org.springframework.data.rest.shell.http.RequestTiming;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
 
@@ -11,8 +12,9 @@ import org.springframework.http.ResponseEntity;
  */
 public class ResponseEvent extends ApplicationEvent {
 
-  private URI        requestUri;
-  private HttpMethod method;
+  private URI           requestUri;
+  private HttpMethod    method;
+  private RequestTiming timing;
 
   public ResponseEvent(URI requestUri, HttpMethod method, ResponseEntity<String> response) {
     super(response);
@@ -20,6 +22,11 @@ public class ResponseEvent extends ApplicationEvent {
     this.method = method;
   }
 
+  public ResponseEvent(URI requestUri, HttpMethod method, ResponseEntity<String> response, RequestTiming timing) {
+    this(requestUri, method, response);
+    this.timing = timing;
+  }
+
   public URI getRequestUri() {
     return requestUri;
   }
@@ -28,6 +35,15 @@ public class ResponseEvent extends ApplicationEvent {
     return method;
   }
 
+  /**
+   * Get how long each phase of the request took.
+   *
+   * @return The timing, or {@literal null} if it isn't known.
+   */
+  public RequestTiming getTiming() {
+    return timing;
+  }
+
   @SuppressWarnings({"unchecked"})
   public ResponseEntity<String> getResponse() {
     return (ResponseEntity<String>)getSource();
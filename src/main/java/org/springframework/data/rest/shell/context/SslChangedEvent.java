@@ -0,0 +1,16 @@
+package org.springframework.data.rest.shell.context;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Event emitted when the SSL configuration changes, so that connections made with the old one are no longer used.
+ *
+ * @author agent
+ */
+public class SslChangedEvent extends ApplicationEvent {
+
+  public SslChangedEvent(Object source) {
+    super(source);
+  }
+
+}
@@ -1,40 +1,45 @@
 package org.springframework.data.rest.shell.formatter;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 
-import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.map.SerializationConfig;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 
 /**
+ * Pretty-prints JSON by copying it token by token to an indenting generator, without building an object tree.
+ *
  * @author Jon Brisbin
  */
 public class JsonFormatter extends FormatterSupport {
 
   private static final List<String> SUPPORTED = Arrays.asList("json");
-  private final        ObjectMapper mapper    = new ObjectMapper();
-
-  {
-    mapper.configure(SerializationConfig.Feature.INDENT_OUTPUT, true);
-  }
+  private final        JsonFactory  factory   = new JsonFactory();
 
   @Override public Collection<String> getSupportedList() {
     return SUPPORTED;
   }
 
   @Override public String format(String nonFormattedString) {
-    Object obj;
+    StringWriter sw = new StringWriter(nonFormattedString.length() + (nonFormattedString.length() >> 2));
     try {
-      if(nonFormattedString.startsWith("[")) {
-        obj = mapper.readValue(nonFormattedString.getBytes(), List.class);
-      } else {
-        obj = mapper.readValue(nonFormattedString.getBytes(), Map.class);
+      JsonParser parser = factory.createJsonParser(nonFormattedString);
+      JsonGenerator gen = factory.createJsonGenerator(sw);
+      gen.useDefaultPrettyPrinter();
+      try {
+        while(null != parser.nextToken()) {
+          gen.copyCurrentEvent(parser);
+        }
+      } finally {
+        gen.close();
+        parser.close();
       }
-      return mapper.writeValueAsString(obj);
+      return sw.toString();
     } catch(IOException e) {
       throw new HttpMessageNotReadableException(e.getMessage(), e);
     }
@@ -0,0 +1,224 @@
+package org.springframework.data.rest.shell.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.AbstractClientHttpResponse;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * A response kept by the {@link ResponseCache}, along with what's needed to revalidate it and to decide whether it
+ * matches a later request.
+ *
+ * @author agent
+ */
+class CachedResponse implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+  private static final int  HEADER_OVERHEAD  = 512;
+
+  private final int                 statusCode;
+  private final String              statusText;
+  private final HttpHeaders         headers;
+  private final byte[]              body;
+  private final Map<String, String> vary;
+  private       long                expires;
+
+  CachedResponse(int statusCode, String statusText, HttpHeaders headers, byte[] body, HttpHeaders requestHeaders) {
+    this.statusCode = statusCode;
+    this.statusText = statusText;
+    this.headers = new HttpHeaders();
+    this.headers.putAll(headers);
+    this.body = body;
+    this.vary = varyValues(headers, requestHeaders);
+    this.expires = expires(headers);
+  }
+
+  /**
+   * Whether the response can be kept at all.
+   *
+   * @param statusCode
+   * @param headers
+   *
+   * @return
+   */
+  static boolean isCacheable(int statusCode, HttpHeaders headers) {
+    if(statusCode != HttpStatus.OK.value()) {
+      return false;
+    }
+    String cacheControl = headers.getCacheControl();
+    if(null != cacheControl && cacheControl.contains("no-store")) {
+      return false;
+    }
+    String vary = headers.getFirst("Vary");
+    if(null != vary && vary.contains("*")) {
+      return false;
+    }
+    return null != headers.getETag() || null != headers.getFirst("Last-Modified") || expires(headers) > 0;
+  }
+
+  private static Map<String, String> varyValues(HttpHeaders headers, HttpHeaders requestHeaders) {
+    Map<String, String> values = new LinkedHashMap<String, String>();
+    List<String> vary = headers.get("Vary");
+    if(null != vary) {
+      for(String names : vary) {
+        for(String name : names.split(",")) {
+          name = name.trim().toLowerCase();
+          if(name.length() > 0) {
+            values.put(name, requestHeaders.getFirst(name));
+          }
+        }
+      }
+    }
+    return values;
+  }
+
+  private static long expires(HttpHeaders headers) {
+    String cacheControl = headers.getCacheControl();
+    if(null != cacheControl) {
+      if(cacheControl.contains("no-cache")) {
+        return 0;
+      }
+      for(String directive : cacheControl.split(",")) {
+        directive = directive.trim();
+        if(directive.startsWith("max-age=")) {
+          try {
+            return System.currentTimeMillis() + Long.parseLong(directive.substring(8).trim()) * 1000;
+          } catch(NumberFormatException ignored) {
+            return 0;
+          }
+        }
+      }
+    }
+    try {
+      long expires = headers.getExpires();
+      long date = headers.getDate();
+      if(expires > 0 && date > 0 && expires > date) {
+        return System.currentTimeMillis() + (expires - date);
+      }
+    } catch(IllegalArgumentException ignored) {
+      // Unparseable date, which means already expired
+    }
+    return 0;
+  }
+
+  /**
+   * Whether the response is meant for a request with these headers, according to its {@literal Vary} header.
+   *
+   * @param requestHeaders
+   *
+   * @return
+   */
+  boolean matches(HttpHeaders requestHeaders) {
+    for(Map.Entry<String, String> entry : vary.entrySet()) {
+      String value = requestHeaders.getFirst(entry.getKey());
+      if(null == value ? null != entry.getValue() : !value.equals(entry.getValue())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Whether the response can still be used without asking the server.
+   *
+   * @return
+   */
+  boolean isFresh() {
+    return expires > System.currentTimeMillis();
+  }
+
+  /**
+   * Apply the headers of a {@literal 304 Not Modified} response that confirmed this one is still current.
+   *
+   * @param notModifiedHeaders
+   */
+  void revalidated(HttpHeaders notModifiedHeaders) {
+    for(String name : new String[]{"ETag", "Last-Modified", "Cache-Control", "Expires", "Date"}) {
+      List<String> values = notModifiedHeaders.get(name);
+      if(null != values) {
+        headers.put(name, values);
+      }
+    }
+    expires = expires(headers);
+  }
+
+  String getETag() {
+    return headers.getETag();
+  }
+
+  String getLastModified() {
+    return headers.getFirst("Last-Modified");
+  }
+
+  /**
+   * Get roughly how much memory the response takes.
+   *
+   * @return
+   */
+  long getSize() {
+    return body.length + HEADER_OVERHEAD;
+  }
+
+  int getBodyLength() {
+    return body.length;
+  }
+
+  /**
+   * Create a response that replays this one.
+   *
+   * @param timing
+   *     The timing of the request that revalidated the response, or {@literal null} if it was served without asking
+   *     the server.
+   *
+   * @return
+   */
+  ClientHttpResponse toClientHttpResponse(RequestTiming timing) {
+    HttpHeaders responseHeaders = new HttpHeaders();
+    responseHeaders.putAll(headers);
+    return new ReplayedResponse(responseHeaders, timing);
+  }
+
+  private class ReplayedResponse extends AbstractClientHttpResponse implements TimedClientHttpResponse {
+
+    private final HttpHeaders   responseHeaders;
+    private final RequestTiming timing;
+
+    private ReplayedResponse(HttpHeaders responseHeaders, RequestTiming timing) {
+      this.responseHeaders = responseHeaders;
+      this.timing = timing;
+    }
+
+    @Override public int getRawStatusCode() throws IOException {
+      return statusCode;
+    }
+
+    @Override public String getStatusText() throws IOException {
+      return statusText;
+    }
+
+    @Override public HttpHeaders getHeaders() {
+      return responseHeaders;
+    }
+
+    @Override public InputStream getBody() throws IOException {
+      return new ByteArrayInputStream(body);
+    }
+
+    @Override public RequestTiming getTiming() {
+      return timing;
+    }
+
+    @Override public void close() {
+    }
+
+  }
+
+}
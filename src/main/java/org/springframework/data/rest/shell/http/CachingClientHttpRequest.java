@@ -0,0 +1,245 @@
+package org.springframework.data.rest.shell.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * GET request that checks the {@link ResponseCache} before going to the server and stores what comes back.
+ *
+ * @author agent
+ */
+class CachingClientHttpRequest implements ClientHttpRequest {
+
+  private final ClientHttpRequest delegate;
+  private final ResponseCache     cache;
+
+  CachingClientHttpRequest(ClientHttpRequest delegate, ResponseCache cache) {
+    this.delegate = delegate;
+    this.cache = cache;
+  }
+
+  @Override public HttpMethod getMethod() {
+    return delegate.getMethod();
+  }
+
+  @Override public URI getURI() {
+    return delegate.getURI();
+  }
+
+  @Override public HttpHeaders getHeaders() {
+    return delegate.getHeaders();
+  }
+
+  @Override public OutputStream getBody() throws IOException {
+    return delegate.getBody();
+  }
+
+  @Override public ClientHttpResponse execute() throws IOException {
+    HttpHeaders headers = delegate.getHeaders();
+    if(headers.containsKey("If-None-Match") || headers.containsKey("If-Modified-Since")) {
+      // The user is making their own conditional request and wants to see what the server says
+      return delegate.execute();
+    }
+
+    String key = getURI().toString();
+    CachedResponse cached = cache.get(key, headers);
+    if(null != cached) {
+      if(cached.isFresh()) {
+        cache.hit(cached);
+        return cached.toClientHttpResponse(null);
+      }
+      if(null != cached.getETag()) {
+        headers.set("If-None-Match", cached.getETag());
+      }
+      if(null != cached.getLastModified()) {
+        headers.set("If-Modified-Since", cached.getLastModified());
+      }
+    }
+    HttpHeaders requestHeaders = new HttpHeaders();
+    requestHeaders.putAll(headers);
+
+    ClientHttpResponse response = delegate.execute();
+    if(null != cached && response.getRawStatusCode() == HttpStatus.NOT_MODIFIED.value()) {
+      HttpHeaders notModifiedHeaders = response.getHeaders();
+      RequestTiming timing = (response instanceof TimedClientHttpResponse
+                              ? ((TimedClientHttpResponse)response).getTiming()
+                              : null);
+      response.close();
+      cached.revalidated(notModifiedHeaders);
+      cache.revalidated(cached);
+      return cached.toClientHttpResponse(timing);
+    }
+
+    cache.miss();
+    if(!CachedResponse.isCacheable(response.getRawStatusCode(), response.getHeaders())) {
+      cache.remove(key);
+      return response;
+    }
+    return new StoringResponse(response, key, requestHeaders);
+  }
+
+  /**
+   * Passes the response through while keeping a copy of the body, which is stored once it has been read to the end.
+   */
+  private class StoringResponse implements DecodingClientHttpResponse, TimedClientHttpResponse {
+
+    private final ClientHttpResponse response;
+    private final String             key;
+    private final HttpHeaders        requestHeaders;
+    private       InputStream        body;
+
+    private StoringResponse(ClientHttpResponse response, String key, HttpHeaders requestHeaders) {
+      this.response = response;
+      this.key = key;
+      this.requestHeaders = requestHeaders;
+    }
+
+    @Override public HttpStatus getStatusCode() throws IOException {
+      return response.getStatusCode();
+    }
+
+    @Override public int getRawStatusCode() throws IOException {
+      return response.getRawStatusCode();
+    }
+
+    @Override public String getStatusText() throws IOException {
+      return response.getStatusText();
+    }
+
+    @Override public HttpHeaders getHeaders() {
+      return response.getHeaders();
+    }
+
+    @Override public InputStream getBody() throws IOException {
+      if(null == body) {
+        long max = cache.getMaxSize();
+        long length = response.getHeaders().getContentLength();
+        if(length > max) {
+          body = response.getBody();
+        } else {
+          body = new CopyingInputStream(response.getBody(), (int)Math.max(length, 1024), max);
+        }
+      }
+      return body;
+    }
+
+    @Override public String getContentEncoding() {
+      return (response instanceof DecodingClientHttpResponse
+              ? ((DecodingClientHttpResponse)response).getContentEncoding()
+              : null);
+    }
+
+    @Override public long getWireLength() {
+      return (response instanceof DecodingClientHttpResponse
+              ? ((DecodingClientHttpResponse)response).getWireLength()
+              : -1);
+    }
+
+    @Override public long getDecodedLength() {
+      return (response instanceof DecodingClientHttpResponse
+              ? ((DecodingClientHttpResponse)response).getDecodedLength()
+              : -1);
+    }
+
+    @Override public RequestTiming getTiming() {
+      return (response instanceof TimedClientHttpResponse
+              ? ((TimedClientHttpResponse)response).getTiming()
+              : null);
+    }
+
+    @Override public void close() {
+      if(null != body) {
+        try {
+          body.close();
+        } catch(IOException ignored) {
+        }
+      }
+      response.close();
+    }
+
+    private class CopyingInputStream extends FilterInputStream {
+
+      private final long                  max;
+      private       ByteArrayOutputStream copy;
+
+      private CopyingInputStream(InputStream in, int initialSize, long max) {
+        super(in);
+        this.max = max;
+        this.copy = new ByteArrayOutputStream(initialSize);
+      }
+
+      @Override public int read() throws IOException {
+        int b = super.read();
+        if(b < 0) {
+          store();
+        } else if(null != copy) {
+          copy.write(b);
+          checkSize();
+        }
+        return b;
+      }
+
+      @Override public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if(read < 0) {
+          store();
+        } else if(null != copy) {
+          copy.write(b, off, read);
+          checkSize();
+        }
+        return read;
+      }
+
+      @Override public boolean markSupported() {
+        return false;
+      }
+
+      @Override public void close() throws IOException {
+        // Parsers stop at the end of the document, and may close the stream, without reading to the end of it
+        drain();
+        super.close();
+      }
+
+      private void drain() {
+        byte[] buffer = new byte[4096];
+        try {
+          while(null != copy && read(buffer, 0, buffer.length) >= 0) {
+          }
+        } catch(IOException ignored) {
+          // Already closed underneath us, so there's nothing complete to store
+          copy = null;
+        }
+      }
+
+      private void checkSize() {
+        if(copy.size() > max) {
+          copy = null;
+        }
+      }
+
+      private void store() throws IOException {
+        if(null != copy) {
+          cache.put(key, new CachedResponse(response.getRawStatusCode(),
+                                            response.getStatusText(),
+                                            response.getHeaders(),
+                                            copy.toByteArray(),
+                                            requestHeaders));
+          copy = null;
+        }
+      }
+
+    }
+
+  }
+
+}
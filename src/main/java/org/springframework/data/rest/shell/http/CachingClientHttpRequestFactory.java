@@ -0,0 +1,51 @@
+package org.springframework.data.rest.shell.http;
+
+import java.io.IOException;
+import java.net.URI;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+
+/**
+ * {@link ClientHttpRequestFactory} that answers GET requests from a {@link ResponseCache} where it can. Cached
+ * responses are revalidated with {@literal If-None-Match} and {@literal If-Modified-Since} and replayed when the server
+ * responds {@literal 304 Not Modified}. Any other request to a URI drops what's cached for it. When the cache is off,
+ * requests go straight to the underlying factory.
+ *
+ * @author agent
+ */
+public class CachingClientHttpRequestFactory implements ClientHttpRequestFactory {
+
+  private final ClientHttpRequestFactory delegate;
+  private final ResponseCache            cache;
+
+  public CachingClientHttpRequestFactory(ClientHttpRequestFactory delegate, ResponseCache cache) {
+    this.delegate = delegate;
+    this.cache = cache;
+  }
+
+  /**
+   * Get the factory requests are actually sent through.
+   *
+   * @return
+   */
+  public ClientHttpRequestFactory getDelegate() {
+    return delegate;
+  }
+
+  @Override public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+    ClientHttpRequest request = delegate.createRequest(uri, httpMethod);
+    if(!cache.isEnabled()) {
+      return request;
+    }
+    if(httpMethod == HttpMethod.GET) {
+      return new CachingClientHttpRequest(request, cache);
+    }
+    if(httpMethod != HttpMethod.HEAD && httpMethod != HttpMethod.OPTIONS && httpMethod != HttpMethod.TRACE) {
+      cache.remove(uri.toString());
+    }
+    return request;
+  }
+
+}
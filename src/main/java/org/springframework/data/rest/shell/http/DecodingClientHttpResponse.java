@@ -0,0 +1,34 @@
+package org.springframework.data.rest.shell.http;
+
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * {@link ClientHttpResponse} whose body may have been sent compressed and is decoded as it is read. The lengths are
+ * only complete once the body has been read.
+ *
+ * @author agent
+ */
+public interface DecodingClientHttpResponse extends ClientHttpResponse {
+
+  /**
+   * Get the {@literal Content-Encoding} the body was sent with.
+   *
+   * @return The encoding, or {@literal null} if the body wasn't encoded.
+   */
+  String getContentEncoding();
+
+  /**
+   * Get the number of bytes of the body that came over the wire.
+   *
+   * @return
+   */
+  long getWireLength();
+
+  /**
+   * Get the number of bytes of the body after decoding.
+   *
+   * @return
+   */
+  long getDecodedLength();
+
+}
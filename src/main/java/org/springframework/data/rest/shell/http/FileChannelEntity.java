@@ -0,0 +1,62 @@
+package org.springframework.data.rest.shell.http;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * Entity that copies a file to the connection through its {@link FileChannel}, letting the channel move the bytes
+ * instead of going through a heap buffer of our own. The file is reopened each time it is written, so the entity can
+ * be sent again if the request is retried.
+ *
+ * @author agent
+ */
+class FileChannelEntity extends AbstractHttpEntity {
+
+  private final File file;
+
+  FileChannelEntity(File file) {
+    this.file = file;
+    setChunked(true);
+  }
+
+  @Override public boolean isRepeatable() {
+    return true;
+  }
+
+  @Override public long getContentLength() {
+    return file.length();
+  }
+
+  @Override public InputStream getContent() throws IOException {
+    return new FileInputStream(file);
+  }
+
+  @Override public void writeTo(OutputStream out) throws IOException {
+    FileInputStream in = new FileInputStream(file);
+    try {
+      FileChannel channel = in.getChannel();
+      WritableByteChannel target = Channels.newChannel(out);
+      long size = channel.size();
+      long position = 0;
+      while(position < size) {
+        position += channel.transferTo(position, size - position, target);
+      }
+      out.flush();
+    } finally {
+      in.close();
+    }
+  }
+
+  @Override public boolean isStreaming() {
+    return false;
+  }
+
+}
@@ -0,0 +1,50 @@
+package org.springframework.data.rest.shell.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHeader;
+
+/**
+ * Compresses the wrapped entity with gzip as it is written to the connection. Since the compressed length isn't known
+ * up front, the entity is always sent chunked.
+ *
+ * @author agent
+ */
+class GzipCompressingEntity extends HttpEntityWrapper {
+
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+  GzipCompressingEntity(HttpEntity wrapped) {
+    super(wrapped);
+  }
+
+  @Override public Header getContentEncoding() {
+    return new BasicHeader("Content-Encoding", "gzip");
+  }
+
+  @Override public long getContentLength() {
+    return -1;
+  }
+
+  @Override public boolean isChunked() {
+    return true;
+  }
+
+  @Override public InputStream getContent() throws IOException {
+    throw new UnsupportedOperationException("Compressed content can only be written, not read");
+  }
+
+  @Override public void writeTo(OutputStream out) throws IOException {
+    GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE);
+    wrappedEntity.writeTo(gzip);
+    // Finish the gzip stream but leave closing the connection's stream to HttpClient
+    gzip.finish();
+  }
+
+}
@@ -0,0 +1,192 @@
+package org.springframework.data.rest.shell.http;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.rest.shell.context.ResponseEvent;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * {@link ClientHttpRequestFactory} that publishes a {@link ResponseEvent} for every response once it has been read and
+ * closed, whichever command sent the request. The event carries the response's status and headers but not its body.
+ *
+ * @author agent
+ */
+public class MeteredClientHttpRequestFactory implements ClientHttpRequestFactory {
+
+  private final ClientHttpRequestFactory  delegate;
+  private final ApplicationEventPublisher publisher;
+
+  /**
+   * Create a factory that meters the requests of another.
+   *
+   * @param delegate
+   *     The factory to create the requests with.
+   * @param publisher
+   *     Where to publish the events.
+   */
+  public MeteredClientHttpRequestFactory(ClientHttpRequestFactory delegate, ApplicationEventPublisher publisher) {
+    this.delegate = delegate;
+    this.publisher = publisher;
+  }
+
+  /**
+   * Get the factory whose requests are metered.
+   *
+   * @return
+   */
+  public ClientHttpRequestFactory getDelegate() {
+    return delegate;
+  }
+
+  @Override public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+    ClientHttpRequest request = delegate.createRequest(uri, httpMethod);
+    if(request instanceof StreamingClientHttpRequest) {
+      return new MeteredStreamingRequest((StreamingClientHttpRequest)request);
+    }
+    return new MeteredRequest(request);
+  }
+
+  private class MeteredRequest implements ClientHttpRequest {
+
+    private final ClientHttpRequest request;
+
+    private MeteredRequest(ClientHttpRequest request) {
+      this.request = request;
+    }
+
+    @Override public HttpMethod getMethod() {
+      return request.getMethod();
+    }
+
+    @Override public URI getURI() {
+      return request.getURI();
+    }
+
+    @Override public HttpHeaders getHeaders() {
+      return request.getHeaders();
+    }
+
+    @Override public OutputStream getBody() throws IOException {
+      return request.getBody();
+    }
+
+    @Override public ClientHttpResponse execute() throws IOException {
+      return new MeteredResponse(request.execute(), request.getURI(), request.getMethod());
+    }
+
+  }
+
+  private class MeteredStreamingRequest extends MeteredRequest implements StreamingClientHttpRequest {
+
+    private final StreamingClientHttpRequest request;
+
+    private MeteredStreamingRequest(StreamingClientHttpRequest request) {
+      super(request);
+      this.request = request;
+    }
+
+    @Override public void setBody(File file) {
+      request.setBody(file);
+    }
+
+  }
+
+  /**
+   * Passes the response through, publishing its event the first time it's closed.
+   */
+  private class MeteredResponse implements DecodingClientHttpResponse, TimedClientHttpResponse {
+
+    private final ClientHttpResponse response;
+    private final URI                uri;
+    private final HttpMethod         method;
+    private       boolean            closed;
+
+    private MeteredResponse(ClientHttpResponse response, URI uri, HttpMethod method) {
+      this.response = response;
+      this.uri = uri;
+      this.method = method;
+    }
+
+    @Override public HttpStatus getStatusCode() throws IOException {
+      return response.getStatusCode();
+    }
+
+    @Override public int getRawStatusCode() throws IOException {
+      return response.getRawStatusCode();
+    }
+
+    @Override public String getStatusText() throws IOException {
+      return response.getStatusText();
+    }
+
+    @Override public HttpHeaders getHeaders() {
+      return response.getHeaders();
+    }
+
+    @Override public InputStream getBody() throws IOException {
+      return response.getBody();
+    }
+
+    @Override public String getContentEncoding() {
+      return (response instanceof DecodingClientHttpResponse
+              ? ((DecodingClientHttpResponse)response).getContentEncoding()
+              : null);
+    }
+
+    @Override public long getWireLength() {
+      return (response instanceof DecodingClientHttpResponse
+              ? ((DecodingClientHttpResponse)response).getWireLength()
+              : -1);
+    }
+
+    @Override public long getDecodedLength() {
+      return (response instanceof DecodingClientHttpResponse
+              ? ((DecodingClientHttpResponse)response).getDecodedLength()
+              : -1);
+    }
+
+    @Override public RequestTiming getTiming() {
+      return (response instanceof TimedClientHttpResponse
+              ? ((TimedClientHttpResponse)response).getTiming()
+              : null);
+    }
+
+    @Override public void close() {
+      if(closed) {
+        response.close();
+        return;
+      }
+      closed = true;
+
+      // Some responses forget their status once they're closed
+      HttpStatus status = null;
+      try {
+        status = HttpStatus.valueOf(response.getRawStatusCode());
+      } catch(IOException ignored) {
+      } catch(IllegalArgumentException ignored) {
+        // Not a status there's a name for, so there's nothing to count it under
+      }
+      response.close();
+      if(null == status) {
+        return;
+      }
+      publisher.publishEvent(new ResponseEvent(uri,
+                                               method,
+                                               new ResponseEntity<String>(response.getHeaders(), status),
+                                               getTiming()));
+    }
+
+  }
+
+}
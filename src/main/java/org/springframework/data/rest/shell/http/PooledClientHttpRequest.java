@@ -0,0 +1,121 @@
+package org.springframework.data.rest.shell.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.AbstractClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * {@link org.springframework.http.client.ClientHttpRequest} executed through a pooled {@link HttpClient}.
+ *
+ * @author agent
+ */
+class PooledClientHttpRequest extends AbstractClientHttpRequest implements StreamingClientHttpRequest {
+
+  private final HttpClient     httpClient;
+  private final HttpUriRequest httpRequest;
+  private final boolean        acceptCompressed;
+  private final long           compressAbove;
+  private       BodyBuffer     bufferedOutput;
+  private       File           bodyFile;
+
+  /**
+   * @param httpClient
+   *     The client to execute the request with.
+   * @param httpRequest
+   *     The request to execute.
+   * @param acceptCompressed
+   *     Whether to ask for a gzip or deflate compressed response.
+   * @param compressAbove
+   *     The body size (in bytes) from which the request body is sent gzip compressed, or -1 to never compress it.
+   */
+  PooledClientHttpRequest(HttpClient httpClient,
+                          HttpUriRequest httpRequest,
+                          boolean acceptCompressed,
+                          long compressAbove) {
+    this.httpClient = httpClient;
+    this.httpRequest = httpRequest;
+    this.acceptCompressed = acceptCompressed;
+    this.compressAbove = compressAbove;
+  }
+
+  @Override public HttpMethod getMethod() {
+    return HttpMethod.valueOf(httpRequest.getMethod());
+  }
+
+  @Override public URI getURI() {
+    return httpRequest.getURI();
+  }
+
+  @Override public void setBody(File file) {
+    this.bodyFile = file;
+  }
+
+  @Override protected OutputStream getBodyInternal(HttpHeaders headers) throws IOException {
+    if(null == bufferedOutput) {
+      bufferedOutput = new BodyBuffer();
+    }
+    return bufferedOutput;
+  }
+
+  @Override protected ClientHttpResponse executeInternal(HttpHeaders headers) throws IOException {
+    RequestTiming timing = new RequestTiming();
+    httpRequest.getParams().setParameter(RequestTiming.PARAMETER, timing);
+    for(Map.Entry<String, List<String>> entry : headers.entrySet()) {
+      String name = entry.getKey();
+      // HttpClient computes these itself and refuses requests that already have them
+      if("Content-Length".equalsIgnoreCase(name) || "Transfer-Encoding".equalsIgnoreCase(name)) {
+        continue;
+      }
+      for(String value : entry.getValue()) {
+        httpRequest.addHeader(name, value);
+      }
+    }
+    if(acceptCompressed && !headers.containsKey("Accept-Encoding")) {
+      httpRequest.addHeader("Accept-Encoding", "gzip,deflate");
+    }
+    if(httpRequest instanceof HttpEntityEnclosingRequest) {
+      HttpEntity entity = null;
+      if(null != bodyFile) {
+        entity = new FileChannelEntity(bodyFile);
+      } else if(null != bufferedOutput) {
+        entity = bufferedOutput.toEntity();
+      }
+      if(null != entity
+          && compressAbove >= 0
+          && entity.getContentLength() >= compressAbove
+          && !headers.containsKey("Content-Encoding")) {
+        entity = new GzipCompressingEntity(entity);
+      }
+      ((HttpEntityEnclosingRequest)httpRequest).setEntity(entity);
+    }
+    return new PooledClientHttpResponse(httpClient.execute(httpRequest), timing);
+  }
+
+  /**
+   * Buffer that hands its backing array to the entity instead of copying it.
+   */
+  private static class BodyBuffer extends ByteArrayOutputStream {
+    private BodyBuffer() {
+      super(1024);
+    }
+
+    private ByteArrayEntity toEntity() {
+      return new ByteArrayEntity(buf, 0, count);
+    }
+  }
+
+}
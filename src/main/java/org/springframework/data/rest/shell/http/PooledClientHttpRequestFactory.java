@@ -0,0 +1,350 @@
+package org.springframework.data.rest.shell.http;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpOptions;
+import org.apache.http.client.methods.HttpPatch;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpTrace;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.params.ClientPNames;
+import org.apache.http.client.params.CookiePolicy;
+import org.apache.http.conn.ClientConnectionOperator;
+import org.apache.http.conn.OperatedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.routing.HttpRoutePlanner;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeLayeredSocketFactory;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.scheme.SchemeSocketFactory;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.DefaultClientConnectionOperator;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+
+/**
+ * {@link ClientHttpRequestFactory} backed by a pool of keep-alive connections managed by Apache HttpClient. Requests
+ * to the same host reuse an already-open TCP (and TLS) connection rather than paying for a new handshake every time.
+ *
+ * @author agent
+ */
+public class PooledClientHttpRequestFactory implements ClientHttpRequestFactory, DisposableBean {
+
+  public static final int  DEFAULT_MAX_PER_HOST    = 20;
+  public static final int  DEFAULT_MAX_TOTAL       = 100;
+  public static final int  DEFAULT_CONNECT_TIMEOUT = 10000;
+  public static final int  DEFAULT_READ_TIMEOUT    = 30000;
+  public static final long DEFAULT_IDLE_TIMEOUT    = 60000;
+
+  private final AtomicLong     created = new AtomicLong();
+  private final Set<HttpRoute> routes  = Collections.newSetFromMap(new ConcurrentHashMap<HttpRoute, Boolean>());
+  private final PoolingClientConnectionManager connectionManager;
+  private final DefaultHttpClient              httpClient;
+  private final ScheduledExecutorService       evictor;
+  private volatile long    idleTimeout      = DEFAULT_IDLE_TIMEOUT;
+  private volatile boolean acceptCompressed = true;
+  private volatile long    compressAbove    = -1;
+
+  /**
+   * Create a new pooled factory.
+   *
+   * @param sslSocketFactory
+   *     The socket factory to use for {@literal https} connections.
+   */
+  public PooledClientHttpRequestFactory(SchemeSocketFactory sslSocketFactory) {
+    SchemeRegistry schemes = new SchemeRegistry();
+    schemes.register(new Scheme("http", 80, PlainSocketFactory.getSocketFactory()));
+    schemes.register(new Scheme("https", 443, (sslSocketFactory instanceof SchemeLayeredSocketFactory
+                                               ? new TimingSocketFactory((SchemeLayeredSocketFactory)sslSocketFactory)
+                                               : sslSocketFactory)));
+
+    connectionManager = new PoolingClientConnectionManager(schemes) {
+      @Override protected ClientConnectionOperator createConnectionOperator(SchemeRegistry schreg) {
+        return new DefaultClientConnectionOperator(schreg) {
+          @Override public OperatedClientConnection createConnection() {
+            created.incrementAndGet();
+            return super.createConnection();
+          }
+
+          @Override public void openConnection(OperatedClientConnection conn,
+                                               HttpHost target,
+                                               InetAddress local,
+                                               HttpContext context,
+                                               HttpParams params) throws IOException {
+            RequestTiming timing = RequestTiming.from(params);
+            if(null != timing) {
+              timing.connecting();
+            }
+            super.openConnection(conn, target, local, context, params);
+            if(null != timing) {
+              timing.connected();
+            }
+          }
+        };
+      }
+    };
+    connectionManager.setDefaultMaxPerRoute(DEFAULT_MAX_PER_HOST);
+    connectionManager.setMaxTotal(DEFAULT_MAX_TOTAL);
+
+    httpClient = new DefaultHttpClient(connectionManager) {
+      @Override protected HttpRequestExecutor createRequestExecutor() {
+        return new HttpRequestExecutor() {
+          @Override protected HttpResponse doSendRequest(HttpRequest request,
+                                                         HttpClientConnection conn,
+                                                         HttpContext context) throws IOException, HttpException {
+            RequestTiming timing = RequestTiming.from(request.getParams());
+            if(null != timing) {
+              timing.sending();
+            }
+            HttpResponse response = super.doSendRequest(request, conn, context);
+            if(null != timing) {
+              timing.sent();
+            }
+            return response;
+          }
+
+          @Override protected HttpResponse doReceiveResponse(HttpRequest request,
+                                                             HttpClientConnection conn,
+                                                             HttpContext context) throws HttpException, IOException {
+            HttpResponse response = super.doReceiveResponse(request, conn, context);
+            RequestTiming timing = RequestTiming.from(request.getParams());
+            if(null != timing) {
+              timing.responseReceived();
+            }
+            return response;
+          }
+        };
+      }
+
+      @Override protected HttpRoutePlanner createHttpRoutePlanner() {
+        final HttpRoutePlanner delegate = super.createHttpRoutePlanner();
+        return new HttpRoutePlanner() {
+          @Override public HttpRoute determineRoute(HttpHost target,
+                                                    HttpRequest request,
+                                                    HttpContext context) throws HttpException {
+            HttpRoute route = delegate.determineRoute(target, request, context);
+            routes.add(route);
+            return route;
+          }
+        };
+      }
+    };
+    HttpParams params = httpClient.getParams();
+    // Cookies were never managed by the shell, they're set through 'headers set' like everything else
+    params.setParameter(ClientPNames.COOKIE_POLICY, CookiePolicy.IGNORE_COOKIES);
+    setConnectTimeout(DEFAULT_CONNECT_TIMEOUT);
+    setReadTimeout(DEFAULT_READ_TIMEOUT);
+
+    evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override public Thread newThread(Runnable r) {
+        Thread t = new Thread(r, "rest-shell-connection-evictor");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    evictor.scheduleWithFixedDelay(new Runnable() {
+      @Override public void run() {
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+      }
+    }, 5, 5, TimeUnit.SECONDS);
+  }
+
+  @Override public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+    return new PooledClientHttpRequest(httpClient,
+                                       createHttpUriRequest(httpMethod, uri),
+                                       acceptCompressed,
+                                       compressAbove);
+  }
+
+  /**
+   * Set the maximum number of connections kept open to any one host.
+   *
+   * @param maxPerHost
+   */
+  public void setMaxPerHost(int maxPerHost) {
+    connectionManager.setDefaultMaxPerRoute(maxPerHost);
+  }
+
+  public int getMaxPerHost() {
+    return connectionManager.getDefaultMaxPerRoute();
+  }
+
+  /**
+   * Set the maximum number of connections kept open across all hosts.
+   *
+   * @param maxTotal
+   */
+  public void setMaxTotal(int maxTotal) {
+    connectionManager.setMaxTotal(maxTotal);
+  }
+
+  public int getMaxTotal() {
+    return connectionManager.getMaxTotal();
+  }
+
+  /**
+   * Set the time (in milliseconds) to wait for a connection to be established. Also used as the time to wait for a
+   * free connection when the pool is exhausted.
+   *
+   * @param connectTimeout
+   */
+  public void setConnectTimeout(int connectTimeout) {
+    HttpConnectionParams.setConnectionTimeout(httpClient.getParams(), connectTimeout);
+    httpClient.getParams().setLongParameter(ClientPNames.CONN_MANAGER_TIMEOUT, connectTimeout);
+  }
+
+  public int getConnectTimeout() {
+    return HttpConnectionParams.getConnectionTimeout(httpClient.getParams());
+  }
+
+  /**
+   * Set the time (in milliseconds) to wait for data once the connection is established.
+   *
+   * @param readTimeout
+   */
+  public void setReadTimeout(int readTimeout) {
+    HttpConnectionParams.setSoTimeout(httpClient.getParams(), readTimeout);
+  }
+
+  public int getReadTimeout() {
+    return HttpConnectionParams.getSoTimeout(httpClient.getParams());
+  }
+
+  /**
+   * Set the time (in milliseconds) a connection may sit unused in the pool before it is closed.
+   *
+   * @param idleTimeout
+   */
+  public void setIdleTimeout(long idleTimeout) {
+    this.idleTimeout = idleTimeout;
+  }
+
+  public long getIdleTimeout() {
+    return idleTimeout;
+  }
+
+  /**
+   * Set whether to ask for gzip or deflate compressed responses. Compressed responses are always decompressed,
+   * whether they were asked for or not.
+   *
+   * @param acceptCompressed
+   */
+  public void setAcceptCompressed(boolean acceptCompressed) {
+    this.acceptCompressed = acceptCompressed;
+  }
+
+  public boolean isAcceptCompressed() {
+    return acceptCompressed;
+  }
+
+  /**
+   * Set the size (in bytes) from which request bodies are sent gzip compressed, or -1 to never compress them.
+   *
+   * @param compressAbove
+   */
+  public void setCompressAbove(long compressAbove) {
+    this.compressAbove = compressAbove;
+  }
+
+  public long getCompressAbove() {
+    return compressAbove;
+  }
+
+  /**
+   * Get the number of connections this pool has opened since it was created.
+   *
+   * @return
+   */
+  public long getCreatedCount() {
+    return created.get();
+  }
+
+  /**
+   * Get the leased, idle and pending counts across the whole pool.
+   *
+   * @return
+   */
+  public PoolStats getTotalStats() {
+    return connectionManager.getTotalStats();
+  }
+
+  /**
+   * Get the leased, idle and pending counts for every host this pool has talked to.
+   *
+   * @return
+   */
+  public Map<String, PoolStats> getHostStats() {
+    Map<String, PoolStats> stats = new LinkedHashMap<String, PoolStats>();
+    for(HttpRoute route : routes) {
+      stats.put(route.getTargetHost().toURI(), connectionManager.getStats(route));
+    }
+    return stats;
+  }
+
+  /**
+   * Close every connection that isn't currently leased.
+   */
+  public void closeIdleConnections() {
+    connectionManager.closeIdleConnections(0, TimeUnit.MILLISECONDS);
+  }
+
+  @Override public void destroy() {
+    evictor.shutdownNow();
+    connectionManager.shutdown();
+  }
+
+  private HttpUriRequest createHttpUriRequest(HttpMethod httpMethod, URI uri) {
+    switch(httpMethod) {
+      case GET:
+        return new HttpGet(uri);
+      case DELETE:
+        return new HttpDelete(uri);
+      case HEAD:
+        return new HttpHead(uri);
+      case OPTIONS:
+        return new HttpOptions(uri);
+      case POST:
+        return new HttpPost(uri);
+      case PUT:
+        return new HttpPut(uri);
+      case PATCH:
+        return new HttpPatch(uri);
+      case TRACE:
+        return new HttpTrace(uri);
+      default:
+        throw new IllegalArgumentException("Invalid HTTP method: " + httpMethod);
+    }
+  }
+
+}
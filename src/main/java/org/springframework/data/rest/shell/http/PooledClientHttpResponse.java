@@ -0,0 +1,220 @@
+package org.springframework.data.rest.shell.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.AbstractClientHttpResponse;
+
+/**
+ * {@link org.springframework.http.client.ClientHttpResponse} read from a pooled connection. Bodies sent with a gzip
+ * or deflate {@literal Content-Encoding} are decompressed as they are read, and the encoding headers are removed so
+ * the rest of the shell sees a plain response. Closing the response drains whatever is left of the body so the
+ * connection can go back into the pool rather than being torn down.
+ *
+ * @author agent
+ */
+class PooledClientHttpResponse extends AbstractClientHttpResponse
+    implements DecodingClientHttpResponse, TimedClientHttpResponse {
+
+  private final HttpResponse        httpResponse;
+  private final RequestTiming       timing;
+  private final String              contentEncoding;
+  private       HttpHeaders         headers;
+  private       InputStream         body;
+  private       CountingInputStream wire;
+  private       CountingInputStream decoded;
+
+  PooledClientHttpResponse(HttpResponse httpResponse, RequestTiming timing) {
+    this.httpResponse = httpResponse;
+    this.timing = timing;
+    this.contentEncoding = decodableEncoding(httpResponse.getEntity());
+  }
+
+  private static String decodableEncoding(HttpEntity entity) {
+    if(null == entity || null == entity.getContentEncoding()) {
+      return null;
+    }
+    String encoding = entity.getContentEncoding().getValue().trim().toLowerCase();
+    if("gzip".equals(encoding) || "x-gzip".equals(encoding)) {
+      return "gzip";
+    }
+    if("deflate".equals(encoding)) {
+      return "deflate";
+    }
+    return null;
+  }
+
+  @Override public int getRawStatusCode() throws IOException {
+    return httpResponse.getStatusLine().getStatusCode();
+  }
+
+  @Override public String getStatusText() throws IOException {
+    return httpResponse.getStatusLine().getReasonPhrase();
+  }
+
+  @Override public HttpHeaders getHeaders() {
+    if(null == headers) {
+      headers = new HttpHeaders();
+      for(Header header : httpResponse.getAllHeaders()) {
+        if(null != contentEncoding
+            && ("Content-Encoding".equalsIgnoreCase(header.getName())
+                    || "Content-Length".equalsIgnoreCase(header.getName()))) {
+          continue;
+        }
+        headers.add(header.getName(), header.getValue());
+      }
+    }
+    return headers;
+  }
+
+  @Override public InputStream getBody() throws IOException {
+    if(null == body) {
+      HttpEntity entity = httpResponse.getEntity();
+      if(null == entity) {
+        body = new ByteArrayInputStream(new byte[0]);
+      } else if(null == contentEncoding) {
+        body = new TimingInputStream(entity.getContent());
+      } else {
+        wire = new CountingInputStream(new TimingInputStream(entity.getContent()));
+        PushbackInputStream in = new PushbackInputStream(wire, 2);
+        byte[] magic = new byte[2];
+        int read = 0;
+        for(int n; read < magic.length && (n = in.read(magic, read, magic.length - read)) > 0; ) {
+          read += n;
+        }
+        if(read == 0) {
+          body = new ByteArrayInputStream(new byte[0]);
+          return body;
+        }
+        in.unread(magic, 0, read);
+        decoded = new CountingInputStream("gzip".equals(contentEncoding)
+                                          ? new GZIPInputStream(in)
+                                          : new InflaterInputStream(in, new Inflater(!isZlib(magic, read))));
+        body = decoded;
+      }
+    }
+    return body;
+  }
+
+  /**
+   * Servers disagree on whether deflate means zlib-wrapped or raw deflate data, so check for a zlib header.
+   */
+  private static boolean isZlib(byte[] magic, int len) {
+    int cmf = magic[0] & 0xff;
+    return len == 2 && (cmf & 0x0f) == 8 && ((cmf << 8) | (magic[1] & 0xff)) % 31 == 0;
+  }
+
+  @Override public String getContentEncoding() {
+    return contentEncoding;
+  }
+
+  @Override public long getWireLength() {
+    HttpEntity entity = httpResponse.getEntity();
+    if(null == entity) {
+      return 0;
+    }
+    long length = entity.getContentLength();
+    return (length >= 0 || null == wire ? length : wire.count);
+  }
+
+  @Override public long getDecodedLength() {
+    return (null != decoded ? decoded.count : getWireLength());
+  }
+
+  @Override public RequestTiming getTiming() {
+    return timing;
+  }
+
+  @Override public void close() {
+    try {
+      EntityUtils.consume(httpResponse.getEntity());
+    } catch(IOException ignored) {
+    }
+  }
+
+  /**
+   * Adds the time spent waiting for the body to arrive to the request's download time.
+   */
+  private class TimingInputStream extends FilterInputStream {
+
+    private TimingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override public int read() throws IOException {
+      long start = System.nanoTime();
+      try {
+        return super.read();
+      } finally {
+        timing.addDownload(System.nanoTime() - start);
+      }
+    }
+
+    @Override public int read(byte[] b, int off, int len) throws IOException {
+      long start = System.nanoTime();
+      try {
+        return super.read(b, off, len);
+      } finally {
+        timing.addDownload(System.nanoTime() - start);
+      }
+    }
+
+    @Override public long skip(long n) throws IOException {
+      long start = System.nanoTime();
+      try {
+        return super.skip(n);
+      } finally {
+        timing.addDownload(System.nanoTime() - start);
+      }
+    }
+
+  }
+
+  private static class CountingInputStream extends FilterInputStream {
+
+    private long count;
+
+    private CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override public int read() throws IOException {
+      int b = super.read();
+      if(b >= 0) {
+        count++;
+      }
+      return b;
+    }
+
+    @Override public int read(byte[] b, int off, int len) throws IOException {
+      int read = super.read(b, off, len);
+      if(read > 0) {
+        count += read;
+      }
+      return read;
+    }
+
+    @Override public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count += skipped;
+      return skipped;
+    }
+
+    @Override public boolean markSupported() {
+      return false;
+    }
+
+  }
+
+}
@@ -0,0 +1,186 @@
+package org.springframework.data.rest.shell.http;
+
+import org.apache.http.params.HttpParams;
+
+/**
+ * How long each phase of a request took: waiting for a pooled connection, connecting, the TLS handshake, writing the
+ * request, waiting for the first byte of the response, downloading the body, parsing it and rendering it. The network
+ * phases are filled in by the {@link PooledClientHttpRequestFactory}, the rest by whoever reads the response. Phases
+ * that didn't happen, such as connecting over a reused connection, are 0. All times are in milliseconds.
+ *
+ * @author agent
+ */
+public class RequestTiming {
+
+  /**
+   * Name of the request parameter the timing travels through HttpClient with.
+   */
+  static final String PARAMETER = RequestTiming.class.getName();
+
+  private final long start = System.nanoTime();
+  private long connectStart = -1;
+  private long tcpConnected = -1;
+  private long connected    = -1;
+  private long sendStart    = -1;
+  private long sent         = -1;
+  private long firstByte    = -1;
+  private long download;
+  private long parse;
+  private long render;
+
+  static RequestTiming from(HttpParams params) {
+    Object timing = (null != params ? params.getParameter(PARAMETER) : null);
+    return (timing instanceof RequestTiming ? (RequestTiming)timing : null);
+  }
+
+  private static double millis(long nanos) {
+    return Math.max(0, nanos) / 1000000.0;
+  }
+
+  void connecting() {
+    connectStart = System.nanoTime();
+  }
+
+  void tcpConnected() {
+    tcpConnected = System.nanoTime();
+  }
+
+  void connected() {
+    connected = System.nanoTime();
+  }
+
+  void sending() {
+    sendStart = System.nanoTime();
+  }
+
+  void sent() {
+    sent = System.nanoTime();
+  }
+
+  void responseReceived() {
+    firstByte = System.nanoTime();
+  }
+
+  void addDownload(long nanos) {
+    download += nanos;
+  }
+
+  /**
+   * Get the time spent waiting for data while the body was read, which is left out of the time it took to parse.
+   *
+   * @return The time in nanoseconds.
+   */
+  public long getDownloadNanos() {
+    return download;
+  }
+
+  /**
+   * Add time spent parsing the body.
+   *
+   * @param nanos
+   */
+  public void addParse(long nanos) {
+    parse += Math.max(0, nanos);
+  }
+
+  /**
+   * Add time spent formatting and rendering the response.
+   *
+   * @param nanos
+   */
+  public void addRender(long nanos) {
+    render += Math.max(0, nanos);
+  }
+
+  /**
+   * Whether the response came over the network at all, rather than from the response cache.
+   *
+   * @return
+   */
+  public boolean isNetwork() {
+    return sendStart >= 0;
+  }
+
+  /**
+   * Whether a new connection was opened for the request, rather than one being reused from the pool.
+   *
+   * @return
+   */
+  public boolean isNewConnection() {
+    return connectStart >= 0;
+  }
+
+  public double getLease() {
+    if(!isNetwork()) {
+      return 0;
+    }
+    return millis((isNewConnection() ? connectStart : sendStart) - start);
+  }
+
+  public double getConnect() {
+    if(!isNewConnection() || connected < 0) {
+      return 0;
+    }
+    return millis((tcpConnected >= 0 ? tcpConnected : connected) - connectStart);
+  }
+
+  public double getTls() {
+    if(tcpConnected < 0 || connected < 0) {
+      return 0;
+    }
+    return millis(connected - tcpConnected);
+  }
+
+  public double getWrite() {
+    if(sent < 0) {
+      return 0;
+    }
+    return millis(sent - sendStart);
+  }
+
+  public double getTtfb() {
+    if(firstByte < 0 || sent < 0) {
+      return 0;
+    }
+    return millis(firstByte - sent);
+  }
+
+  public double getDownload() {
+    return millis(download);
+  }
+
+  public double getParse() {
+    return millis(parse);
+  }
+
+  public double getRender() {
+    return millis(render);
+  }
+
+  /**
+   * Get the sum of all the phases.
+   *
+   * @return
+   */
+  public double getTotal() {
+    return getLease() + getConnect() + getTls() + getWrite() + getTtfb() + getDownload() + getParse() + getRender();
+  }
+
+  @Override public String toString() {
+    StringBuilder sb = new StringBuilder();
+    if(isNetwork()) {
+      sb.append(String.format("lease=%.2fms, connect=%.2fms, tls=%.2fms, write=%.2fms, ttfb=%.2fms, download=%.2fms, ",
+                              getLease(),
+                              getConnect(),
+                              getTls(),
+                              getWrite(),
+                              getTtfb(),
+                              getDownload()));
+    } else {
+      sb.append("cached, ");
+    }
+    return sb.append(String.format("parse=%.2fms, render=%.2fms, total=%.2fms", getParse(), getRender(), getTotal()))
+             .toString();
+  }
+
+}
@@ -0,0 +1,370 @@
+package org.springframework.data.rest.shell.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Bounded, least-recently-used store of GET responses, keyed by URI. Entries pushed out of memory can optionally be
+ * spilled to a directory on disk instead of being thrown away. The cache is off until {@link #setEnabled(boolean)
+ * enabled}.
+ *
+ * @author agent
+ */
+public class ResponseCache {
+
+  public static final int  DEFAULT_MAX_ENTRIES   = 1000;
+  public static final long DEFAULT_MAX_SIZE      = 16 * 1024 * 1024;
+  public static final long DEFAULT_MAX_DISK_SIZE = 256 * 1024 * 1024;
+
+  private static final Logger LOG = LoggerFactory.getLogger(ResponseCache.class);
+
+  private final LinkedHashMap<String, CachedResponse> memory  = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true);
+  private final LinkedHashMap<String, File>           spilled = new LinkedHashMap<String, File>(16, 0.75f, true);
+  private final AtomicLong hits         = new AtomicLong();
+  private final AtomicLong revalidated  = new AtomicLong();
+  private final AtomicLong misses       = new AtomicLong();
+  private final AtomicLong evictions    = new AtomicLong();
+  private final AtomicLong bytesServed  = new AtomicLong();
+  private volatile boolean enabled;
+  private int  maxEntries  = DEFAULT_MAX_ENTRIES;
+  private long maxSize     = DEFAULT_MAX_SIZE;
+  private long maxDiskSize = DEFAULT_MAX_DISK_SIZE;
+  private File spillDir;
+  private long size;
+  private long diskSize;
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Turn the cache on or off. Turning it off also empties it.
+   *
+   * @param enabled
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+    if(!enabled) {
+      clear();
+    }
+  }
+
+  public synchronized int getMaxEntries() {
+    return maxEntries;
+  }
+
+  /**
+   * Set the maximum number of responses kept in memory.
+   *
+   * @param maxEntries
+   */
+  public synchronized void setMaxEntries(int maxEntries) {
+    this.maxEntries = Math.max(1, maxEntries);
+    trim();
+  }
+
+  public synchronized long getMaxSize() {
+    return maxSize;
+  }
+
+  /**
+   * Set roughly how many bytes of responses are kept in memory.
+   *
+   * @param maxSize
+   */
+  public synchronized void setMaxSize(long maxSize) {
+    this.maxSize = Math.max(0, maxSize);
+    trim();
+  }
+
+  public synchronized long getMaxDiskSize() {
+    return maxDiskSize;
+  }
+
+  /**
+   * Set how many bytes of responses may be spilled to disk.
+   *
+   * @param maxDiskSize
+   */
+  public synchronized void setMaxDiskSize(long maxDiskSize) {
+    this.maxDiskSize = Math.max(0, maxDiskSize);
+    trimDisk();
+  }
+
+  public synchronized File getSpillDir() {
+    return spillDir;
+  }
+
+  /**
+   * Set the directory responses pushed out of memory are written to, or {@literal null} to throw them away.
+   *
+   * @param spillDir
+   */
+  public synchronized void setSpillDir(File spillDir) {
+    if(null != spillDir && !spillDir.isDirectory() && !spillDir.mkdirs()) {
+      throw new IllegalArgumentException("Cannot create directory " + spillDir);
+    }
+    clearDisk();
+    this.spillDir = spillDir;
+  }
+
+  /**
+   * Look up the response stored for a request.
+   *
+   * @param uri
+   *     The request URI.
+   * @param requestHeaders
+   *     The request headers, to check against the response's {@literal Vary} header.
+   *
+   * @return The response, or {@literal null} if there is none that matches.
+   */
+  synchronized CachedResponse get(String uri, HttpHeaders requestHeaders) {
+    CachedResponse response = memory.get(uri);
+    if(null == response) {
+      response = unspill(uri);
+    }
+    return (null != response && response.matches(requestHeaders) ? response : null);
+  }
+
+  /**
+   * Store a response, replacing any earlier one for the same URI.
+   *
+   * @param uri
+   * @param response
+   */
+  synchronized void put(String uri, CachedResponse response) {
+    if(response.getSize() > maxSize) {
+      remove(uri);
+      return;
+    }
+    CachedResponse previous = memory.put(uri, response);
+    if(null != previous) {
+      size -= previous.getSize();
+    }
+    removeSpilled(uri);
+    size += response.getSize();
+    trim();
+  }
+
+  /**
+   * Forget the response stored for a URI, e.g. because it has been changed by a POST, PUT or DELETE.
+   *
+   * @param uri
+   */
+  public synchronized void remove(String uri) {
+    CachedResponse previous = memory.remove(uri);
+    if(null != previous) {
+      size -= previous.getSize();
+    }
+    removeSpilled(uri);
+  }
+
+  /**
+   * Throw away everything in the cache. The counters are left alone.
+   */
+  public synchronized void clear() {
+    memory.clear();
+    size = 0;
+    clearDisk();
+  }
+
+  void hit(CachedResponse response) {
+    hits.incrementAndGet();
+    bytesServed.addAndGet(response.getBodyLength());
+  }
+
+  void revalidated(CachedResponse response) {
+    revalidated.incrementAndGet();
+    bytesServed.addAndGet(response.getBodyLength());
+  }
+
+  void miss() {
+    misses.incrementAndGet();
+  }
+
+  /**
+   * Get the number of requests answered from the cache without asking the server.
+   *
+   * @return
+   */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * Get the number of requests answered from the cache after the server confirmed the response hadn't changed.
+   *
+   * @return
+   */
+  public long getRevalidatedCount() {
+    return revalidated.get();
+  }
+
+  /**
+   * Get the number of requests the server had to send a full response for.
+   *
+   * @return
+   */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**
+   * Get the number of responses pushed out of the cache to make room for others.
+   *
+   * @return
+   */
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  /**
+   * Get the number of response body bytes served from the cache instead of being transferred.
+   *
+   * @return
+   */
+  public long getBytesServed() {
+    return bytesServed.get();
+  }
+
+  public synchronized int getEntryCount() {
+    return memory.size();
+  }
+
+  public synchronized long getSize() {
+    return size;
+  }
+
+  public synchronized int getSpilledCount() {
+    return spilled.size();
+  }
+
+  public synchronized long getDiskSize() {
+    return diskSize;
+  }
+
+  public void resetStats() {
+    hits.set(0);
+    revalidated.set(0);
+    misses.set(0);
+    evictions.set(0);
+    bytesServed.set(0);
+  }
+
+  private void trim() {
+    Iterator<Map.Entry<String, CachedResponse>> iter = memory.entrySet().iterator();
+    while((memory.size() > maxEntries || size > maxSize) && iter.hasNext()) {
+      Map.Entry<String, CachedResponse> eldest = iter.next();
+      iter.remove();
+      size -= eldest.getValue().getSize();
+      if(null != spillDir) {
+        spill(eldest.getKey(), eldest.getValue());
+      } else {
+        evictions.incrementAndGet();
+      }
+    }
+  }
+
+  private void spill(String uri, CachedResponse response) {
+    File file = new File(spillDir, digest(uri) + ".cache");
+    try {
+      ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+      try {
+        out.writeObject(response);
+      } finally {
+        out.close();
+      }
+    } catch(IOException e) {
+      LOG.error("Error spilling " + uri + " to " + file + ": " + e.getMessage(), e);
+      file.delete();
+      evictions.incrementAndGet();
+      return;
+    }
+    spilled.put(uri, file);
+    diskSize += file.length();
+    trimDisk();
+  }
+
+  private CachedResponse unspill(String uri) {
+    File file = spilled.get(uri);
+    if(null == file) {
+      return null;
+    }
+    CachedResponse response = null;
+    try {
+      ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+      try {
+        response = (CachedResponse)in.readObject();
+      } finally {
+        in.close();
+      }
+    } catch(Exception e) {
+      LOG.error("Error reading " + uri + " back from " + file + ": " + e.getMessage(), e);
+    }
+    removeSpilled(uri);
+    if(null != response) {
+      put(uri, response);
+    }
+    return response;
+  }
+
+  private void removeSpilled(String uri) {
+    File file = spilled.remove(uri);
+    if(null != file) {
+      diskSize -= file.length();
+      file.delete();
+    }
+  }
+
+  private void trimDisk() {
+    Iterator<Map.Entry<String, File>> iter = spilled.entrySet().iterator();
+    while(diskSize > maxDiskSize && iter.hasNext()) {
+      File file = iter.next().getValue();
+      iter.remove();
+      diskSize -= file.length();
+      file.delete();
+      evictions.incrementAndGet();
+    }
+  }
+
+  private void clearDisk() {
+    for(File file : spilled.values()) {
+      file.delete();
+    }
+    spilled.clear();
+    diskSize = 0;
+  }
+
+  private static String digest(String uri) {
+    try {
+      byte[] bytes = MessageDigest.getInstance("SHA-1").digest(uri.getBytes("UTF-8"));
+      StringBuilder sb = new StringBuilder(bytes.length * 2);
+      for(byte b : bytes) {
+        sb.append(Character.forDigit((b >> 4) & 0xf, 16))
+          .append(Character.forDigit(b & 0xf, 16));
+      }
+      return sb.toString();
+    } catch(NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    } catch(IOException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+  }
+
+}
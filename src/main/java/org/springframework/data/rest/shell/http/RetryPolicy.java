@@ -0,0 +1,454 @@
+package org.springframework.data.rest.shell.http;
+
+import java.io.IOException;
+import java.net.URI;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * Decides whether, and after how long, a failed request is sent again. Delays grow exponentially from {@code
+ * baseDelay} up to {@code maxDelay} with random jitter, unless the server asks for a specific delay with {@literal
+ * Retry-After}. Requests that aren't idempotent are only retried when explicitly allowed.
+ * <p/>
+ * Retries are also limited by a budget shared by every request: each request adds {@code budgetPercent / 100} of a
+ * retry to the budget and each retry takes a whole one, so no more than that share of the traffic is ever made up of
+ * retries, however badly the server is doing. The budget also refills by one retry a second so that occasional
+ * interactive requests can always be retried.
+ *
+ * @author agent
+ */
+public class RetryPolicy {
+
+  public static final int    DEFAULT_MAX_ATTEMPTS   = 3;
+  public static final long   DEFAULT_BASE_DELAY     = 100;
+  public static final long   DEFAULT_MAX_DELAY      = 10000;
+  public static final double DEFAULT_JITTER         = 1.0;
+  public static final int    DEFAULT_BUDGET_PERCENT = 10;
+  public static final Set<HttpStatus> DEFAULT_STATUSES = Collections.unmodifiableSet(EnumSet.of(
+      HttpStatus.TOO_MANY_REQUESTS,
+      HttpStatus.BAD_GATEWAY,
+      HttpStatus.SERVICE_UNAVAILABLE,
+      HttpStatus.GATEWAY_TIMEOUT
+  ));
+
+  private static final Logger          LOG                = LoggerFactory.getLogger(RetryPolicy.class);
+  private static final String          RETRY_AFTER_HEADER = "Retry-After";
+  private static final Set<HttpMethod> IDEMPOTENT         = EnumSet.of(HttpMethod.GET,
+                                                                       HttpMethod.HEAD,
+                                                                       HttpMethod.OPTIONS,
+                                                                       HttpMethod.TRACE,
+                                                                       HttpMethod.PUT,
+                                                                       HttpMethod.DELETE);
+  private static final double MAX_BALANCE        = 10;
+  private static final double REFILL_PER_SECOND  = 1;
+
+  private final Random     random         = new Random();
+  private final AtomicLong requests       = new AtomicLong();
+  private final AtomicLong retries        = new AtomicLong();
+  private final AtomicLong budgetDenied   = new AtomicLong();
+  private final AtomicLong exhausted      = new AtomicLong();
+  private volatile int             maxAttempts       = DEFAULT_MAX_ATTEMPTS;
+  private volatile long            baseDelay         = DEFAULT_BASE_DELAY;
+  private volatile long            maxDelay          = DEFAULT_MAX_DELAY;
+  private volatile double          jitter            = DEFAULT_JITTER;
+  private volatile int             budgetPercent     = DEFAULT_BUDGET_PERCENT;
+  private volatile boolean         retryAfter        = true;
+  private volatile boolean         retryNonIdempotent;
+  private volatile Set<HttpStatus> statuses          = DEFAULT_STATUSES;
+  private          double          balance           = MAX_BALANCE;
+  private          long            lastRefill        = System.currentTimeMillis();
+
+  /**
+   * Record that a request is about to be sent for the first time, which adds to the retry budget.
+   */
+  public synchronized void onRequest() {
+    requests.incrementAndGet();
+    refill(budgetPercent / 100.0);
+  }
+
+  /**
+   * Send a request, and send it again for as long as this policy says to when the server responds with one of the
+   * retried statuses or it can't be reached. The last response is returned even if it's a retried status, once the
+   * request mustn't be sent again.
+   *
+   * @param method
+   *     The request method.
+   * @param uri
+   *     The request URI, for logging.
+   * @param attempt
+   *     Sends the request once each time it's called.
+   *
+   * @return The last response.
+   *
+   * @throws IOException
+   *     If the last attempt failed with one.
+   * @throws ResourceAccessException
+   *     If the last attempt failed with one.
+   * @throws IllegalStateException
+   *     If interrupted while waiting to send it again.
+   */
+  public <T> T execute(HttpMethod method, URI uri, Attempt<T> attempt) throws IOException {
+    onRequest();
+    for(int n = 1; ; n++) {
+      long delay;
+      try {
+        T response = attempt.send();
+        HttpStatus status = attempt.getStatus(response);
+        if(!isRetryable(status)) {
+          return response;
+        }
+        delay = retryDelay(method, n, attempt.getHeaders(response).getFirst(RETRY_AFTER_HEADER));
+        if(delay < 0) {
+          // Out of attempts, or the server wants us to wait longer than we're prepared to
+          return response;
+        }
+        attempt.discard(response);
+        if(LOG.isWarnEnabled()) {
+          LOG.warn("Server responded " + status.value() + " to " + method + " " + uri + ". Retrying...");
+        }
+      } catch(IOException e) {
+        delay = retryDelay(method, n, null);
+        if(delay < 0) {
+          throw e;
+        }
+        warnRetrying(e);
+      } catch(ResourceAccessException e) {
+        delay = retryDelay(method, n, null);
+        if(delay < 0) {
+          throw e;
+        }
+        warnRetrying(e);
+      }
+      try {
+        Thread.sleep(delay);
+      } catch(InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while waiting to retry " + method + " " + uri, e);
+      }
+    }
+  }
+
+  private static void warnRetrying(Exception e) {
+    if(LOG.isWarnEnabled()) {
+      LOG.warn("Client encountered an error. Retrying. (" + e.getMessage() + ")", e);
+    }
+  }
+
+  /**
+   * Whether a response with this status should be retried at all.
+   *
+   * @param status
+   *
+   * @return
+   */
+  public boolean isRetryable(HttpStatus status) {
+    return statuses.contains(status);
+  }
+
+  /**
+   * Decide whether a request that failed on attempt number {@code attempt} may be sent again, and how long to wait
+   * before sending it. A retry is only taken from the budget once it's certain to be sent, so a server that asks to
+   * wait longer than {@code maxDelay} doesn't use up the budget.
+   *
+   * @param method
+   *     The request method.
+   * @param attempt
+   *     The attempt that just failed, starting at 1.
+   * @param retryAfterHeader
+   *     The value of the response's {@literal Retry-After} header, if any.
+   *
+   * @return The delay in milliseconds, or -1 if the request mustn't be sent again.
+   */
+  public long retryDelay(HttpMethod method, int attempt, String retryAfterHeader) {
+    if(attempt >= maxAttempts || !(retryNonIdempotent || IDEMPOTENT.contains(method))) {
+      if(maxAttempts > 1) {
+        exhausted.incrementAndGet();
+      }
+      return -1;
+    }
+    long delay = backoff(attempt, retryAfterHeader);
+    if(delay < 0) {
+      return -1;
+    }
+    synchronized(this) {
+      refill(0);
+      if(balance < 1) {
+        budgetDenied.incrementAndGet();
+        return -1;
+      }
+      balance -= 1;
+    }
+    retries.incrementAndGet();
+    return delay;
+  }
+
+  /**
+   * Get how long to wait before attempt number {@code attempt + 1}.
+   *
+   * @return The delay in milliseconds, or -1 if the server asked to wait longer than {@code maxDelay}.
+   */
+  private long backoff(int attempt, String retryAfterHeader) {
+    if(retryAfter && null != retryAfterHeader) {
+      long delay = parseRetryAfter(retryAfterHeader);
+      if(delay >= 0) {
+        return (delay <= maxDelay ? delay : -1);
+      }
+    }
+
+    long delay = Math.min(maxDelay, baseDelay << Math.min(attempt - 1, 30));
+    double r;
+    synchronized(random) {
+      r = random.nextDouble();
+    }
+    return delay - (long)(delay * jitter * r);
+  }
+
+  private static long parseRetryAfter(String value) {
+    value = value.trim();
+    try {
+      return Math.max(0, Long.parseLong(value) * 1000);
+    } catch(NumberFormatException ignored) {
+    }
+    SimpleDateFormat fmt = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+    fmt.setTimeZone(TimeZone.getTimeZone("GMT"));
+    try {
+      return Math.max(0, fmt.parse(value).getTime() - System.currentTimeMillis());
+    } catch(ParseException ignored) {
+      return -1;
+    }
+  }
+
+  private void refill(double deposit) {
+    long now = System.currentTimeMillis();
+    balance = Math.min(MAX_BALANCE, balance + deposit + (now - lastRefill) / 1000.0 * REFILL_PER_SECOND);
+    lastRefill = now;
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * Set the number of times a request is sent before giving up, including the first. 1 turns retries off.
+   *
+   * @param maxAttempts
+   */
+  public void setMaxAttempts(int maxAttempts) {
+    this.maxAttempts = Math.max(1, maxAttempts);
+  }
+
+  public long getBaseDelay() {
+    return baseDelay;
+  }
+
+  /**
+   * Set the delay (in milliseconds) before the first retry, which doubles with every retry after that.
+   *
+   * @param baseDelay
+   */
+  public void setBaseDelay(long baseDelay) {
+    this.baseDelay = Math.max(0, baseDelay);
+  }
+
+  public long getMaxDelay() {
+    return maxDelay;
+  }
+
+  /**
+   * Set the longest delay (in milliseconds) between two attempts. A server asking to wait longer than this with
+   * {@literal Retry-After} isn't retried.
+   *
+   * @param maxDelay
+   */
+  public void setMaxDelay(long maxDelay) {
+    this.maxDelay = Math.max(0, maxDelay);
+  }
+
+  public double getJitter() {
+    return jitter;
+  }
+
+  /**
+   * Set how much of each delay is randomized, from 0 (none) to 1 (anywhere between 0 and the full delay).
+   *
+   * @param jitter
+   */
+  public void setJitter(double jitter) {
+    this.jitter = Math.max(0, Math.min(1, jitter));
+  }
+
+  public int getBudgetPercent() {
+    return budgetPercent;
+  }
+
+  /**
+   * Set the share of requests, in percent, that may be retries.
+   *
+   * @param budgetPercent
+   */
+  public void setBudgetPercent(int budgetPercent) {
+    this.budgetPercent = Math.max(0, budgetPercent);
+  }
+
+  public boolean isRetryAfter() {
+    return retryAfter;
+  }
+
+  /**
+   * Set whether a {@literal Retry-After} header from the server overrides the computed delay.
+   *
+   * @param retryAfter
+   */
+  public void setRetryAfter(boolean retryAfter) {
+    this.retryAfter = retryAfter;
+  }
+
+  public boolean isRetryNonIdempotent() {
+    return retryNonIdempotent;
+  }
+
+  /**
+   * Set whether POST and PATCH requests are retried too.
+   *
+   * @param retryNonIdempotent
+   */
+  public void setRetryNonIdempotent(boolean retryNonIdempotent) {
+    this.retryNonIdempotent = retryNonIdempotent;
+  }
+
+  public Set<HttpStatus> getStatuses() {
+    return statuses;
+  }
+
+  /**
+   * Set the response statuses that are retried. Connection errors are always retried.
+   *
+   * @param statuses
+   */
+  public void setStatuses(Set<HttpStatus> statuses) {
+    EnumSet<HttpStatus> copy = EnumSet.noneOf(HttpStatus.class);
+    copy.addAll(statuses);
+    this.statuses = Collections.unmodifiableSet(copy);
+  }
+
+  /**
+   * Get the number of requests sent, not counting retries.
+   *
+   * @return
+   */
+  public long getRequestCount() {
+    return requests.get();
+  }
+
+  /**
+   * Get the number of retries sent.
+   *
+   * @return
+   */
+  public long getRetryCount() {
+    return retries.get();
+  }
+
+  /**
+   * Get the number of retries that weren't sent because the budget was used up.
+   *
+   * @return
+   */
+  public long getBudgetDeniedCount() {
+    return budgetDenied.get();
+  }
+
+  /**
+   * Get the number of failed requests that weren't retried because they'd been sent {@code maxAttempts} times or
+   * aren't idempotent.
+   *
+   * @return
+   */
+  public long getExhaustedCount() {
+    return exhausted.get();
+  }
+
+  /**
+   * Get the number of retries currently left in the budget.
+   *
+   * @return
+   */
+  public synchronized double getBalance() {
+    refill(0);
+    return balance;
+  }
+
+  public void resetStats() {
+    requests.set(0);
+    retries.set(0);
+    budgetDenied.set(0);
+    exhausted.set(0);
+  }
+
+  @Override public String toString() {
+    return "maxAttempts=" + maxAttempts
+        + ", baseDelay=" + baseDelay
+        + ", maxDelay=" + maxDelay
+        + ", jitter=" + jitter
+        + ", budget=" + budgetPercent + "%"
+        + ", retryAfter=" + retryAfter
+        + ", nonIdempotent=" + retryNonIdempotent
+        + ", statuses=" + statusCodes();
+  }
+
+  /**
+   * Sends a request once for {@link RetryPolicy#execute(HttpMethod, URI, Attempt)}.
+   *
+   * @param <T>
+   *     The type of response.
+   */
+  public interface Attempt<T> {
+
+    /**
+     * Send the request. {@link IOException}s and {@link ResourceAccessException}s are retried.
+     *
+     * @return
+     *
+     * @throws IOException
+     */
+    T send() throws IOException;
+
+    HttpStatus getStatus(T response) throws IOException;
+
+    HttpHeaders getHeaders(T response);
+
+    /**
+     * Release a response that won't be returned, because the request is about to be sent again.
+     *
+     * @param response
+     */
+    void discard(T response);
+
+  }
+
+  private String statusCodes() {
+    StringBuilder sb = new StringBuilder();
+    for(HttpStatus status : statuses) {
+      if(sb.length() > 0) {
+        sb.append(",");
+      }
+      sb.append(status.value());
+    }
+    return sb.toString();
+  }
+
+}
@@ -0,0 +1,24 @@
+package org.springframework.data.rest.shell.http;
+
+import java.io.File;
+
+import org.springframework.http.client.ClientHttpRequest;
+
+/**
+ * A {@link ClientHttpRequest} that can send a file as its body directly from disk instead of having it written
+ * through {@link #getBody()}.
+ *
+ * @author agent
+ */
+public interface StreamingClientHttpRequest extends ClientHttpRequest {
+
+  /**
+   * Use the contents of the given file as the request body. The file is streamed with chunked transfer encoding when
+   * the request is executed, so it is never held in memory.
+   *
+   * @param file
+   *     The file to send.
+   */
+  void setBody(File file);
+
+}
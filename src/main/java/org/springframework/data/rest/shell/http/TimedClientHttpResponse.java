@@ -0,0 +1,20 @@
+package org.springframework.data.rest.shell.http;
+
+import org.springframework.http.client.ClientHttpResponse;
+
+/**
+ * {@link ClientHttpResponse} that knows how long each phase of its request took. The download time is only complete
+ * once the body has been read.
+ *
+ * @author agent
+ */
+public interface TimedClientHttpResponse extends ClientHttpResponse {
+
+  /**
+   * Get the timing of the request that produced this response.
+   *
+   * @return
+   */
+  RequestTiming getTiming();
+
+}
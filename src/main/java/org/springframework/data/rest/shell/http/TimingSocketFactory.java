@@ -0,0 +1,67 @@
+package org.springframework.data.rest.shell.http;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import javax.net.ssl.SSLSocket;
+
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.scheme.SchemeLayeredSocketFactory;
+import org.apache.http.params.HttpParams;
+
+/**
+ * Socket factory for {@literal https} that tells the TCP connect apart from the TLS handshake in the request's
+ * {@link RequestTiming}. It hands the delegate a plain socket, which the delegate connects and then layers TLS on top of,
+ * so the moment the plain socket is connected is the moment the handshake starts.
+ *
+ * @author agent
+ */
+class TimingSocketFactory implements SchemeLayeredSocketFactory {
+
+  private final SchemeLayeredSocketFactory delegate;
+
+  TimingSocketFactory(SchemeLayeredSocketFactory delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override public Socket createSocket(HttpParams params) throws IOException {
+    final RequestTiming timing = RequestTiming.from(params);
+    if(null == timing) {
+      return delegate.createSocket(params);
+    }
+    return new Socket() {
+      @Override public void connect(SocketAddress endpoint, int timeout) throws IOException {
+        super.connect(endpoint, timeout);
+        timing.tcpConnected();
+      }
+    };
+  }
+
+  @Override public Socket connectSocket(Socket sock,
+                                        InetSocketAddress remoteAddress,
+                                        InetSocketAddress localAddress,
+                                        HttpParams params) throws IOException,
+                                                                  UnknownHostException,
+                                                                  ConnectTimeoutException {
+    Socket connected = delegate.connectSocket(sock, remoteAddress, localAddress, params);
+    if(connected instanceof SSLSocket && null != RequestTiming.from(params)) {
+      // Finish the handshake here, if hostname verification didn't already, rather than on the first write
+      ((SSLSocket)connected).getSession();
+    }
+    return connected;
+  }
+
+  @Override public Socket createLayeredSocket(Socket socket,
+                                              String target,
+                                              int port,
+                                              HttpParams params) throws IOException, UnknownHostException {
+    return delegate.createLayeredSocket(socket, target, port, params);
+  }
+
+  @Override public boolean isSecure(Socket sock) throws IllegalArgumentException {
+    return delegate.isSecure(sock);
+  }
+
+}
@@ -0,0 +1,139 @@
+package org.springframework.data.rest.shell.commands;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.shell.core.annotation.CliOption;
+
+/**
+ * @author agent
+ */
+public class BatchScriptTests {
+
+  private Map<String, Method> commands;
+  private File                file;
+
+  @Before
+  public void setUp() throws Exception {
+    commands = new HashMap<String, Method>();
+    commands.put("get", Commands.class.getMethod("get", String.class, String.class, Boolean.class));
+    commands.put("get all", Commands.class.getMethod("getAll", String.class));
+    commands.put("cd", Commands.class.getMethod("cd", String.class));
+    file = File.createTempFile("batch", ".rsh");
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  private BatchScript read(String... lines) throws IOException {
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      for(String line : lines) {
+        out.write((line + "\n").getBytes("UTF-8"));
+      }
+    } finally {
+      out.close();
+    }
+    return BatchScript.read(file, commands);
+  }
+
+  private String problems(String... lines) throws IOException {
+    try {
+      read(lines);
+      fail("Expected the script to be rejected");
+      return null;
+    } catch(IllegalArgumentException e) {
+      return e.getMessage();
+    }
+  }
+
+  @Test
+  public void groupsLinesAndParallelBlocks() throws Exception {
+    BatchScript script = read("# setup",
+                              "cd people",
+                              "",
+                              "// fetch them all at once",
+                              "parallel 4 {",
+                              "  get 1",
+                              "  get --rel 2 --async",
+                              "}",
+                              "get all --rel people");
+
+    assertThat(script.getLineCount(), is(4));
+    assertThat(script.getGroups().size(), is(3));
+
+    BatchScript.Group block = script.getGroups().get(1);
+    assertThat(block.parallel, is(true));
+    assertThat(block.size, is(4));
+    assertThat(block.number, is(5));
+    assertThat(block.lines.size(), is(2));
+    assertThat(block.lines.get(0).inBackground(), is("get 1 --async"));
+    assertThat(block.lines.get(1).inBackground(), is("get --rel 2 --async"));
+
+    BatchScript.Group last = script.getGroups().get(2);
+    assertThat(last.parallel, is(false));
+    assertThat(last.lines.get(0).command, is("get all"));
+  }
+
+  @Test
+  public void ignoresOptionsInQuotes() throws Exception {
+    BatchScript script = read("get --rel \"--nope\"");
+
+    assertThat(script.getLineCount(), is(1));
+  }
+
+  @Test
+  public void reportsEveryProblem() throws Exception {
+    String problems = problems("post /people",
+                               "get --nope 1",
+                               "cd",
+                               "get all people",
+                               "parallel {",
+                               "  cd people",
+                               "  parallel {",
+                               "}",
+                               "}");
+
+    assertThat(problems, containsString("has 6 problems"));
+    assertThat(problems, containsString("line 1: there's no command 'post'"));
+    assertThat(problems, containsString("line 2: 'get' has no option --nope"));
+    assertThat(problems, containsString("line 4: 'get all' needs the name of the option before a value"));
+    assertThat(problems, containsString("line 6: 'cd' can't be sent in the background"));
+    assertThat(problems, containsString("line 7: a parallel block can't be inside another one"));
+    assertThat(problems, containsString("line 9: '}' without a 'parallel {' before it"));
+  }
+
+  @Test
+  public void reportsUnclosedBlocks() throws Exception {
+    assertThat(problems("parallel x {", "}"), containsString("line 1: 'x' is not a number"));
+    assertThat(problems("parallel {", "get 1"), containsString("line 1: 'parallel {' without a '}' after it"));
+  }
+
+  public static class Commands {
+
+    public void get(@CliOption(key = {"rel", ""}) String rel,
+                    @CliOption(key = "follow") String follow,
+                    @CliOption(key = "async") Boolean async) {
+    }
+
+    public void getAll(@CliOption(key = "rel") String rel) {
+    }
+
+    public void cd(@CliOption(key = "") String path) {
+    }
+
+  }
+
+}
@@ -0,0 +1,82 @@
+package org.springframework.data.rest.shell.commands;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.expression.spel.SpelEvaluationException;
+import org.springframework.hateoas.Link;
+
+/**
+ * @author agent
+ */
+public class ContextCommandsTests {
+
+  private ContextCommands context;
+
+  @Before
+  public void setUp() throws Exception {
+    context = new ContextCommands();
+    context.afterPropertiesSet();
+  }
+
+  /**
+   * Expose links the way a response does.
+   */
+  private void publishLinks(Link... links) {
+    Links linksobj = new Links();
+    for(Link link : links) {
+      linksobj.addLink(link);
+    }
+    context.evalCtx.addPropertyAccessor(linksobj.getPropertyAccessor());
+    context.variables.put("links", linksobj);
+  }
+
+  @Test
+  public void cachedExpressionsReadTheLinksSetAfterClear() {
+    publishLinks(new Link("http://localhost/a", "x"));
+    assertThat(context.eval("#{links.x.href}"), is((Object)"http://localhost/a"));
+
+    context.clear();
+    publishLinks(new Link("http://localhost/b", "x"));
+
+    assertThat(context.eval("#{links.x.href}"), is((Object)"http://localhost/b"));
+  }
+
+  @Test
+  public void cachedExpressionsReadTheCurrentLinks() {
+    publishLinks(new Link("http://localhost/a", "x"));
+    assertThat(context.eval("#{links.x.href}"), is((Object)"http://localhost/a"));
+
+    // Replaced without clearing, so the cached expression still holds the first accessor
+    context.variables.put("links", new Links());
+    ((Links)context.variables.get("links")).addLink(new Link("http://localhost/c", "x"));
+
+    assertThat(context.eval("#{links.x.href}"), is((Object)"http://localhost/c"));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void listReturnsTheVariablesAsJson() throws Exception {
+    context.variables.put("name", "value");
+
+    String list = context.list();
+
+    Map<String, Object> variables = new ObjectMapper().readValue(list, Map.class);
+    assertThat(variables.get("name"), is((Object)"value"));
+    assertThat(variables.containsKey("responseBody"), is(true));
+    assertThat(variables.containsKey("env"), is(false));
+  }
+
+  @Test(expected = SpelEvaluationException.class)
+  public void missingRelsAreAnError() {
+    publishLinks(new Link("http://localhost/a", "x"));
+
+    context.eval("#{links.y}");
+  }
+
+}
@@ -0,0 +1,136 @@
+package org.springframework.data.rest.shell.commands;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class JsonFilterTests {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private static final String DOC = "{\"links\": [{\"rel\": \"self\", \"href\": \"/people\"}],"
+                                    + " \"content\": [{\"name\": \"p0\", \"address\": {\"name\": \"home\"}},"
+                                    + " {\"name\": \"p1\"}],"
+                                    + " \"page\": {\"size\": 2, \"totalElements\": 10}}";
+
+  /**
+   * Run a filter over a document, rendering every match as JSON, prefixed with the number of its path.
+   */
+  private static List<String> select(String filter, String json) throws IOException {
+    final List<String> matches = new ArrayList<String>();
+    JsonParser parser = MAPPER.getJsonFactory().createJsonParser(json);
+    parser.nextToken();
+    JsonFilter.compile(filter).select(parser, new JsonFilter.Handler() {
+      @Override public void match(int path, JsonParser parser) throws IOException {
+        matches.add(path + ":" + MAPPER.readTree(parser));
+      }
+    });
+    return matches;
+  }
+
+  private static void assertInvalid(String filter) {
+    try {
+      JsonFilter.compile(filter);
+      fail("Expected '" + filter + "' to be rejected");
+    } catch(IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void selectsFieldsAndElements() throws Exception {
+    assertThat(select("page.totalElements", DOC), contains("0:10"));
+    assertThat(select(".page.size", DOC), contains("0:2"));
+    assertThat(select("content[1].name", DOC), contains("0:\"p1\""));
+    assertThat(select("content[*].name", DOC), contains("0:\"p0\"", "0:\"p1\""));
+    assertThat(select("content[].name", DOC), contains("0:\"p0\"", "0:\"p1\""));
+    assertThat(select("page.*", DOC), contains("0:2", "0:10"));
+    assertThat(select("content[5].name", DOC), is(empty()));
+    assertThat(select("missing.name", DOC), is(empty()));
+  }
+
+  @Test
+  public void dollarIsTheWholeDocument() throws Exception {
+    assertThat(select("$", "[1,2]"), contains("0:[1,2]"));
+    assertThat(select(".", "{\"a\":1}"), contains("0:{\"a\":1}"));
+    assertThat(select("$.page.size", DOC), contains("0:2"));
+    assertThat(select("$['page']['size']", DOC), contains("0:2"));
+    assertThat(select("$[0]", "[7,8]"), contains("0:7"));
+  }
+
+  @Test
+  public void quotedNamesMayHoldBracketsDotsAndCommas() throws Exception {
+    String json = "{\"a]b\": 1, \"c.d\": 2, \"e,f\": 3, \"g\": {\"h'i\": 4}}";
+
+    assertThat(select("['a]b']", json), contains("0:1"));
+    assertThat(select("[\"a]b\"]", json), contains("0:1"));
+    assertThat(select("['c.d']", json), contains("0:2"));
+    assertThat(select("['e,f']", json), contains("0:3"));
+    assertThat(select("g[\"h'i\"]", json), contains("0:4"));
+    assertThat(select("[ 'a]b' ]", json), contains("0:1"));
+  }
+
+  @Test
+  public void indexesOnlyMatchArrays() throws Exception {
+    assertThat(select("page[0]", DOC), is(empty()));
+    assertThat(select("page[0].size", DOC), is(empty()));
+    assertThat(select("content[0].name[0]", DOC), is(empty()));
+    assertThat(select("[0]", "{\"0\": 1}"), is(empty()));
+  }
+
+  @Test
+  public void descendantsAtAnyDepth() throws Exception {
+    assertThat(select("..name", DOC), contains("0:\"p0\"", "0:\"home\"", "0:\"p1\""));
+    assertThat(select("content..name", DOC), contains("0:\"p0\"", "0:\"home\"", "0:\"p1\""));
+    assertThat(select("content[0]..name", DOC), contains("0:\"p0\"", "0:\"home\""));
+    assertThat(select("$..address.name", DOC), contains("0:\"home\""));
+    assertThat(select("..[1]", "[0, [1, 2], 3]"), contains("0:[1,2]", "0:2"));
+    assertThat(select("..a", "{\"a\": {\"a\": 1}}"), contains("0:{\"a\":1}", "0:1"));
+  }
+
+  @Test
+  public void commaListsSelectInDocumentOrder() throws Exception {
+    assertThat(select("page.size, links[0].rel", DOC), contains("1:\"self\"", "0:2"));
+    assertThat(select("page.size,page.totalElements", DOC), contains("0:2", "1:10"));
+    assertThat(select("page, page.size", DOC), contains("0:{\"size\":2,\"totalElements\":10}", "1:2"));
+    assertThat(select("..name, content[1]", DOC),
+               contains("0:\"p0\"", "0:\"home\"", "1:{\"name\":\"p1\"}", "0:\"p1\""));
+    assertThat(select("$, $", "1"), contains("0:1", "1:1"));
+  }
+
+  @Test
+  public void combinesFilters() throws Exception {
+    JsonFilter filter = JsonFilter.compile("page.size").plus(JsonFilter.compile("page.totalElements"));
+
+    assertThat(filter.size(), is(2));
+    assertThat(filter.toString(), is("page.size, page.totalElements"));
+  }
+
+  @Test
+  public void rejectsInvalidPaths() {
+    assertInvalid("");
+    assertInvalid("a,");
+    assertInvalid("a.");
+    assertInvalid("a[0");
+    assertInvalid("['a]");
+    assertInvalid("a[x]");
+    assertInvalid("a[-1]");
+    assertInvalid("a..");
+    assertInvalid("a[0]b");
+    assertInvalid("a]b");
+    assertInvalid("a...b");
+    assertInvalid("$a");
+    assertInvalid("['a'x]");
+    assertInvalid("['a', b");
+  }
+
+}
@@ -0,0 +1,127 @@
+package org.springframework.data.rest.shell.commands;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class JsonIndexTests {
+
+  private static Object parse(String json) throws Exception {
+    return JsonIndex.parse(json.getBytes("UTF-8"));
+  }
+
+  private static void assertMalformed(String json) throws Exception {
+    try {
+      parse(json);
+      fail("Expected '" + json + "' to be rejected");
+    } catch(IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void readsScalars() throws Exception {
+    assertThat(parse("true"), is((Object)Boolean.TRUE));
+    assertThat(parse("false"), is((Object)Boolean.FALSE));
+    assertThat(parse("null"), is(nullValue()));
+    assertThat(parse(" 42 "), is((Object)42));
+    assertThat(parse("-7"), is((Object)(-7)));
+    assertThat(parse("12345678901"), is((Object)12345678901L));
+    assertThat(parse("1.5e2"), is((Object)150.0));
+    assertThat(parse("\"text\""), is((Object)"text"));
+    assertThat(parse(""), is(nullValue()));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void readsObjectsAndArrays() throws Exception {
+    Map<String, Object> doc = (Map<String, Object>)parse(
+        "{\"name\": \"p1\", \"tags\": [1, [2, 3], {}], \"page\": {\"totalElements\": 10}, \"empty\": []}");
+
+    assertThat(doc.size(), is(4));
+    assertThat(doc.get("name"), is((Object)"p1"));
+    assertThat(doc.containsKey("missing"), is(false));
+    assertThat(((Map<String, Object>)doc.get("page")).get("totalElements"), is((Object)10));
+    assertThat(((List<Object>)doc.get("empty")).isEmpty(), is(true));
+
+    List<Object> tags = (List<Object>)doc.get("tags");
+    assertThat(tags.size(), is(3));
+    assertThat(tags.get(1), is((Object)Arrays.asList(2, 3)));
+    assertThat(((Map<String, Object>)tags.get(2)).isEmpty(), is(true));
+    assertThat(doc.keySet(), contains("name", "tags", "page", "empty"));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void decodesEscapes() throws Exception {
+    Map<String, Object> doc = (Map<String, Object>)parse("{\"a\\\"b\": \"line\\nbreak \\u00e9\"}");
+
+    assertThat(doc.get("a\"b"), is((Object)"line\nbreak \u00e9"));
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void readsFromBuffer() throws Exception {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(32);
+    buffer.put("{\"big\": 1.25}".getBytes("UTF-8"));
+    buffer.flip();
+
+    Map<String, Object> doc = (Map<String, Object>)JsonIndex.parse(buffer);
+
+    assertThat(new BigDecimal(doc.get("big").toString()), is(new BigDecimal("1.25")));
+  }
+
+  @Test
+  public void rejectsMisspelledLiterals() throws Exception {
+    assertMalformed("tru");
+    assertMalformed("[trueish]");
+    assertMalformed("{\"a\": nul}");
+    assertMalformed("[fals]");
+  }
+
+  @Test
+  public void rejectsInvalidNumbers() throws Exception {
+    assertMalformed("[01]");
+    assertMalformed("[-]");
+    assertMalformed("[1.]");
+    assertMalformed("[1e]");
+    assertMalformed("[.5]");
+    assertMalformed("[0x10]");
+  }
+
+  @Test
+  public void rejectsMisplacedColonsAndCommas() throws Exception {
+    assertMalformed("{\"a\" \"b\"}");
+    assertMalformed("{\"a\": 1 \"b\": 2}");
+    assertMalformed("{\"a\"}");
+    assertMalformed("{\"a\":}");
+    assertMalformed("{\"a\":: 1}");
+    assertMalformed("[1 2]");
+    assertMalformed("[1,]");
+    assertMalformed("[,1]");
+    assertMalformed("[1:2]");
+    assertMalformed("{,}");
+    assertMalformed("1, 2");
+  }
+
+  @Test
+  public void rejectsUnbalancedDocuments() throws Exception {
+    assertMalformed("{\"a\": [1}");
+    assertMalformed("[1, 2");
+    assertMalformed("]");
+    assertMalformed("{} {}");
+    assertMalformed("\"open");
+    assertMalformed("[\"bad \\q escape\"]");
+    assertMalformed("[\"\\u12\"]");
+  }
+
+}
@@ -0,0 +1,145 @@
+package org.springframework.data.rest.shell.commands;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class LatencyHistogramTests {
+
+  @Test
+  public void isEmptyAtFirst() {
+    LatencyHistogram histogram = new LatencyHistogram();
+
+    assertThat(histogram.getCount(), is(0L));
+    assertThat(histogram.getMin(), is(0L));
+    assertThat(histogram.getMax(), is(0L));
+    assertThat(histogram.getMean(), is(0.0));
+    assertThat(histogram.getValueAtPercentile(99), is(0L));
+  }
+
+  @Test
+  public void countsSmallValuesExactly() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for(int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+
+    assertThat(histogram.getCount(), is(100L));
+    assertThat(histogram.getSum(), is(5050L));
+    assertThat(histogram.getMin(), is(1L));
+    assertThat(histogram.getMax(), is(100L));
+    assertThat(histogram.getValueAtPercentile(50), is(50L));
+    assertThat(histogram.getValueAtPercentile(99), is(99L));
+    assertThat(histogram.getValueAtPercentile(100), is(100L));
+    assertThat(histogram.getValueAtPercentile(0), is(1L));
+  }
+
+  @Test
+  public void keepsLargeValuesWithinPrecision() {
+    LatencyHistogram fine = new LatencyHistogram();
+    LatencyHistogram coarse = new LatencyHistogram(5);
+    long[] values = {12345, 987654, 31234567, 1999999999L};
+    for(long value : values) {
+      fine.record(value);
+      coarse.record(value);
+      fine.record(1);
+      coarse.record(1);
+    }
+
+    for(int i = 0; i < values.length; i++) {
+      double percentile = 100.0 * (values.length + i + 1) / (2 * values.length);
+      assertWithin(fine.getValueAtPercentile(percentile), values[i], 1.0 / 1024);
+      assertWithin(coarse.getValueAtPercentile(percentile), values[i], 1.0 / 32);
+    }
+  }
+
+  @Test
+  public void clampsToRange() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    histogram.record(LatencyHistogram.MAX_VALUE * 2);
+
+    assertThat(histogram.getMin(), is(0L));
+    assertThat(histogram.getMax(), is(LatencyHistogram.MAX_VALUE));
+    assertWithin(histogram.getValueAtPercentile(100), LatencyHistogram.MAX_VALUE, 1.0 / 1024);
+  }
+
+  @Test
+  public void addsHistogramsOfAnyPrecision() {
+    LatencyHistogram total = new LatencyHistogram();
+    LatencyHistogram same = new LatencyHistogram();
+    LatencyHistogram coarse = new LatencyHistogram(5);
+    same.record(10);
+    same.record(20);
+    coarse.record(500000);
+
+    total.add(same);
+    total.add(coarse);
+    total.add(new LatencyHistogram());
+
+    assertThat(total.getCount(), is(3L));
+    assertThat(total.getSum(), is(500030L));
+    assertThat(total.getMin(), is(10L));
+    assertThat(total.getMax(), is(500000L));
+    assertThat(total.getValueAtPercentile(50), is(20L));
+    assertWithin(total.getValueAtPercentile(100), 500000, 1.0 / 32);
+  }
+
+  @Test
+  public void rejectsUnsupportedPrecision() {
+    try {
+      new LatencyHistogram(0);
+      fail("Expected 0 sub-bucket bits to be rejected");
+    } catch(IllegalArgumentException expected) {
+    }
+    try {
+      new LatencyHistogram(21);
+      fail("Expected 21 sub-bucket bits to be rejected");
+    } catch(IllegalArgumentException expected) {
+    }
+  }
+
+  @Test
+  public void writesAndReadsBack() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(3);
+    histogram.record(3);
+    histogram.record(150000);
+
+    File file = File.createTempFile("latency", ".hist");
+    try {
+      histogram.write(file);
+      LatencyHistogram read = LatencyHistogram.read(file);
+
+      assertThat(read.getCount(), is(3L));
+      assertThat(read.getMin(), is(3L));
+      assertThat(read.getValueAtPercentile(50), is(3L));
+      assertWithin(read.getValueAtPercentile(100), 150000, 1.0 / 1024);
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void rejectsOtherFiles() throws Exception {
+    File file = File.createTempFile("latency", ".hist");
+    try {
+      LatencyHistogram.read(file);
+      fail("Expected an empty file to be rejected");
+    } catch(IllegalArgumentException expected) {
+    } finally {
+      file.delete();
+    }
+  }
+
+  private static void assertWithin(long actual, long expected, double precision) {
+    assertThat((double)actual, is(closeTo(expected, expected * precision)));
+  }
+
+}
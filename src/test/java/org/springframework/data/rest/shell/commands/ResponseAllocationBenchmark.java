@@ -0,0 +1,192 @@
+package org.springframework.data.rest.shell.commands;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.SerializationConfig;
+import org.springframework.hateoas.Link;
+import org.springframework.util.FileCopyUtils;
+
+/**
+ * Measures how much is allocated, and how long it takes, to turn a JSON response into the transcript, {@literal
+ * responseBody} and {@literal links}, the way the shell did before JSON responses were decoded once and the way it
+ * does now:
+ * <pre>
+ * ./gradlew allocationBenchmark [-Psize=20000] [-Piterations=2000]
+ * </pre>
+ * The old way read the body into a String, parsed that into a Map, and pretty-printed the Map, and for {@literal
+ * hal+json} the formatter parsed and pretty-printed the result a second time. The new way copies the tokens straight
+ * to an indenting generator and reads {@literal responseBody} and the links through a {@link JsonIndex} over the
+ * output, as {@code HttpCommands.RequestHelper} does. Both ways must render the same transcript.
+ *
+ * @author agent
+ */
+public class ResponseAllocationBenchmark {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  {
+    mapper.configure(SerializationConfig.Feature.INDENT_OUTPUT, true);
+  }
+
+  public static void main(String[] args) throws Exception {
+    int size = (args.length > 0 ? Integer.parseInt(args[0]) : 20000);
+    int iterations = (args.length > 1 ? Integer.parseInt(args[1]) : 2000);
+    ResponseAllocationBenchmark benchmark = new ResponseAllocationBenchmark();
+    byte[] body = body(size);
+
+    String before = benchmark.decodeTwice(body, true);
+    String after = benchmark.decodeOnce(body);
+    if(!before.equals(after)) {
+      throw new IllegalStateException("The two ways render different transcripts");
+    }
+
+    System.out.println("Body of " + body.length + " bytes, " + iterations + " iterations");
+    for(int round = 0; round < 2; round++) {
+      // The first round only warms up the JIT
+      Result json = benchmark.run(body, iterations, Way.DECODE_TWICE_JSON);
+      Result hal = benchmark.run(body, iterations, Way.DECODE_TWICE_HAL);
+      Result once = benchmark.run(body, iterations, Way.DECODE_ONCE);
+      if(round > 0) {
+        System.out.println("old, json:      " + json);
+        System.out.println("old, hal+json:  " + hal);
+        System.out.println("new, both:      " + once);
+      }
+    }
+  }
+
+  /**
+   * A paged collection much like Spring Data REST renders, of at least {@code size} bytes.
+   */
+  private static byte[] body(int size) {
+    StringBuilder sb = new StringBuilder("{\"links\":[{\"rel\":\"self\",\"href\":\"http://localhost:8080/people\"},")
+        .append("{\"rel\":\"people.next\",\"href\":\"http://localhost:8080/people?page=2\"}],\"content\":[");
+    for(int i = 0; sb.length() < size; i++) {
+      if(i > 0) {
+        sb.append(',');
+      }
+      sb.append("{\"name\":\"Person ").append(i)
+        .append("\",\"age\":").append(20 + i % 50)
+        .append(",\"active\":").append(i % 2 == 0)
+        .append(",\"links\":[{\"rel\":\"self\",\"href\":\"http://localhost:8080/people/").append(i).append("\"}]}");
+    }
+    sb.append("],\"page\":{\"size\":20,\"totalElements\":1000,\"totalPages\":50,\"number\":1}}");
+    return sb.toString().getBytes(UTF8);
+  }
+
+  private Result run(byte[] body, int iterations, Way way) throws IOException {
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    long id = Thread.currentThread().getId();
+    int length = 0;
+    long allocated = threads.getThreadAllocatedBytes(id);
+    long start = System.nanoTime();
+    for(int i = 0; i < iterations; i++) {
+      switch(way) {
+        case DECODE_TWICE_JSON:
+          length += decodeTwice(body, false).length();
+          break;
+        case DECODE_TWICE_HAL:
+          length += decodeTwice(body, true).length();
+          break;
+        default:
+          length += decodeOnce(body).length();
+      }
+    }
+    long nanos = System.nanoTime() - start;
+    allocated = threads.getThreadAllocatedBytes(id) - allocated;
+    if(length == 0) {
+      throw new IllegalStateException("Nothing was rendered");
+    }
+    return new Result(allocated / iterations, nanos / 1000 / iterations);
+  }
+
+  /**
+   * The way the shell read a JSON response before it was decoded once.
+   */
+  @SuppressWarnings("unchecked")
+  private String decodeTwice(byte[] bytes, boolean hal) throws IOException {
+    // StringHttpMessageConverter's default charset
+    String body = FileCopyUtils.copyToString(new InputStreamReader(new ByteArrayInputStream(bytes), "ISO-8859-1"));
+    Object result = mapper.readValue(body.getBytes(), Map.class);
+    List<Link> links = new ArrayList<Link>();
+    for(Map<String, String> link : (List<Map<String, String>>)((Map)result).get("links")) {
+      links.add(new Link(link.get("href"), link.get("rel")));
+    }
+    StringWriter sw = new StringWriter();
+    mapper.writeValue(sw, result);
+    String transcript = sw.toString();
+    if(hal) {
+      // What the formatter did with the transcript of a hal+json response
+      transcript = mapper.writeValueAsString(mapper.readValue(transcript.getBytes(), Map.class));
+    }
+    return transcript;
+  }
+
+  /**
+   * The way the shell reads a JSON response now.
+   */
+  private String decodeOnce(byte[] bytes) throws IOException {
+    PushbackInputStream in = new PushbackInputStream(new ByteArrayInputStream(bytes));
+    in.unread(in.read());
+    ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 3 / 2);
+    copy(in, out);
+    byte[] rendered = out.toByteArray();
+    String transcript = new String(rendered, UTF8);
+    Object result = JsonIndex.parse(rendered);
+    List<Link> links = new ArrayList<Link>();
+    for(Object link : (List<?>)((Map<?, ?>)result).get("links")) {
+      links.add(new Link((String)((Map<?, ?>)link).get("href"), (String)((Map<?, ?>)link).get("rel")));
+    }
+    return transcript;
+  }
+
+  private void copy(InputStream in, ByteArrayOutputStream out) throws IOException {
+    JsonParser parser = mapper.getJsonFactory().createJsonParser(in);
+    JsonGenerator gen = mapper.getJsonFactory().createJsonGenerator(out, JsonEncoding.UTF8);
+    gen.useDefaultPrettyPrinter();
+    try {
+      parser.nextToken();
+      gen.copyCurrentStructure(parser);
+    } finally {
+      gen.close();
+      parser.close();
+    }
+  }
+
+  private enum Way {
+    DECODE_TWICE_JSON, DECODE_TWICE_HAL, DECODE_ONCE
+  }
+
+  private static class Result {
+
+    private final long bytes;
+    private final long micros;
+
+    private Result(long bytes, long micros) {
+      this.bytes = bytes;
+      this.micros = micros;
+    }
+
+    @Override public String toString() {
+      return String.format("%,9d bytes allocated/response, %,6d us/response", bytes, micros);
+    }
+
+  }
+
+}
@@ -0,0 +1,192 @@
+package org.springframework.data.rest.shell.http;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+
+/**
+ * @author agent
+ */
+public class RetryPolicyTests {
+
+  private static final URI URI = java.net.URI.create("http://localhost/people");
+
+  private RetryPolicy policy;
+
+  @Before
+  public void setUp() {
+    policy = new RetryPolicy();
+    policy.setBaseDelay(1);
+    policy.setMaxDelay(50);
+    policy.setJitter(0);
+  }
+
+  @Test
+  public void backsOffExponentiallyUpToTheMaximum() {
+    policy.setMaxAttempts(10);
+
+    assertThat(policy.retryDelay(HttpMethod.GET, 1, null), is(1L));
+    assertThat(policy.retryDelay(HttpMethod.GET, 2, null), is(2L));
+    assertThat(policy.retryDelay(HttpMethod.GET, 4, null), is(8L));
+    assertThat(policy.retryDelay(HttpMethod.GET, 9, null), is(50L));
+    assertThat(policy.getRetryCount(), is(4L));
+  }
+
+  @Test
+  public void stopsAfterMaxAttempts() {
+    assertThat(policy.retryDelay(HttpMethod.GET, 2, null), is(2L));
+    assertThat(policy.retryDelay(HttpMethod.GET, 3, null), is(-1L));
+    assertThat(policy.getExhaustedCount(), is(1L));
+  }
+
+  @Test
+  public void onlyRetriesIdempotentMethodsUnlessAllowed() {
+    assertThat(policy.retryDelay(HttpMethod.POST, 1, null), is(-1L));
+    assertThat(policy.retryDelay(HttpMethod.PUT, 1, null), is(1L));
+
+    policy.setRetryNonIdempotent(true);
+    assertThat(policy.retryDelay(HttpMethod.POST, 1, null), is(1L));
+  }
+
+  @Test
+  public void honoursRetryAfter() {
+    policy.setMaxDelay(5000);
+
+    assertThat(policy.retryDelay(HttpMethod.GET, 1, "2"), is(2000L));
+    assertThat(policy.retryDelay(HttpMethod.GET, 1, "soon"), is(1L));
+
+    policy.setRetryAfter(false);
+    assertThat(policy.retryDelay(HttpMethod.GET, 1, "2"), is(1L));
+  }
+
+  @Test
+  public void retryAfterBeyondMaxDelayLeavesTheBudgetAlone() {
+    double balance = policy.getBalance();
+
+    assertThat(policy.retryDelay(HttpMethod.GET, 1, "60"), is(-1L));
+    assertThat(policy.getRetryCount(), is(0L));
+    assertThat(policy.getBalance(), is(greaterThanOrEqualTo(balance)));
+  }
+
+  @Test
+  public void budgetLimitsRetries() {
+    policy.setBudgetPercent(0);
+    policy.setMaxAttempts(100);
+    int allowed = 0;
+    for(int i = 0; i < 20; i++) {
+      if(policy.retryDelay(HttpMethod.GET, 1, null) >= 0) {
+        allowed++;
+      }
+    }
+
+    // The budget starts full with ten retries and refills by one a second
+    assertThat(allowed, is(both(greaterThanOrEqualTo(10)).and(lessThan(20))));
+    assertThat(policy.getBudgetDeniedCount(), is(20L - allowed));
+  }
+
+  @Test
+  public void retriesStatusesUntilSuccess() throws Exception {
+    Attempts attempts = new Attempts(HttpStatus.SERVICE_UNAVAILABLE, HttpStatus.BAD_GATEWAY, HttpStatus.OK);
+
+    ResponseEntity<String> response = policy.execute(HttpMethod.GET, URI, attempts);
+
+    assertThat(response.getStatusCode(), is(HttpStatus.OK));
+    assertThat(attempts.sent, is(3));
+    assertThat(attempts.discarded, contains(HttpStatus.SERVICE_UNAVAILABLE, HttpStatus.BAD_GATEWAY));
+    assertThat(policy.getRequestCount(), is(1L));
+    assertThat(policy.getRetryCount(), is(2L));
+  }
+
+  @Test
+  public void returnsTheLastResponseOnceOutOfAttempts() throws Exception {
+    Attempts attempts = new Attempts(HttpStatus.SERVICE_UNAVAILABLE,
+                                     HttpStatus.SERVICE_UNAVAILABLE,
+                                     HttpStatus.SERVICE_UNAVAILABLE,
+                                     HttpStatus.OK);
+
+    ResponseEntity<String> response = policy.execute(HttpMethod.GET, URI, attempts);
+
+    assertThat(response.getStatusCode(), is(HttpStatus.SERVICE_UNAVAILABLE));
+    assertThat(attempts.sent, is(3));
+    assertThat(attempts.discarded.size(), is(2));
+  }
+
+  @Test
+  public void doesNotRetryOtherStatuses() throws Exception {
+    policy.setStatuses(EnumSet.of(HttpStatus.BAD_GATEWAY));
+    Attempts attempts = new Attempts(HttpStatus.SERVICE_UNAVAILABLE, HttpStatus.OK);
+
+    assertThat(policy.execute(HttpMethod.GET, URI, attempts).getStatusCode(), is(HttpStatus.SERVICE_UNAVAILABLE));
+    assertThat(attempts.sent, is(1));
+  }
+
+  @Test
+  public void retriesConnectionErrors() throws Exception {
+    Attempts attempts = new Attempts(new IOException("reset"),
+                                     new ResourceAccessException("refused"),
+                                     HttpStatus.OK);
+
+    assertThat(policy.execute(HttpMethod.GET, URI, attempts).getStatusCode(), is(HttpStatus.OK));
+    assertThat(attempts.sent, is(3));
+  }
+
+  @Test(expected = IOException.class)
+  public void rethrowsTheLastConnectionError() throws Exception {
+    policy.execute(HttpMethod.POST, URI, new Attempts(new IOException("reset"), HttpStatus.OK));
+  }
+
+  /**
+   * Responds with each of the given statuses, or throws each of the given exceptions, in turn.
+   */
+  private static class Attempts implements RetryPolicy.Attempt<ResponseEntity<String>> {
+
+    private final LinkedList<Object> outcomes;
+    private final List<HttpStatus>   discarded = new ArrayList<HttpStatus>();
+    private       int                sent;
+
+    private Attempts(Object... outcomes) {
+      this.outcomes = new LinkedList<Object>(Arrays.asList(outcomes));
+    }
+
+    @Override public ResponseEntity<String> send() throws IOException {
+      sent++;
+      Object outcome = outcomes.removeFirst();
+      if(outcome instanceof IOException) {
+        throw (IOException)outcome;
+      }
+      if(outcome instanceof RuntimeException) {
+        throw (RuntimeException)outcome;
+      }
+      return new ResponseEntity<String>((HttpStatus)outcome);
+    }
+
+    @Override public HttpStatus getStatus(ResponseEntity<String> response) {
+      return response.getStatusCode();
+    }
+
+    @Override public HttpHeaders getHeaders(ResponseEntity<String> response) {
+      return response.getHeaders();
+    }
+
+    @Override public void discard(ResponseEntity<String> response) {
+      discarded.add(response.getStatusCode());
+    }
+
+  }
+
+}